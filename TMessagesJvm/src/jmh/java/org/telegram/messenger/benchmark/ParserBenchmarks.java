@@ -0,0 +1,222 @@
+package org.telegram.messenger.benchmark;
+
+import android.net.Uri;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.telegram.messenger.audioinfo.m4a.M4AInfo;
+import org.telegram.messenger.audioinfo.mp3.MP3Info;
+import org.telegram.messenger.exoplayer.C;
+import org.telegram.messenger.exoplayer.drm.DrmInitData;
+import org.telegram.messenger.exoplayer.extractor.DefaultExtractorInput;
+import org.telegram.messenger.exoplayer.extractor.DummyTrackOutput;
+import org.telegram.messenger.exoplayer.extractor.Extractor;
+import org.telegram.messenger.exoplayer.extractor.ExtractorInput;
+import org.telegram.messenger.exoplayer.extractor.ExtractorOutput;
+import org.telegram.messenger.exoplayer.extractor.PositionHolder;
+import org.telegram.messenger.exoplayer.extractor.SeekMap;
+import org.telegram.messenger.exoplayer.extractor.TrackOutput;
+import org.telegram.messenger.exoplayer.extractor.mp4.FragmentedMp4Extractor;
+import org.telegram.messenger.exoplayer.extractor.mp4.Mp4Extractor;
+import org.telegram.messenger.exoplayer.extractor.ts.AdtsExtractor;
+import org.telegram.messenger.exoplayer.extractor.ts.TsExtractor;
+import org.telegram.messenger.exoplayer.extractor.webm.WebmExtractor;
+import org.telegram.messenger.exoplayer.upstream.ByteArrayDataSource;
+import org.telegram.messenger.exoplayer.upstream.DataSpec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full parse of a generated sample file per operation: sniff, then read to the end of input
+ * the way ExtractorSampleSource drives an extractor, with every sample discarded. The metadata
+ * readers (MP3Info, M4AInfo) stop on their own once they have what they need.
+ *
+ * Run through {@code gradle jmh}; {@link #main(String[])} turns the JMH scores into MB/s of
+ * sample file and bytes allocated per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmarks {
+
+    private static final Uri SAMPLE_URI = Uri.parse("data:sample");
+
+    @Param({SampleFiles.MP4, SampleFiles.FMP4, SampleFiles.WEBM, SampleFiles.TS, SampleFiles.ADTS, SampleFiles.MP3, SampleFiles.M4A})
+    public String format;
+
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = SampleFiles.generate(format);
+        if (parse(format, data) <= 0) {
+            throw new IllegalStateException(format + " sample did not parse");
+        }
+    }
+
+    @Benchmark
+    public long parse() throws Exception {
+        return parse(format, data);
+    }
+
+    /**
+     * Returns the number of samples the extractor emitted, or the duration the metadata reader
+     * found, so a broken sample shows up as 0 instead of a suspiciously fast score.
+     */
+    static long parse(String format, byte[] data) throws Exception {
+        switch (format) {
+            case SampleFiles.MP4:
+                return extract(new Mp4Extractor(), data);
+            case SampleFiles.FMP4:
+                return extract(new FragmentedMp4Extractor(), data);
+            case SampleFiles.WEBM:
+                return extract(new WebmExtractor(), data);
+            case SampleFiles.TS:
+                return extract(new TsExtractor(), data);
+            case SampleFiles.ADTS:
+                return extract(new AdtsExtractor(), data);
+            case SampleFiles.MP3:
+                return new MP3Info(new ByteArrayInputStream(data), data.length).getDuration();
+            case SampleFiles.M4A:
+                return new M4AInfo(new ByteArrayInputStream(data)).getDuration();
+            default:
+                throw new IllegalArgumentException("unknown sample format " + format);
+        }
+    }
+
+    private static long extract(Extractor extractor, byte[] data) throws IOException, InterruptedException {
+        ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+        ExtractorInput input = open(dataSource, 0, data.length);
+        if (!extractor.sniff(input)) {
+            throw new IOException(extractor.getClass().getSimpleName() + " rejected the sample");
+        }
+        input.resetPeekPosition();
+        CountingOutput output = new CountingOutput();
+        extractor.init(output);
+        PositionHolder positionHolder = new PositionHolder();
+        int result = Extractor.RESULT_CONTINUE;
+        while (result != Extractor.RESULT_END_OF_INPUT) {
+            result = extractor.read(input, positionHolder);
+            if (result == Extractor.RESULT_SEEK) {
+                if (positionHolder.position >= data.length) {
+                    break;
+                }
+                dataSource.close();
+                input = open(dataSource, positionHolder.position, data.length);
+            }
+        }
+        dataSource.close();
+        extractor.release();
+        return output.samples;
+    }
+
+    private static ExtractorInput open(ByteArrayDataSource dataSource, long position, long length) throws IOException {
+        dataSource.open(new DataSpec(SAMPLE_URI, position, C.LENGTH_UNBOUNDED, null));
+        return new DefaultExtractorInput(dataSource, position, length);
+    }
+
+    private static final class CountingOutput implements ExtractorOutput {
+
+        private long samples;
+
+        private final TrackOutput trackOutput = new DummyTrackOutput() {
+            @Override
+            public void sampleMetadata(long timeUs, int flags, int size, int offset, byte[] encryptionKey) {
+                samples++;
+            }
+        };
+
+        @Override
+        public TrackOutput track(int trackId) {
+            return trackOutput;
+        }
+
+        @Override
+        public void endTracks() {
+
+        }
+
+        @Override
+        public void seekMap(SeekMap seekMap) {
+
+        }
+
+        @Override
+        public void drmInitData(DrmInitData drmInitData) {
+
+        }
+    }
+
+    /**
+     * Usage: {@code ParserBenchmarks [-formats mp4,ts,...] [-quick]}
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> formats = new ArrayList<>(Arrays.asList(SampleFiles.ALL));
+        boolean quick = false;
+        for (int a = 0; a < args.length; a++) {
+            if ("-formats".equals(args[a]) && a + 1 < args.length) {
+                formats = Arrays.asList(args[++a].split(","));
+            } else if ("-quick".equals(args[a])) {
+                quick = true;
+            }
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(ParserBenchmarks.class.getName() + ".parse$")
+                .param("format", formats.toArray(new String[formats.size()]))
+                .addProfiler(GCProfiler.class);
+        if (quick) {
+            options.warmupIterations(2).warmupTime(TimeValue.milliseconds(500))
+                    .measurementIterations(3).measurementTime(TimeValue.seconds(1));
+        }
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        System.out.println();
+        System.out.println(String.format(Locale.US, "%-6s %10s %12s %10s %16s", "format", "size KB", "parses/s", "MB/s", "alloc B/parse"));
+        for (RunResult result : results) {
+            String format = result.getParams().getParam("format");
+            int size = SampleFiles.generate(format).length;
+            double parsesPerSecond = result.getPrimaryResult().getScore();
+            double allocated = secondaryScore(result.getSecondaryResults(), "gc.alloc.rate.norm");
+            System.out.println(String.format(Locale.US, "%-6s %10d %12.1f %10.1f %16.0f", format, size / 1024, parsesPerSecond, parsesPerSecond * size / 1e6, allocated));
+        }
+        System.out.println("MB/s is relative to the whole sample; mp3 and m4a only read the tags and the frames needed for the duration.");
+    }
+
+    private static double secondaryScore(Map<String, Result> results, String label) {
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            if (entry.getKey().endsWith(label)) {
+                return entry.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,413 @@
+package org.telegram.messenger.benchmark;
+
+import com.coremedia.iso.boxes.Container;
+import com.googlecode.mp4parser.MemoryDataSourceImpl;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.builder.DefaultMp4Builder;
+import com.googlecode.mp4parser.authoring.builder.FragmentedMp4Builder;
+import com.googlecode.mp4parser.authoring.builder.StaticFragmentIntersectionFinderImpl;
+import com.googlecode.mp4parser.authoring.tracks.AACTrackImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Generates the sample files the parser benchmarks run over. Every file is built from a fixed
+ * seed, so sizes and contents are identical between runs and machines. Audio payloads are filler
+ * bytes with valid framing: the extractors only parse containers and frame headers, they never
+ * decode.
+ */
+public final class SampleFiles {
+
+    public static final String MP4 = "mp4";
+    public static final String FMP4 = "fmp4";
+    public static final String WEBM = "webm";
+    public static final String TS = "ts";
+    public static final String ADTS = "adts";
+    public static final String MP3 = "mp3";
+    public static final String M4A = "m4a";
+
+    public static final String[] ALL = {MP4, FMP4, WEBM, TS, ADTS, MP3, M4A};
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final int AAC_SAMPLE_RATE = 44100;
+    private static final int AAC_FRAMES = 12000; // ~4.6 minutes, the length of a typical track
+    private static final int FRAGMENT_SAMPLES = 256;
+
+    private SampleFiles() {
+    }
+
+    public static byte[] generate(String format) {
+        try {
+            switch (format) {
+                case MP4:
+                    return mp4(false);
+                case FMP4:
+                    return mp4(true);
+                case WEBM:
+                    return webm();
+                case TS:
+                    return ts();
+                case ADTS:
+                    return adts(AAC_FRAMES);
+                case MP3:
+                    return mp3();
+                case M4A:
+                    return m4a();
+                default:
+                    throw new IllegalArgumentException("unknown sample format " + format);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ADTS: AAC LC, 44.1 kHz stereo, no CRC.
+
+    static byte[] adts(int frameCount) {
+        Random random = new Random(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int a = 0; a < frameCount; a++) {
+            writeAdtsFrame(out, random, 200 + random.nextInt(200));
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeAdtsFrame(ByteArrayOutputStream out, Random random, int payloadSize) {
+        int frameLength = payloadSize + 7;
+        out.write(0xFF);
+        out.write(0xF1); // MPEG-4, layer 0, protection absent
+        out.write((1 << 6) | (4 << 2)); // profile LC, sampling frequency index 4 (44100 Hz), channel config high bit
+        out.write((2 << 6) | (frameLength >> 11)); // channel config 2
+        out.write((frameLength >> 3) & 0xFF);
+        out.write(((frameLength & 0x07) << 5) | 0x1F);
+        out.write(0xFC);
+        for (int a = 0; a < payloadSize; a++) {
+            out.write(random.nextInt(0x80)); // never 0xFF, so no false sync words
+        }
+    }
+
+    // MP4 and fragmented MP4, muxed by isoparser the same way the app muxes its own recordings.
+
+    static byte[] mp4(boolean fragmented) throws IOException {
+        Movie movie = new Movie();
+        AACTrackImpl track = new AACTrackImpl(new MemoryDataSourceImpl(adts(AAC_FRAMES)));
+        movie.addTrack(track);
+        Container container;
+        if (fragmented) {
+            long[] fragmentStarts = new long[(AAC_FRAMES + FRAGMENT_SAMPLES - 1) / FRAGMENT_SAMPLES];
+            for (int a = 0; a < fragmentStarts.length; a++) {
+                fragmentStarts[a] = 1 + a * FRAGMENT_SAMPLES;
+            }
+            FragmentedMp4Builder builder = new FragmentedMp4Builder();
+            builder.setIntersectionFinder(new StaticFragmentIntersectionFinderImpl(Collections.<Track, long[]>singletonMap(track, fragmentStarts)));
+            container = builder.build(movie);
+        } else {
+            container = new DefaultMp4Builder().build(movie);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        container.writeContainer(Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    // M4A with a faststart moov carrying iTunes metadata and cover art, followed by the media data.
+
+    static byte[] m4a() throws IOException {
+        Random random = new Random(2);
+        long durationUnits = (long) AAC_FRAMES * 1024;
+
+        ByteArrayOutputStream ilst = new ByteArrayOutputStream();
+        ilst.write(ilstText("©nam", "Generated Track"));
+        ilst.write(ilstText("©ART", "Sample Artist"));
+        ilst.write(ilstText("aART", "Sample Album Artist"));
+        ilst.write(ilstText("©alb", "Sample Album"));
+        ilst.write(ilstText("©gen", "Electronic"));
+        ilst.write(ilstText("©day", "2016-10-01T00:00:00Z"));
+        ilst.write(ilstText("©cmt", "Written by the parser benchmark"));
+        ilst.write(ilstText("©lyr", repeat("la ", 2000)));
+        ilst.write(box("trkn", box("data", concat(new byte[]{0, 0, 0, 0, 0, 0, 0, 0}, new byte[]{0, 0, 0, 3, 0, 12, 0, 0}))));
+        ilst.write(box("disk", box("data", concat(new byte[]{0, 0, 0, 0, 0, 0, 0, 0}, new byte[]{0, 0, 0, 1, 0, 2}))));
+        byte[] cover = new byte[64 * 1024];
+        random.nextBytes(cover);
+        ilst.write(box("covr", box("data", concat(new byte[]{0, 0, 0, 13, 0, 0, 0, 0}, cover))));
+
+        byte[] moov = box("moov",
+                fullBox("mvhd", 0, concat(u32(0), u32(0), u32(AAC_SAMPLE_RATE), u32(durationUnits), u32(0x00010000), u16(0x0100), new byte[10], identityMatrix(), new byte[24], u32(2))),
+                box("trak",
+                        fullBox("tkhd", 3, concat(u32(0), u32(0), u32(1), u32(0), u32(durationUnits), new byte[8], u16(0), u16(0), u16(0x0100), u16(0), identityMatrix(), u32(0), u32(0))),
+                        box("mdia",
+                                fullBox("mdhd", 0, concat(u32(0), u32(0), u32(AAC_SAMPLE_RATE), u32(durationUnits), u16(0x55C4), u16(0))),
+                                fullBox("hdlr", 0, concat(u32(0), ascii("soun"), new byte[12], ascii("SoundHandler\0"))))),
+                box("udta",
+                        fullBox("meta", 0, concat(
+                                fullBox("hdlr", 0, concat(u32(0), ascii("mdir"), ascii("appl"), new byte[8], new byte[]{0})),
+                                box("ilst", ilst.toByteArray())))));
+
+        return concat(
+                box("ftyp", concat(ascii("M4A "), u32(0), ascii("M4A "), ascii("mp42"), ascii("isom"))),
+                moov,
+                box("mdat", adts(AAC_FRAMES)));
+    }
+
+    private static byte[] ilstText(String type, String value) throws IOException {
+        return box(type, box("data", concat(u32(1), u32(0), value.getBytes(UTF_8))));
+    }
+
+    // MP3: ID3v2.3 tag without TLEN, then MPEG-1 Layer III frames that alternate between three
+    // bitrates, so MP3Info treats the stream as VBR and scans a minute of frames for the duration.
+
+    static byte[] mp3() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(id3v2Frame("TIT2", "Generated Track"));
+        frames.write(id3v2Frame("TPE1", "Sample Artist"));
+        frames.write(id3v2Frame("TPE2", "Sample Album Artist"));
+        frames.write(id3v2Frame("TALB", "Sample Album"));
+        frames.write(id3v2Frame("TCON", "(52)"));
+        frames.write(id3v2Frame("TRCK", "3/12"));
+        frames.write(id3v2Frame("TPOS", "1/2"));
+        frames.write(id3v2Frame("TYER", "2016"));
+        frames.write(id3v2Frame("COMM", concat(new byte[]{0}, ascii("eng"), new byte[]{0}, ascii("Written by the parser benchmark"))));
+        frames.write(new byte[1024]); // padding
+
+        int tagSize = frames.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ascii("ID3"));
+        out.write(new byte[]{3, 0, 0});
+        out.write(new byte[]{(byte) ((tagSize >> 21) & 0x7F), (byte) ((tagSize >> 14) & 0x7F), (byte) ((tagSize >> 7) & 0x7F), (byte) (tagSize & 0x7F)});
+        frames.writeTo(out);
+
+        int[] bitrateIndices = {9, 10, 11}; // 128, 160 and 192 kbit/s
+        int[] bitrates = {128000, 160000, 192000};
+        for (int a = 0; a < AAC_FRAMES; a++) {
+            int index = a % bitrateIndices.length;
+            int frameSize = 144 * bitrates[index] / AAC_SAMPLE_RATE;
+            out.write(0xFF);
+            out.write(0xFB); // MPEG-1, layer III, no CRC
+            out.write(bitrateIndices[index] << 4); // 44100 Hz, no padding
+            out.write(0x44); // joint stereo, original
+            out.write(new byte[frameSize - 4]);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] id3v2Frame(String id, String text) throws IOException {
+        return id3v2Frame(id, concat(new byte[]{0}, text.getBytes(ISO_8859_1)));
+    }
+
+    private static byte[] id3v2Frame(String id, byte[] body) throws IOException {
+        return concat(ascii(id), u32(body.length), u16(0), body);
+    }
+
+    // WebM: one 640x360 VP8 track at 30 fps, one cluster per second, a keyframe every two seconds.
+
+    static byte[] webm() throws IOException {
+        Random random = new Random(3);
+        int seconds = 60;
+        int fps = 30;
+
+        ByteArrayOutputStream clusters = new ByteArrayOutputStream();
+        for (int second = 0; second < seconds; second++) {
+            ByteArrayOutputStream cluster = new ByteArrayOutputStream();
+            cluster.write(ebmlUint(0xE7, second * 1000L)); // Timecode
+            for (int frame = 0; frame < fps; frame++) {
+                boolean keyframe = frame == 0 && second % 2 == 0;
+                byte[] data = new byte[keyframe ? 12000 : 1000 + random.nextInt(1500)];
+                random.nextBytes(data);
+                int relativeTimecode = frame * 1000 / fps;
+                byte[] block = concat(new byte[]{(byte) 0x81, (byte) (relativeTimecode >> 8), (byte) relativeTimecode, (byte) (keyframe ? 0x80 : 0x00)}, data);
+                cluster.write(ebml(0xA3, block)); // SimpleBlock
+            }
+            clusters.write(ebml(0x1F43B675, cluster.toByteArray())); // Cluster
+        }
+
+        byte[] header = ebml(0x1A45DFA3, concat(
+                ebmlUint(0x4286, 1), // EBMLVersion
+                ebmlUint(0x42F7, 1), // EBMLReadVersion
+                ebmlUint(0x42F2, 4), // EBMLMaxIDLength
+                ebmlUint(0x42F3, 8), // EBMLMaxSizeLength
+                ebml(0x4282, ascii("webm")), // DocType
+                ebmlUint(0x4287, 2), // DocTypeVersion
+                ebmlUint(0x4285, 2))); // DocTypeReadVersion
+        byte[] info = ebml(0x1549A966, concat(
+                ebmlUint(0x2AD7B1, 1000000), // TimecodeScale
+                ebml(0x4489, u32(Float.floatToIntBits(seconds * 1000f))))); // Duration
+        byte[] tracks = ebml(0x1654AE6B, ebml(0xAE, concat( // Tracks, TrackEntry
+                ebmlUint(0xD7, 1), // TrackNumber
+                ebmlUint(0x83, 1), // TrackType video
+                ebml(0x86, ascii("V_VP8")), // CodecID
+                ebml(0xE0, concat(ebmlUint(0xB0, 640), ebmlUint(0xBA, 360)))))); // Video
+        return concat(header, ebml(0x18538067, concat(info, tracks, clusters.toByteArray())));
+    }
+
+    private static byte[] ebml(int id, byte[] payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int idLength = id > 0xFFFFFF ? 4 : id > 0xFFFF ? 3 : id > 0xFF ? 2 : 1;
+        for (int a = idLength - 1; a >= 0; a--) {
+            out.write(id >> (a * 8));
+        }
+        long size = payload.length;
+        int sizeLength = 1;
+        while (size >= (1L << (7 * sizeLength)) - 1) {
+            sizeLength++;
+        }
+        long marked = size | (1L << (7 * sizeLength));
+        for (int a = sizeLength - 1; a >= 0; a--) {
+            out.write((int) (marked >> (a * 8)));
+        }
+        out.write(payload);
+        return out.toByteArray();
+    }
+
+    private static byte[] ebmlUint(int id, long value) throws IOException {
+        int length = 1;
+        while (length < 8 && (value >>> (length * 8)) != 0) {
+            length++;
+        }
+        byte[] payload = new byte[length];
+        for (int a = 0; a < length; a++) {
+            payload[length - 1 - a] = (byte) (value >> (a * 8));
+        }
+        return ebml(id, payload);
+    }
+
+    // MPEG-TS: PAT and PMT for a single AAC elementary stream, then PES packets of ten ADTS frames.
+
+    private static final int TS_PACKET_SIZE = 188;
+    private static final int PMT_PID = 0x1000;
+    private static final int AUDIO_PID = 0x0101;
+
+    static byte[] ts() throws IOException {
+        Random random = new Random(4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] continuity = new int[0x2000];
+
+        byte[] pat = concat(new byte[]{0x00, (byte) 0xB0, 13}, u16(1), new byte[]{(byte) 0xC1, 0, 0},
+                u16(1), u16(0xE000 | PMT_PID), u32(0));
+        byte[] pmt = concat(new byte[]{0x02, (byte) 0xB0, 18}, u16(1), new byte[]{(byte) 0xC1, 0, 0},
+                u16(0xE000 | AUDIO_PID), u16(0xF000),
+                new byte[]{0x0F}, u16(0xE000 | AUDIO_PID), u16(0xF000), u32(0));
+        writeTsSection(out, continuity, 0, pat);
+        writeTsSection(out, continuity, PMT_PID, pmt);
+
+        long pts = 90000;
+        int framesPerPes = 10;
+        for (int a = 0; a < AAC_FRAMES; a += framesPerPes) {
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            for (int b = 0; b < framesPerPes; b++) {
+                writeAdtsFrame(frames, random, 200 + random.nextInt(200));
+            }
+            byte[] payload = frames.toByteArray();
+            byte[] pes = concat(new byte[]{0, 0, 1, (byte) 0xC0}, u16(payload.length + 8),
+                    new byte[]{(byte) 0x80, (byte) 0x80, 5}, ptsBytes(pts), payload);
+            writeTsPayload(out, continuity, AUDIO_PID, pes);
+            pts += 90000L * 1024 * framesPerPes / AAC_SAMPLE_RATE;
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ptsBytes(long pts) {
+        return new byte[]{
+                (byte) (0x21 | ((pts >> 29) & 0x0E)),
+                (byte) (pts >> 22),
+                (byte) (((pts >> 14) & 0xFE) | 1),
+                (byte) (pts >> 7),
+                (byte) (((pts << 1) & 0xFE) | 1)};
+    }
+
+    private static void writeTsSection(ByteArrayOutputStream out, int[] continuity, int pid, byte[] section) {
+        byte[] packet = new byte[TS_PACKET_SIZE];
+        writeTsHeader(packet, continuity, pid, true, false);
+        packet[4] = 0; // pointer_field
+        System.arraycopy(section, 0, packet, 5, section.length);
+        for (int a = 5 + section.length; a < TS_PACKET_SIZE; a++) {
+            packet[a] = (byte) 0xFF;
+        }
+        out.write(packet, 0, TS_PACKET_SIZE);
+    }
+
+    private static void writeTsPayload(ByteArrayOutputStream out, int[] continuity, int pid, byte[] data) {
+        int offset = 0;
+        while (offset < data.length) {
+            byte[] packet = new byte[TS_PACKET_SIZE];
+            int remaining = data.length - offset;
+            int payloadStart = 4;
+            if (remaining < TS_PACKET_SIZE - 4) {
+                // Pad the last packet of the PES with adaptation field stuffing.
+                int adaptationLength = TS_PACKET_SIZE - 4 - 1 - remaining;
+                writeTsHeader(packet, continuity, pid, offset == 0, true);
+                packet[4] = (byte) adaptationLength;
+                if (adaptationLength > 0) {
+                    packet[5] = 0;
+                    for (int a = 6; a < 5 + adaptationLength; a++) {
+                        packet[a] = (byte) 0xFF;
+                    }
+                }
+                payloadStart = 5 + adaptationLength;
+            } else {
+                writeTsHeader(packet, continuity, pid, offset == 0, false);
+            }
+            int length = TS_PACKET_SIZE - payloadStart;
+            System.arraycopy(data, offset, packet, payloadStart, length);
+            offset += length;
+            out.write(packet, 0, TS_PACKET_SIZE);
+        }
+    }
+
+    private static void writeTsHeader(byte[] packet, int[] continuity, int pid, boolean payloadUnitStart, boolean adaptationField) {
+        packet[0] = 0x47;
+        packet[1] = (byte) ((payloadUnitStart ? 0x40 : 0) | (pid >> 8));
+        packet[2] = (byte) pid;
+        packet[3] = (byte) ((adaptationField ? 0x30 : 0x10) | continuity[pid]);
+        continuity[pid] = (continuity[pid] + 1) & 0x0F;
+    }
+
+    // ISO BMFF helpers.
+
+    private static byte[] box(String type, byte[]... children) throws IOException {
+        byte[] payload = concat(children);
+        return concat(u32(payload.length + 8), ascii(type), payload);
+    }
+
+    private static byte[] fullBox(String type, int flags, byte[]... children) throws IOException {
+        return box(type, concat(u32(flags), concat(children)));
+    }
+
+    private static byte[] identityMatrix() throws IOException {
+        return concat(u32(0x00010000), u32(0), u32(0), u32(0), u32(0x00010000), u32(0), u32(0), u32(0), u32(0x40000000));
+    }
+
+    private static byte[] u32(long value) {
+        return new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+    }
+
+    private static byte[] u16(int value) {
+        return new byte[]{(byte) (value >> 8), (byte) value};
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(ISO_8859_1);
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder(value.length() * count);
+        for (int a = 0; a < count; a++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,129 @@
+package org.telegram.messenger.benchmark;
+
+import android.graphics.RectF;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.ui.Components.Paint.Point;
+import org.telegram.ui.Components.Paint.RenderState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rasterizes a recorded stroke the way Painting does for every touch move: each smoothed path is
+ * interpolated into brush stamps and turned into vertex data. The stroke is a seeded scribble of
+ * touch samples, smoothed into paths exactly like Input does; {@code speed} is the distance the
+ * finger moves between two samples. The {@code points} counter reports brush stamps per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeBenchmarks {
+
+    @Param({"2", "12", "40"})
+    public int speed;
+
+    private Point[][] paths;
+    private final RenderState state = new RenderState();
+    private final RectF bounds = new RectF();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long points;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            points = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        paths = smooth(record(600, speed, 7));
+        // round brush at weight 8, as the default pen draws
+        state.baseWeight = 8.0f;
+        state.spacing = 0.15f;
+        state.alpha = 0.85f;
+        state.angle = 0.0f;
+        state.scale = 1.0f;
+    }
+
+    @Benchmark
+    public int stroke(Counters counters) {
+        int vertices = 0;
+        for (Point[] path : paths) {
+            state.prepare();
+            for (int i = 0; i < path.length - 1; i++) {
+                state.paintSegment(path[i], path[i + 1]);
+            }
+            counters.points += state.getCount();
+            vertices += state.fillVertexData(bounds);
+        }
+        return vertices;
+    }
+
+    private static Point[] record(int count, float speed, long seed) {
+        Random random = new Random(seed);
+        Point[] samples = new Point[count];
+        double x = 500;
+        double y = 500;
+        double heading = 0;
+        for (int a = 0; a < count; a++) {
+            samples[a] = new Point(x, y, 1.0);
+            heading += (random.nextDouble() - 0.5) * 0.8;
+            double distance = speed * (0.5 + random.nextDouble());
+            x += Math.cos(heading) * distance;
+            y += Math.sin(heading) * distance;
+        }
+        return samples;
+    }
+
+    /**
+     * Quadratic smoothing between the midpoints of consecutive samples, as Input.smoothenAndPaintPoints.
+     */
+    private static Point[][] smooth(Point[] samples) {
+        List<Point[]> paths = new ArrayList<>();
+        for (int a = 2; a < samples.length; a++) {
+            Point prev2 = samples[a - 2];
+            Point prev1 = samples[a - 1];
+            Point cur = samples[a];
+            Point mid1 = new Point((prev1.x + prev2.x) * 0.5, (prev1.y + prev2.y) * 0.5, 1.0);
+            Point mid2 = new Point((cur.x + prev1.x) * 0.5, (cur.y + prev1.y) * 0.5, 1.0);
+
+            double distance = Math.hypot(mid2.x - mid1.x, mid2.y - mid1.y);
+            int segments = (int) Math.min(48, Math.max(Math.floor(distance), 24));
+            Point[] path = new Point[segments + 1];
+            float t = 0.0f;
+            for (int j = 0; j < segments; j++) {
+                double a1 = (1.0f - t) * (1.0f - t);
+                double a2 = 2.0f * (1.0f - t) * t;
+                double a3 = t * t;
+                path[j] = new Point(mid1.x * a1 + prev1.x * a2 + mid2.x * a3, mid1.y * a1 + prev1.y * a2 + mid2.y * a3, 1.0);
+                t += 1.0f / segments;
+            }
+            path[segments] = mid2;
+            paths.add(path);
+        }
+        paths.get(0)[0].edge = true;
+        paths.get(paths.size() - 1)[paths.get(paths.size() - 1).length - 1].edge = true;
+        return paths.toArray(new Point[paths.size()][]);
+    }
+}
@@ -0,0 +1,68 @@
+package org.telegram.messenger.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.messenger.Transliteration;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search transliterates the query and every candidate name on each keystroke. {@code cached}
+ * cycles through fewer names than the result cache holds, as when a query is refined;
+ * {@code uncached} cycles through more, so every call misses and runs the char table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransliterationBenchmarks {
+
+    private static final String[] FIRST_NAMES = {"Алексей", "Мария", "Jürgen", "Zoë", "Øystein", "Łukasz", "Ĳsbrand", "Nguyễn", "Ştefan", "Renée", "Павел", "John", "Anna", "Mehmet"};
+    private static final String[] LAST_NAMES = {"Иванов", "Müller", "Ødegård", "Kowalski", "Văn An", "Ionescu", "Smith", "Yılmaz", "Françoise", "Петрова"};
+
+    private final Transliteration transliteration = Transliteration.getInstance();
+    private String[] cachedNames;
+    private String[] uncachedNames;
+    private int cachedIndex;
+    private int uncachedIndex;
+
+    @Setup
+    public void setUp() {
+        cachedNames = names(200, 1);
+        uncachedNames = names(5000, 2);
+    }
+
+    private static String[] names(int count, long seed) {
+        Random random = new Random(seed);
+        String[] names = new String[count];
+        for (int a = 0; a < count; a++) {
+            names[a] = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)] + " " + a;
+        }
+        return names;
+    }
+
+    @Benchmark
+    public String cached() {
+        String name = cachedNames[cachedIndex];
+        cachedIndex = (cachedIndex + 1) % cachedNames.length;
+        return transliteration.transliterate(name);
+    }
+
+    @Benchmark
+    public String uncached() {
+        String name = uncachedNames[uncachedIndex];
+        uncachedIndex = (uncachedIndex + 1) % uncachedNames.length;
+        return transliteration.transliterate(name);
+    }
+}
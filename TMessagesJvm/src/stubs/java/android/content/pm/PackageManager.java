@@ -0,0 +1,19 @@
+package android.content.pm;
+
+public abstract class PackageManager {
+
+    public static final String FEATURE_LEANBACK = "android.software.leanback";
+
+    public static class NameNotFoundException extends Exception {
+        public NameNotFoundException() {
+        }
+
+        public NameNotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public abstract boolean hasSystemFeature(String name);
+
+    public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+}
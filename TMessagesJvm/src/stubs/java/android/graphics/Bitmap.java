@@ -0,0 +1,24 @@
+package android.graphics;
+
+public final class Bitmap {
+
+    private final int width;
+    private final int height;
+
+    Bitmap(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public static Bitmap createScaledBitmap(Bitmap src, int dstWidth, int dstHeight, boolean filter) {
+        return new Bitmap(dstWidth, dstHeight);
+    }
+}
@@ -0,0 +1,67 @@
+package android.graphics;
+
+public class RectF {
+    public float left;
+    public float top;
+    public float right;
+    public float bottom;
+
+    public RectF() {
+    }
+
+    public RectF(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public final boolean isEmpty() {
+        return left >= right || top >= bottom;
+    }
+
+    public final float width() {
+        return right - left;
+    }
+
+    public final float height() {
+        return bottom - top;
+    }
+
+    public void set(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void union(RectF r) {
+        union(r.left, r.top, r.right, r.bottom);
+    }
+
+    public void union(float left, float top, float right, float bottom) {
+        if (left < right && top < bottom) {
+            if (this.left < this.right && this.top < this.bottom) {
+                if (this.left > left) {
+                    this.left = left;
+                }
+                if (this.top > top) {
+                    this.top = top;
+                }
+                if (this.right < right) {
+                    this.right = right;
+                }
+                if (this.bottom < bottom) {
+                    this.bottom = bottom;
+                }
+            } else {
+                set(left, top, right, bottom);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RectF(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+    }
+}
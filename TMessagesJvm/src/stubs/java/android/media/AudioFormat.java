@@ -0,0 +1,13 @@
+package android.media;
+
+public final class AudioFormat {
+    public static final int ENCODING_INVALID = 0;
+    public static final int ENCODING_PCM_16BIT = 2;
+    public static final int ENCODING_PCM_8BIT = 3;
+    public static final int ENCODING_AC3 = 5;
+    public static final int ENCODING_E_AC3 = 6;
+    public static final int ENCODING_DTS = 7;
+    public static final int ENCODING_DTS_HD = 8;
+    public static final int CHANNEL_OUT_7POINT1 = 0x3fc;
+    public static final int CHANNEL_OUT_7POINT1_SURROUND = 0x18fc;
+}
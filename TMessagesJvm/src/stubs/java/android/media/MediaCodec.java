@@ -0,0 +1,25 @@
+package android.media;
+
+public final class MediaCodec {
+
+    public static final int CRYPTO_MODE_UNENCRYPTED = 0;
+    public static final int CRYPTO_MODE_AES_CTR = 1;
+
+    public static final class CryptoInfo {
+        public int numSubSamples;
+        public int[] numBytesOfClearData;
+        public int[] numBytesOfEncryptedData;
+        public byte[] key;
+        public byte[] iv;
+        public int mode;
+
+        public void set(int newNumSubSamples, int[] newNumBytesOfClearData, int[] newNumBytesOfEncryptedData, byte[] newKey, byte[] newIV, int newMode) {
+            numSubSamples = newNumSubSamples;
+            numBytesOfClearData = newNumBytesOfClearData;
+            numBytesOfEncryptedData = newNumBytesOfEncryptedData;
+            key = newKey;
+            iv = newIV;
+            mode = newMode;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package android.media;
+
+public final class MediaExtractor {
+    public static final int SAMPLE_FLAG_SYNC = 1;
+    public static final int SAMPLE_FLAG_ENCRYPTED = 2;
+
+    public boolean getSampleCryptoInfo(MediaCodec.CryptoInfo info) {
+        return false;
+    }
+}
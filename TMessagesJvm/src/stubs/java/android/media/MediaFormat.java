@@ -0,0 +1,35 @@
+package android.media;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public final class MediaFormat {
+    public static final String KEY_MIME = "mime";
+    public static final String KEY_LANGUAGE = "language";
+    public static final String KEY_SAMPLE_RATE = "sample-rate";
+    public static final String KEY_CHANNEL_COUNT = "channel-count";
+    public static final String KEY_WIDTH = "width";
+    public static final String KEY_HEIGHT = "height";
+    public static final String KEY_MAX_WIDTH = "max-width";
+    public static final String KEY_MAX_HEIGHT = "max-height";
+    public static final String KEY_MAX_INPUT_SIZE = "max-input-size";
+    public static final String KEY_DURATION = "durationUs";
+
+    private final Map<String, Object> map = new HashMap<>();
+
+    public void setInteger(String name, int value) {
+        map.put(name, value);
+    }
+
+    public void setLong(String name, long value) {
+        map.put(name, value);
+    }
+
+    public void setString(String name, String value) {
+        map.put(name, value);
+    }
+
+    public void setByteBuffer(String name, java.nio.ByteBuffer bytes) {
+        map.put(name, bytes);
+    }
+}
@@ -0,0 +1,29 @@
+package android.net;
+
+import java.net.URI;
+
+public final class Uri {
+
+    private final String uriString;
+
+    private Uri(String uriString) {
+        this.uriString = uriString;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(uriString);
+    }
+
+    public String getScheme() {
+        return URI.create(uriString).getScheme();
+    }
+
+    public String getPath() {
+        return URI.create(uriString).getPath();
+    }
+
+    @Override
+    public String toString() {
+        return uriString;
+    }
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+public class Build {
+    public static final String DEVICE = "jvm";
+    public static final String MANUFACTURER = "jvm";
+    public static final String MODEL = "jvm";
+
+    public static class VERSION {
+        public static final int SDK_INT = 23;
+        public static final String CODENAME = "REL";
+        public static final String RELEASE = "6.0";
+    }
+}
@@ -0,0 +1,49 @@
+package android.os;
+
+import java.util.List;
+
+public final class Parcel {
+
+    private Parcel() {
+    }
+
+    public int readInt() {
+        throw new UnsupportedOperationException();
+    }
+
+    public long readLong() {
+        throw new UnsupportedOperationException();
+    }
+
+    public float readFloat() {
+        throw new UnsupportedOperationException();
+    }
+
+    public String readString() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void readList(List outVal, ClassLoader loader) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeInt(int val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeLong(long val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeFloat(float val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeString(String val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeList(List val) {
+        throw new UnsupportedOperationException();
+    }
+}
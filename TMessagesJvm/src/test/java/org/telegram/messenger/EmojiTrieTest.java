@@ -0,0 +1,105 @@
+package org.telegram.messenger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EmojiTrieTest {
+
+    private static final String THUMBS_UP = "\uD83D\uDC4D";
+    private static final String THUMBS_UP_LIGHT = "\uD83D\uDC4D\uD83C\uDFFB";
+    private static final String HEART = "\u2764";
+    private static final String GRINNING = "\uD83D\uDE00";
+
+    private EmojiTrie<String> trie;
+
+    @Before
+    public void setUp() {
+        trie = new EmojiTrie<>();
+        trie.add(THUMBS_UP, "thumbs up");
+        trie.add(THUMBS_UP_LIGHT, "thumbs up light");
+        trie.add(HEART, "heart");
+    }
+
+    @Test
+    public void findsLongestMatch() {
+        EmojiTrie.Matches<String> matches = trie.find("a" + THUMBS_UP_LIGHT + "b" + THUMBS_UP);
+        assertEquals(2, matches.count);
+        assertEquals(1, matches.starts[0]);
+        assertEquals(5, matches.ends[0]);
+        assertEquals("thumbs up light", matches.getValue(0));
+        assertEquals(6, matches.starts[1]);
+        assertEquals(8, matches.ends[1]);
+        assertEquals("thumbs up", matches.getValue(1));
+        assertEquals(2, matches.emojiCount);
+        assertFalse(matches.onlyEmoji);
+    }
+
+    @Test
+    public void includesTrailingVariationSelector() {
+        EmojiTrie.Matches<String> matches = trie.find(HEART + "\uFE0F" + HEART);
+        assertEquals(2, matches.count);
+        assertEquals(0, matches.starts[0]);
+        assertEquals(2, matches.ends[0]);
+        assertEquals(2, matches.starts[1]);
+        assertEquals(3, matches.ends[1]);
+        assertTrue(matches.onlyEmoji);
+    }
+
+    @Test
+    public void skipsVariationSelectorInsideSequence() {
+        trie.add(HEART + "\u200D\uD83D\uDD25", "heart on fire");
+        EmojiTrie.Matches<String> matches = trie.find(HEART + "\uFE0F\u200D\uD83D\uDD25");
+        assertEquals(1, matches.count);
+        assertEquals(5, matches.ends[0]);
+        assertEquals("heart on fire", matches.getValue(0));
+    }
+
+    @Test
+    public void countsUnknownSurrogatePairAsEmoji() {
+        EmojiTrie.Matches<String> matches = trie.find(GRINNING + THUMBS_UP);
+        assertEquals(1, matches.count);
+        assertEquals(2, matches.starts[0]);
+        assertEquals(2, matches.emojiCount);
+        assertTrue(matches.onlyEmoji);
+    }
+
+    @Test
+    public void plainTextHasNoMatches() {
+        EmojiTrie.Matches<String> matches = trie.find("hello");
+        assertEquals(0, matches.count);
+        assertEquals(0, matches.emojiCount);
+        assertFalse(matches.onlyEmoji);
+        assertEquals(-1, matches.indexOf(0));
+    }
+
+    @Test
+    public void indexOfFindsMatchByStart() {
+        EmojiTrie.Matches<String> matches = trie.find(THUMBS_UP + " " + HEART + " " + THUMBS_UP);
+        assertEquals(3, matches.count);
+        assertEquals(1, matches.indexOf(3));
+        assertEquals(2, matches.indexOf(5));
+        assertTrue(matches.indexOf(1) < 0);
+    }
+
+    @Test
+    public void keepsChildrenSortedWhileGrowing() {
+        EmojiTrie<Integer> wide = new EmojiTrie<>();
+        for (int a = 99; a >= 0; a--) {
+            wide.add("\uD83C" + (char) (0xDF00 + a * 3), a);
+        }
+        StringBuilder text = new StringBuilder();
+        for (int a = 0; a < 100; a++) {
+            text.append("\uD83C").append((char) (0xDF00 + a * 3));
+        }
+        EmojiTrie.Matches<Integer> matches = wide.find(text);
+        assertEquals(100, matches.count);
+        for (int a = 0; a < 100; a++) {
+            assertEquals(Integer.valueOf(a), matches.getValue(a));
+            assertEquals(a * 2, matches.starts[a]);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.telegram.messenger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TransliterationTest {
+
+    private final Transliteration transliteration = Transliteration.getInstance();
+
+    @Test
+    public void unchangedStringIsReturnedAsIs() {
+        String src = new String("plain ascii 123 中文");
+        assertSame(src, transliteration.transliterate(src));
+    }
+
+    @Test
+    public void nullStaysNull() {
+        assertNull(transliteration.transliterate(null));
+    }
+
+    @Test
+    public void foldsCase() {
+        assertEquals("hello world", transliteration.transliterate("Hello WORLD"));
+    }
+
+    @Test
+    public void replacesMappedChars() {
+        assertEquals("o", transliteration.transliterate("о")); // Cyrillic o
+        assertEquals("o", transliteration.transliterate("ø"));
+        assertEquals("e", transliteration.transliterate("ě"));
+    }
+
+    @Test
+    public void foldsCaseBeforeLookup() {
+        assertEquals("o", transliteration.transliterate("Ø"));
+        assertEquals("e", transliteration.transliterate("Ě"));
+    }
+
+    @Test
+    public void expandsMultiCharReplacements() {
+        assertEquals("aa", transliteration.transliterate("ꜳ"));
+        assertEquals("ij", transliteration.transliterate("ĳ"));
+        assertEquals("ffi", transliteration.transliterate("ﬃ"));
+        assertEquals("xaaijy", transliteration.transliterate("xꜳĳy"));
+    }
+
+    @Test
+    public void growsOutputForLongExpansions() {
+        StringBuilder src = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int a = 0; a < 300; a++) {
+            src.append('ﬃ');
+            expected.append("ffi");
+        }
+        assertEquals(expected.toString(), transliteration.transliterate(src.toString()));
+    }
+
+    @Test
+    public void dropsCombiningMarks() {
+        assertEquals("cafe", transliteration.transliterate("café"));
+        assertEquals("i", transliteration.transliterate("i̇"));
+        assertEquals("resume", transliteration.transliterate("Résumé"));
+    }
+
+    @Test
+    public void copiesSurrogatePairsUnchanged() {
+        String emoji = "😀";
+        assertSame(emoji, transliteration.transliterate(emoji));
+        assertEquals(emoji + "a" + emoji, transliteration.transliterate(emoji + "A" + emoji));
+        assertEquals("a" + emoji + "o", transliteration.transliterate("A" + emoji + "ø"));
+        // A lone surrogate is not a pair and goes through the table like any other char.
+        assertEquals("\uD83Da", transliteration.transliterate("\uD83DA"));
+    }
+
+    @Test
+    public void cachedResultMatchesFirstResult() {
+        String src = "Caché Ø " + System.nanoTime();
+        String first = transliteration.transliterate(src);
+        assertSame(first, transliteration.transliterate(src));
+    }
+}
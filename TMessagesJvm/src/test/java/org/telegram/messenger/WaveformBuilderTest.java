@@ -0,0 +1,132 @@
+package org.telegram.messenger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WaveformBuilderTest {
+
+    private static final int RESULT_SAMPLES = 100;
+
+    @Test
+    public void emptyBuilderHasNoWaveform() {
+        assertNull(new WaveformBuilder().getWaveform());
+    }
+
+    @Test
+    public void packsOneHundredFiveBitValues() {
+        WaveformBuilder builder = new WaveformBuilder();
+        for (int a = 0; a < 1000; a++) {
+            builder.addSample((short) 10000);
+        }
+        byte[] waveform = builder.getWaveform();
+        assertEquals(63, waveform.length);
+        int[] values = unpack(waveform);
+        for (int a = 0; a < RESULT_SAMPLES; a++) {
+            // The scale peak is 1.8 times the average, so a flat signal sits at 31 / 1.8.
+            assertEquals(17, values[a]);
+        }
+    }
+
+    @Test
+    public void quietSignalIsScaledAgainstMinimumPeak() {
+        WaveformBuilder builder = new WaveformBuilder();
+        for (int a = 0; a < 1000; a++) {
+            builder.addSample((short) (a % 2 == 0 ? 100 : -100));
+        }
+        int[] values = unpack(builder.getWaveform());
+        for (int a = 0; a < RESULT_SAMPLES; a++) {
+            assertEquals(100 * 31 / 2500, values[a]);
+        }
+    }
+
+    @Test
+    public void oneSamplePerValueIsExact() {
+        WaveformBuilder builder = new WaveformBuilder();
+        short[] samples = new short[RESULT_SAMPLES];
+        long sum = 0;
+        for (int a = 0; a < RESULT_SAMPLES; a++) {
+            samples[a] = (short) ((a % 10) * 3000 - 12000);
+            sum += Math.abs(samples[a]);
+            builder.addSample(samples[a]);
+        }
+        int peak = Math.max(2500, (int) (sum * 1.8f / RESULT_SAMPLES));
+        int[] values = unpack(builder.getWaveform());
+        for (int a = 0; a < RESULT_SAMPLES; a++) {
+            assertEquals("value " + a, Math.min(31, Math.min(Math.abs(samples[a]), peak) * 31 / peak), values[a]);
+        }
+    }
+
+    @Test
+    public void spikeKeepsItsPositionWhenBucketsMerge() {
+        int total = 1000003;
+        int[] spikes = {0, 123457, 500000, 876543, total - 1};
+        for (int spike : spikes) {
+            WaveformBuilder builder = new WaveformBuilder();
+            for (int a = 0; a < total; a++) {
+                builder.addSample((short) (a == spike ? 30000 : 50));
+            }
+            int[] values = unpack(builder.getWaveform());
+            int loudest = 0;
+            for (int a = 1; a < RESULT_SAMPLES; a++) {
+                if (values[a] > values[loudest]) {
+                    loudest = a;
+                }
+            }
+            assertEquals(31, values[loudest]);
+            int expected = (int) ((long) spike * RESULT_SAMPLES / total);
+            assertTrue("spike at " + spike + " landed in " + loudest, Math.abs(loudest - expected) <= 1);
+        }
+    }
+
+    @Test
+    public void addSamplesDecodesLittleEndianPcm() {
+        short[] samples = {0, 1, -1, 12345, -12345, Short.MAX_VALUE, Short.MIN_VALUE};
+        byte[] pcm = new byte[samples.length * 2 + 1];
+        for (int a = 0; a < samples.length; a++) {
+            pcm[a * 2] = (byte) samples[a];
+            pcm[a * 2 + 1] = (byte) (samples[a] >> 8);
+        }
+        pcm[pcm.length - 1] = 0x7F; // dangling byte of an incomplete sample, ignored
+
+        WaveformBuilder fromPcm = new WaveformBuilder();
+        fromPcm.addSamples(pcm, pcm.length);
+        WaveformBuilder fromSamples = new WaveformBuilder();
+        for (short sample : samples) {
+            fromSamples.addSample(sample);
+        }
+        assertArrayEquals(fromSamples.getWaveform(), fromPcm.getWaveform());
+    }
+
+    @Test
+    public void resetStartsAnEmptyWaveform() {
+        WaveformBuilder builder = new WaveformBuilder();
+        for (int a = 0; a < 5000; a++) {
+            builder.addSample((short) 20000);
+        }
+        builder.reset();
+        assertNull(builder.getWaveform());
+        for (int a = 0; a < 1000; a++) {
+            builder.addSample((short) 10000);
+        }
+        WaveformBuilder fresh = new WaveformBuilder();
+        for (int a = 0; a < 1000; a++) {
+            fresh.addSample((short) 10000);
+        }
+        assertArrayEquals(fresh.getWaveform(), builder.getWaveform());
+    }
+
+    private static int[] unpack(byte[] waveform) {
+        int[] values = new int[RESULT_SAMPLES];
+        for (int a = 0; a < RESULT_SAMPLES; a++) {
+            int bitOffset = a * 5;
+            int index = bitOffset / 8;
+            int bits = (waveform[index] & 0xff) | (index + 1 < waveform.length ? (waveform[index + 1] & 0xff) << 8 : 0);
+            values[a] = (bits >> (bitOffset % 8)) & 31;
+        }
+        return values;
+    }
+}
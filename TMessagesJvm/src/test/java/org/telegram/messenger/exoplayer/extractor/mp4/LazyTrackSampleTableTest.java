@@ -0,0 +1,456 @@
+package org.telegram.messenger.exoplayer.extractor.mp4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import org.junit.Test;
+import org.telegram.messenger.exoplayer.C;
+import org.telegram.messenger.exoplayer.util.ParsableByteArray;
+import org.telegram.messenger.exoplayer.util.Util;
+
+/**
+ * Unit tests for {@link LazyTrackSampleTable}. Every table is checked against a straightforward
+ * expansion of the same boxes into per-sample arrays.
+ */
+public class LazyTrackSampleTableTest {
+
+  private static final long TIMESCALE = 90000;
+
+  @Test
+  public void testThirtyTwoBitSizes() {
+    assertMatchesReference(new Sample(1).sizeFieldBits(32));
+  }
+
+  @Test
+  public void testSixteenBitSizes() {
+    assertMatchesReference(new Sample(2).sizeFieldBits(16));
+  }
+
+  @Test
+  public void testEightBitSizes() {
+    assertMatchesReference(new Sample(3).sizeFieldBits(8));
+  }
+
+  @Test
+  public void testFourBitSizes() {
+    assertMatchesReference(new Sample(4).sizeFieldBits(4));
+  }
+
+  @Test
+  public void testFixedSampleSize() {
+    assertMatchesReference(new Sample(5).fixedSampleSize(417));
+  }
+
+  @Test
+  public void testLongChunkOffsets() {
+    assertMatchesReference(new Sample(6).longChunkOffsets());
+  }
+
+  @Test
+  public void testCompositionOffsetsWithEmptyEntries() {
+    assertMatchesReference(new Sample(7).compositionOffsets());
+  }
+
+  @Test
+  public void testSyncSamples() {
+    assertMatchesReference(new Sample(8).syncSamples());
+  }
+
+  @Test
+  public void testTimestampOffset() {
+    assertMatchesReference(new Sample(9).timestampOffset(3003));
+  }
+
+  @Test
+  public void testSyncSampleSearch() {
+    Sample sample = new Sample(10).syncSamples();
+    LazyTrackSampleTable table = sample.build();
+    long[] timestampsUs = sample.referenceTimestampsUs();
+    long lastTimestampUs = timestampsUs[timestampsUs.length - 1];
+    for (long timeUs = -1000; timeUs <= lastTimestampUs + 1000; timeUs += 777) {
+      assertEquals("earlier " + timeUs, referenceEarlierOrEqualSync(sample, timeUs),
+          table.getIndexOfEarlierOrEqualSynchronizationSample(timeUs));
+      assertEquals("later " + timeUs, referenceLaterOrEqualSync(sample, timeUs),
+          table.getIndexOfLaterOrEqualSynchronizationSample(timeUs));
+    }
+  }
+
+  @Test
+  public void testAllSamplesAreSyncWithoutStss() {
+    Sample sample = new Sample(11);
+    LazyTrackSampleTable table = sample.build();
+    long timeUs = sample.referenceTimestampsUs()[57];
+    assertEquals(57, table.getIndexOfEarlierOrEqualSynchronizationSample(timeUs));
+    assertEquals(57, table.getIndexOfLaterOrEqualSynchronizationSample(timeUs));
+    assertEquals(C.SAMPLE_FLAG_SYNC, table.getFlags(58));
+  }
+
+  @Test
+  public void testOutOfRangeIndexThrows() {
+    LazyTrackSampleTable table = new Sample(12).build();
+    try {
+      table.getSize(table.sampleCount);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected.
+    }
+    try {
+      table.getOffset(-1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected.
+    }
+  }
+
+  private static void assertMatchesReference(Sample sample) {
+    LazyTrackSampleTable table = sample.build();
+    int[] sizes = sample.referenceSizes();
+    long[] offsets = sample.referenceOffsets();
+    long[] timestampsUs = sample.referenceTimestampsUs();
+    int maximumSize = 0;
+    for (int size : sizes) {
+      maximumSize = Math.max(maximumSize, size);
+    }
+    assertEquals(sample.sampleCount, table.sampleCount);
+    assertEquals(maximumSize, table.maximumSize);
+
+    // Sequential access, as during playback, uses the cached chunk position.
+    for (int i = 0; i < sample.sampleCount; i++) {
+      assertEquals("size " + i, sizes[i], table.getSize(i));
+      assertEquals("offset " + i, offsets[i], table.getOffset(i));
+      assertEquals("timestamp " + i, timestampsUs[i], table.getTimestampUs(i));
+      assertEquals("flags " + i, sample.referenceIsSync(i) ? C.SAMPLE_FLAG_SYNC : 0,
+          table.getFlags(i));
+    }
+    // Random access, as after a seek.
+    Random random = new Random(sample.seed);
+    for (int i = 0; i < 500; i++) {
+      int index = random.nextInt(sample.sampleCount);
+      assertEquals("offset " + index, offsets[index], table.getOffset(index));
+    }
+  }
+
+  private static int referenceEarlierOrEqualSync(Sample sample, long timeUs) {
+    long[] timestampsUs = sample.referenceTimestampsUs();
+    int floor = -1;
+    while (floor + 1 < timestampsUs.length && timestampsUs[floor + 1] <= timeUs) {
+      floor++;
+    }
+    for (int i = floor; i >= 0; i--) {
+      if (sample.referenceIsSync(i)) {
+        return i;
+      }
+    }
+    return TrackSampleTable.NO_SAMPLE;
+  }
+
+  private static int referenceLaterOrEqualSync(Sample sample, long timeUs) {
+    long[] timestampsUs = sample.referenceTimestampsUs();
+    for (int i = 0; i < timestampsUs.length; i++) {
+      if (timestampsUs[i] >= timeUs && sample.referenceIsSync(i)) {
+        return i;
+      }
+    }
+    return TrackSampleTable.NO_SAMPLE;
+  }
+
+  /**
+   * A generated track: chunk layout, sample sizes and durations from a seeded random source, and
+   * the boxes that describe it.
+   */
+  private static final class Sample {
+
+    private final long seed;
+    private final Random random;
+    private int sampleCount;
+    private int sizeFieldBits = 32;
+    private int fixedSampleSize;
+    private boolean longChunkOffsets;
+    private boolean compositionOffsets;
+    private boolean syncSamples;
+    private long timestampOffset;
+
+    // Generated on build().
+    private int[] sizes;
+    private int[] chunkSampleCounts;
+    private long[] chunkOffsets;
+    private int[] durations;
+    private int[] compositionOffsetValues;
+    private boolean[] isSync;
+
+    public Sample(long seed) {
+      this.seed = seed;
+      this.random = new Random(seed);
+    }
+
+    public Sample sizeFieldBits(int sizeFieldBits) {
+      this.sizeFieldBits = sizeFieldBits;
+      return this;
+    }
+
+    public Sample fixedSampleSize(int fixedSampleSize) {
+      this.fixedSampleSize = fixedSampleSize;
+      return this;
+    }
+
+    public Sample longChunkOffsets() {
+      this.longChunkOffsets = true;
+      return this;
+    }
+
+    public Sample compositionOffsets() {
+      this.compositionOffsets = true;
+      return this;
+    }
+
+    public Sample syncSamples() {
+      this.syncSamples = true;
+      return this;
+    }
+
+    public Sample timestampOffset(long timestampOffset) {
+      this.timestampOffset = timestampOffset;
+      return this;
+    }
+
+    public LazyTrackSampleTable build() {
+      generate();
+      return new LazyTrackSampleTable(sampleCount, fixedSampleSize, sizeFieldBits, sizesBox(),
+          stscBox(), chunkOffsetsBox(), longChunkOffsets, sttsBox(),
+          compositionOffsets ? cttsBox() : null, syncSamples ? stssBox() : null, TIMESCALE,
+          timestampOffset);
+    }
+
+    private void generate() {
+      // Runs of chunks with the same sample count, as muxers write them.
+      int chunkCount = 40 + random.nextInt(40);
+      chunkSampleCounts = new int[chunkCount];
+      int samplesPerChunk = 1 + random.nextInt(8);
+      for (int c = 0; c < chunkCount; c++) {
+        if (random.nextInt(5) == 0) {
+          samplesPerChunk = 1 + random.nextInt(8);
+        }
+        chunkSampleCounts[c] = samplesPerChunk;
+        sampleCount += samplesPerChunk;
+      }
+      int maxSize = sizeFieldBits == 4 ? 15 : sizeFieldBits == 8 ? 255 : 5000;
+      sizes = new int[sampleCount];
+      for (int i = 0; i < sampleCount; i++) {
+        sizes[i] = fixedSampleSize != 0 ? fixedSampleSize : random.nextInt(maxSize + 1);
+      }
+      chunkOffsets = new long[chunkCount];
+      long offset = longChunkOffsets ? 0x1_0000_0000L - 20000 : 1000;
+      int sample = 0;
+      for (int c = 0; c < chunkCount; c++) {
+        chunkOffsets[c] = offset;
+        for (int i = 0; i < chunkSampleCounts[c]; i++) {
+          offset += sizes[sample++];
+        }
+        offset += random.nextInt(64); // Interleaved data of other tracks.
+      }
+      durations = new int[sampleCount];
+      int duration = 3003;
+      for (int i = 0; i < sampleCount; i++) {
+        if (random.nextInt(10) == 0) {
+          duration = 1000 + random.nextInt(4000);
+        }
+        durations[i] = duration;
+      }
+      compositionOffsetValues = new int[sampleCount];
+      if (compositionOffsets) {
+        for (int i = 0; i < sampleCount; i++) {
+          compositionOffsetValues[i] = (i % 3) * 3003 - 1001;
+        }
+      }
+      isSync = new boolean[sampleCount];
+      for (int i = 0; i < sampleCount; i++) {
+        isSync[i] = !syncSamples || i % 12 == 5;
+      }
+    }
+
+    public int[] referenceSizes() {
+      return sizes;
+    }
+
+    public long[] referenceOffsets() {
+      long[] offsets = new long[sampleCount];
+      int sample = 0;
+      for (int c = 0; c < chunkSampleCounts.length; c++) {
+        long offset = chunkOffsets[c];
+        for (int i = 0; i < chunkSampleCounts[c]; i++) {
+          offsets[sample] = offset;
+          offset += sizes[sample++];
+        }
+      }
+      return offsets;
+    }
+
+    public long[] referenceTimestampsUs() {
+      long[] timestampsUs = new long[sampleCount];
+      long timestamp = 0;
+      for (int i = 0; i < sampleCount; i++) {
+        timestampsUs[i] = Util.scaleLargeTimestamp(
+            timestamp + compositionOffsetValues[i] - timestampOffset, C.MICROS_PER_SECOND,
+            TIMESCALE);
+        timestamp += durations[i];
+      }
+      return timestampsUs;
+    }
+
+    public boolean referenceIsSync(int index) {
+      return isSync[index];
+    }
+
+    private ParsableByteArray sizesBox() {
+      BoxWriter box = new BoxWriter();
+      if (sizeFieldBits == 32) {
+        box.writeInt(fixedSampleSize);
+        box.writeInt(sampleCount);
+        if (fixedSampleSize == 0) {
+          for (int size : sizes) {
+            box.writeInt(size);
+          }
+        }
+      } else {
+        box.writeInt(sizeFieldBits); // reserved (24), field_size (8)
+        box.writeInt(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+          if (sizeFieldBits == 16) {
+            box.writeShort(sizes[i]);
+          } else if (sizeFieldBits == 8) {
+            box.writeByte(sizes[i]);
+          } else if (i % 2 == 0) {
+            box.writeByte(sizes[i] << 4 | (i + 1 < sampleCount ? sizes[i + 1] : 0));
+          }
+        }
+      }
+      ParsableByteArray data = box.build();
+      data.setPosition(Atom.FULL_HEADER_SIZE + 8);
+      return data;
+    }
+
+    private ParsableByteArray stscBox() {
+      BoxWriter box = new BoxWriter();
+      int entryCount = 0;
+      BoxWriter entries = new BoxWriter();
+      for (int c = 0; c < chunkSampleCounts.length; c++) {
+        if (c == 0 || chunkSampleCounts[c] != chunkSampleCounts[c - 1]) {
+          entries.writeInt(c + 1);
+          entries.writeInt(chunkSampleCounts[c]);
+          entries.writeInt(1);
+          entryCount++;
+        }
+      }
+      box.writeInt(entryCount);
+      box.writeBytes(entries.payload());
+      return box.build();
+    }
+
+    private ParsableByteArray chunkOffsetsBox() {
+      BoxWriter box = new BoxWriter();
+      box.writeInt(chunkOffsets.length);
+      for (long offset : chunkOffsets) {
+        if (longChunkOffsets) {
+          box.writeInt((int) (offset >>> 32));
+        }
+        box.writeInt((int) offset);
+      }
+      return box.build();
+    }
+
+    private ParsableByteArray sttsBox() {
+      BoxWriter entries = new BoxWriter();
+      int entryCount = 0;
+      int runStart = 0;
+      for (int i = 1; i <= sampleCount; i++) {
+        if (i == sampleCount || durations[i] != durations[runStart]) {
+          entries.writeInt(i - runStart);
+          entries.writeInt(durations[runStart]);
+          entryCount++;
+          runStart = i;
+        }
+      }
+      BoxWriter box = new BoxWriter();
+      box.writeInt(entryCount);
+      box.writeBytes(entries.payload());
+      return box.build();
+    }
+
+    private ParsableByteArray cttsBox() {
+      BoxWriter box = new BoxWriter();
+      // An entry with a 0-valued sample count between each real one, which must be skipped.
+      box.writeInt(sampleCount * 2);
+      for (int i = 0; i < sampleCount; i++) {
+        box.writeInt(1);
+        box.writeInt(compositionOffsetValues[i]);
+        box.writeInt(0);
+        box.writeInt(999999);
+      }
+      return box.build();
+    }
+
+    private ParsableByteArray stssBox() {
+      BoxWriter entries = new BoxWriter();
+      int entryCount = 0;
+      for (int i = 0; i < sampleCount; i++) {
+        if (isSync[i]) {
+          entries.writeInt(i + 1);
+          entryCount++;
+        }
+      }
+      BoxWriter box = new BoxWriter();
+      box.writeInt(entryCount);
+      box.writeBytes(entries.payload());
+      return box.build();
+    }
+
+  }
+
+  /**
+   * Writes a full box: size, type and version/flags, followed by the payload.
+   */
+  private static final class BoxWriter {
+
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+    public void writeInt(int value) {
+      payload.write(value >>> 24);
+      payload.write(value >>> 16);
+      payload.write(value >>> 8);
+      payload.write(value);
+    }
+
+    public void writeShort(int value) {
+      payload.write(value >>> 8);
+      payload.write(value);
+    }
+
+    public void writeByte(int value) {
+      payload.write(value);
+    }
+
+    public void writeBytes(byte[] bytes) {
+      payload.write(bytes, 0, bytes.length);
+    }
+
+    public byte[] payload() {
+      return payload.toByteArray();
+    }
+
+    public ParsableByteArray build() {
+      byte[] body = payload.toByteArray();
+      byte[] data = new byte[Atom.FULL_HEADER_SIZE + body.length];
+      int size = data.length;
+      data[0] = (byte) (size >>> 24);
+      data[1] = (byte) (size >>> 16);
+      data[2] = (byte) (size >>> 8);
+      data[3] = (byte) size;
+      System.arraycopy(body, 0, data, Atom.FULL_HEADER_SIZE, body.length);
+      return new ParsableByteArray(data);
+    }
+
+  }
+
+}
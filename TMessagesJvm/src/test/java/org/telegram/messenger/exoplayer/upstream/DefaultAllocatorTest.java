@@ -0,0 +1,198 @@
+package org.telegram.messenger.exoplayer.upstream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DefaultAllocator}.
+ */
+public class DefaultAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  @Test
+  public void testAllocateAndReleaseTrackTotalBytes() {
+    DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE);
+    Allocation first = allocator.allocate();
+    Allocation second = allocator.allocate();
+    assertEquals(2 * ALLOCATION_SIZE, allocator.getTotalBytesAllocated());
+    assertEquals(ALLOCATION_SIZE, first.data.length);
+
+    allocator.release(first);
+    assertEquals(ALLOCATION_SIZE, allocator.getTotalBytesAllocated());
+    allocator.release(new Allocation[] {second});
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  @Test
+  public void testReleasedAllocationIsReused() {
+    DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+    allocator.release(allocation);
+    assertSame(allocation, allocator.allocate());
+  }
+
+  @Test
+  public void testInitialAllocationsShareOneBlock() {
+    DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE, 3);
+    assertEquals(0, allocator.getTotalBytesAllocated());
+    Allocation first = allocator.allocate();
+    Allocation second = allocator.allocate();
+    Allocation third = allocator.allocate();
+    assertSame(first.data, second.data);
+    assertSame(first.data, third.data);
+    assertEquals(3 * ALLOCATION_SIZE, first.data.length);
+    assertEquals(0, first.translateOffset(0));
+    assertEquals(ALLOCATION_SIZE, second.translateOffset(0));
+    assertEquals(2 * ALLOCATION_SIZE, third.translateOffset(0));
+    assertEquals(ALLOCATION_SIZE, allocator.allocate().data.length);
+  }
+
+  @Test
+  public void testTrimDiscardsOnlyAllocationsOutsideTheInitialBlock() {
+    DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE, 2);
+    Allocation[] allocations = new Allocation[4];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    byte[] initialBlock = allocations[0].data;
+    allocator.release(allocations);
+    allocator.trim(0);
+
+    Set<byte[]> discarded = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+    discarded.add(allocations[2].data);
+    discarded.add(allocations[3].data);
+    int fromInitialBlock = 0;
+    for (int i = 0; i < allocations.length; i++) {
+      Allocation allocation = allocator.allocate();
+      assertFalse(discarded.contains(allocation.data));
+      if (allocation.data == initialBlock) {
+        fromInitialBlock++;
+      }
+    }
+    assertEquals(2, fromInitialBlock);
+  }
+
+  @Test
+  public void testTrimKeepsAllocationsWithinTarget() {
+    DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE);
+    Allocation first = allocator.allocate();
+    Allocation second = allocator.allocate();
+    allocator.release(first);
+    allocator.release(second);
+    allocator.trim(2 * ALLOCATION_SIZE);
+    assertSame(first, allocator.allocate());
+    assertSame(second, allocator.allocate());
+  }
+
+  @Test
+  public void testReleaseRejectsForeignAllocation() {
+    DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE);
+    try {
+      allocator.release(new Allocation(new byte[ALLOCATION_SIZE + 1], 0));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testBlockedThreadWakesWhenAllocationIsReleased() throws Exception {
+    final DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE);
+    Allocation first = allocator.allocate();
+    allocator.allocate();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch unblocked = new CountDownLatch(1);
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          allocator.blockWhileTotalBytesAllocatedExceeds(ALLOCATION_SIZE);
+          unblocked.countDown();
+        } catch (InterruptedException e) {
+          // Fall through, the test fails on the latch.
+        }
+      }
+    };
+    waiter.start();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertFalse(unblocked.await(100, TimeUnit.MILLISECONDS));
+
+    allocator.release(first);
+    assertTrue(unblocked.await(5, TimeUnit.SECONDS));
+    waiter.join(5000);
+  }
+
+  @Test
+  public void testBlockReturnsImmediatelyBelowLimit() throws InterruptedException {
+    DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE);
+    allocator.allocate();
+    allocator.blockWhileTotalBytesAllocatedExceeds(ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void testConcurrentAllocateAndReleaseNeverShareAnAllocation() throws Exception {
+    final DefaultAllocator allocator = new DefaultAllocator(ALLOCATION_SIZE, 8);
+    final Set<Allocation> inUse = Collections.synchronizedSet(
+        Collections.newSetFromMap(new IdentityHashMap<Allocation, Boolean>()));
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            Allocation[] batch = new Allocation[4];
+            for (int i = 0; i < 20000; i++) {
+              for (int j = 0; j < batch.length; j++) {
+                batch[j] = allocator.allocate();
+                if (!inUse.add(batch[j])) {
+                  throw new AssertionError("allocation handed out twice");
+                }
+              }
+              for (Allocation allocation : batch) {
+                inUse.remove(allocation);
+              }
+              if (i % 2 == 0) {
+                allocator.release(batch);
+              } else {
+                for (Allocation allocation : batch) {
+                  allocator.release(allocation);
+                }
+              }
+              if (i % 1000 == 0) {
+                allocator.trim(0);
+              }
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join(30000);
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+}
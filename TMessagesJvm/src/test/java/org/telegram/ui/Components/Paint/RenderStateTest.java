@@ -0,0 +1,236 @@
+package org.telegram.ui.Components.Paint;
+
+import android.graphics.RectF;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RenderStateTest {
+
+    private static final float DELTA = 1e-4f;
+
+    // weight 10 and spacing 0.15 give a step of 1.5, which adds up exactly in binary
+    private static RenderState newState(float angle) {
+        RenderState state = new RenderState();
+        state.baseWeight = 10.0f;
+        state.spacing = 0.15f;
+        state.alpha = 0.5f;
+        state.angle = angle;
+        state.scale = 1.0f;
+        state.prepare();
+        return state;
+    }
+
+    private static float[] readPoints(RenderState state) {
+        float[] values = new float[state.getCount() * 5];
+        state.setPosition(0);
+        for (int a = 0; a < values.length; a++) {
+            values[a] = state.read();
+        }
+        return values;
+    }
+
+    private static float[] xs(RenderState state) {
+        float[] values = readPoints(state);
+        float[] xs = new float[state.getCount()];
+        for (int a = 0; a < xs.length; a++) {
+            xs[a] = values[a * 5];
+        }
+        return xs;
+    }
+
+    private static Point edge(double x, double y) {
+        Point point = new Point(x, y, 1.0);
+        point.edge = true;
+        return point;
+    }
+
+    @Test
+    public void stampWritesOnePoint() {
+        RenderState state = newState(0.0f);
+        state.paintStamp(new Point(10, 20, 1));
+        assertEquals(1, state.getCount());
+        assertArrayEquals(new float[]{10, 20, 10, 0, 0.5f}, readPoints(state), DELTA);
+    }
+
+    @Test
+    public void segmentStampsEveryStep() {
+        RenderState state = newState(0.0f);
+        state.paintSegment(new Point(0, 0, 1), new Point(16, 0, 1));
+        assertArrayEquals(new float[]{0, 1.5f, 3, 4.5f, 6, 7.5f, 9, 10.5f, 12, 13.5f, 15}, xs(state), DELTA);
+        assertEquals(0.5, state.remainder, DELTA);
+        float[] values = readPoints(state);
+        for (int a = 0; a < state.getCount(); a++) {
+            assertEquals(0, values[a * 5 + 1], DELTA);
+            assertEquals(10, values[a * 5 + 2], DELTA);
+            assertEquals(0, values[a * 5 + 3], DELTA);
+            assertEquals(0.5f, values[a * 5 + 4], DELTA);
+        }
+    }
+
+    @Test
+    public void wholeNumberOfStepsStampsBothEnds() {
+        RenderState state = newState(0.0f);
+        state.paintSegment(new Point(0, 0, 1), new Point(15, 0, 1));
+        assertEquals(11, state.getCount());
+        assertEquals(15, xs(state)[10], DELTA);
+    }
+
+    @Test
+    public void remainderCarriesAcrossSegments() {
+        RenderState whole = newState(0.0f);
+        whole.paintSegment(new Point(0, 0, 1), new Point(40, 0, 1));
+
+        RenderState split = newState(0.0f);
+        split.paintSegment(new Point(0, 0, 1), new Point(16, 0, 1));
+        split.paintSegment(new Point(16, 0, 1), new Point(17, 0, 1));
+        split.paintSegment(new Point(17, 0, 1), new Point(40, 0, 1));
+
+        assertArrayEquals(xs(whole), xs(split), DELTA);
+        assertEquals(whole.remainder, split.remainder, DELTA);
+    }
+
+    @Test
+    public void zeroLengthSegmentsDoNotRewindCount() {
+        RenderState state = newState(0.0f);
+        state.paintSegment(new Point(5, 5, 1), new Point(5, 5, 1));
+        assertEquals(1, state.getCount());
+        state.paintSegment(new Point(5, 5, 1), new Point(5, 5, 1));
+        assertEquals(1, state.getCount());
+        assertArrayEquals(new float[]{5, 5, 10, 0, 0.5f}, readPoints(state), DELTA);
+    }
+
+    @Test
+    public void angleFollowsSegmentUnlessBrushHasOne() {
+        RenderState state = newState(0.0f);
+        state.paintSegment(new Point(0, 0, 1), new Point(10, 10, 1));
+        float[] values = readPoints(state);
+        for (int a = 0; a < state.getCount(); a++) {
+            assertEquals(Math.PI / 4, values[a * 5 + 3], DELTA);
+            assertEquals(values[a * 5], values[a * 5 + 1], DELTA);
+        }
+
+        state = newState(0.3f);
+        state.paintSegment(new Point(0, 0, 1), new Point(10, 10, 1));
+        values = readPoints(state);
+        for (int a = 0; a < state.getCount(); a++) {
+            assertEquals(0.3f, values[a * 5 + 3], DELTA);
+        }
+    }
+
+    @Test
+    public void edgesAreBoldened() {
+        RenderState state = newState(0.0f);
+        state.paintSegment(edge(0, 0), edge(16, 0));
+        assertEquals(12, state.getCount());
+        float[] values = readPoints(state);
+        assertEquals(0.575f, values[4], DELTA);
+        for (int a = 1; a < 11; a++) {
+            assertEquals(0.5f, values[a * 5 + 4], DELTA);
+        }
+        assertEquals(16, values[11 * 5], DELTA);
+        assertEquals(0.575f, values[11 * 5 + 4], DELTA);
+    }
+
+    @Test
+    public void growingKeepsEarlierPoints() {
+        RenderState state = newState(0.0f);
+        for (int a = 0; a < 40; a++) {
+            state.paintSegment(new Point(a * 30, 0, 1), new Point(a * 30 + 30, 0, 1));
+        }
+        float[] xs = xs(state);
+        assertEquals(801, xs.length);
+        for (int a = 0; a < xs.length; a++) {
+            assertEquals(a * 1.5f, xs[a], DELTA);
+        }
+    }
+
+    @Test
+    public void emptyStateFillsNothing() {
+        RenderState state = newState(0.0f);
+        RectF bounds = new RectF(1, 2, 3, 4);
+        assertEquals(0, state.fillVertexData(bounds));
+        assertEquals(1, bounds.left, 0);
+        assertEquals(4, bounds.bottom, 0);
+    }
+
+    @Test
+    public void stampCornersAreRotatedAroundCenter() {
+        float[] angles = {0.0f, 0.3f, (float) (Math.PI / 2), -2.0f};
+        for (float angle : angles) {
+            RenderState state = newState(angle);
+            state.baseWeight = 2.0f;
+            state.paintStamp(new Point(10, 20, 1));
+            RectF bounds = new RectF();
+            assertEquals(4, state.fillVertexData(bounds));
+
+            FloatBuffer coords = state.getCoordData();
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            float[][] offsets = {{-2, -2}, {2, -2}, {-2, 2}, {2, 2}};
+            float left = Float.MAX_VALUE;
+            float top = Float.MAX_VALUE;
+            float right = -Float.MAX_VALUE;
+            float bottom = -Float.MAX_VALUE;
+            for (int a = 0; a < 4; a++) {
+                float x = (float) (10 + offsets[a][0] * cos - offsets[a][1] * sin);
+                float y = (float) (20 + offsets[a][0] * sin + offsets[a][1] * cos);
+                assertEquals(x, coords.get(a * 5), DELTA);
+                assertEquals(y, coords.get(a * 5 + 1), DELTA);
+                assertEquals(offsets[a][0] > 0 ? 1 : 0, coords.get(a * 5 + 2), 0);
+                assertEquals(offsets[a][1] > 0 ? 1 : 0, coords.get(a * 5 + 3), 0);
+                assertEquals(0.5f, coords.get(a * 5 + 4), 0);
+                left = Math.min(left, x);
+                top = Math.min(top, y);
+                right = Math.max(right, x);
+                bottom = Math.max(bottom, y);
+            }
+            assertEquals(Math.floor(left), bounds.left, 0);
+            assertEquals(Math.floor(top), bounds.top, 0);
+            assertEquals(Math.ceil(right), bounds.right, 0);
+            assertEquals(Math.ceil(bottom), bounds.bottom, 0);
+        }
+    }
+
+    @Test
+    public void stampsAreJoinedWithDegenerateTriangles() {
+        RenderState state = newState(0.0f);
+        state.baseWeight = 1.0f;
+        state.spacing = 3.0f;
+        state.paintSegment(new Point(10.5, 20.5, 1), new Point(14, 20.5, 1));
+        assertEquals(2, state.getCount());
+
+        RectF bounds = new RectF();
+        assertEquals(10, state.fillVertexData(bounds));
+        FloatBuffer coords = state.getCoordData();
+        // last corner of the first stamp and first corner of the second are repeated
+        assertEquals(coords.get(3 * 5), coords.get(4 * 5), 0);
+        assertEquals(coords.get(3 * 5 + 1), coords.get(4 * 5 + 1), 0);
+        assertEquals(coords.get(5 * 5), coords.get(6 * 5), 0);
+        assertEquals(coords.get(5 * 5 + 1), coords.get(6 * 5 + 1), 0);
+        assertEquals(12.5f, coords.get(5 * 5), DELTA);
+
+        assertEquals(9, bounds.left, 0);
+        assertEquals(19, bounds.top, 0);
+        assertEquals(15, bounds.right, 0);
+        assertEquals(22, bounds.bottom, 0);
+    }
+
+    @Test
+    public void vertexBufferIsReused() {
+        RenderState state = newState(0.0f);
+        state.paintSegment(new Point(0, 0, 1), new Point(16, 0, 1));
+        state.fillVertexData(new RectF());
+        FloatBuffer coords = state.getCoordData();
+
+        state.prepare();
+        state.paintSegment(new Point(0, 0, 1), new Point(8, 0, 1));
+        state.fillVertexData(new RectF());
+        assertSame(coords, state.getCoordData());
+    }
+}
@@ -175,6 +175,15 @@ jint Java_org_telegram_ui_Components_AnimatedFileDrawable_createDecoder(JNIEnv *
         } else {
             dataArr[2] = 0;
         }
+        if (env->GetArrayLength(data) > 4) {
+            int framesCount = 0;
+            if (info->video_stream->nb_frames > 0) {
+                framesCount = (int) info->video_stream->nb_frames;
+            } else if (info->fmt_ctx->duration > 0 && info->video_stream->avg_frame_rate.num > 0 && info->video_stream->avg_frame_rate.den > 0) {
+                framesCount = (int) (info->fmt_ctx->duration / (double) AV_TIME_BASE * av_q2d(info->video_stream->avg_frame_rate) + 0.5);
+            }
+            dataArr[4] = framesCount;
+        }
         env->ReleaseIntArrayElements(data, dataArr, 0);
     }
     
@@ -26,6 +26,8 @@ import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.PowerManager;
 import android.util.Base64;
 
@@ -214,81 +216,129 @@ public class ApplicationLoader extends Application {
         }
 
         applicationInited = true;
-        convertConfig();
 
-        try {
-            LocaleController.getInstance();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        try {
-            final IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
-            filter.addAction(Intent.ACTION_SCREEN_OFF);
-            final BroadcastReceiver mReceiver = new ScreenReceiver();
-            applicationContext.registerReceiver(mReceiver, filter);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        try {
-            PowerManager pm = (PowerManager)ApplicationLoader.applicationContext.getSystemService(Context.POWER_SERVICE);
-            isScreenOn = pm.isScreenOn();
-            FileLog.e("tmessages", "screen state = " + isScreenOn);
-        } catch (Exception e) {
-            FileLog.e("tmessages", e);
-        }
-
-        UserConfig.loadConfig();
-        String deviceModel;
-        String langCode;
-        String appVersion;
-        String systemVersion;
-        String configPath = getFilesDirFixed().toString();
-
-        try {
-            langCode = LocaleController.getLocaleStringIso639();
-            deviceModel = Build.MANUFACTURER + Build.MODEL;
-            PackageInfo pInfo = ApplicationLoader.applicationContext.getPackageManager().getPackageInfo(ApplicationLoader.applicationContext.getPackageName(), 0);
-            appVersion = pInfo.versionName + " (" + pInfo.versionCode + ")";
-            systemVersion = "SDK " + Build.VERSION.SDK_INT;
-        } catch (Exception e) {
-            langCode = "en";
-            deviceModel = "Android unknown";
-            appVersion = "App version unknown";
-            systemVersion = "SDK " + Build.VERSION.SDK_INT;
-        }
-        if (langCode.trim().length() == 0) {
-            langCode = "en";
-        }
-        if (deviceModel.trim().length() == 0) {
-            deviceModel = "Android unknown";
-        }
-        if (appVersion.trim().length() == 0) {
-            appVersion = "App version unknown";
-        }
-        if (systemVersion.trim().length() == 0) {
-            systemVersion = "SDK Unknown";
-        }
+        final String[] appVersion = new String[1];
+        StartupGraph startupGraph = new StartupGraph("startup");
+        startupGraph.addStage("config", true, new Runnable() {
+            @Override
+            public void run() {
+                convertConfig();
+                UserConfig.loadConfig();
+            }
+        }).addStage("locale", false, new Runnable() {
+            @Override
+            public void run() {
+                LocaleController.getInstance();
+            }
+        }).addStage("package info", true, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    PackageInfo pInfo = ApplicationLoader.applicationContext.getPackageManager().getPackageInfo(ApplicationLoader.applicationContext.getPackageName(), 0);
+                    appVersion[0] = pInfo.versionName + " (" + pInfo.versionCode + ")";
+                } catch (Exception e) {
+                    FileLog.e("tmessages", e);
+                }
+            }
+        }).addStage("screen state", false, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+                    filter.addAction(Intent.ACTION_SCREEN_OFF);
+                    final BroadcastReceiver mReceiver = new ScreenReceiver();
+                    applicationContext.registerReceiver(mReceiver, filter);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
 
-        SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Activity.MODE_PRIVATE);
-        boolean enablePushConnection = preferences.getBoolean("pushConnection", true);
+                try {
+                    PowerManager pm = (PowerManager)ApplicationLoader.applicationContext.getSystemService(Context.POWER_SERVICE);
+                    isScreenOn = pm.isScreenOn();
+                    FileLog.e("tmessages", "screen state = " + isScreenOn);
+                } catch (Exception e) {
+                    FileLog.e("tmessages", e);
+                }
+            }
+        }).addStage("connections", false, new Runnable() {
+            @Override
+            public void run() {
+                String deviceModel;
+                String langCode;
+                String systemVersion;
+                String configPath = getFilesDirFixed().toString();
+
+                try {
+                    langCode = LocaleController.getLocaleStringIso639();
+                    deviceModel = Build.MANUFACTURER + Build.MODEL;
+                    systemVersion = "SDK " + Build.VERSION.SDK_INT;
+                } catch (Exception e) {
+                    langCode = "en";
+                    deviceModel = "Android unknown";
+                    systemVersion = "SDK " + Build.VERSION.SDK_INT;
+                }
+                if (appVersion[0] == null) {
+                    appVersion[0] = "App version unknown";
+                }
+                if (langCode.trim().length() == 0) {
+                    langCode = "en";
+                }
+                if (deviceModel.trim().length() == 0) {
+                    deviceModel = "Android unknown";
+                }
+                if (appVersion[0].trim().length() == 0) {
+                    appVersion[0] = "App version unknown";
+                }
+                if (systemVersion.trim().length() == 0) {
+                    systemVersion = "SDK Unknown";
+                }
 
-        MessagesController.getInstance();
-        ConnectionsManager.getInstance().init(BuildVars.BUILD_VERSION, TLRPC.LAYER, BuildVars.APP_ID, deviceModel, systemVersion, appVersion, langCode, configPath, FileLog.getNetworkLogPath(), UserConfig.getClientUserId(), enablePushConnection);
-        if (UserConfig.getCurrentUser() != null) {
-            MessagesController.getInstance().putUser(UserConfig.getCurrentUser(), true);
-            ConnectionsManager.getInstance().applyCountryPortNumber(UserConfig.getCurrentUser().phone);
-            MessagesController.getInstance().getBlockedUsers(true);
-            SendMessagesHelper.getInstance().checkUnsentMessages();
-        }
+                SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Activity.MODE_PRIVATE);
+                boolean enablePushConnection = preferences.getBoolean("pushConnection", true);
 
-        ApplicationLoader app = (ApplicationLoader)ApplicationLoader.applicationContext;
-        app.initPlayServices();
+                MessagesController.getInstance();
+                ConnectionsManager.getInstance().init(BuildVars.BUILD_VERSION, TLRPC.LAYER, BuildVars.APP_ID, deviceModel, systemVersion, appVersion[0], langCode, configPath, FileLog.getNetworkLogPath(), UserConfig.getClientUserId(), enablePushConnection);
+                if (UserConfig.getCurrentUser() != null) {
+                    MessagesController.getInstance().putUser(UserConfig.getCurrentUser(), true);
+                    ConnectionsManager.getInstance().applyCountryPortNumber(UserConfig.getCurrentUser().phone);
+                    MessagesController.getInstance().getBlockedUsers(true);
+                    SendMessagesHelper.getInstance().checkUnsentMessages();
+                }
+            }
+        }, "config", "locale", "package info");
+        startupGraph.run();
+        startupGraph.logTrace();
         FileLog.e("tmessages", "app initied");
 
         ContactsController.getInstance().checkAppAccount();
-        MediaController.getInstance();
+
+        //everything below is not needed to show the first screen
+        applicationHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        StartupGraph deferredGraph = new StartupGraph("deferred startup");
+                        deferredGraph.addStage("play services", false, new Runnable() {
+                            @Override
+                            public void run() {
+                                ApplicationLoader app = (ApplicationLoader) ApplicationLoader.applicationContext;
+                                app.initPlayServices();
+                            }
+                        }).addStage("media", false, new Runnable() {
+                            @Override
+                            public void run() {
+                                MediaController.getInstance();
+                            }
+                        });
+                        deferredGraph.run();
+                        deferredGraph.logTrace();
+                        return false;
+                    }
+                });
+            }
+        });
     }
 
     @Override
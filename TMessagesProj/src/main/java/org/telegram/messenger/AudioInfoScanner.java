@@ -0,0 +1,204 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import org.telegram.messenger.audioinfo.AudioInfo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AudioInfoScanner {
+
+    public interface ScanCallback {
+        void onScanFinished(HashMap<File, AudioMetadata> results);
+    }
+
+    public static class AudioMetadata {
+        public long duration;
+        public String title;
+        public String artist;
+        private long lastModified;
+        private long length;
+    }
+
+    private final static int maxCachedInfos = 100;
+    private final static int keepAliveSeconds = 30;
+
+    //only durations and tags are cached, covers are decoded again when a file is opened for playback
+    private final LinkedHashMap<String, AudioMetadata> cache = new LinkedHashMap<String, AudioMetadata>(0, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AudioMetadata> eldest) {
+            return size() > maxCachedInfos;
+        }
+    };
+    private final ThreadPoolExecutor scanExecutor;
+    private String prefetchedPath;
+    private AudioInfo prefetchedInfo;
+
+    private static volatile AudioInfoScanner Instance = null;
+
+    public static AudioInfoScanner getInstance() {
+        AudioInfoScanner localInstance = Instance;
+        if (localInstance == null) {
+            synchronized (AudioInfoScanner.class) {
+                localInstance = Instance;
+                if (localInstance == null) {
+                    Instance = localInstance = new AudioInfoScanner();
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    public AudioInfoScanner() {
+        int threadsCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        scanExecutor = new ThreadPoolExecutor(threadsCount, threadsCount, keepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        scanExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public AudioInfo getAudioInfo(File file) {
+        String key = file.getAbsolutePath();
+        synchronized (cache) {
+            if (prefetchedInfo != null && key.equals(prefetchedPath)) {
+                AudioMetadata metadata = cache.get(key);
+                if (metadata != null && metadata.lastModified == file.lastModified() && metadata.length == file.length()) {
+                    AudioInfo audioInfo = prefetchedInfo;
+                    prefetchedInfo = null;
+                    prefetchedPath = null;
+                    return audioInfo;
+                }
+            }
+        }
+        return parseAudioInfo(file);
+    }
+
+    public AudioMetadata getAudioMetadata(File file) {
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (cache) {
+            AudioMetadata metadata = cache.get(key);
+            if (metadata != null && metadata.lastModified == lastModified && metadata.length == length) {
+                return metadata;
+            }
+        }
+        parseAudioInfo(file);
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    public void prefetchAudioInfo(final File file) {
+        scanExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AudioInfo audioInfo = parseAudioInfo(file);
+                    synchronized (cache) {
+                        prefetchedPath = file.getAbsolutePath();
+                        prefetchedInfo = audioInfo;
+                    }
+                } catch (Exception e) {
+                    FileLog.e("tmessages", e);
+                }
+            }
+        });
+    }
+
+    private AudioInfo parseAudioInfo(File file) {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        AudioInfo audioInfo = AudioInfo.getAudioInfo(file);
+        if (audioInfo != null) {
+            AudioMetadata metadata = new AudioMetadata();
+            metadata.duration = audioInfo.getDuration();
+            metadata.title = audioInfo.getTitle();
+            metadata.artist = audioInfo.getArtist();
+            metadata.lastModified = lastModified;
+            metadata.length = length;
+            synchronized (cache) {
+                cache.put(file.getAbsolutePath(), metadata);
+            }
+        }
+        return audioInfo;
+    }
+
+    public void scanFiles(final ArrayList<File> files, final ScanCallback callback) {
+        if (files.isEmpty()) {
+            if (callback != null) {
+                AndroidUtilities.runOnUIThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onScanFinished(new HashMap<File, AudioMetadata>());
+                    }
+                });
+            }
+            return;
+        }
+        final HashMap<File, AudioMetadata> results = new HashMap<>();
+        final AtomicInteger remaining = new AtomicInteger(files.size());
+        for (int a = 0; a < files.size(); a++) {
+            final File file = files.get(a);
+            scanExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    AudioMetadata metadata = null;
+                    try {
+                        metadata = getAudioMetadata(file);
+                    } catch (Exception e) {
+                        FileLog.e("tmessages", e);
+                    }
+                    if (callback == null) {
+                        return;
+                    }
+                    synchronized (results) {
+                        if (metadata != null) {
+                            results.put(file, metadata);
+                        }
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        AndroidUtilities.runOnUIThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onScanFinished(results);
+                            }
+                        });
+                    }
+                }
+            });
+        }
+    }
+
+    public void scanDirectory(final File dir, final ScanCallback callback) {
+        scanExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<File> files = new ArrayList<>();
+                File[] dirFiles = dir != null ? dir.listFiles() : null;
+                if (dirFiles != null) {
+                    for (int a = 0; a < dirFiles.length; a++) {
+                        File file = dirFiles[a];
+                        String name = file.getName().toLowerCase();
+                        if (file.isFile() && (name.endsWith(".mp3") || name.endsWith(".m4a"))) {
+                            files.add(file);
+                        }
+                    }
+                }
+                scanFiles(files, callback);
+            }
+        });
+    }
+}
@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class ContactsController {
@@ -98,6 +99,9 @@ public class ContactsController {
 
     public HashMap<String, TLRPC.TL_contact> contactsByPhone = new HashMap<>();
 
+    private HashMap<Integer, Long> contactsBookVersions = new HashMap<>();
+
+    private final static int importContactsBatchSize = 500;
     private int completedRequestsCount;
 
     private static volatile ContactsController Instance = null;
@@ -146,6 +150,12 @@ public class ContactsController {
 
     public void cleanup() {
         contactsBook.clear();
+        Utilities.stageQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                contactsBookVersions = new HashMap<>();
+            }
+        });
         contactsBookSPhones.clear();
         phoneBookContacts.clear();
         contacts.clear();
@@ -280,7 +290,7 @@ public class ContactsController {
             public void run() {
                 if (checkContactsInternal()) {
                     FileLog.e("tmessages", "detected contacts change");
-                    ContactsController.getInstance().performSyncPhoneBook(ContactsController.getInstance().getContactsCopy(ContactsController.getInstance().contactsBook), true, false, true, false);
+                    ContactsController.getInstance().performSyncCurrentPhoneBook(true, false, true);
                 }
             }
         });
@@ -290,7 +300,7 @@ public class ContactsController {
         Utilities.globalQueue.postRunnable(new Runnable() {
             @Override
             public void run() {
-                ContactsController.getInstance().performSyncPhoneBook(new HashMap<Integer, Contact>(), true, true, true, true);
+                ContactsController.getInstance().performSyncPhoneBook(new HashMap<Integer, Contact>(), null, true, true, true, true);
             }
         });
     }
@@ -352,8 +362,40 @@ public class ContactsController {
         });
     }
 
-    private HashMap<Integer, Contact> readContactsFromPhoneBook() {
+    private boolean readContactsVersions(ContentResolver cr, HashMap<Integer, Long> versions) {
+        Cursor pCur = null;
+        try {
+            pCur = cr.query(ContactsContract.RawContacts.CONTENT_URI, new String[]{ContactsContract.RawContacts.CONTACT_ID, ContactsContract.RawContacts._ID, ContactsContract.RawContacts.VERSION}, null, null, null);
+            if (pCur == null) {
+                return false;
+            }
+            while (pCur.moveToNext()) {
+                if (pCur.isNull(0)) {
+                    continue;
+                }
+                int id = pCur.getInt(0);
+                long value = ((long) pCur.getInt(1) << 32) ^ pCur.getInt(2);
+                value *= 0x9E3779B97F4A7C15L;
+                value ^= value >>> 29;
+                Long version = versions.get(id);
+                //raw contacts come in any order, so their stamps are combined commutatively
+                versions.put(id, version == null ? value : version + value);
+            }
+            return true;
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+            versions.clear();
+            return false;
+        } finally {
+            if (pCur != null) {
+                pCur.close();
+            }
+        }
+    }
+
+    private HashMap<Integer, Contact> readContactsFromPhoneBook(HashMap<Integer, Contact> cachedContacts, HashMap<Integer, Long> cachedVersions, HashMap<Integer, Long> versions, HashSet<Integer> unchangedIds) {
         HashMap<Integer, Contact> contactsMap = new HashMap<>();
+        long startTime = System.currentTimeMillis();
         try {
             if (!hasContactsPermission()) {
                 return contactsMap;
@@ -361,8 +403,39 @@ public class ContactsController {
             ContentResolver cr = ApplicationLoader.applicationContext.getContentResolver();
 
             HashMap<String, Contact> shortContacts = new HashMap<>();
+            String changedIds = null;
+            if (readContactsVersions(cr, versions) && cachedContacts != null && !cachedContacts.isEmpty() && cachedVersions != null && !cachedVersions.isEmpty()) {
+                ArrayList<Integer> changedIdsArr = new ArrayList<>();
+                for (HashMap.Entry<Integer, Long> entry : versions.entrySet()) {
+                    Integer id = entry.getKey();
+                    if (entry.getValue().equals(cachedVersions.get(id))) {
+                        if (cachedContacts.containsKey(id)) {
+                            unchangedIds.add(id);
+                        }
+                    } else {
+                        changedIdsArr.add(id);
+                    }
+                }
+                if (changedIdsArr.size() * 2 < versions.size()) {
+                    for (Integer id : unchangedIds) {
+                        Contact contact = copyContact(cachedContacts.get(id));
+                        contactsMap.put(id, contact);
+                        for (int a = 0; a < contact.shortPhones.size(); a++) {
+                            shortContacts.put(contact.shortPhones.get(a), contact);
+                        }
+                    }
+                    changedIds = TextUtils.join(",", changedIdsArr);
+                } else {
+                    unchangedIds.clear();
+                }
+            }
+            if (changedIds != null && changedIds.length() == 0) {
+                FileLog.e("tmessages", "phone book not changed, " + contactsMap.size() + " contacts reused in " + (System.currentTimeMillis() - startTime) + " ms");
+                return contactsMap;
+            }
+
             ArrayList<Integer> idsArr = new ArrayList<>();
-            Cursor pCur = cr.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI, projectionPhones, null, null, null);
+            Cursor pCur = cr.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI, projectionPhones, changedIds != null ? ContactsContract.CommonDataKinds.Phone.CONTACT_ID + " IN (" + changedIds + ")" : null, null, null);
             if (pCur != null) {
                 if (pCur.getCount() > 0) {
                     while (pCur.moveToNext()) {
@@ -458,7 +531,11 @@ public class ContactsController {
             }
 
             try {
-                pCur = cr.query(ContactsContract.RawContacts.CONTENT_URI, new String[]{"display_name", ContactsContract.RawContacts.SYNC1, ContactsContract.RawContacts.CONTACT_ID}, ContactsContract.RawContacts.ACCOUNT_TYPE + " = " + "'com.whatsapp'", null, null);
+                String selection = ContactsContract.RawContacts.ACCOUNT_TYPE + " = " + "'com.whatsapp'";
+                if (changedIds != null) {
+                    selection += " AND " + ContactsContract.RawContacts.CONTACT_ID + " IN (" + changedIds + ")";
+                }
+                pCur = cr.query(ContactsContract.RawContacts.CONTENT_URI, new String[]{"display_name", ContactsContract.RawContacts.SYNC1, ContactsContract.RawContacts.CONTACT_ID}, selection, null, null);
                 if (pCur != null) {
                     while ((pCur.moveToNext())) {
                         String phone = pCur.getString(1);
@@ -504,7 +581,10 @@ public class ContactsController {
         } catch (Exception e) {
             FileLog.e("tmessages", e);
             contactsMap.clear();
+            unchangedIds.clear();
+            versions.clear();
         }
+        FileLog.e("tmessages", "read " + contactsMap.size() + " contacts from phone book in " + (System.currentTimeMillis() - startTime) + " ms, " + (contactsMap.size() - unchangedIds.size()) + " read from provider");
         /*if (BuildVars.DEBUG_VERSION) {
             for (HashMap.Entry<Integer, Contact> entry : contactsMap.entrySet()) {
                 Contact contact = entry.getValue();
@@ -525,24 +605,37 @@ public class ContactsController {
         return contactsMap;
     }
 
+    private static Contact copyContact(Contact originalContact) {
+        Contact copyContact = new Contact();
+        copyContact.phoneDeleted.addAll(originalContact.phoneDeleted);
+        copyContact.phones.addAll(originalContact.phones);
+        copyContact.phoneTypes.addAll(originalContact.phoneTypes);
+        copyContact.shortPhones.addAll(originalContact.shortPhones);
+        copyContact.first_name = originalContact.first_name;
+        copyContact.last_name = originalContact.last_name;
+        copyContact.id = originalContact.id;
+        return copyContact;
+    }
+
     public HashMap<Integer, Contact> getContactsCopy(HashMap<Integer, Contact> original) {
         HashMap<Integer, Contact> ret = new HashMap<>();
         for (HashMap.Entry<Integer, Contact> entry : original.entrySet()) {
-            Contact copyContact = new Contact();
-            Contact originalContact = entry.getValue();
-            copyContact.phoneDeleted.addAll(originalContact.phoneDeleted);
-            copyContact.phones.addAll(originalContact.phones);
-            copyContact.phoneTypes.addAll(originalContact.phoneTypes);
-            copyContact.shortPhones.addAll(originalContact.shortPhones);
-            copyContact.first_name = originalContact.first_name;
-            copyContact.last_name = originalContact.last_name;
-            copyContact.id = originalContact.id;
+            Contact copyContact = copyContact(entry.getValue());
             ret.put(copyContact.id, copyContact);
         }
         return ret;
     }
 
-    protected void performSyncPhoneBook(final HashMap<Integer, Contact> contactHashMap, final boolean request, final boolean first, final boolean schedule, final boolean force) {
+    private void performSyncCurrentPhoneBook(final boolean request, final boolean first, final boolean schedule) {
+        Utilities.stageQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                performSyncPhoneBook(getContactsCopy(contactsBook), new HashMap<>(contactsBookVersions), request, first, schedule, false);
+            }
+        });
+    }
+
+    protected void performSyncPhoneBook(final HashMap<Integer, Contact> contactHashMap, final HashMap<Integer, Long> contactVersions, final boolean request, final boolean first, final boolean schedule, final boolean force) {
         if (!first && !contactsBookLoaded) {
             return;
         }
@@ -583,10 +676,13 @@ public class ContactsController {
                 }
 
                 FileLog.e("tmessages", "start read contacts from phone");
+                final long syncStartTime = System.currentTimeMillis();
                 if (!schedule) {
                     checkContactsInternal();
                 }
-                final HashMap<Integer, Contact> contactsMap = readContactsFromPhoneBook();
+                final HashMap<Integer, Long> versions = new HashMap<>();
+                HashSet<Integer> unchangedIds = new HashSet<>();
+                final HashMap<Integer, Contact> contactsMap = readContactsFromPhoneBook(force ? null : contactHashMap, force ? null : contactVersions, versions, unchangedIds);
                 final HashMap<String, Contact> contactsBookShort = new HashMap<>();
                 int oldCount = contactHashMap.size();
 
@@ -595,6 +691,13 @@ public class ContactsController {
                     for (HashMap.Entry<Integer, Contact> pair : contactsMap.entrySet()) {
                         Integer id = pair.getKey();
                         Contact value = pair.getValue();
+                        if (unchangedIds.contains(id)) {
+                            for (int a = 0; a < value.shortPhones.size(); a++) {
+                                contactsBookShort.put(value.shortPhones.get(a), value);
+                            }
+                            contactHashMap.remove(id);
+                            continue;
+                        }
                         Contact existing = contactHashMap.get(id);
                         if (existing == null) {
                             for (int a = 0; a < value.shortPhones.size(); a++) {
@@ -679,13 +782,22 @@ public class ContactsController {
                             }
                         }
                     }
+                    if (contactHashMap.isEmpty() && toImport.isEmpty() && oldCount == contactsMap.size() && !versions.isEmpty() && !versions.equals(contactVersions)) {
+                        MessagesStorage.getInstance().putCachedPhoneBookVersions(versions);
+                    }
                     if (!first && contactHashMap.isEmpty() && toImport.isEmpty() && oldCount == contactsMap.size()) {
-                        FileLog.e("tmessages", "contacts not changed!");
+                        FileLog.e("tmessages", "contacts not changed! sync took " + (System.currentTimeMillis() - syncStartTime) + " ms");
+                        Utilities.stageQueue.postRunnable(new Runnable() {
+                            @Override
+                            public void run() {
+                                contactsBookVersions = versions;
+                            }
+                        });
                         return;
                     }
                     if (request && !contactHashMap.isEmpty() && !contactsMap.isEmpty()) {
                         if (toImport.isEmpty()) {
-                            MessagesStorage.getInstance().putCachedPhoneBook(contactsMap);
+                            MessagesStorage.getInstance().putCachedPhoneBook(contactsMap, versions);
                         }
                         if (!disableDeletion && !contactHashMap.isEmpty()) {
                             AndroidUtilities.runOnUIThread(new Runnable() {
@@ -775,7 +887,7 @@ public class ContactsController {
                     }
                 }
 
-                FileLog.e("tmessages", "done processing contacts");
+                FileLog.e("tmessages", "done processing contacts in " + (System.currentTimeMillis() - syncStartTime) + " ms, " + toImport.size() + " phones to import");
 
                 if (request) {
                     if (!toImport.isEmpty()) {
@@ -788,10 +900,10 @@ public class ContactsController {
 
                         final HashMap<Integer, Contact> contactsMapToSave = new HashMap<>(contactsMap);
                         completedRequestsCount = 0;
-                        final int count = (int) Math.ceil(toImport.size() / 500.0f);
+                        final int count = (toImport.size() + importContactsBatchSize - 1) / importContactsBatchSize;
                         for (int a = 0; a < count; a++) {
                             ArrayList<TLRPC.TL_inputPhoneContact> finalToImport = new ArrayList<>();
-                            finalToImport.addAll(toImport.subList(a * 500, Math.min((a + 1) * 500, toImport.size())));
+                            finalToImport.addAll(toImport.subList(a * importContactsBatchSize, Math.min((a + 1) * importContactsBatchSize, toImport.size())));
                             TLRPC.TL_contacts_importContacts req = new TLRPC.TL_contacts_importContacts();
                             req.contacts = finalToImport;
                             req.replace = false;
@@ -810,7 +922,7 @@ public class ContactsController {
                                         }
 
                                         if (completedRequestsCount == count && !contactsMapToSave.isEmpty()) {
-                                            MessagesStorage.getInstance().putCachedPhoneBook(contactsMapToSave);
+                                            MessagesStorage.getInstance().putCachedPhoneBook(contactsMapToSave, versions);
                                         }
 
                                         /*if (BuildVars.DEBUG_VERSION) {
@@ -835,6 +947,7 @@ public class ContactsController {
                                             public void run() {
                                                 contactsBookSPhones = contactsBookShort;
                                                 contactsBook = contactsMap;
+                                                contactsBookVersions = versions;
                                                 contactsSyncInProgress = false;
                                                 contactsBookLoaded = true;
                                                 if (first) {
@@ -856,6 +969,7 @@ public class ContactsController {
                             public void run() {
                                 contactsBookSPhones = contactsBookShort;
                                 contactsBook = contactsMap;
+                                contactsBookVersions = versions;
                                 contactsSyncInProgress = false;
                                 contactsBookLoaded = true;
                                 if (first) {
@@ -881,6 +995,7 @@ public class ContactsController {
                         public void run() {
                             contactsBookSPhones = contactsBookShort;
                             contactsBook = contactsMap;
+                            contactsBookVersions = versions;
                             contactsSyncInProgress = false;
                             contactsBookLoaded = true;
                             if (first) {
@@ -893,7 +1008,7 @@ public class ContactsController {
                         }
                     });
                     if (!contactsMap.isEmpty()) {
-                        MessagesStorage.getInstance().putCachedPhoneBook(contactsMap);
+                        MessagesStorage.getInstance().putCachedPhoneBook(contactsMap, versions);
                     }
                 }
             }
@@ -1503,7 +1618,7 @@ public class ContactsController {
                         updateUnregisteredContacts(contacts);
                         performWriteContactsToPhoneBook();
                     }
-                    performSyncPhoneBook(getContactsCopy(contactsBook), false, false, false, false);
+                    performSyncCurrentPhoneBook(false, false, false);
                     buildContactsSectionsArrays(!newContacts.isEmpty());
                     NotificationCenter.getInstance().postNotificationName(NotificationCenter.contactsDidLoaded);
                 }
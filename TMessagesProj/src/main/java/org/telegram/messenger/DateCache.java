@@ -0,0 +1,136 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import android.util.SparseArray;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+public class DateCache {
+
+    public static class DayInfo {
+        public final int year;
+        public final int month;
+        public final int dayOfYear;
+        public final String dateKey;
+        public final String monthKey;
+
+        private String monthLabel;
+        private String yearLabel;
+        private String weekLabel;
+        private String chatDateLabel;
+        private String chatFullDateLabel;
+
+        private DayInfo(int year, int month, int dayOfYear, String monthKey) {
+            this.year = year;
+            this.month = month;
+            this.dayOfYear = dayOfYear;
+            this.monthKey = monthKey;
+            dateKey = monthKey + "_" + (dayOfYear < 10 ? "0" : "") + dayOfYear;
+        }
+
+        public String getMonthLabel(long date) {
+            if (monthLabel == null) {
+                monthLabel = LocaleController.getInstance().formatterMonth.format(date * 1000);
+            }
+            return monthLabel;
+        }
+
+        public String getYearLabel(long date) {
+            if (yearLabel == null) {
+                yearLabel = LocaleController.getInstance().formatterYear.format(date * 1000);
+            }
+            return yearLabel;
+        }
+
+        public String getWeekLabel(long date) {
+            if (weekLabel == null) {
+                weekLabel = LocaleController.getInstance().formatterWeek.format(date * 1000);
+            }
+            return weekLabel;
+        }
+
+        public String getChatDateLabel(long date) {
+            if (chatDateLabel == null) {
+                chatDateLabel = LocaleController.getInstance().chatDate.format(date * 1000);
+            }
+            return chatDateLabel;
+        }
+
+        public String getChatFullDateLabel(long date) {
+            if (chatFullDateLabel == null) {
+                chatFullDateLabel = LocaleController.getInstance().chatFullDate.format(date * 1000);
+            }
+            return chatFullDateLabel;
+        }
+    }
+
+    private final static int maxCachedDays = 2000;
+    private final static long msInDay = 24 * 60 * 60 * 1000;
+
+    private final SparseArray<DayInfo> days = new SparseArray<>();
+    private final SparseArray<String> monthKeys = new SparseArray<>();
+    private final Calendar calendar = new GregorianCalendar();
+    private TimeZone timeZone = TimeZone.getDefault();
+
+    private static volatile DateCache Instance = null;
+
+    public static DateCache getInstance() {
+        DateCache localInstance = Instance;
+        if (localInstance == null) {
+            synchronized (DateCache.class) {
+                localInstance = Instance;
+                if (localInstance == null) {
+                    Instance = localInstance = new DateCache();
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    public DayInfo getDay(long date) {
+        return getDayForMillis(date * 1000);
+    }
+
+    public DayInfo getToday() {
+        return getDayForMillis(System.currentTimeMillis());
+    }
+
+    private synchronized DayInfo getDayForMillis(long millis) {
+        int epochDay = (int) Math.floor((double) (millis + timeZone.getOffset(millis)) / msInDay);
+        DayInfo dayInfo = days.get(epochDay);
+        if (dayInfo == null) {
+            if (days.size() >= maxCachedDays) {
+                days.clear();
+            }
+            calendar.setTimeInMillis(millis);
+            int year = calendar.get(Calendar.YEAR);
+            int month = calendar.get(Calendar.MONTH);
+            int dayOfYear = calendar.get(Calendar.DAY_OF_YEAR);
+            int monthIndex = year * 12 + month;
+            String monthKey = monthKeys.get(monthIndex);
+            if (monthKey == null) {
+                monthKey = year + "_" + (month < 10 ? "0" : "") + month;
+                monthKeys.put(monthIndex, monthKey);
+            }
+            dayInfo = new DayInfo(year, month, dayOfYear, monthKey);
+            days.put(epochDay, dayInfo);
+        }
+        return dayInfo;
+    }
+
+    public synchronized void invalidate() {
+        days.clear();
+        monthKeys.clear();
+        timeZone = TimeZone.getDefault();
+        calendar.setTimeZone(timeZone);
+    }
+}
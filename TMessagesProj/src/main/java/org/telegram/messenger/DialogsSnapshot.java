@@ -0,0 +1,251 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import android.os.SystemClock;
+
+import org.telegram.tgnet.SerializedData;
+import org.telegram.tgnet.TLRPC;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+
+public class DialogsSnapshot {
+
+    private final static int snapshotMagic = 0x44534e50;
+    private final static int snapshotVersion = 1;
+    private final static int snapshotDialogsCount = 20;
+
+    private static volatile DialogsSnapshot Instance = null;
+
+    public static DialogsSnapshot getInstance() {
+        DialogsSnapshot localInstance = Instance;
+        if (localInstance == null) {
+            synchronized (DialogsSnapshot.class) {
+                localInstance = Instance;
+                if (localInstance == null) {
+                    Instance = localInstance = new DialogsSnapshot();
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    private File getSnapshotFile() {
+        return new File(ApplicationLoader.getFilesDirFixed(), "dialogs_snapshot.dat");
+    }
+
+    public void save() {
+        if (!UserConfig.isClientActivated()) {
+            return;
+        }
+        MessagesController messagesController = MessagesController.getInstance();
+        if (messagesController.dialogs.isEmpty()) {
+            return;
+        }
+        ArrayList<TLRPC.TL_dialog> dialogs = new ArrayList<>();
+        ArrayList<TLRPC.Message> messages = new ArrayList<>();
+        ArrayList<Integer> usersToSave = new ArrayList<>();
+        ArrayList<Integer> chatsToSave = new ArrayList<>();
+        usersToSave.add(UserConfig.getClientUserId());
+        for (int a = 0; a < messagesController.dialogs.size() && dialogs.size() < snapshotDialogsCount; a++) {
+            TLRPC.TL_dialog dialog = messagesController.dialogs.get(a);
+            int lower_id = (int) dialog.id;
+            int high_id = (int) (dialog.id >> 32);
+            if (lower_id == 0 || high_id == 1) {
+                continue;
+            }
+            if (lower_id > 0) {
+                if (!usersToSave.contains(lower_id)) {
+                    usersToSave.add(lower_id);
+                }
+            } else if (!chatsToSave.contains(-lower_id)) {
+                chatsToSave.add(-lower_id);
+            }
+            dialogs.add(dialog);
+            MessageObject messageObject = messagesController.dialogMessage.get(dialog.id);
+            if (messageObject != null && !messageObject.deleted) {
+                messages.add(messageObject.messageOwner);
+                MessagesStorage.addUsersAndChatsFromMessage(messageObject.messageOwner, usersToSave, chatsToSave);
+                if (messageObject.messageOwner.replyMessage != null) {
+                    MessagesStorage.addUsersAndChatsFromMessage(messageObject.messageOwner.replyMessage, usersToSave, chatsToSave);
+                }
+            } else {
+                messages.add(null);
+            }
+        }
+        if (dialogs.isEmpty()) {
+            return;
+        }
+        final byte[] bytes;
+        try {
+            SerializedData data = new SerializedData();
+            data.writeInt32(snapshotMagic);
+            data.writeInt32(snapshotVersion);
+            data.writeInt32(UserConfig.getClientUserId());
+            data.writeInt32(dialogs.size());
+            for (int a = 0; a < dialogs.size(); a++) {
+                TLRPC.TL_dialog dialog = dialogs.get(a);
+                data.writeInt64(dialog.id);
+                data.writeInt32(dialog.flags);
+                data.writeInt32(dialog.top_message);
+                data.writeInt32(dialog.read_inbox_max_id);
+                data.writeInt32(dialog.read_outbox_max_id);
+                data.writeInt32(dialog.unread_count);
+                data.writeInt32(dialog.pts);
+                data.writeInt32(dialog.last_message_date);
+                data.writeBool(dialog.notify_settings != null);
+                if (dialog.notify_settings != null) {
+                    dialog.notify_settings.serializeToStream(data);
+                }
+                TLRPC.Message message = messages.get(a);
+                data.writeBool(message != null);
+                if (message != null) {
+                    message.serializeToStream(data);
+                    data.writeInt32(message.send_state);
+                    data.writeBool(message.replyMessage != null);
+                    if (message.replyMessage != null) {
+                        message.replyMessage.serializeToStream(data);
+                    }
+                }
+            }
+            ArrayList<TLRPC.User> users = new ArrayList<>();
+            for (int a = 0; a < usersToSave.size(); a++) {
+                TLRPC.User user = messagesController.getUser(usersToSave.get(a));
+                if (user != null) {
+                    users.add(user);
+                }
+            }
+            data.writeInt32(users.size());
+            for (int a = 0; a < users.size(); a++) {
+                users.get(a).serializeToStream(data);
+            }
+            ArrayList<TLRPC.Chat> chats = new ArrayList<>();
+            for (int a = 0; a < chatsToSave.size(); a++) {
+                TLRPC.Chat chat = messagesController.getChat(chatsToSave.get(a));
+                if (chat != null) {
+                    chats.add(chat);
+                }
+            }
+            data.writeInt32(chats.size());
+            for (int a = 0; a < chats.size(); a++) {
+                chats.get(a).serializeToStream(data);
+            }
+            bytes = data.toByteArray();
+            data.cleanup();
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+            return;
+        }
+        Utilities.globalQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                File file = getSnapshotFile();
+                File tempFile = new File(file.getPath() + ".tmp");
+                FileOutputStream stream = null;
+                try {
+                    stream = new FileOutputStream(tempFile);
+                    stream.write(bytes);
+                    stream.getFD().sync();
+                    stream.close();
+                    stream = null;
+                    if (!tempFile.renameTo(file)) {
+                        tempFile.delete();
+                    }
+                } catch (Exception e) {
+                    FileLog.e("tmessages", e);
+                    tempFile.delete();
+                } finally {
+                    try {
+                        if (stream != null) {
+                            stream.close();
+                        }
+                    } catch (Exception e) {
+                        FileLog.e("tmessages", e);
+                    }
+                }
+            }
+        });
+    }
+
+    public void load() {
+        Utilities.globalQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                File file = getSnapshotFile();
+                if (!file.exists()) {
+                    return;
+                }
+                long time = SystemClock.elapsedRealtime();
+                TLRPC.messages_Dialogs dialogs = new TLRPC.messages_Dialogs();
+                try {
+                    SerializedData data = new SerializedData(file);
+                    //the snapshot is consumed once, a fresh one is written on the next pause
+                    file.delete();
+                    if (data.readInt32(false) != snapshotMagic || data.readInt32(false) != snapshotVersion || data.readInt32(false) != UserConfig.getClientUserId()) {
+                        data.cleanup();
+                        return;
+                    }
+                    int count = data.readInt32(true);
+                    for (int a = 0; a < count; a++) {
+                        TLRPC.TL_dialog dialog = new TLRPC.TL_dialog();
+                        dialog.id = data.readInt64(true);
+                        dialog.flags = data.readInt32(true);
+                        dialog.top_message = data.readInt32(true);
+                        dialog.read_inbox_max_id = data.readInt32(true);
+                        dialog.read_outbox_max_id = data.readInt32(true);
+                        dialog.unread_count = data.readInt32(true);
+                        dialog.pts = data.readInt32(true);
+                        dialog.last_message_date = data.readInt32(true);
+                        if (data.readBool(true)) {
+                            dialog.notify_settings = TLRPC.PeerNotifySettings.TLdeserialize(data, data.readInt32(true), true);
+                        }
+                        dialogs.dialogs.add(dialog);
+                        if (data.readBool(true)) {
+                            TLRPC.Message message = TLRPC.Message.TLdeserialize(data, data.readInt32(true), true);
+                            message.send_state = data.readInt32(true);
+                            message.dialog_id = dialog.id;
+                            if (data.readBool(true)) {
+                                message.replyMessage = TLRPC.Message.TLdeserialize(data, data.readInt32(true), true);
+                                message.replyMessage.dialog_id = dialog.id;
+                            }
+                            dialogs.messages.add(message);
+                        }
+                    }
+                    count = data.readInt32(true);
+                    for (int a = 0; a < count; a++) {
+                        dialogs.users.add(TLRPC.User.TLdeserialize(data, data.readInt32(true), true));
+                    }
+                    count = data.readInt32(true);
+                    for (int a = 0; a < count; a++) {
+                        dialogs.chats.add(TLRPC.Chat.TLdeserialize(data, data.readInt32(true), true));
+                    }
+                    data.cleanup();
+                } catch (Exception e) {
+                    FileLog.e("tmessages", e);
+                    return;
+                }
+                FileLog.e("tmessages", "dialogs snapshot with " + dialogs.dialogs.size() + " dialogs read in " + (SystemClock.elapsedRealtime() - time) + " ms");
+                if (!dialogs.dialogs.isEmpty()) {
+                    MessagesController.getInstance().processLoadedDialogs(dialogs, null, 0, dialogs.dialogs.size(), 3, false, false);
+                }
+            }
+        });
+    }
+
+    public void cleanup() {
+        Utilities.globalQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                getSnapshotFile().delete();
+            }
+        });
+    }
+}
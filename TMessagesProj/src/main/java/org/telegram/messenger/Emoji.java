@@ -11,7 +11,9 @@ package org.telegram.messenger;
 import java.io.File;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -33,6 +35,15 @@ import android.widget.TextView;
 
 public class Emoji {
     private static HashMap<CharSequence, DrawableInfo> rects = new HashMap<>();
+    private static EmojiTrie<DrawableInfo> emojiTrie = new EmojiTrie<>();
+    private static final int maxCachedMatches = 500;
+    private static final int maxCachedTextLength = 1024;
+    private static final LinkedHashMap<String, EmojiTrie.Matches<DrawableInfo>> matchesCache = new LinkedHashMap<String, EmojiTrie.Matches<DrawableInfo>>(0, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EmojiTrie.Matches<DrawableInfo>> eldest) {
+            return size() > maxCachedMatches;
+        }
+    };
     private static int drawImgSize;
     private static int bigImgSize;
     private static boolean inited = false;
@@ -74,7 +85,9 @@ public class Emoji {
                 int row = position % cols[j][page];
                 int col = position / cols[j][page];
                 Rect rect = new Rect(row * emojiFullSize + row * add, col * emojiFullSize + col * add, (row + 1) * emojiFullSize + row * add, (col + 1) * emojiFullSize + col * add);
-                rects.put(EmojiData.data[j][i], new DrawableInfo(rect, (byte) j, (byte) page, i));
+                DrawableInfo info = new DrawableInfo(rect, (byte) j, (byte) page, i);
+                rects.put(EmojiData.data[j][i], info);
+                emojiTrie.add(EmojiData.data[j][i], info);
             }
         }
         placeholderPaint = new Paint();
@@ -317,13 +330,22 @@ public class Emoji {
         }
     }
 
-    private static boolean inArray(char c, char[] a) {
-        for (char cc : a) {
-            if (cc == c) {
-                return true;
+    private static EmojiTrie.Matches<DrawableInfo> getEmojiMatches(CharSequence cs) {
+        if (cs.length() > maxCachedTextLength) {
+            return emojiTrie.find(cs);
+        }
+        String key = cs.toString();
+        EmojiTrie.Matches<DrawableInfo> matches;
+        synchronized (matchesCache) {
+            matches = matchesCache.get(key);
+        }
+        if (matches == null) {
+            matches = emojiTrie.find(key);
+            synchronized (matchesCache) {
+                matchesCache.put(key, matches);
             }
         }
-        return false;
+        return matches;
     }
 
     public static CharSequence replaceEmoji(CharSequence cs, Paint.FontMetricsInt fontMetrics, int size, boolean createNew) {
@@ -334,129 +356,61 @@ public class Emoji {
         if (MessagesController.getInstance().useSystemEmoji || cs == null || cs.length() == 0) {
             return cs;
         }
-        //SpannableStringLight.isFieldsAvailable();
-        //SpannableStringLight s = new SpannableStringLight(cs.toString());
         Spannable s;
+        EmojiSpan[] oldSpans = null;
         if (!createNew && cs instanceof Spannable) {
             s = (Spannable) cs;
+            oldSpans = s.getSpans(0, s.length(), EmojiSpan.class);
         } else {
             s = Spannable.Factory.getInstance().newSpannable(cs.toString());
         }
-        long buf = 0;
-        int emojiCount = 0;
-        char c;
-        int startIndex = -1;
-        int startLength = 0;
-        int previousGoodIndex = 0;
-        StringBuilder emojiCode = new StringBuilder(16);
-        boolean nextIsSkinTone;
-        EmojiDrawable drawable;
-        EmojiSpan span;
-        int length = cs.length();
-        boolean doneEmoji = false;
-        //s.setSpansCount(emojiCount);
 
         try {
-            for (int i = 0; i < length; i++) {
-                c = cs.charAt(i);
-                if (c >= 0xD83C && c <= 0xD83E || (buf != 0 && (buf & 0xFFFFFFFF00000000L) == 0 && (buf & 0xFFFF) == 0xD83C && (c >= 0xDDE6 && c <= 0xDDFF))) {
-                    if (startIndex == -1) {
-                        startIndex = i;
-                    }
-                    emojiCode.append(c);
-                    startLength++;
-                    buf <<= 16;
-                    buf |= c;
-                } else if (emojiCode.length() > 0 && (c == 0x2640 || c == 0x2642)) {
-                    emojiCode.append(c);
-                    startLength++;
-                    buf = 0;
-                    doneEmoji = true;
-                } else if (buf > 0 && (c & 0xF000) == 0xD000) {
-                    emojiCode.append(c);
-                    startLength++;
-                    buf = 0;
-                    doneEmoji = true;
-                } else if (c == 0x20E3) {
-                    if (i > 0) {
-                        char c2 = cs.charAt(previousGoodIndex);
-                        if ((c2 >= '0' && c2 <= '9') || c2 == '#' || c2 == '*') {
-                            startIndex = previousGoodIndex;
-                            startLength = i - previousGoodIndex + 1;
-                            emojiCode.append(c2);
-                            emojiCode.append(c);
-                            doneEmoji = true;
-                        }
-                    }
-                } else if ((c == 0x00A9 || c == 0x00AE || c >= 0x203C && c <= 0x3299) && EmojiData.dataCharsMap.containsKey(c)) {
-                    if (startIndex == -1) {
-                        startIndex = i;
-                    }
-                    startLength++;
-                    emojiCode.append(c);
-                    doneEmoji = true;
-                } else if (startIndex != -1) {
-                    emojiCode.setLength(0);
-                    startIndex = -1;
-                    startLength = 0;
-                    doneEmoji = false;
-                } else if (c != 0xfe0f) {
-                    if (emojiOnly != null) {
-                        emojiOnly[0] = 0;
-                        emojiOnly = null;
-                    }
-                }
-                previousGoodIndex = i;
-                for (int a = 0; a < 3; a++) {
-                    if (i + 1 < length) {
-                        c = cs.charAt(i + 1);
-                        if (a == 1) {
-                            if (c == 0x200D && emojiCode.length() > 0) {
-                                emojiCode.append(c);
-                                i++;
-                                startLength++;
-                                doneEmoji = false;
-                            }
-                        } else {
-                            if (c >= 0xFE00 && c <= 0xFE0F) {
-                                i++;
-                                startLength++;
-                            }
-                        }
-                    }
+            EmojiTrie.Matches<DrawableInfo> matches = getEmojiMatches(cs);
+            if (emojiOnly != null) {
+                if (matches.onlyEmoji) {
+                    emojiOnly[0] += matches.emojiCount;
+                } else {
+                    emojiOnly[0] = 0;
                 }
-                if (doneEmoji) {
-                    if (emojiOnly != null) {
-                        emojiOnly[0]++;
-                    }
-                    if (i + 2 < length) {
-                        if (cs.charAt(i + 1) == 0xD83C && cs.charAt(i + 2) >= 0xDFFB && cs.charAt(i + 2) <= 0xDFFF) {
-                            emojiCode.append(cs.subSequence(i + 1, i + 3));
-                            startLength += 2;
-                            i += 2;
-                        }
-                    }
-                    if (i + 2 < length) {
-                        if (cs.charAt(i + 1) == 0x200D && (cs.charAt(i + 2) == 0x2640 || cs.charAt(i + 2) == 0x2642)) {
-                            emojiCode.append(cs.subSequence(i + 1, i + 3));
-                            startLength += 2;
-                            i += 2;
-                        }
-                    }
-                    drawable = Emoji.getEmojiDrawable(emojiCode.subSequence(0, emojiCode.length()));
-                    if (drawable != null) {
-                        span = new EmojiSpan(drawable, DynamicDrawableSpan.ALIGN_BOTTOM, size, fontMetrics);
-                        s.setSpan(span, startIndex, startIndex + startLength, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+            int maxCount = Build.VERSION.SDK_INT < 23 ? 50 : Integer.MAX_VALUE;
+            int emojiCount = 0;
+            boolean reused[] = null;
+            if (oldSpans != null && oldSpans.length > 0) {
+                int spanSize = EmojiSpan.getSpanSize(fontMetrics);
+                reused = new boolean[matches.count];
+                for (int a = 0; a < oldSpans.length; a++) {
+                    EmojiSpan span = oldSpans[a];
+                    int index = matches.indexOf(s.getSpanStart(span));
+                    Drawable drawable = span.getDrawable();
+                    if (index >= 0 && !reused[index] && emojiCount < maxCount && span.size == spanSize && s.getSpanEnd(span) == matches.ends[index] &&
+                            drawable instanceof EmojiDrawable && ((EmojiDrawable) drawable).getDrawableInfo() == matches.getValue(index)) {
+                        reused[index] = true;
                         emojiCount++;
+                    } else {
+                        s.removeSpan(span);
                     }
-                    startLength = 0;
-                    startIndex = -1;
-                    emojiCode.setLength(0);
-                    doneEmoji = false;
                 }
-                if (Build.VERSION.SDK_INT < 23 && emojiCount >= 50) {
-                    break;
+            }
+            HashMap<DrawableInfo, EmojiDrawable> drawables = null;
+            for (int a = 0; a < matches.count && emojiCount < maxCount; a++) {
+                if (reused != null && reused[a]) {
+                    continue;
+                }
+                DrawableInfo info = matches.getValue(a);
+                EmojiDrawable drawable = drawables != null ? drawables.get(info) : null;
+                if (drawable == null) {
+                    drawable = new EmojiDrawable(info);
+                    drawable.setBounds(0, 0, drawImgSize, drawImgSize);
+                    if (drawables == null) {
+                        drawables = new HashMap<>();
+                    }
+                    drawables.put(info, drawable);
                 }
+                EmojiSpan span = new EmojiSpan(drawable, DynamicDrawableSpan.ALIGN_BOTTOM, size, fontMetrics);
+                s.setSpan(span, matches.starts[a], matches.ends[a], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                emojiCount++;
             }
         } catch (Exception e) {
             FileLog.e("tmessages", e);
@@ -472,12 +426,17 @@ public class Emoji {
         public EmojiSpan(EmojiDrawable d, int verticalAlignment, int s, Paint.FontMetricsInt original) {
             super(d, verticalAlignment);
             fontMetrics = original;
-            if (original != null) {
-                size = Math.abs(fontMetrics.descent) + Math.abs(fontMetrics.ascent);
-                if (size == 0) {
-                    size = AndroidUtilities.dp(20);
+            size = getSpanSize(original);
+        }
+
+        private static int getSpanSize(Paint.FontMetricsInt fontMetrics) {
+            if (fontMetrics != null) {
+                int size = Math.abs(fontMetrics.descent) + Math.abs(fontMetrics.ascent);
+                if (size != 0) {
+                    return size;
                 }
             }
+            return AndroidUtilities.dp(20);
         }
 
         public void replaceFontMetrics(Paint.FontMetricsInt newMetrics, int newSize) {
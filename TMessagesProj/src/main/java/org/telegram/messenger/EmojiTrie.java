@@ -0,0 +1,147 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import java.util.Arrays;
+
+public class EmojiTrie<T> {
+
+    private final Node root = new Node();
+
+    private static class Node {
+        public char[] chars;
+        public Node[] children;
+        public int count;
+        public Object value;
+
+        public Node getChild(char c) {
+            if (count == 0) {
+                return null;
+            }
+            int index = Arrays.binarySearch(chars, 0, count, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        public Node addChild(char c) {
+            int index = count == 0 ? -1 : Arrays.binarySearch(chars, 0, count, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            if (chars == null) {
+                chars = new char[2];
+                children = new Node[2];
+            } else if (count == chars.length) {
+                chars = Arrays.copyOf(chars, count * 2);
+                children = Arrays.copyOf(children, count * 2);
+            }
+            System.arraycopy(chars, index, chars, index + 1, count - index);
+            System.arraycopy(children, index, children, index + 1, count - index);
+            Node node = new Node();
+            chars[index] = c;
+            children[index] = node;
+            count++;
+            return node;
+        }
+    }
+
+    public static class Matches<T> {
+        public int count;
+        public int[] starts;
+        public int[] ends;
+        private Object[] values;
+        public int emojiCount;
+        public boolean onlyEmoji = true;
+
+        private void add(int start, int end, Object value) {
+            if (starts == null) {
+                starts = new int[4];
+                ends = new int[4];
+                values = new Object[4];
+            } else if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            values[count] = value;
+            count++;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T getValue(int index) {
+            return (T) values[index];
+        }
+
+        public int indexOf(int start) {
+            if (count == 0) {
+                return -1;
+            }
+            return Arrays.binarySearch(starts, 0, count, start);
+        }
+    }
+
+    public void add(String code, T value) {
+        Node node = root;
+        for (int a = 0; a < code.length(); a++) {
+            node = node.addChild(code.charAt(a));
+        }
+        node.value = value;
+    }
+
+    private static boolean isVariationSelector(char c) {
+        return c >= 0xFE00 && c <= 0xFE0F;
+    }
+
+    public Matches<T> find(CharSequence cs) {
+        Matches<T> matches = new Matches<>();
+        int length = cs.length();
+        int i = 0;
+        while (i < length) {
+            char c = cs.charAt(i);
+            Node node = root;
+            Object value = null;
+            int end = -1;
+            if (!isVariationSelector(c)) {
+                for (int a = i; a < length; a++) {
+                    char ch = cs.charAt(a);
+                    if (isVariationSelector(ch)) {
+                        if (end == a) {
+                            end = a + 1;
+                        }
+                        continue;
+                    }
+                    node = node.getChild(ch);
+                    if (node == null) {
+                        break;
+                    }
+                    if (node.value != null) {
+                        value = node.value;
+                        end = a + 1;
+                    }
+                }
+            }
+            if (value != null) {
+                matches.add(i, end, value);
+                matches.emojiCount++;
+                i = end;
+            } else if (c >= 0xD83C && c <= 0xD83E && i + 1 < length && (cs.charAt(i + 1) & 0xFC00) == 0xDC00) {
+                matches.emojiCount++;
+                i += 2;
+            } else {
+                if (c != 0xfe0f) {
+                    matches.onlyEmoji = false;
+                }
+                i++;
+            }
+        }
+        return matches;
+    }
+}
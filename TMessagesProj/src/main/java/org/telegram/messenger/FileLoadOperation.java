@@ -24,9 +24,20 @@ public class FileLoadOperation {
     private static class RequestInfo {
         private int requestToken;
         private int offset;
+        private int generation;
         private TLRPC.TL_upload_file response;
     }
 
+    private static class Range {
+        private int start;
+        private int end;
+
+        private Range(int s, int e) {
+            start = s;
+            end = e;
+        }
+    }
+
     private final static int stateIdle = 0;
     private final static int stateDownloading = 1;
     private final static int stateFailed = 2;
@@ -60,6 +71,8 @@ public class FileLoadOperation {
     private File cacheFileTemp;
     private File cacheFileFinal;
     private File cacheIvTemp;
+    private File cachePrefixTemp;
+    private RandomAccessFile fprefix;
 
     private String ext;
     private RandomAccessFile fileOutputStream;
@@ -68,6 +81,19 @@ public class FileLoadOperation {
     private File tempPath;
     private boolean isForceRequest;
 
+    private int priority = FileLoader.PRIORITY_AUTODOWNLOAD;
+    private int queueType;
+    private long deadline;
+    private long enqueueTime;
+    private volatile boolean paused;
+    private int requestsGeneration;
+
+    private boolean streamingRequested;
+    private boolean isStreaming;
+    private int streamPriorityOffset;
+    private int streamLoadedBytes;
+    private final ArrayList<Range> loadedRanges = new ArrayList<>();
+
     public interface FileLoadOperationDelegate {
         void didFinishLoadingFile(FileLoadOperation operation, File finalFile);
         void didFailedLoadingFile(FileLoadOperation operation, int state);
@@ -158,6 +184,65 @@ public class FileLoadOperation {
         return isForceRequest;
     }
 
+    public void setPriority(final int value) {
+        priority = value;
+        if (state == stateDownloading) {
+            Utilities.stageQueue.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    currentMaxDownloadRequests = getMaxDownloadRequests();
+                    startDownloadRequest();
+                }
+            });
+        }
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setDeadline(long value) {
+        deadline = value;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setEnqueueTime(long value) {
+        enqueueTime = value;
+    }
+
+    public long getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    public void setQueueType(int value) {
+        queueType = value;
+    }
+
+    public int getQueueType() {
+        return queueType;
+    }
+
+    public boolean isFinished() {
+        return state == stateFinished;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    private int getMaxDownloadRequests() {
+        int max = totalBytesCount >= bigFileSizeFrom ? maxDownloadRequestsBig : maxDownloadRequests;
+        if (priority == FileLoader.PRIORITY_PREFETCH) {
+            return 1;
+        } else if (priority == FileLoader.PRIORITY_AUTODOWNLOAD) {
+            return Math.max(1, max / 2);
+        }
+        return max;
+    }
+
     public void setPaths(File store, File temp) {
         storePath = store;
         tempPath = temp;
@@ -207,9 +292,10 @@ public class FileLoadOperation {
             }
         }
         currentDownloadChunkSize = totalBytesCount >= bigFileSizeFrom ? downloadChunkSizeBig : downloadChunkSize;
-        currentMaxDownloadRequests = totalBytesCount >= bigFileSizeFrom ? maxDownloadRequestsBig : maxDownloadRequests;
-        requestInfos = new ArrayList<>(currentMaxDownloadRequests);
-        delayedRequestInfos = new ArrayList<>(currentMaxDownloadRequests - 1);
+        currentMaxDownloadRequests = getMaxDownloadRequests();
+        int maxRequests = totalBytesCount >= bigFileSizeFrom ? maxDownloadRequestsBig : maxDownloadRequests;
+        requestInfos = new ArrayList<>(maxRequests);
+        delayedRequestInfos = new ArrayList<>(maxRequests - 1);
         state = stateDownloading;
 
         cacheFileFinal = new File(storePath, fileNameFinal);
@@ -220,8 +306,13 @@ public class FileLoadOperation {
 
         if (!cacheFileFinal.exists()) {
             cacheFileTemp = new File(tempPath, fileNameTemp);
+            cachePrefixTemp = new File(tempPath, fileNameTemp + ".pt");
             if (cacheFileTemp.exists()) {
                 downloadedBytes = (int) cacheFileTemp.length();
+                if (cachePrefixTemp.exists()) {
+                    //streaming wrote chunks out of order, only the recorded contiguous prefix is valid
+                    downloadedBytes = Math.min(downloadedBytes, readDownloadedPrefix());
+                }
                 nextDownloadOffset = downloadedBytes = downloadedBytes / currentDownloadChunkSize * currentDownloadChunkSize;
             }
 
@@ -246,6 +337,10 @@ public class FileLoadOperation {
             }
             try {
                 fileOutputStream = new RandomAccessFile(cacheFileTemp, "rws");
+                if (cachePrefixTemp.exists()) {
+                    fileOutputStream.setLength(downloadedBytes);
+                    cachePrefixTemp.delete();
+                }
                 if (downloadedBytes != 0) {
                     fileOutputStream.seek(downloadedBytes);
                 }
@@ -267,6 +362,9 @@ public class FileLoadOperation {
                             onFail(true, 0);
                         }
                     } else {
+                        if (streamingRequested) {
+                            initStreaming();
+                        }
                         startDownloadRequest();
                     }
                 }
@@ -282,6 +380,235 @@ public class FileLoadOperation {
         return true;
     }
 
+    public void pause() {
+        if (state != stateDownloading || paused) {
+            return;
+        }
+        paused = true;
+        Utilities.stageQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                if (state != stateDownloading) {
+                    return;
+                }
+                requestsGeneration++;
+                if (requestInfos != null) {
+                    for (int a = 0; a < requestInfos.size(); a++) {
+                        RequestInfo requestInfo = requestInfos.get(a);
+                        if (requestInfo.requestToken != 0) {
+                            ConnectionsManager.getInstance().cancelRequest(requestInfo.requestToken, true);
+                        }
+                    }
+                    requestInfos.clear();
+                }
+                if (delayedRequestInfos != null) {
+                    for (int a = 0; a < delayedRequestInfos.size(); a++) {
+                        RequestInfo requestInfo = delayedRequestInfos.get(a);
+                        if (requestInfo.response != null) {
+                            requestInfo.response.disableFree = false;
+                            requestInfo.response.freeResources();
+                        }
+                    }
+                    delayedRequestInfos.clear();
+                }
+                nextDownloadOffset = downloadedBytes;
+            }
+        });
+    }
+
+    public void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        Utilities.stageQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                startDownloadRequest();
+            }
+        });
+    }
+
+    public void requestStreamOffset(final int offset) {
+        Utilities.stageQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                if (!streamingRequested) {
+                    streamingRequested = true;
+                    if (state == stateDownloading) {
+                        initStreaming();
+                    }
+                }
+                streamPriorityOffset = offset;
+                if (state == stateDownloading) {
+                    startDownloadRequest();
+                }
+            }
+        });
+    }
+
+    public File getCurrentFile() {
+        if (state == stateFinished) {
+            return cacheFileFinal;
+        }
+        return cacheFileTemp;
+    }
+
+    public int waitForStreamData(int offset, long timeout) throws InterruptedException {
+        synchronized (loadedRanges) {
+            int available = getStreamAvailableBytes(offset);
+            if (available == 0) {
+                loadedRanges.wait(timeout);
+                available = getStreamAvailableBytes(offset);
+            }
+            return available;
+        }
+    }
+
+    private int getStreamAvailableBytes(int offset) {
+        if (state == stateFinished) {
+            return Math.max(0, totalBytesCount - bytesCountPadding - offset);
+        } else if (state == stateFailed) {
+            return -1;
+        }
+        for (int a = 0; a < loadedRanges.size(); a++) {
+            Range range = loadedRanges.get(a);
+            if (range.start <= offset && offset < range.end) {
+                return range.end - offset;
+            }
+        }
+        return 0;
+    }
+
+    private void notifyStreamReaders() {
+        synchronized (loadedRanges) {
+            loadedRanges.notifyAll();
+        }
+    }
+
+    private void initStreaming() {
+        synchronized (loadedRanges) {
+            loadedRanges.clear();
+            if (downloadedBytes > 0) {
+                loadedRanges.add(new Range(0, downloadedBytes));
+            }
+            streamLoadedBytes = downloadedBytes;
+        }
+        isStreaming = key == null && totalBytesCount > 0;
+        if (isStreaming && fprefix == null && cachePrefixTemp != null) {
+            try {
+                fprefix = new RandomAccessFile(cachePrefixTemp, "rws");
+                writeDownloadedPrefix();
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+            }
+        }
+        if (isStreaming && !delayedRequestInfos.isEmpty()) {
+            ArrayList<RequestInfo> delayed = new ArrayList<>(delayedRequestInfos);
+            delayedRequestInfos.clear();
+            for (int a = 0; a < delayed.size(); a++) {
+                RequestInfo requestInfo = delayed.get(a);
+                processRequestResult(requestInfo, null);
+                requestInfo.response.disableFree = false;
+                requestInfo.response.freeResources();
+            }
+        }
+        notifyStreamReaders();
+    }
+
+    private void addLoadedRange(int start, int end) {
+        synchronized (loadedRanges) {
+            int index = 0;
+            while (index < loadedRanges.size() && loadedRanges.get(index).end < start) {
+                index++;
+            }
+            Range merged = new Range(start, end);
+            while (index < loadedRanges.size() && loadedRanges.get(index).start <= merged.end) {
+                Range range = loadedRanges.remove(index);
+                merged.start = Math.min(merged.start, range.start);
+                merged.end = Math.max(merged.end, range.end);
+            }
+            loadedRanges.add(index, merged);
+            streamLoadedBytes = 0;
+            for (int a = 0; a < loadedRanges.size(); a++) {
+                Range range = loadedRanges.get(a);
+                streamLoadedBytes += range.end - range.start;
+            }
+            Range first = loadedRanges.get(0);
+            if (first.start == 0 && downloadedBytes != first.end) {
+                downloadedBytes = first.end;
+                writeDownloadedPrefix();
+            }
+            loadedRanges.notifyAll();
+        }
+    }
+
+    private int readDownloadedPrefix() {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(cachePrefixTemp, "r");
+            if (file.length() >= 4) {
+                return file.readInt();
+            }
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        } finally {
+            try {
+                if (file != null) {
+                    file.close();
+                }
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+            }
+        }
+        return 0;
+    }
+
+    private void writeDownloadedPrefix() {
+        if (fprefix == null) {
+            return;
+        }
+        try {
+            fprefix.seek(0);
+            fprefix.writeInt(downloadedBytes);
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        }
+    }
+
+    private boolean isChunkLoadedOrRequested(int offset) {
+        int end = Math.min(offset + currentDownloadChunkSize, totalBytesCount);
+        for (int a = 0; a < loadedRanges.size(); a++) {
+            Range range = loadedRanges.get(a);
+            if (range.start <= offset && end <= range.end) {
+                return true;
+            }
+        }
+        for (int a = 0; a < requestInfos.size(); a++) {
+            if (requestInfos.get(a).offset == offset) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getNextStreamOffset() {
+        int from = streamPriorityOffset / currentDownloadChunkSize * currentDownloadChunkSize;
+        synchronized (loadedRanges) {
+            for (int offset = from; offset < totalBytesCount; offset += currentDownloadChunkSize) {
+                if (!isChunkLoadedOrRequested(offset)) {
+                    return offset;
+                }
+            }
+            for (int offset = 0; offset < from; offset += currentDownloadChunkSize) {
+                if (!isChunkLoadedOrRequested(offset)) {
+                    return offset;
+                }
+            }
+        }
+        return -1;
+    }
+
     public void cancel() {
         Utilities.stageQueue.postRunnable(new Runnable() {
             @Override
@@ -305,6 +632,14 @@ public class FileLoadOperation {
     private void cleanup() {
         try {
             if (fileOutputStream != null) {
+                if (isStreaming && state != stateFinished) {
+                    try {
+                        fileOutputStream.setLength(downloadedBytes / currentDownloadChunkSize * currentDownloadChunkSize);
+                        closePrefixFile(true);
+                    } catch (Exception e) {
+                        FileLog.e("tmessages", e);
+                    }
+                }
                 try {
                     fileOutputStream.getChannel().close();
                 } catch (Exception e) {
@@ -325,6 +660,7 @@ public class FileLoadOperation {
         } catch (Exception e) {
             FileLog.e("tmessages", e);
         }
+        closePrefixFile(state == stateFinished);
         if (delayedRequestInfos != null) {
             for (int a = 0; a < delayedRequestInfos.size(); a++) {
                 RequestInfo requestInfo = delayedRequestInfos.get(a);
@@ -337,6 +673,20 @@ public class FileLoadOperation {
         }
     }
 
+    private void closePrefixFile(boolean delete) {
+        try {
+            if (fprefix != null) {
+                fprefix.close();
+                fprefix = null;
+            }
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        }
+        if (delete && cachePrefixTemp != null) {
+            cachePrefixTemp.delete();
+        }
+    }
+
     private void onFinishLoadingFile() throws Exception {
         if (state != stateDownloading) {
             return;
@@ -374,11 +724,46 @@ public class FileLoadOperation {
         if (BuildVars.DEBUG_VERSION) {
             FileLog.e("tmessages", "finished downloading file to " + cacheFileFinal);
         }
+        notifyStreamReaders();
         delegate.didFinishLoadingFile(FileLoadOperation.this, cacheFileFinal);
     }
 
     private void processRequestResult(RequestInfo requestInfo, TLRPC.TL_error error) {
+        if (requestInfo.generation != requestsGeneration) {
+            return;
+        }
         requestInfos.remove(requestInfo);
+        if (error == null && isStreaming) {
+            try {
+                int currentBytesSize = requestInfo.response.bytes != null ? requestInfo.response.bytes.limit() : 0;
+                if (currentBytesSize < currentDownloadChunkSize && requestInfo.offset + currentBytesSize < totalBytesCount) {
+                    //a short answer marks the real end of the file, ranges before it may still be missing
+                    synchronized (loadedRanges) {
+                        totalBytesCount = requestInfo.offset + currentBytesSize;
+                    }
+                }
+                if (currentBytesSize != 0) {
+                    if (fileOutputStream != null) {
+                        fileOutputStream.getChannel().write(requestInfo.response.bytes.buffer, requestInfo.offset);
+                    }
+                    addLoadedRange(requestInfo.offset, requestInfo.offset + currentBytesSize);
+                } else {
+                    notifyStreamReaders();
+                }
+                if (state == stateDownloading && totalBytesCount > 0) {
+                    delegate.didChangedLoadProgress(FileLoadOperation.this, Math.min(1.0f, (float) streamLoadedBytes / (float) totalBytesCount));
+                }
+                if (streamLoadedBytes >= totalBytesCount) {
+                    onFinishLoadingFile();
+                } else {
+                    startDownloadRequest();
+                }
+            } catch (Exception e) {
+                onFail(false, 0);
+                FileLog.e("tmessages", e);
+            }
+            return;
+        }
         if (error == null) {
             try {
                 if (downloadedBytes != requestInfo.offset) {
@@ -411,6 +796,9 @@ public class FileLoadOperation {
                     fiv.seek(0);
                     fiv.write(iv);
                 }
+                if (streamingRequested) {
+                    addLoadedRange(downloadedBytes - currentBytesSize, downloadedBytes);
+                }
                 if (totalBytesCount > 0 && state == stateDownloading) {
                     delegate.didChangedLoadProgress(FileLoadOperation.this, Math.min(1.0f, (float) downloadedBytes / (float) totalBytesCount));
                 }
@@ -478,6 +866,7 @@ public class FileLoadOperation {
     private void onFail(boolean thread, final int reason) {
         cleanup();
         state = stateFailed;
+        notifyStreamReaders();
         if (thread) {
             Utilities.stageQueue.postRunnable(new Runnable() {
                 @Override
@@ -491,7 +880,7 @@ public class FileLoadOperation {
     }
 
     private void startDownloadRequest() {
-        if (state != stateDownloading || totalBytesCount > 0 && nextDownloadOffset >= totalBytesCount || requestInfos.size() + delayedRequestInfos.size() >= currentMaxDownloadRequests) {
+        if (state != stateDownloading || paused || !isStreaming && totalBytesCount > 0 && nextDownloadOffset >= totalBytesCount || requestInfos.size() + delayedRequestInfos.size() >= currentMaxDownloadRequests) {
             return;
         }
         int count = 1;
@@ -500,19 +889,29 @@ public class FileLoadOperation {
         }
 
         for (int a = 0; a < count; a++) {
-            if (totalBytesCount > 0 && nextDownloadOffset >= totalBytesCount) {
-                break;
+            int offset;
+            if (isStreaming) {
+                offset = getNextStreamOffset();
+                if (offset < 0) {
+                    break;
+                }
+            } else {
+                if (totalBytesCount > 0 && nextDownloadOffset >= totalBytesCount) {
+                    break;
+                }
+                offset = nextDownloadOffset;
+                nextDownloadOffset += currentDownloadChunkSize;
             }
-            boolean isLast = totalBytesCount <= 0 || a == count - 1 || totalBytesCount > 0 && nextDownloadOffset + currentDownloadChunkSize >= totalBytesCount;
+            boolean isLast = totalBytesCount <= 0 || a == count - 1 || totalBytesCount > 0 && offset + currentDownloadChunkSize >= totalBytesCount;
             TLRPC.TL_upload_getFile req = new TLRPC.TL_upload_getFile();
             req.location = location;
-            req.offset = nextDownloadOffset;
+            req.offset = offset;
             req.limit = currentDownloadChunkSize;
-            nextDownloadOffset += currentDownloadChunkSize;
 
             final RequestInfo requestInfo = new RequestInfo();
             requestInfos.add(requestInfo);
             requestInfo.offset = req.offset;
+            requestInfo.generation = requestsGeneration;
             requestInfo.requestToken = ConnectionsManager.getInstance().sendRequest(req, new RequestDelegate() {
                 @Override
                 public void run(TLObject response, TLRPC.TL_error error) {
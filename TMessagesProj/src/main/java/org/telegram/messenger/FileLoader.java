@@ -17,6 +17,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class FileLoader {
 
@@ -35,14 +37,24 @@ public class FileLoader {
     public static final int MEDIA_DIR_DOCUMENT = 3;
     public static final int MEDIA_DIR_CACHE = 4;
 
+    public static final int PRIORITY_PREFETCH = 0;
+    public static final int PRIORITY_AUTODOWNLOAD = 1;
+    public static final int PRIORITY_USER = 2;
+    public static final int PRIORITY_VISIBLE = 3;
+    private static final int PRIORITIES_COUNT = 4;
+
+    private static final int QUEUE_TYPE_FILE = 0;
+    private static final int QUEUE_TYPE_AUDIO = 1;
+    private static final int QUEUE_TYPE_PHOTO = 2;
+    private static final int QUEUE_TYPES_COUNT = 3;
+
     private HashMap<Integer, File> mediaDirs = null;
     private volatile DispatchQueue fileLoaderQueue = new DispatchQueue("fileUploadQueue");
 
     private LinkedList<FileUploadOperation> uploadOperationQueue = new LinkedList<>();
     private LinkedList<FileUploadOperation> uploadSmallOperationQueue = new LinkedList<>();
-    private LinkedList<FileLoadOperation> loadOperationQueue = new LinkedList<>();
-    private LinkedList<FileLoadOperation> audioLoadOperationQueue = new LinkedList<>();
-    private LinkedList<FileLoadOperation> photoLoadOperationQueue = new LinkedList<>();
+    private ArrayList<FileLoadOperation> loadOperationQueue = new ArrayList<>();
+    private ArrayList<FileLoadOperation> activeLoadOperations = new ArrayList<>();
     private ConcurrentHashMap<String, FileUploadOperation> uploadOperationPaths = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, FileUploadOperation> uploadOperationPathsEnc = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, FileLoadOperation> loadOperationPaths = new ConcurrentHashMap<>();
@@ -50,9 +62,10 @@ public class FileLoader {
 
     private FileLoaderDelegate delegate = null;
 
-    private int currentLoadOperationsCount = 0;
-    private int currentAudioLoadOperationsCount = 0;
-    private int currentPhotoLoadOperationsCount = 0;
+    private int[] currentLoadOperationsCount = new int[QUEUE_TYPES_COUNT];
+    private AtomicIntegerArray queueDepths = new AtomicIntegerArray(PRIORITIES_COUNT);
+    private AtomicLongArray totalWaitTime = new AtomicLongArray(PRIORITIES_COUNT);
+    private AtomicIntegerArray totalWaitCount = new AtomicIntegerArray(PRIORITIES_COUNT);
     private int currentUploadOperationsCount = 0;
     private int currentUploadSmallOperationsCount = 0;
 
@@ -297,18 +310,8 @@ public class FileLoader {
                 }
                 FileLoadOperation operation = loadOperationPaths.remove(fileName);
                 if (operation != null) {
-                    if (MessageObject.isVoiceDocument(document)) {
-                        if (!audioLoadOperationQueue.remove(operation)) {
-                            currentAudioLoadOperationsCount--;
-                        }
-                    } else if (location != null) {
-                        if (!photoLoadOperationQueue.remove(operation)) {
-                            currentPhotoLoadOperationsCount--;
-                        }
-                    } else {
-                        if (!loadOperationQueue.remove(operation)) {
-                            currentLoadOperationsCount--;
-                        }
+                    if (!removeFromLoadQueue(operation)) {
+                        removeFromActiveLoads(operation);
                     }
                     operation.cancel();
                 }
@@ -335,243 +338,305 @@ public class FileLoader {
     }
 
     public void loadFile(TLRPC.PhotoSize photo, String ext, boolean cacheOnly) {
-        loadFile(null, photo.location, ext, photo.size, false, cacheOnly || (photo != null && photo.size == 0 || photo.location.key != null));
+        //photo sizes were never forced loads, autodownload and wallpapers keep their single slot and request count
+        loadFile(null, photo.location, ext, photo.size, PRIORITY_AUTODOWNLOAD, 0, cacheOnly || (photo != null && photo.size == 0 || photo.location.key != null));
     }
 
     public void loadFile(TLRPC.Document document, boolean force, boolean cacheOnly) {
-        loadFile(document, null, null, 0, force, cacheOnly || document != null && document.key != null);
+        loadFile(document, force ? PRIORITY_USER : PRIORITY_AUTODOWNLOAD, 0, cacheOnly);
+    }
+
+    public void loadFile(TLRPC.Document document, int priority, long deadline, boolean cacheOnly) {
+        loadFile(document, null, null, 0, priority, deadline, cacheOnly || document != null && document.key != null);
     }
 
     public void loadFile(TLRPC.FileLocation location, String ext, int size, boolean cacheOnly) {
-        loadFile(null, location, ext, size, true, cacheOnly || size == 0 || (location != null && location.key != null));
+        loadFile(null, location, ext, size, PRIORITY_VISIBLE, 0, cacheOnly || size == 0 || (location != null && location.key != null));
+    }
+
+    public int getLoadQueueDepth(int priority) {
+        return queueDepths.get(priority);
+    }
+
+    public long getAverageLoadWaitTime(int priority) {
+        int count = totalWaitCount.get(priority);
+        return count != 0 ? totalWaitTime.get(priority) / count : 0;
+    }
+
+    private static int getMaxLoadOperations(int priority) {
+        return priority >= PRIORITY_USER ? 3 : 1;
+    }
+
+    private static long getQueueDeadline(FileLoadOperation operation) {
+        return operation.getDeadline() != 0 ? operation.getDeadline() : Long.MAX_VALUE;
+    }
+
+    private void addToLoadQueue(FileLoadOperation operation, boolean toFront) {
+        int priority = operation.getPriority();
+        long deadline = getQueueDeadline(operation);
+        int index = loadOperationQueue.size();
+        for (int a = 0; a < loadOperationQueue.size(); a++) {
+            FileLoadOperation queued = loadOperationQueue.get(a);
+            int queuedPriority = queued.getPriority();
+            if (queuedPriority < priority) {
+                index = a;
+                break;
+            } else if (queuedPriority == priority) {
+                //inside a priority the earliest deadline goes first, loads without one keep their order
+                long queuedDeadline = getQueueDeadline(queued);
+                if (deadline < queuedDeadline || toFront && deadline == queuedDeadline) {
+                    index = a;
+                    break;
+                }
+            }
+        }
+        operation.setEnqueueTime(System.currentTimeMillis());
+        loadOperationQueue.add(index, operation);
+        queueDepths.incrementAndGet(priority);
+    }
+
+    private boolean removeFromLoadQueue(FileLoadOperation operation) {
+        if (loadOperationQueue.remove(operation)) {
+            queueDepths.decrementAndGet(operation.getPriority());
+            return true;
+        }
+        return false;
+    }
+
+    private boolean removeFromActiveLoads(FileLoadOperation operation) {
+        if (activeLoadOperations.remove(operation)) {
+            currentLoadOperationsCount[operation.getQueueType()]--;
+            return true;
+        }
+        return false;
+    }
+
+    private void startLoadOperation(FileLoadOperation operation) {
+        int priority = operation.getPriority();
+        long waitTime = System.currentTimeMillis() - operation.getEnqueueTime();
+        totalWaitTime.addAndGet(priority, waitTime);
+        totalWaitCount.incrementAndGet(priority);
+        if (BuildVars.DEBUG_VERSION) {
+            FileLog.d("tmessages", "start " + operation.getFileName() + " priority " + priority + " after " + waitTime + " ms, " + queueDepths.get(priority) + " more queued");
+        }
+        if (operation.isPaused()) {
+            operation.resume();
+        } else if (!operation.start()) {
+            return;
+        }
+        activeLoadOperations.add(operation);
+        currentLoadOperationsCount[operation.getQueueType()]++;
+    }
+
+    private boolean preemptLoadOperation(FileLoadOperation operation) {
+        if (operation.getPriority() < PRIORITY_USER) {
+            return false;
+        }
+        FileLoadOperation victim = null;
+        for (int a = activeLoadOperations.size() - 1; a >= 0; a--) {
+            FileLoadOperation active = activeLoadOperations.get(a);
+            if (active.getQueueType() == operation.getQueueType() && active.getPriority() <= PRIORITY_AUTODOWNLOAD && (victim == null || active.getPriority() < victim.getPriority())) {
+                victim = active;
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        if (BuildVars.DEBUG_VERSION) {
+            FileLog.d("tmessages", "pause " + victim.getFileName() + " in favour of " + operation.getFileName());
+        }
+        removeFromActiveLoads(victim);
+        victim.pause();
+        addToLoadQueue(victim, true);
+        return true;
+    }
+
+    private void processLoadQueue() {
+        boolean[] blocked = new boolean[QUEUE_TYPES_COUNT];
+        for (int a = 0; a < loadOperationQueue.size(); a++) {
+            FileLoadOperation operation = loadOperationQueue.get(a);
+            int queueType = operation.getQueueType();
+            if (blocked[queueType]) {
+                continue;
+            }
+            if (currentLoadOperationsCount[queueType] < getMaxLoadOperations(operation.getPriority()) || preemptLoadOperation(operation)) {
+                removeFromLoadQueue(operation);
+                startLoadOperation(operation);
+                a = -1;
+            } else {
+                blocked[queueType] = true;
+            }
+        }
     }
 
-    private void loadFile(final TLRPC.Document document, final TLRPC.FileLocation location, final String locationExt, final int locationSize, final boolean force, final boolean cacheOnly) {
+    private void loadFile(final TLRPC.Document document, final TLRPC.FileLocation location, final String locationExt, final int locationSize, final int priority, final long deadline, final boolean cacheOnly) {
         fileLoaderQueue.postRunnable(new Runnable() {
             @Override
             public void run() {
-                String fileName = null;
-                if (location != null) {
-                    fileName = getAttachFileName(location, locationExt);
-                } else if (document != null) {
-                    fileName = getAttachFileName(document);
-                }
-                if (fileName == null || fileName.contains("" + Integer.MIN_VALUE)) {
-                    return;
-                }
+                loadFileInternal(document, location, locationExt, locationSize, priority, deadline, cacheOnly);
+            }
+        });
+    }
 
-                FileLoadOperation operation;
-                operation = loadOperationPaths.get(fileName);
-                if (operation != null) {
-                    if (force) {
-                        operation.setForceRequest(true);
-                        LinkedList<FileLoadOperation> downloadQueue;
-                        if (MessageObject.isVoiceDocument(document)) {
-                            downloadQueue = audioLoadOperationQueue;
-                        } else if (location != null) {
-                            downloadQueue = photoLoadOperationQueue;
-                        } else {
-                            downloadQueue = loadOperationQueue;
-                        }
-                        if (downloadQueue != null) {
-                            int index = downloadQueue.indexOf(operation);
-                            if (index > 0) {
-                                downloadQueue.remove(index);
-                                downloadQueue.add(0, operation);
-                            }
-                        }
-                    }
-                    return;
+    public FileLoadOperation loadStreamFile(final TLRPC.Document document, final int offset) {
+        final Semaphore semaphore = new Semaphore(0);
+        final FileLoadOperation[] result = new FileLoadOperation[1];
+        fileLoaderQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = loadFileInternal(document, null, null, 0, PRIORITY_VISIBLE, 0, document.key != null);
+                if (result[0] != null) {
+                    result[0].requestStreamOffset(offset);
                 }
+                semaphore.release();
+            }
+        });
+        try {
+            semaphore.acquire();
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        }
+        return result[0];
+    }
 
-                File tempDir = getDirectory(MEDIA_DIR_CACHE);
-                File storeDir = tempDir;
-                int type = MEDIA_DIR_CACHE;
+    private FileLoadOperation loadFileInternal(final TLRPC.Document document, final TLRPC.FileLocation location, final String locationExt, final int locationSize, final int priority, final long deadline, final boolean cacheOnly) {
+        String fileName = null;
+        if (location != null) {
+            fileName = getAttachFileName(location, locationExt);
+        } else if (document != null) {
+            fileName = getAttachFileName(document);
+        }
+        if (fileName == null || fileName.contains("" + Integer.MIN_VALUE)) {
+            return null;
+        }
 
-                if (location != null) {
-                    operation = new FileLoadOperation(location, locationExt, locationSize);
-                    type = MEDIA_DIR_IMAGE;
-                } else if (document != null) {
-                    operation = new FileLoadOperation(document);
-                    if (MessageObject.isVoiceDocument(document)) {
-                        type = MEDIA_DIR_AUDIO;
-                    } else if (MessageObject.isVideoDocument(document)) {
-                        type = MEDIA_DIR_VIDEO;
-                    } else {
-                        type = MEDIA_DIR_DOCUMENT;
-                    }
+        FileLoadOperation operation;
+        operation = loadOperationPaths.get(fileName);
+        if (operation != null) {
+            boolean force = priority >= PRIORITY_USER;
+            boolean earlierDeadline = deadline != 0 && deadline < getQueueDeadline(operation);
+            if (priority > operation.getPriority() || force && priority == operation.getPriority() || earlierDeadline && priority >= operation.getPriority()) {
+                boolean queued = removeFromLoadQueue(operation);
+                if (force) {
+                    operation.setForceRequest(true);
+                }
+                if (earlierDeadline) {
+                    operation.setDeadline(deadline);
+                }
+                operation.setPriority(priority);
+                if (queued) {
+                    //forced loads jump to the front of their priority as they did with the per-type queues
+                    addToLoadQueue(operation, force);
+                    processLoadQueue();
                 }
-                if (!cacheOnly) {
-                    storeDir = getDirectory(type);
-                }
-                operation.setPaths(storeDir, tempDir);
+            }
+            return operation;
+        }
 
-                final String finalFileName = fileName;
-                final int finalType = type;
-                FileLoadOperation.FileLoadOperationDelegate fileLoadOperationDelegate = new FileLoadOperation.FileLoadOperationDelegate() {
-                    @Override
-                    public void didFinishLoadingFile(FileLoadOperation operation, File finalFile) {
-                        if (delegate != null) {
-                            delegate.fileDidLoaded(finalFileName, finalFile, finalType);
-                        }
-                        checkDownloadQueue(document, location, finalFileName);
-                    }
+        File tempDir = getDirectory(MEDIA_DIR_CACHE);
+        File storeDir = tempDir;
+        int type = MEDIA_DIR_CACHE;
+
+        if (location != null) {
+            operation = new FileLoadOperation(location, locationExt, locationSize);
+            type = MEDIA_DIR_IMAGE;
+        } else if (document != null) {
+            operation = new FileLoadOperation(document);
+            if (MessageObject.isVoiceDocument(document)) {
+                type = MEDIA_DIR_AUDIO;
+            } else if (MessageObject.isVideoDocument(document)) {
+                type = MEDIA_DIR_VIDEO;
+            } else {
+                type = MEDIA_DIR_DOCUMENT;
+            }
+        }
+        if (!cacheOnly) {
+            storeDir = getDirectory(type);
+        }
+        operation.setPaths(storeDir, tempDir);
 
-                    @Override
-                    public void didFailedLoadingFile(FileLoadOperation operation, int reason) {
-                        checkDownloadQueue(document, location, finalFileName);
-                        if (delegate != null) {
-                            delegate.fileDidFailedLoad(finalFileName, reason);
-                        }
-                    }
+        final String finalFileName = fileName;
+        final int finalType = type;
+        FileLoadOperation.FileLoadOperationDelegate fileLoadOperationDelegate = new FileLoadOperation.FileLoadOperationDelegate() {
+            @Override
+            public void didFinishLoadingFile(FileLoadOperation operation, File finalFile) {
+                if (delegate != null) {
+                    delegate.fileDidLoaded(finalFileName, finalFile, finalType);
+                }
+                checkDownloadQueue(finalFileName);
+            }
 
-                    @Override
-                    public void didChangedLoadProgress(FileLoadOperation operation, float progress) {
-                        if (delegate != null) {
-                            delegate.fileLoadProgressChanged(finalFileName, progress);
-                        }
-                    }
-                };
-                operation.setDelegate(fileLoadOperationDelegate);
+            @Override
+            public void didFailedLoadingFile(FileLoadOperation operation, int reason) {
+                checkDownloadQueue(finalFileName);
+                if (delegate != null) {
+                    delegate.fileDidFailedLoad(finalFileName, reason);
+                }
+            }
 
-                /*if (location != null) {
-                    operation = new FileLoadOperation(location.dc_id, location.volume_id, location.volume_id, location.secret, location.local_id, location.key, location.iv, locationExt != null ? locationExt : "jpg", 0, locationSize, !cacheOnly ? getDirectory(type) : tempDir, tempDir, fileLoadOperationDelegate);
-                } else if (document != null) {
-                    String ext = FileLoader.getDocumentFileName(document);
-                    int idx;
-                    if (ext == null || (idx = ext.lastIndexOf('.')) == -1) {
-                        ext = "";
-                    } else {
-                        ext = ext.substring(idx + 1);
-                    }
-                    if (ext.length() <= 0) {
-                        if (document.mime_type != null) {
-                            switch (document.mime_type) {
-                                case "video/mp4":
-                                    ext = "mp4";
-                                    break;
-                                case "audio/ogg":
-                                    ext = "ogg";
-                                    break;
-                                default:
-                                    ext = "";
-                                    break;
-                            }
-                        } else {
+            @Override
+            public void didChangedLoadProgress(FileLoadOperation operation, float progress) {
+                if (delegate != null) {
+                    delegate.fileLoadProgressChanged(finalFileName, progress);
+                }
+            }
+        };
+        operation.setDelegate(fileLoadOperationDelegate);
+
+        /*if (location != null) {
+            operation = new FileLoadOperation(location.dc_id, location.volume_id, location.volume_id, location.secret, location.local_id, location.key, location.iv, locationExt != null ? locationExt : "jpg", 0, locationSize, !cacheOnly ? getDirectory(type) : tempDir, tempDir, fileLoadOperationDelegate);
+        } else if (document != null) {
+            String ext = FileLoader.getDocumentFileName(document);
+            int idx;
+            if (ext == null || (idx = ext.lastIndexOf('.')) == -1) {
+                ext = "";
+            } else {
+                ext = ext.substring(idx + 1);
+            }
+            if (ext.length() <= 0) {
+                if (document.mime_type != null) {
+                    switch (document.mime_type) {
+                        case "video/mp4":
+                            ext = "mp4";
+                            break;
+                        case "audio/ogg":
+                            ext = "ogg";
+                            break;
+                        default:
                             ext = "";
-                        }
-                    }
-                    operation = new FileLoadOperation(document.dc_id, document.id, 0, document.access_hash, 0, document.key, document.iv, ext, document.version, document.size, !cacheOnly ? getDirectory(type) : tempDir, tempDir, fileLoadOperationDelegate);
-                }*/
-                loadOperationPaths.put(fileName, operation);
-                int maxCount = force ? 3 : 1;
-                if (type == MEDIA_DIR_AUDIO) {
-                    if (currentAudioLoadOperationsCount < maxCount) {
-                        if (operation.start()) {
-                            currentAudioLoadOperationsCount++;
-                        }
-                    } else {
-                        if (force) {
-                            audioLoadOperationQueue.add(0, operation);
-                        } else {
-                            audioLoadOperationQueue.add(operation);
-                        }
-                    }
-                } else if (location != null) {
-                    if (currentPhotoLoadOperationsCount < maxCount) {
-                        if (operation.start()) {
-                            currentPhotoLoadOperationsCount++;
-                        }
-                    } else {
-                        if (force) {
-                            photoLoadOperationQueue.add(0, operation);
-                        } else {
-                            photoLoadOperationQueue.add(operation);
-                        }
+                            break;
                     }
                 } else {
-                    if (currentLoadOperationsCount < maxCount) {
-                        if (operation.start()) {
-                            currentLoadOperationsCount++;
-                        }
-                    } else {
-                        if (force) {
-                            loadOperationQueue.add(0, operation);
-                        } else {
-                            loadOperationQueue.add(operation);
-                        }
-                    }
+                    ext = "";
                 }
             }
-        });
+            operation = new FileLoadOperation(document.dc_id, document.id, 0, document.access_hash, 0, document.key, document.iv, ext, document.version, document.size, !cacheOnly ? getDirectory(type) : tempDir, tempDir, fileLoadOperationDelegate);
+        }*/
+        loadOperationPaths.put(fileName, operation);
+        if (type == MEDIA_DIR_AUDIO) {
+            operation.setQueueType(QUEUE_TYPE_AUDIO);
+        } else if (location != null) {
+            operation.setQueueType(QUEUE_TYPE_PHOTO);
+        } else {
+            operation.setQueueType(QUEUE_TYPE_FILE);
+        }
+        operation.setForceRequest(priority >= PRIORITY_USER);
+        operation.setPriority(priority);
+        operation.setDeadline(deadline);
+        addToLoadQueue(operation, priority >= PRIORITY_USER);
+        processLoadQueue();
+        return operation;
     }
 
-    private void checkDownloadQueue(final TLRPC.Document document, final TLRPC.FileLocation location, final String arg1) {
+    private void checkDownloadQueue(final String arg1) {
         fileLoaderQueue.postRunnable(new Runnable() {
             @Override
             public void run() {
                 FileLoadOperation operation = loadOperationPaths.remove(arg1);
-                if (MessageObject.isVoiceDocument(document)) {
-                    if (operation != null) {
-                        if (operation.wasStarted()) {
-                            currentAudioLoadOperationsCount--;
-                        } else {
-                            audioLoadOperationQueue.remove(operation);
-                        }
-                    }
-                    while (!audioLoadOperationQueue.isEmpty()) {
-                        operation = audioLoadOperationQueue.get(0);
-                        int maxCount = operation.isForceRequest() ? 3 : 1;
-                        if (currentAudioLoadOperationsCount < maxCount) {
-                            operation = audioLoadOperationQueue.poll();
-                            if (operation != null && operation.start()) {
-                                currentAudioLoadOperationsCount++;
-                            }
-                        } else {
-                            break;
-                        }
-                    }
-                } else if (location != null) {
-                    if (operation != null) {
-                        if (operation.wasStarted()) {
-                            currentPhotoLoadOperationsCount--;
-                        } else {
-                            photoLoadOperationQueue.remove(operation);
-                        }
-                    }
-                    while (!photoLoadOperationQueue.isEmpty()) {
-                        operation = photoLoadOperationQueue.get(0);
-                        int maxCount = operation.isForceRequest() ? 3 : 1;
-                        if (currentPhotoLoadOperationsCount < maxCount) {
-                            operation = photoLoadOperationQueue.poll();
-                            if (operation != null && operation.start()) {
-                                currentPhotoLoadOperationsCount++;
-                            }
-                        } else {
-                            break;
-                        }
-                    }
-                } else {
-                    if (operation != null) {
-                        if (operation.wasStarted()) {
-                            currentLoadOperationsCount--;
-                        } else {
-                            loadOperationQueue.remove(operation);
-                        }
-                    }
-                    while (!loadOperationQueue.isEmpty()) {
-                        operation = loadOperationQueue.get(0);
-                        int maxCount = operation.isForceRequest() ? 3 : 1;
-                        if (currentLoadOperationsCount < maxCount) {
-                            operation = loadOperationQueue.poll();
-                            if (operation != null && operation.start()) {
-                                currentLoadOperationsCount++;
-                            }
-                        } else {
-                            break;
-                        }
-                    }
+                if (operation != null && !removeFromActiveLoads(operation)) {
+                    removeFromLoadQueue(operation);
                 }
+                processLoadQueue();
             }
         });
     }
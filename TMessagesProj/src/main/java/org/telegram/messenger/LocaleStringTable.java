@@ -0,0 +1,280 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class LocaleStringTable {
+
+    private final static int tableMagic = 0x4c535442;
+    private final static int tableVersion = 3;
+    private final static int headerSize = 4 * 2 + 8 * 2 + 4 * 6;
+    private final static int entrySize = 4 * 4;
+
+    //entries are addressed by the index part of their R.string id, which changes between builds
+    private final static int resourceIndexMask = 0xffff;
+
+    private final ByteBuffer buffer;
+    private final int resourceType;
+    private final int slotsCount;
+    private final int entriesStart;
+    private final int charsStart;
+    private final String[] strings;
+    private volatile HashMap<String, Integer> keyIndexes;
+
+    private LocaleStringTable(ByteBuffer buffer) {
+        this.buffer = buffer;
+        resourceType = buffer.getInt(4 * 2 + 8 * 2 + 4);
+        int count = buffer.getInt(4 * 2 + 8 * 2 + 4 * 3);
+        int charsCount = buffer.getInt(4 * 2 + 8 * 2 + 4 * 4);
+        slotsCount = buffer.getInt(4 * 2 + 8 * 2 + 4 * 5);
+        strings = new String[count];
+        entriesStart = headerSize + slotsCount * 4;
+        charsStart = entriesStart + count * entrySize;
+        for (int a = 0; a < slotsCount; a++) {
+            int index = buffer.getInt(headerSize + a * 4);
+            if (index < -1 || index >= count) {
+                throw new IllegalArgumentException("broken locale table slot " + a);
+            }
+        }
+        for (int a = 0; a < count; a++) {
+            int position = entriesStart + a * entrySize;
+            int keyOffset = buffer.getInt(position);
+            int keyLength = buffer.getInt(position + 4);
+            int valueOffset = buffer.getInt(position + 8);
+            int valueLength = buffer.getInt(position + 12);
+            if (keyOffset < 0 || keyLength < 0 || keyOffset > charsCount - keyLength || valueOffset < 0 || valueLength < 0 || valueOffset > charsCount - valueLength) {
+                throw new IllegalArgumentException("broken locale table entry " + a);
+            }
+        }
+    }
+
+    private String readChars(int position, int length) {
+        char[] chars = new char[length];
+        for (int a = 0; a < length; a++) {
+            chars[a] = buffer.getChar(position + a * 2);
+        }
+        return new String(chars);
+    }
+
+    private boolean keyEquals(int index, String key) {
+        int position = entriesStart + index * entrySize;
+        int length = buffer.getInt(position + 4);
+        if (length != key.length()) {
+            return false;
+        }
+        position = charsStart + buffer.getInt(position) * 2;
+        for (int a = 0; a < length; a++) {
+            if (buffer.getChar(position + a * 2) != key.charAt(a)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findIndex(String key, int res) {
+        if (res >>> 16 == resourceType) {
+            int slot = res & resourceIndexMask;
+            if (slot < slotsCount) {
+                int index = buffer.getInt(headerSize + slot * 4);
+                if (index >= 0 && keyEquals(index, key)) {
+                    return index;
+                }
+            }
+        }
+        //the key is not the resource name (or has no resource at all), look it up by name
+        HashMap<String, Integer> indexes = keyIndexes;
+        if (indexes == null) {
+            synchronized (this) {
+                indexes = keyIndexes;
+                if (indexes == null) {
+                    indexes = new HashMap<>(strings.length);
+                    for (int a = 0; a < strings.length; a++) {
+                        int position = entriesStart + a * entrySize;
+                        indexes.put(readChars(charsStart + buffer.getInt(position) * 2, buffer.getInt(position + 4)), a);
+                    }
+                    keyIndexes = indexes;
+                }
+            }
+        }
+        Integer index = indexes.get(key);
+        return index != null ? index : -1;
+    }
+
+    public String getString(String key, int res) {
+        if (key == null) {
+            return null;
+        }
+        int index = findIndex(key, res);
+        if (index < 0) {
+            return null;
+        }
+        String value = strings[index];
+        if (value == null) {
+            int position = entriesStart + index * entrySize;
+            value = readChars(charsStart + buffer.getInt(position + 8) * 2, buffer.getInt(position + 12));
+            strings[index] = value;
+        }
+        return value;
+    }
+
+    private static HashMap<String, Integer> getResourceIds() {
+        HashMap<String, Integer> ids = new HashMap<>();
+        try {
+            Field[] fields = R.string.class.getFields();
+            for (Field field : fields) {
+                ids.put(field.getName(), field.getInt(null));
+            }
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        }
+        return ids;
+    }
+
+    private static File getTableFile(File sourceFile) {
+        return new File(sourceFile.getPath() + ".table");
+    }
+
+    public static LocaleStringTable open(File sourceFile) {
+        File tableFile = getTableFile(sourceFile);
+        if (!tableFile.exists()) {
+            return null;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(tableFile, "r");
+            ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.limit() < headerSize || buffer.getInt(0) != tableMagic || buffer.getInt(4) != tableVersion ||
+                    buffer.getLong(8) != sourceFile.length() || buffer.getLong(16) != sourceFile.lastModified() ||
+                    buffer.getInt(4 * 2 + 8 * 2) != BuildVars.BUILD_VERSION || buffer.getInt(4 * 2 + 8 * 2 + 4 * 2) != R.string.LanguageName) {
+                return null;
+            }
+            long count = buffer.getInt(4 * 2 + 8 * 2 + 4 * 3);
+            long charsCount = buffer.getInt(4 * 2 + 8 * 2 + 4 * 4);
+            long slotsCount = buffer.getInt(4 * 2 + 8 * 2 + 4 * 5);
+            if (count < 0 || charsCount < 0 || slotsCount < 0 || buffer.limit() != headerSize + slotsCount * 4 + count * entrySize + charsCount * 2) {
+                FileLog.e("tmessages", "locale table " + tableFile + " has wrong size " + buffer.limit());
+                return null;
+            }
+            return new LocaleStringTable(buffer);
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        } finally {
+            try {
+                if (file != null) {
+                    file.close();
+                }
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+            }
+        }
+        return null;
+    }
+
+    public static LocaleStringTable compile(HashMap<String, String> stringMap, File sourceFile) {
+        ArrayList<String> keys = new ArrayList<>(stringMap.keySet());
+        int count = keys.size();
+        int charsCount = 0;
+        for (int a = 0; a < count; a++) {
+            String key = keys.get(a);
+            charsCount += key.length() + stringMap.get(key).length();
+        }
+
+        int resourceType = R.string.LanguageName >>> 16;
+        HashMap<String, Integer> resourceIds = getResourceIds();
+        int[] slots = new int[count];
+        int slotsCount = 0;
+        for (int a = 0; a < count; a++) {
+            Integer res = resourceIds.get(keys.get(a));
+            if (res != null && res >>> 16 == resourceType) {
+                slots[a] = res & resourceIndexMask;
+                slotsCount = Math.max(slotsCount, slots[a] + 1);
+            } else {
+                slots[a] = -1;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize + slotsCount * 4 + count * entrySize + charsCount * 2);
+        buffer.putInt(tableMagic);
+        buffer.putInt(tableVersion);
+        buffer.putLong(sourceFile.length());
+        buffer.putLong(sourceFile.lastModified());
+        buffer.putInt(BuildVars.BUILD_VERSION);
+        buffer.putInt(resourceType);
+        buffer.putInt(R.string.LanguageName);
+        buffer.putInt(count);
+        buffer.putInt(charsCount);
+        buffer.putInt(slotsCount);
+        for (int a = 0; a < slotsCount; a++) {
+            buffer.putInt(-1);
+        }
+        for (int a = 0; a < count; a++) {
+            if (slots[a] >= 0) {
+                buffer.putInt(headerSize + slots[a] * 4, a);
+            }
+        }
+        int offset = 0;
+        for (int a = 0; a < count; a++) {
+            String key = keys.get(a);
+            String value = stringMap.get(key);
+            buffer.putInt(offset);
+            buffer.putInt(key.length());
+            buffer.putInt(offset + key.length());
+            buffer.putInt(value.length());
+            offset += key.length() + value.length();
+        }
+        for (int a = 0; a < count; a++) {
+            String key = keys.get(a);
+            String value = stringMap.get(key);
+            for (int b = 0; b < key.length(); b++) {
+                buffer.putChar(key.charAt(b));
+            }
+            for (int b = 0; b < value.length(); b++) {
+                buffer.putChar(value.charAt(b));
+            }
+        }
+
+        File tableFile = getTableFile(sourceFile);
+        File tempFile = new File(tableFile.getPath() + ".tmp");
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(tempFile);
+            stream.write(buffer.array());
+            stream.getFD().sync();
+            stream.close();
+            stream = null;
+            if (!tempFile.renameTo(tableFile)) {
+                tempFile.delete();
+            }
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+            tempFile.delete();
+        } finally {
+            try {
+                if (stream != null) {
+                    stream.close();
+                }
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+            }
+        }
+        return new LocaleStringTable(buffer);
+    }
+
+    public static void delete(File sourceFile) {
+        getTableFile(sourceFile).delete();
+    }
+}
@@ -250,11 +250,13 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
     private static final int AUDIO_NO_FOCUS_NO_DUCK = 0;
     private static final int AUDIO_NO_FOCUS_CAN_DUCK = 1;
     private static final int AUDIO_FOCUSED  = 2;
+    private static final int CONVERT_PROGRESS_INTERVAL = 200;
 
     private ArrayList<MessageObject> videoConvertQueue = new ArrayList<>();
+    private ArrayList<VideoConvertMessage> currentVideoConversions = new ArrayList<>();
     private final Object videoQueueSync = new Object();
-    private boolean cancelCurrentVideoConversion = false;
-    private boolean videoConvertFirstWrite = true;
+    private int runningVideoConversions = 0;
+    private int maxVideoConversions = -1;
     private HashMap<String, MessageObject> generatingWaveform = new HashMap<>();
 
     private boolean voiceMessagesPlaylistUnread;
@@ -333,8 +335,9 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
     private ArrayList<AudioBuffer> freePlayerBuffers = new ArrayList<>();
     private final Object playerSync = new Object();
     private final Object playerObjectSync = new Object();
-    private short[] recordSamples = new short[1024];
-    private long samplesCount;
+    private WaveformBuilder recordWaveform = new WaveformBuilder();
+    private volatile WaveformBuilder playingWaveform;
+    private volatile MessageObject playingWaveformMessageObject;
 
     private final Object sync = new Object();
 
@@ -364,33 +367,13 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                     buffer.limit(len);
                     double sum = 0;
                     try {
-                        long newSamplesCount = samplesCount + len / 2;
-                        int currentPart = (int) (((double) samplesCount / (double) newSamplesCount) * recordSamples.length);
-                        int newPart = recordSamples.length - currentPart;
-                        float sampleStep;
-                        if (currentPart != 0) {
-                            sampleStep = (float) recordSamples.length / (float) currentPart;
-                            float currentNum = 0;
-                            for (int a = 0; a < currentPart; a++) {
-                                recordSamples[a] = recordSamples[(int) currentNum];
-                                currentNum += sampleStep;
-                            }
-                        }
-                        int currentNum = currentPart;
-                        float nextNum = 0;
-                        sampleStep = (float) len / 2 / (float) newPart;
                         for (int i = 0; i < len / 2; i++) {
                             short peak = buffer.getShort();
                             if (peak > 2500) {
                                 sum += peak * peak;
                             }
-                            if (i == (int) nextNum && currentNum < recordSamples.length) {
-                                recordSamples[currentNum] = peak;
-                                nextNum += sampleStep;
-                                currentNum++;
-                            }
+                            recordWaveform.addSample(peak);
                         }
-                        samplesCount = newSamplesCount;
                     } catch (Exception e) {
                         FileLog.e("tmessages", e);
                     }
@@ -840,6 +823,10 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         gifDownloadQueue.clear();
         downloadQueueKeys.clear();
         videoConvertQueue.clear();
+        for (int a = 0; a < currentVideoConversions.size(); a++) {
+            currentVideoConversions.get(a).canceled = true;
+        }
+        currentVideoConversions.clear();
         playlist.clear();
         shuffledPlaylist.clear();
         generatingWaveform.clear();
@@ -1470,6 +1457,10 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                         if (buffer.size != 0) {
                             buffer.buffer.rewind();
                             buffer.buffer.get(buffer.bufferBytes);
+                            WaveformBuilder waveformBuilder = playingWaveform;
+                            if (waveformBuilder != null) {
+                                waveformBuilder.addSamples(buffer.bufferBytes, buffer.size);
+                            }
                             synchronized (playerSync) {
                                 usedPlayerBuffers.add(buffer);
                             }
@@ -1484,6 +1475,9 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                         break;
                     }
                 }
+                if (decodingFinished) {
+                    finishPlayingWaveform();
+                }
                 if (was) {
                     checkPlayerQueue();
                 }
@@ -1844,6 +1838,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
     }
 
     public void cleanupPlayer(boolean notify, boolean stopService, boolean byVoiceEnd) {
+        cancelPlayingWaveform();
         if (audioPlayer != null) {
             try {
                 audioPlayer.reset();
@@ -1934,6 +1929,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         if (progress == 1.0f) {
             return;
         }
+        cancelPlayingWaveform();
         if (!isPaused) {
             audioTrackPlayer.pause();
         }
@@ -2138,7 +2134,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         playAudio(currentPlayList.get(currentPlaylistNum));
     }
 
-    private void checkIsNextMusicFileDownloaded() {
+    private void checkIsNextMusicFileDownloaded(MessageObject currentAudio) {
         if ((getCurrentDownloadMask() & AUTODOWNLOAD_MASK_MUSIC) == 0) {
             return;
         }
@@ -2161,7 +2157,12 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         final File cacheFile = file != null ? file : FileLoader.getPathToMessage(nextAudio.messageOwner);
         boolean exist = cacheFile != null && cacheFile.exists();
         if (cacheFile != null && cacheFile != file && !cacheFile.exists() && nextAudio.isMusic()) {
-            FileLoader.getInstance().loadFile(nextAudio.getDocument(), false, false);
+            //the next track is needed once the current one ends
+            int duration = currentAudio.getDuration();
+            long deadline = duration > 0 ? System.currentTimeMillis() + duration * 1000L : 0;
+            FileLoader.getInstance().loadFile(nextAudio.getDocument(), FileLoader.PRIORITY_PREFETCH, deadline, false);
+        } else if (exist && nextAudio.isMusic()) {
+            AudioInfoScanner.getInstance().prefetchAudioInfo(cacheFile);
         }
     }
 
@@ -2253,7 +2254,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
             downloadingCurrentMessage = false;
         }
         if (messageObject.isMusic()) {
-            checkIsNextMusicFileDownloaded();
+            checkIsNextMusicFileDownloaded(messageObject);
         }
 
         if (isOpusFile(cacheFile.getAbsolutePath()) == 1) {
@@ -2327,7 +2328,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                     shuffledPlaylist.clear();
                 } else {
                     try {
-                        audioInfo = AudioInfo.getAudioInfo(cacheFile);
+                        audioInfo = AudioInfoScanner.getInstance().getAudioInfo(cacheFile);
                     } catch (Exception e) {
                         FileLog.e("tmessages", e);
                     }
@@ -2374,6 +2375,10 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
             if (playingMessageObject.audioProgress == 1) {
                 playingMessageObject.audioProgress = 0;
             }
+            if (playingMessageObject.audioProgress == 0 && getAudioWaveform(playingMessageObject) == null) {
+                playingWaveformMessageObject = playingMessageObject;
+                playingWaveform = new WaveformBuilder();
+            }
             fileDecodingQueue.postRunnable(new Runnable() {
                 @Override
                 public void run() {
@@ -2603,7 +2608,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                     audioRecorder = new AudioRecord(MediaRecorder.AudioSource.MIC, 16000, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, recordBufferSize * 10);
                     recordStartTime = System.currentTimeMillis();
                     recordTimeCount = 0;
-                    samplesCount = 0;
+                    recordWaveform.reset();
                     recordDialogId = dialog_id;
                     recordReplyingMessageObject = reply_to_msg;
                     fileBuffer.rewind();
@@ -2651,6 +2656,11 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
             return;
         }
         generatingWaveform.put(id, messageObject);
+        MessageObject waveformMessageObject = playingWaveformMessageObject;
+        if (playingWaveform != null && waveformMessageObject != null && waveformMessageObject.getId() == messageObject.getId() && waveformMessageObject.getDialogId() == messageObject.getDialogId()) {
+            //the waveform is collected from the decoded playback data
+            return;
+        }
         Utilities.globalQueue.postRunnable(new Runnable() {
             @Override
             public void run() {
@@ -2662,30 +2672,80 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                         if (messageObject == null) {
                             return;
                         }
-                        if (waveform != null) {
-                            for (int a = 0; a < messageObject.getDocument().attributes.size(); a++) {
-                                TLRPC.DocumentAttribute attribute = messageObject.getDocument().attributes.get(a);
-                                if (attribute instanceof TLRPC.TL_documentAttributeAudio) {
-                                    attribute.waveform = waveform;
-                                    attribute.flags |= 4;
-                                    break;
-                                }
-                            }
-                            TLRPC.TL_messages_messages messagesRes = new TLRPC.TL_messages_messages();
-                            messagesRes.messages.add(messageObject.messageOwner);
-                            MessagesStorage.getInstance().putMessages(messagesRes, messageObject.getDialogId(), -1, 0, false);
-                            ArrayList<MessageObject> arrayList = new ArrayList<>();
-                            arrayList.add(messageObject);
-                            NotificationCenter.getInstance().postNotificationName(NotificationCenter.replaceMessagesObjects, messageObject.getDialogId(), arrayList);
-                        }
+                        setAudioWaveform(messageObject, waveform);
                     }
                 });
             }
         });
     }
 
+    private static byte[] getAudioWaveform(MessageObject messageObject) {
+        TLRPC.Document document = messageObject.getDocument();
+        if (document == null) {
+            return null;
+        }
+        for (int a = 0; a < document.attributes.size(); a++) {
+            TLRPC.DocumentAttribute attribute = document.attributes.get(a);
+            if (attribute instanceof TLRPC.TL_documentAttributeAudio) {
+                return attribute.waveform != null && attribute.waveform.length != 0 ? attribute.waveform : null;
+            }
+        }
+        return null;
+    }
+
+    private void setAudioWaveform(MessageObject messageObject, byte[] waveform) {
+        if (waveform == null) {
+            return;
+        }
+        for (int a = 0; a < messageObject.getDocument().attributes.size(); a++) {
+            TLRPC.DocumentAttribute attribute = messageObject.getDocument().attributes.get(a);
+            if (attribute instanceof TLRPC.TL_documentAttributeAudio) {
+                attribute.waveform = waveform;
+                attribute.flags |= 4;
+                break;
+            }
+        }
+        TLRPC.TL_messages_messages messagesRes = new TLRPC.TL_messages_messages();
+        messagesRes.messages.add(messageObject.messageOwner);
+        MessagesStorage.getInstance().putMessages(messagesRes, messageObject.getDialogId(), -1, 0, false);
+        ArrayList<MessageObject> arrayList = new ArrayList<>();
+        arrayList.add(messageObject);
+        NotificationCenter.getInstance().postNotificationName(NotificationCenter.replaceMessagesObjects, messageObject.getDialogId(), arrayList);
+    }
+
+    private void finishPlayingWaveform() {
+        final WaveformBuilder waveformBuilder = playingWaveform;
+        final MessageObject messageObject = playingWaveformMessageObject;
+        if (waveformBuilder == null || messageObject == null) {
+            return;
+        }
+        playingWaveform = null;
+        playingWaveformMessageObject = null;
+        final byte[] waveform = waveformBuilder.getWaveform();
+        AndroidUtilities.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                generatingWaveform.remove(messageObject.getId() + "_" + messageObject.getDialogId());
+                if (getAudioWaveform(messageObject) == null) {
+                    setAudioWaveform(messageObject, waveform);
+                }
+            }
+        });
+    }
+
+    private void cancelPlayingWaveform() {
+        MessageObject messageObject = playingWaveformMessageObject;
+        playingWaveform = null;
+        playingWaveformMessageObject = null;
+        if (messageObject != null) {
+            //let the next bind of the cell decode the file instead
+            generatingWaveform.remove(messageObject.getId() + "_" + messageObject.getDialogId());
+        }
+    }
+
     private void stopRecordingInternal(final int send) {
         if (send != 0) {
+            final byte[] waveform = recordWaveform.getWaveform();
             final TLRPC.TL_document audioToSend = recordingAudio;
             final File recordingAudioFileToSend = recordingAudioFile;
             fileEncodingQueue.postRunnable(new Runnable() {
@@ -2699,7 +2759,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                             audioToSend.size = (int) recordingAudioFileToSend.length();
                             TLRPC.TL_documentAttributeAudio attributeAudio = new TLRPC.TL_documentAttributeAudio();
                             attributeAudio.voice = true;
-                            attributeAudio.waveform = getWaveform2(recordSamples, recordSamples.length); //getWaveform(recordingAudioFileToSend.getAbsolutePath());
+                            attributeAudio.waveform = waveform;
                             if (attributeAudio.waveform != null) {
                                 attributeAudio.flags |= 4;
                             }
@@ -3286,41 +3346,132 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         }, delay);
     }
 
+    private static class VideoConvertMessage {
+        public MessageObject messageObject;
+        public volatile boolean canceled;
+        public boolean firstWrite = true;
+        public long startTime;
+        public volatile long durationUs;
+        public volatile long processedUs;
+        public long lastProgressTime;
+
+        public VideoConvertMessage(MessageObject object) {
+            messageObject = object;
+            startTime = System.currentTimeMillis();
+        }
+
+        public float getProgress() {
+            if (durationUs <= 0) {
+                return 0;
+            }
+            return Math.min(1.0f, processedUs / (float) durationUs);
+        }
+
+        public float getSpeed() {
+            long elapsed = System.currentTimeMillis() - startTime;
+            if (elapsed <= 0) {
+                return 0;
+            }
+            return processedUs / 1000.0f / elapsed;
+        }
+    }
+
     public void scheduleVideoConvert(MessageObject messageObject) {
         videoConvertQueue.add(messageObject);
-        if (videoConvertQueue.size() == 1) {
-            startVideoConvertFromQueue();
-        }
+        startVideoConvertFromQueue();
     }
 
     public void cancelVideoConvert(MessageObject messageObject) {
         if (messageObject == null) {
-            synchronized (videoConvertSync) {
-                cancelCurrentVideoConversion = true;
+            for (int a = 0; a < currentVideoConversions.size(); a++) {
+                currentVideoConversions.get(a).canceled = true;
             }
         } else {
-            if (!videoConvertQueue.isEmpty()) {
-                if (videoConvertQueue.get(0) == messageObject) {
-                    synchronized (videoConvertSync) {
-                        cancelCurrentVideoConversion = true;
+            VideoConvertMessage convertMessage = getVideoConvertMessage(messageObject);
+            if (convertMessage != null) {
+                convertMessage.canceled = true;
+            }
+            videoConvertQueue.remove(messageObject);
+        }
+    }
+
+    public float getVideoConvertProgress(MessageObject messageObject) {
+        VideoConvertMessage convertMessage = getVideoConvertMessage(messageObject);
+        return convertMessage != null ? convertMessage.getProgress() : 0;
+    }
+
+    //seconds of video converted per second, 0 when the message is not being converted
+    public float getVideoConvertSpeed(MessageObject messageObject) {
+        VideoConvertMessage convertMessage = getVideoConvertMessage(messageObject);
+        return convertMessage != null ? convertMessage.getSpeed() : 0;
+    }
+
+    private VideoConvertMessage getVideoConvertMessage(MessageObject messageObject) {
+        for (int a = 0; a < currentVideoConversions.size(); a++) {
+            VideoConvertMessage convertMessage = currentVideoConversions.get(a);
+            if (convertMessage.messageObject == messageObject) {
+                return convertMessage;
+            }
+        }
+        return null;
+    }
+
+    @SuppressLint("NewApi")
+    private int getMaxVideoConversions() {
+        if (maxVideoConversions == -1) {
+            int count = 1;
+            if (Build.VERSION.SDK_INT >= 23) {
+                try {
+                    //every conversion holds a decoder and an encoder, both limits apply
+                    MediaCodecInfo codecInfo = selectCodec(MIME_TYPE);
+                    if (codecInfo != null) {
+                        count = codecInfo.getCapabilitiesForType(MIME_TYPE).getMaxSupportedInstances();
                     }
+                    int numCodecs = MediaCodecList.getCodecCount();
+                    for (int a = 0; a < numCodecs; a++) {
+                        MediaCodecInfo decoderInfo = MediaCodecList.getCodecInfoAt(a);
+                        if (decoderInfo.isEncoder()) {
+                            continue;
+                        }
+                        boolean found = false;
+                        String[] types = decoderInfo.getSupportedTypes();
+                        for (int b = 0; b < types.length; b++) {
+                            if (types[b].equalsIgnoreCase(MIME_TYPE)) {
+                                found = true;
+                                break;
+                            }
+                        }
+                        if (found) {
+                            count = Math.min(count, decoderInfo.getCapabilitiesForType(MIME_TYPE).getMaxSupportedInstances());
+                            break;
+                        }
+                    }
+                } catch (Exception e) {
+                    FileLog.e("tmessages", e);
                 }
-                videoConvertQueue.remove(messageObject);
+                count = Math.min(count, Runtime.getRuntime().availableProcessors() / 2);
+                count = Math.max(1, Math.min(count, 3));
             }
+            maxVideoConversions = count;
+            FileLog.e("tmessages", "max parallel video conversions = " + maxVideoConversions);
         }
+        return maxVideoConversions;
     }
 
     private void startVideoConvertFromQueue() {
-        if (!videoConvertQueue.isEmpty()) {
-            synchronized (videoConvertSync) {
-                cancelCurrentVideoConversion = false;
+        int maxCount = getMaxVideoConversions();
+        for (int a = 0; a < videoConvertQueue.size() && currentVideoConversions.size() < maxCount; a++) {
+            MessageObject messageObject = videoConvertQueue.get(a);
+            if (getVideoConvertMessage(messageObject) != null) {
+                continue;
             }
-            MessageObject messageObject = videoConvertQueue.get(0);
+            VideoConvertMessage convertMessage = new VideoConvertMessage(messageObject);
+            currentVideoConversions.add(convertMessage);
             Intent intent = new Intent(ApplicationLoader.applicationContext, VideoEncodingService.class);
             intent.putExtra("path", messageObject.messageOwner.attachPath);
             if (messageObject.messageOwner.media.document != null) {
-                for (int a = 0; a < messageObject.messageOwner.media.document.attributes.size(); a++) {
-                    TLRPC.DocumentAttribute documentAttribute = messageObject.messageOwner.media.document.attributes.get(a);
+                for (int b = 0; b < messageObject.messageOwner.media.document.attributes.size(); b++) {
+                    TLRPC.DocumentAttribute documentAttribute = messageObject.messageOwner.media.document.attributes.get(b);
                     if (documentAttribute instanceof TLRPC.TL_documentAttributeAnimated) {
                         intent.putExtra("gif", true);
                         break;
@@ -3328,7 +3479,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                 }
             }
             ApplicationLoader.applicationContext.startService(intent);
-            VideoConvertRunnable.runConversion(messageObject);
+            VideoConvertRunnable.runConversion(convertMessage);
         }
     }
 
@@ -3404,11 +3555,13 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         return -5;
     }
 
-    private void didWriteData(final MessageObject messageObject, final File file, final boolean last, final boolean error) {
-        final boolean firstWrite = videoConvertFirstWrite;
-        if (firstWrite) {
-            videoConvertFirstWrite = false;
+    private void didWriteData(final VideoConvertMessage convertMessage, final File file, final boolean last, final boolean error) {
+        final boolean firstWrite;
+        synchronized (convertMessage) {
+            firstWrite = convertMessage.firstWrite;
+            convertMessage.firstWrite = false;
         }
+        final MessageObject messageObject = convertMessage.messageObject;
         AndroidUtilities.runOnUIThread(new Runnable() {
             @Override
             public void run() {
@@ -3419,11 +3572,12 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                         NotificationCenter.getInstance().postNotificationName(NotificationCenter.FilePreparingStarted, messageObject, file.toString());
                     }
                     NotificationCenter.getInstance().postNotificationName(NotificationCenter.FileNewChunkAvailable, messageObject, file.toString(), last ? file.length() : 0);
+                    if (last) {
+                        NotificationCenter.getInstance().postNotificationName(NotificationCenter.FilePreparingProgress, messageObject, messageObject.messageOwner.attachPath, 1.0f);
+                    }
                 }
                 if (error || last) {
-                    synchronized (videoConvertSync) {
-                        cancelCurrentVideoConversion = false;
-                    }
+                    currentVideoConversions.remove(convertMessage);
                     videoConvertQueue.remove(messageObject);
                     startVideoConvertFromQueue();
                 }
@@ -3431,13 +3585,32 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         });
     }
 
+    private void updateConvertProgress(final VideoConvertMessage convertMessage, long processedUs) {
+        convertMessage.processedUs = processedUs;
+        long time = System.currentTimeMillis();
+        if (time - convertMessage.lastProgressTime < CONVERT_PROGRESS_INTERVAL) {
+            return;
+        }
+        convertMessage.lastProgressTime = time;
+        final float progress = convertMessage.getProgress();
+        AndroidUtilities.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                MessageObject messageObject = convertMessage.messageObject;
+                NotificationCenter.getInstance().postNotificationName(NotificationCenter.FilePreparingProgress, messageObject, messageObject.messageOwner.attachPath, progress);
+            }
+        });
+    }
+
     @TargetApi(16)
-    private long readAndWriteTrack(final MessageObject messageObject, MediaExtractor extractor, MP4Builder mediaMuxer, MediaCodec.BufferInfo info, long start, long end, File file, boolean isAudio) throws Exception {
+    private long readAndWriteTrack(final VideoConvertMessage convertMessage, MediaExtractor extractor, MP4Builder mediaMuxer, MediaCodec.BufferInfo info, long start, long end, File file, boolean isAudio, int muxerTrackIndex) throws Exception {
         int trackIndex = selectTrack(extractor, isAudio);
         if (trackIndex >= 0) {
             extractor.selectTrack(trackIndex);
             MediaFormat trackFormat = extractor.getTrackFormat(trackIndex);
-            int muxerTrackIndex = mediaMuxer.addTrack(trackFormat, isAudio);
+            if (muxerTrackIndex < 0) {
+                muxerTrackIndex = mediaMuxer.addTrack(trackFormat, isAudio);
+            }
             int maxBufferSize = trackFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
             boolean inputDone = false;
             if (start > 0) {
@@ -3448,11 +3621,11 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
             ByteBuffer buffer = ByteBuffer.allocateDirect(maxBufferSize);
             long startTime = -1;
 
-            checkConversionCanceled();
+            checkConversionCanceled(convertMessage);
             long lastTimestamp = -100;
 
             while (!inputDone) {
-                checkConversionCanceled();
+                checkConversionCanceled(convertMessage);
 
                 boolean eof = false;
                 int index = extractor.getSampleTrackIndex();
@@ -3474,7 +3647,10 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                                 info.offset = 0;
                                 info.flags = extractor.getSampleFlags();
                                 if (mediaMuxer.writeSampleData(muxerTrackIndex, buffer, info, isAudio)) {
-                                    didWriteData(messageObject, file, false, false);
+                                    didWriteData(convertMessage, file, false, false);
+                                }
+                                if (!isAudio) {
+                                    updateConvertProgress(convertMessage, info.presentationTimeUs - Math.max(start, 0));
                                 }
                             }
                             lastTimestamp = info.presentationTimeUs;
@@ -3503,18 +3679,18 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
 
     private static class VideoConvertRunnable implements Runnable {
 
-        private MessageObject messageObject;
+        private VideoConvertMessage convertMessage;
 
-        private VideoConvertRunnable(MessageObject message) {
-            messageObject = message;
+        private VideoConvertRunnable(VideoConvertMessage message) {
+            convertMessage = message;
         }
 
         @Override
         public void run() {
-            MediaController.getInstance().convertVideo(messageObject);
+            MediaController.getInstance().convertVideo(convertMessage);
         }
 
-        public static void runConversion(final MessageObject obj) {
+        public static void runConversion(final VideoConvertMessage obj) {
             new Thread(new Runnable() {
                 @Override
                 public void run() {
@@ -3531,18 +3707,114 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         }
     }
 
-    private void checkConversionCanceled() throws Exception {
-        boolean cancelConversion;
-        synchronized (videoConvertSync) {
-            cancelConversion = cancelCurrentVideoConversion;
+    @TargetApi(16)
+    private class AudioTrackWriter implements Runnable {
+
+        private VideoConvertMessage convertMessage;
+        private MP4Builder mediaMuxer;
+        private String inputPath;
+        private File cacheFile;
+        private int muxerTrackIndex;
+        private long startTime;
+        private long endTime;
+        private boolean alignToVideoSync;
+        private Thread thread;
+        private volatile boolean error;
+
+        private AudioTrackWriter(VideoConvertMessage message, MP4Builder muxer, String path, File file, int trackIndex, long end) {
+            convertMessage = message;
+            mediaMuxer = muxer;
+            inputPath = path;
+            cacheFile = file;
+            muxerTrackIndex = trackIndex;
+            endTime = end;
+        }
+
+        public void start(long start, boolean alignToSync) {
+            if (thread != null) {
+                return;
+            }
+            startTime = start;
+            alignToVideoSync = alignToSync;
+            thread = new Thread(this, "AudioTrackWriter");
+            thread.start();
+        }
+
+        public boolean isStarted() {
+            return thread != null;
+        }
+
+        public boolean join() {
+            if (thread != null) {
+                try {
+                    thread.join();
+                } catch (Exception e) {
+                    FileLog.e("tmessages", e);
+                    error = true;
+                }
+            }
+            return !error;
         }
-        if (cancelConversion) {
+
+        @Override
+        public void run() {
+            MediaExtractor extractor = null;
+            try {
+                extractor = new MediaExtractor();
+                extractor.setDataSource(inputPath);
+                long start = startTime;
+                if (alignToVideoSync && start > 0) {
+                    int videoIndex = selectTrack(extractor, false);
+                    if (videoIndex >= 0) {
+                        extractor.selectTrack(videoIndex);
+                        extractor.seekTo(start, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                        long sampleTime = extractor.getSampleTime();
+                        if (sampleTime >= 0) {
+                            start = sampleTime;
+                        }
+                        extractor.unselectTrack(videoIndex);
+                    }
+                }
+                readAndWriteTrack(convertMessage, extractor, mediaMuxer, new MediaCodec.BufferInfo(), start, endTime, cacheFile, true, muxerTrackIndex);
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+                error = true;
+            } finally {
+                if (extractor != null) {
+                    extractor.release();
+                }
+            }
+        }
+    }
+
+    private void checkConversionCanceled(VideoConvertMessage convertMessage) throws Exception {
+        if (convertMessage.canceled) {
             throw new RuntimeException("canceled conversion");
         }
     }
 
+    private boolean beginVideoConversion(SharedPreferences preferences) {
+        synchronized (videoConvertSync) {
+            boolean isPreviousOk = true;
+            if (runningVideoConversions++ == 0) {
+                isPreviousOk = preferences.getBoolean("isPreviousOk", true);
+                preferences.edit().putBoolean("isPreviousOk", false).commit();
+            }
+            return isPreviousOk;
+        }
+    }
+
+    private void endVideoConversion(SharedPreferences preferences) {
+        synchronized (videoConvertSync) {
+            if (--runningVideoConversions == 0) {
+                preferences.edit().putBoolean("isPreviousOk", true).commit();
+            }
+        }
+    }
+
     @TargetApi(16)
-    private boolean convertVideo(final MessageObject messageObject) {
+    private boolean convertVideo(final VideoConvertMessage convertMessage) {
+        final MessageObject messageObject = convertMessage.messageObject;
         String videoPath = messageObject.videoEditedInfo.originalPath;
         long startTime = messageObject.videoEditedInfo.startTime;
         long endTime = messageObject.videoEditedInfo.endTime;
@@ -3581,17 +3853,15 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         }
 
         SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("videoconvert", Activity.MODE_PRIVATE);
-        boolean isPreviousOk = preferences.getBoolean("isPreviousOk", true);
-        preferences.edit().putBoolean("isPreviousOk", false).commit();
+        boolean isPreviousOk = beginVideoConversion(preferences);
 
         File inputFile = new File(videoPath);
         if (!inputFile.canRead() || !isPreviousOk) {
-            didWriteData(messageObject, cacheFile, true, true);
-            preferences.edit().putBoolean("isPreviousOk", true).commit();
+            didWriteData(convertMessage, cacheFile, true, true);
+            endVideoConversion(preferences);
             return false;
         }
 
-        videoConvertFirstWrite = true;
         boolean error = false;
         long videoStartTime = startTime;
 
@@ -3600,6 +3870,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
         if (resultWidth != 0 && resultHeight != 0) {
             MP4Builder mediaMuxer = null;
             MediaExtractor extractor = null;
+            AudioTrackWriter audioWriter = null;
 
             try {
                 MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
@@ -3611,11 +3882,25 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                 extractor = new MediaExtractor();
                 extractor.setDataSource(inputFile.toString());
 
-                checkConversionCanceled();
+                if (bitrate != -1) {
+                    int audioIndex = selectTrack(extractor, true);
+                    if (audioIndex >= 0) {
+                        int audioTrackIndex = mediaMuxer.addTrack(extractor.getTrackFormat(audioIndex), true);
+                        audioWriter = new AudioTrackWriter(convertMessage, mediaMuxer, inputFile.toString(), cacheFile, audioTrackIndex, endTime);
+                    }
+                }
+
+                int videoIndex = selectTrack(extractor, false);
+                if (videoIndex >= 0) {
+                    MediaFormat videoFormat = extractor.getTrackFormat(videoIndex);
+                    if (videoFormat.containsKey(MediaFormat.KEY_DURATION)) {
+                        convertMessage.durationUs = (endTime > 0 ? endTime : videoFormat.getLong(MediaFormat.KEY_DURATION)) - Math.max(startTime, 0);
+                    }
+                }
+
+                checkConversionCanceled(convertMessage);
 
                 if (resultWidth != originalWidth || resultHeight != originalHeight || rotateRender != 0) {
-                    int videoIndex;
-                    videoIndex = selectTrack(extractor, false);
                     if (videoIndex >= 0) {
                         MediaCodec decoder = null;
                         MediaCodec encoder = null;
@@ -3739,10 +4024,10 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                                 }
                             }
 
-                            checkConversionCanceled();
+                            checkConversionCanceled(convertMessage);
 
                             while (!outputDone) {
-                                checkConversionCanceled();
+                                checkConversionCanceled(convertMessage);
                                 if (!inputDone) {
                                     boolean eof = false;
                                     int index = extractor.getSampleTrackIndex();
@@ -3779,7 +4064,7 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                                 boolean decoderOutputAvailable = !decoderDone;
                                 boolean encoderOutputAvailable = true;
                                 while (decoderOutputAvailable || encoderOutputAvailable) {
-                                    checkConversionCanceled();
+                                    checkConversionCanceled(convertMessage);
                                     int encoderStatus = encoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
                                     if (encoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
                                         encoderOutputAvailable = false;
@@ -3791,6 +4076,9 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                                         MediaFormat newFormat = encoder.getOutputFormat();
                                         if (videoTrackIndex == -5) {
                                             videoTrackIndex = mediaMuxer.addTrack(newFormat, false);
+                                            if (audioWriter != null) {
+                                                audioWriter.start(videoTime != -1 ? videoTime : startTime, false);
+                                            }
                                         }
                                     } else if (encoderStatus < 0) {
                                         throw new RuntimeException("unexpected result from encoder.dequeueOutputBuffer: " + encoderStatus);
@@ -3807,8 +4095,9 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                                         if (info.size > 1) {
                                             if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
                                                 if (mediaMuxer.writeSampleData(videoTrackIndex, encodedData, info, false)) {
-                                                    didWriteData(messageObject, cacheFile, false, false);
+                                                    didWriteData(convertMessage, cacheFile, false, false);
                                                 }
+                                                updateConvertProgress(convertMessage, info.presentationTimeUs - Math.max(startTime, 0));
                                             } else if (videoTrackIndex == -5) {
                                                 byte[] csd = new byte[info.size];
                                                 encodedData.limit(info.offset + info.size);
@@ -3836,6 +4125,9 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                                                     newFormat.setByteBuffer("csd-1", pps);
                                                 }
                                                 videoTrackIndex = mediaMuxer.addTrack(newFormat, false);
+                                                if (audioWriter != null) {
+                                                    audioWriter.start(videoTime != -1 ? videoTime : startTime, false);
+                                                }
                                             }
                                         }
                                         outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
@@ -3947,21 +4239,31 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                             encoder.release();
                         }
 
-                        checkConversionCanceled();
+                        checkConversionCanceled(convertMessage);
                     }
                 } else {
-                    long videoTime = readAndWriteTrack(messageObject, extractor, mediaMuxer, info, startTime, endTime, cacheFile, false);
+                    int videoTrackIndex = -1;
+                    if (videoIndex >= 0) {
+                        videoTrackIndex = mediaMuxer.addTrack(extractor.getTrackFormat(videoIndex), false);
+                    }
+                    if (audioWriter != null) {
+                        audioWriter.start(startTime, true);
+                    }
+                    long videoTime = readAndWriteTrack(convertMessage, extractor, mediaMuxer, info, startTime, endTime, cacheFile, false, videoTrackIndex);
                     if (videoTime != -1) {
                         videoStartTime = videoTime;
                     }
                 }
-                if (!error && bitrate != -1) {
-                    readAndWriteTrack(messageObject, extractor, mediaMuxer, info, videoStartTime, endTime, cacheFile, true);
+                if (!error && audioWriter != null && !audioWriter.isStarted()) {
+                    audioWriter.start(videoStartTime, false);
                 }
             } catch (Exception e) {
                 error = true;
                 FileLog.e("tmessages", e);
             } finally {
+                if (audioWriter != null && !audioWriter.join()) {
+                    error = true;
+                }
                 if (extractor != null) {
                     extractor.release();
                 }
@@ -3972,15 +4274,16 @@ public class MediaController implements AudioManager.OnAudioFocusChangeListener,
                         FileLog.e("tmessages", e);
                     }
                 }
-                FileLog.e("tmessages", "time = " + (System.currentTimeMillis() - time));
+                long elapsed = System.currentTimeMillis() - time;
+                FileLog.e("tmessages", "time = " + elapsed + " size = " + cacheFile.length() + " speed = " + (elapsed > 0 ? cacheFile.length() * 1000 / elapsed / 1024 : 0) + " KB/s" + " processed = " + convertMessage.processedUs / 1000 + " ms");
             }
         } else {
-            preferences.edit().putBoolean("isPreviousOk", true).commit();
-            didWriteData(messageObject, cacheFile, true, true);
+            endVideoConversion(preferences);
+            didWriteData(convertMessage, cacheFile, true, true);
             return false;
         }
-        preferences.edit().putBoolean("isPreviousOk", true).commit();
-        didWriteData(messageObject, cacheFile, true, error);
+        endVideoConversion(preferences);
+        didWriteData(convertMessage, cacheFile, true, error);
         return true;
     }
 }
@@ -8,13 +8,26 @@
 
 package org.telegram.messenger;
 
-import org.telegram.tgnet.SerializedData;
+import java.security.MessageDigest;
 
 public class MessageKeyData {
 
     public byte[] aesKey;
     public byte[] aesIv;
 
+    //digests are reused per thread, secret messages are decrypted on several threads at once
+    private static final ThreadLocal<MessageDigest> sha1Digest = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+            }
+            return null;
+        }
+    };
+
     public static MessageKeyData generateMessageKeyData(byte[] authKey, byte[] messageKey, boolean incoming) {
         MessageKeyData keyData = new MessageKeyData();
         if (authKey == null || authKey.length == 0) {
@@ -23,47 +36,42 @@ public class MessageKeyData {
             return keyData;
         }
 
+        MessageDigest md = sha1Digest.get();
+        if (md == null) {
+            keyData.aesIv = null;
+            keyData.aesKey = null;
+            return keyData;
+        }
+
         int x = incoming ? 8 : 0;
 
-        SerializedData data = new SerializedData();
-        data.writeBytes(messageKey);
-        data.writeBytes(authKey, x, 32);
-        byte[] sha1_a = Utilities.computeSHA1(data.toByteArray());
-        data.cleanup();
+        md.update(messageKey);
+        md.update(authKey, x, 32);
+        byte[] sha1_a = md.digest();
 
-        data = new SerializedData();
-        data.writeBytes(authKey, 32 + x, 16);
-        data.writeBytes(messageKey);
-        data.writeBytes(authKey, 48 + x, 16);
-        byte[] sha1_b = Utilities.computeSHA1(data.toByteArray());
-        data.cleanup();
+        md.update(authKey, 32 + x, 16);
+        md.update(messageKey);
+        md.update(authKey, 48 + x, 16);
+        byte[] sha1_b = md.digest();
 
-        data = new SerializedData();
-        data.writeBytes(authKey, 64 + x, 32);
-        data.writeBytes(messageKey);
-        byte[] sha1_c = Utilities.computeSHA1(data.toByteArray());
-        data.cleanup();
+        md.update(authKey, 64 + x, 32);
+        md.update(messageKey);
+        byte[] sha1_c = md.digest();
 
-        data = new SerializedData();
-        data.writeBytes(messageKey);
-        data.writeBytes(authKey, 96 + x, 32);
-        byte[] sha1_d = Utilities.computeSHA1(data.toByteArray());
-        data.cleanup();
+        md.update(messageKey);
+        md.update(authKey, 96 + x, 32);
+        byte[] sha1_d = md.digest();
 
-        data = new SerializedData();
-        data.writeBytes(sha1_a, 0, 8);
-        data.writeBytes(sha1_b, 8, 12);
-        data.writeBytes(sha1_c, 4, 12);
-        keyData.aesKey = data.toByteArray();
-        data.cleanup();
+        keyData.aesKey = new byte[32];
+        System.arraycopy(sha1_a, 0, keyData.aesKey, 0, 8);
+        System.arraycopy(sha1_b, 8, keyData.aesKey, 8, 12);
+        System.arraycopy(sha1_c, 4, keyData.aesKey, 20, 12);
 
-        data = new SerializedData();
-        data.writeBytes(sha1_a, 8, 12);
-        data.writeBytes(sha1_b, 0, 8);
-        data.writeBytes(sha1_c, 16, 4);
-        data.writeBytes(sha1_d, 0, 8);
-        keyData.aesIv = data.toByteArray();
-        data.cleanup();
+        keyData.aesIv = new byte[32];
+        System.arraycopy(sha1_a, 8, keyData.aesIv, 0, 12);
+        System.arraycopy(sha1_b, 0, keyData.aesIv, 12, 8);
+        System.arraycopy(sha1_c, 16, keyData.aesIv, 20, 4);
+        System.arraycopy(sha1_d, 0, keyData.aesIv, 24, 8);
 
         return keyData;
     }
@@ -0,0 +1,188 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import org.telegram.tgnet.TLRPC;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MessageLayoutCache {
+
+    public static final int TYPE_CAPTION = 0;
+    public static final int TYPE_SITE_NAME = 1;
+    public static final int TYPE_DESCRIPTION = 2;
+
+    private final static int maxCachedLayouts = 400;
+    private final static int minParallelCount = 4;
+
+    private static class LayoutKey {
+        private final long dialogId;
+        private final int messageId;
+        private final int type;
+        private final CharSequence text;
+        private final float textSize;
+        private final int width;
+        private final int extra;
+
+        public LayoutKey(MessageObject messageObject, int type, CharSequence text, TextPaint paint, int width, int extra) {
+            dialogId = messageObject.getDialogId();
+            messageId = messageObject.getId();
+            this.type = type;
+            this.text = text;
+            textSize = paint.getTextSize();
+            this.width = width;
+            this.extra = extra;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LayoutKey)) {
+                return false;
+            }
+            LayoutKey key = (LayoutKey) o;
+            return dialogId == key.dialogId && messageId == key.messageId && type == key.type && text == key.text && textSize == key.textSize && width == key.width && extra == key.extra;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (dialogId ^ (dialogId >>> 32));
+            result = 31 * result + messageId;
+            result = 31 * result + type;
+            result = 31 * result + System.identityHashCode(text);
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + width;
+            result = 31 * result + extra;
+            return result;
+        }
+    }
+
+    private final LinkedHashMap<LayoutKey, StaticLayout> layouts = new LinkedHashMap<LayoutKey, StaticLayout>(0, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LayoutKey, StaticLayout> eldest) {
+            return size() > maxCachedLayouts;
+        }
+    };
+    private final int threadsCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private final ExecutorService layoutExecutor = Executors.newFixedThreadPool(threadsCount);
+
+    private static volatile MessageLayoutCache Instance = null;
+
+    public static MessageLayoutCache getInstance() {
+        MessageLayoutCache localInstance = Instance;
+        if (localInstance == null) {
+            synchronized (MessageLayoutCache.class) {
+                localInstance = Instance;
+                if (localInstance == null) {
+                    Instance = localInstance = new MessageLayoutCache();
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    private static class LayoutJob {
+        private final Runnable onDone;
+        private int remainingParts;
+
+        public LayoutJob(Runnable onDone, int parts) {
+            this.onDone = onDone;
+            remainingParts = parts;
+        }
+    }
+
+    //callbacks run on the ui thread in the order the jobs were started, so loads never overtake each other
+    private final ArrayList<LayoutJob> pendingJobs = new ArrayList<>();
+
+    private void finishPart(LayoutJob job) {
+        synchronized (pendingJobs) {
+            job.remainingParts--;
+            while (!pendingJobs.isEmpty() && pendingJobs.get(0).remainingParts == 0) {
+                AndroidUtilities.runOnUIThread(pendingJobs.remove(0).onDone);
+            }
+        }
+    }
+
+    public void generateLayouts(final ArrayList<MessageObject> messageObjects, final AbstractMap<Integer, TLRPC.User> users, Runnable onDone) {
+        int count = messageObjects.size();
+        if (count < minParallelCount || threadsCount == 1) {
+            for (int a = 0; a < count; a++) {
+                messageObjects.get(a).createLayout(users);
+            }
+            LayoutJob job = new LayoutJob(onDone, 1);
+            synchronized (pendingJobs) {
+                pendingJobs.add(job);
+            }
+            finishPart(job);
+        } else {
+            int parts = Math.min(threadsCount, count);
+            final LayoutJob job = new LayoutJob(onDone, parts);
+            synchronized (pendingJobs) {
+                pendingJobs.add(job);
+            }
+            for (int p = 0; p < parts; p++) {
+                final int start = count * p / parts;
+                final int end = count * (p + 1) / parts;
+                layoutExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        MessageObject.createThreadLayoutPaints();
+                        try {
+                            for (int a = start; a < end; a++) {
+                                messageObjects.get(a).createLayout(users);
+                            }
+                        } catch (Exception e) {
+                            FileLog.e("tmessages", e);
+                        } finally {
+                            MessageObject.releaseThreadLayoutPaints();
+                            finishPart(job);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    public StaticLayout getLayout(MessageObject messageObject, int type, CharSequence text, TextPaint paint, int width, int extra) {
+        LayoutKey key = new LayoutKey(messageObject, type, text, paint, width, extra);
+        synchronized (layouts) {
+            return layouts.get(key);
+        }
+    }
+
+    public void putLayout(MessageObject messageObject, int type, CharSequence text, TextPaint paint, int width, int extra, StaticLayout layout) {
+        LayoutKey key = new LayoutKey(messageObject, type, text, paint, width, extra);
+        synchronized (layouts) {
+            layouts.put(key, layout);
+        }
+    }
+
+    public StaticLayout getStaticLayout(MessageObject messageObject, int type, CharSequence text, TextPaint paint, int width) {
+        StaticLayout layout = getLayout(messageObject, type, text, paint, width, 0);
+        if (layout == null) {
+            layout = new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+            putLayout(messageObject, type, text, paint, width, 0, layout);
+        }
+        return layout;
+    }
+
+    public void clear() {
+        synchronized (layouts) {
+            layouts.clear();
+        }
+    }
+}
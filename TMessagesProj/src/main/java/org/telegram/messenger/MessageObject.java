@@ -34,8 +34,6 @@ import org.telegram.ui.Components.URLSpanUserMention;
 import java.io.File;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -74,6 +72,7 @@ public class MessageObject {
     private static TextPaint textPaintOneEmoji;
     private static TextPaint textPaintTwoEmoji;
     private static TextPaint textPaintThreeEmoji;
+    private static final ThreadLocal<TextPaint[]> threadLayoutPaints = new ThreadLocal<>();
     public int lastLineWidth;
     public int textWidth;
     public int textHeight;
@@ -392,13 +391,9 @@ public class MessageObject {
         setType();
         measureInlineBotButtons();
 
-        Calendar rightNow = new GregorianCalendar();
-        rightNow.setTimeInMillis((long) (messageOwner.date) * 1000);
-        int dateDay = rightNow.get(Calendar.DAY_OF_YEAR);
-        int dateYear = rightNow.get(Calendar.YEAR);
-        int dateMonth = rightNow.get(Calendar.MONTH);
-        dateKey = String.format("%d_%02d_%02d", dateYear, dateMonth, dateDay);
-        monthKey = String.format("%d_%02d", dateYear, dateMonth);
+        DateCache.DayInfo dayInfo = DateCache.getInstance().getDay(messageOwner.date);
+        dateKey = dayInfo.dateKey;
+        monthKey = dayInfo.monthKey;
 
         if (messageOwner.message != null && messageOwner.id < 0 && messageOwner.message.length() > 6 && (isVideo() || isNewGif())) {
             videoEditedInfo = new VideoEditedInfo();
@@ -409,46 +404,88 @@ public class MessageObject {
 
         generateCaption();
         if (generateLayout) {
-            TextPaint paint;
-            if (messageOwner.media instanceof TLRPC.TL_messageMediaGame) {
-                paint = gameTextPaint;
-            } else {
-                paint = textPaint;
-            }
-            int[] emojiOnly = MessagesController.getInstance().allowBigEmoji ? new int[1] : null;
-            messageText = Emoji.replaceEmoji(messageText, paint.getFontMetricsInt(), AndroidUtilities.dp(20), false, emojiOnly);
-            if (emojiOnly != null && emojiOnly[0] >= 1 && emojiOnly[0] <= 3) {
-                TextPaint emojiPaint;
-                int size;
-                switch (emojiOnly[0]) {
-                    case 1:
-                        emojiPaint = textPaintOneEmoji;
-                        size = AndroidUtilities.dp(32);
-                        break;
-                    case 2:
-                        emojiPaint = textPaintTwoEmoji;
-                        size = AndroidUtilities.dp(28);
-                        break;
-                    case 3:
-                    default:
-                        emojiPaint = textPaintThreeEmoji;
-                        size = AndroidUtilities.dp(24);
-                        break;
-                }
-                Emoji.EmojiSpan[] spans = ((Spannable) messageText).getSpans(0, messageText.length(), Emoji.EmojiSpan.class);
-                if (spans != null && spans.length > 0) {
-                    for (int a = 0; a < spans.length; a++) {
-                        spans[a].replaceFontMetrics(emojiPaint.getFontMetricsInt(), size);
-                    }
-                }
-            }
-            generateLayout(fromUser);
+            createLayout(fromUser);
         }
         layoutCreated = generateLayout;
         generateThumbs(false);
         checkMediaExistance();
     }
 
+    public void createLayout(AbstractMap<Integer, TLRPC.User> users) {
+        if (layoutCreated) {
+            return;
+        }
+        TLRPC.User fromUser = null;
+        if (messageOwner.from_id > 0) {
+            if (users != null) {
+                fromUser = users.get(messageOwner.from_id);
+            }
+            if (fromUser == null) {
+                fromUser = MessagesController.getInstance().getUser(messageOwner.from_id);
+            }
+        }
+        createLayout(fromUser);
+        layoutCreated = true;
+    }
+
+    private void createLayout(TLRPC.User fromUser) {
+        TextPaint paint = getLayoutPaint();
+        int[] emojiOnly = MessagesController.getInstance().allowBigEmoji ? new int[1] : null;
+        messageText = Emoji.replaceEmoji(messageText, paint.getFontMetricsInt(), AndroidUtilities.dp(20), false, emojiOnly);
+        if (emojiOnly != null && emojiOnly[0] >= 1 && emojiOnly[0] <= 3) {
+            TextPaint emojiPaint;
+            int size;
+            switch (emojiOnly[0]) {
+                case 1:
+                    emojiPaint = textPaintOneEmoji;
+                    size = AndroidUtilities.dp(32);
+                    break;
+                case 2:
+                    emojiPaint = textPaintTwoEmoji;
+                    size = AndroidUtilities.dp(28);
+                    break;
+                case 3:
+                default:
+                    emojiPaint = textPaintThreeEmoji;
+                    size = AndroidUtilities.dp(24);
+                    break;
+            }
+            Emoji.EmojiSpan[] spans = ((Spannable) messageText).getSpans(0, messageText.length(), Emoji.EmojiSpan.class);
+            if (spans != null && spans.length > 0) {
+                for (int a = 0; a < spans.length; a++) {
+                    spans[a].replaceFontMetrics(emojiPaint.getFontMetricsInt(), size);
+                }
+            }
+        }
+        generateLayout(fromUser);
+    }
+
+    public static void createThreadLayoutPaints() {
+        //the shared paints are resized from other threads, layouts built on a pool thread get their own
+        TextPaint[] paints = new TextPaint[2];
+        for (int a = 0; a < paints.length; a++) {
+            paints[a] = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            paints[a].setColor(Theme.MSG_TEXT_COLOR);
+            paints[a].linkColor = Theme.MSG_LINK_TEXT_COLOR;
+        }
+        paints[0].setTextSize(AndroidUtilities.dp(MessagesController.getInstance().fontSize));
+        paints[1].setTextSize(AndroidUtilities.dp(14));
+        threadLayoutPaints.set(paints);
+    }
+
+    public static void releaseThreadLayoutPaints() {
+        threadLayoutPaints.remove();
+    }
+
+    private TextPaint getLayoutPaint() {
+        boolean game = messageOwner.media instanceof TLRPC.TL_messageMediaGame;
+        TextPaint[] paints = threadLayoutPaints.get();
+        if (paints != null) {
+            return paints[game ? 1 : 0];
+        }
+        return game ? gameTextPaint : textPaint;
+    }
+
     public void applyNewText() {
         if (TextUtils.isEmpty(messageOwner.message)) {
             return;
@@ -668,19 +705,7 @@ public class MessageObject {
             }
         }
         if (!layoutCreated) {
-            layoutCreated = true;
-            TLRPC.User fromUser = null;
-            if (isFromUser()) {
-                fromUser = MessagesController.getInstance().getUser(messageOwner.from_id);
-            }
-            TextPaint paint;
-            if (messageOwner.media instanceof TLRPC.TL_messageMediaGame) {
-                paint = gameTextPaint;
-            } else {
-                paint = textPaint;
-            }
-            messageText = Emoji.replaceEmoji(messageText, paint.getFontMetricsInt(), AndroidUtilities.dp(20), false);
-            generateLayout(fromUser);
+            createLayout((AbstractMap<Integer, TLRPC.User>) null);
             return true;
         }
         return false;
@@ -1186,12 +1211,7 @@ public class MessageObject {
 
         StaticLayout textLayout;
 
-        TextPaint paint;
-        if (messageOwner.media instanceof TLRPC.TL_messageMediaGame) {
-            paint = gameTextPaint;
-        } else {
-            paint = textPaint;
-        }
+        TextPaint paint = getLayoutPaint();
         try {
             textLayout = new StaticLayout(messageText, paint, maxWidth, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
         } catch (Exception e) {
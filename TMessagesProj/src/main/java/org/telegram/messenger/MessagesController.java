@@ -66,6 +66,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
     public HashMap<Long, MessageObject> dialogMessage = new HashMap<>();
     public HashMap<Long, MessageObject> dialogMessagesByRandomIds = new HashMap<>();
     public HashMap<Integer, MessageObject> dialogMessagesByIds = new HashMap<>();
+    private HashMap<Long, TLRPC.TL_dialog> snapshotOnlyDialogs = new HashMap<>();
     public ConcurrentHashMap<Long, ArrayList<PrintingUser>> printingUsers = new ConcurrentHashMap<>(20, 1.0f, 2);
     public HashMap<Long, CharSequence> printingStrings = new HashMap<>();
     public HashMap<Long, Integer> printingStringsTypes = new HashMap<>();
@@ -528,6 +529,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
         StickersQuery.cleanup();
         SearchQuery.cleanup();
         DraftQuery.cleanup();
+        DialogsSnapshot.getInstance().cleanup();
 
         reloadingWebpages.clear();
         reloadingWebpagesPending.clear();
@@ -548,6 +550,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
         usersByUsernames.clear();
         chats.clear();
         dialogMessage.clear();
+        snapshotOnlyDialogs.clear();
         printingUsers.clear();
         printingStrings.clear();
         printingStringsTypes.clear();
@@ -2659,7 +2662,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                 for (int a = 0; a < size; a++) {
                     TLRPC.Message message = messagesRes.messages.get(a);
                     message.dialog_id = dialog_id;
-                    MessageObject messageObject = new MessageObject(message, usersDict, chatsDict, true);
+                    MessageObject messageObject = new MessageObject(message, usersDict, chatsDict, false);
                     objects.add(messageObject);
                     if (isCache) {
                         if (message.media instanceof TLRPC.TL_messageMediaUnsupported) {
@@ -2680,7 +2683,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                         }
                     }
                 }
-                AndroidUtilities.runOnUIThread(new Runnable() {
+                MessageLayoutCache.getInstance().generateLayouts(objects, usersDict, new Runnable() {
                     @Override
                     public void run() {
                         putUsers(messagesRes.users, isCache);
@@ -2718,6 +2721,9 @@ public class MessagesController implements NotificationCenter.NotificationCenter
         NotificationCenter.getInstance().postNotificationName(NotificationCenter.dialogsNeedReload);
         FileLog.e("tmessages", "load cacheOffset = " + offset + " count = " + count + " cache = " + fromCache);
         if (fromCache) {
+            if (offset == 0 && dialogs_dict.isEmpty()) {
+                DialogsSnapshot.getInstance().load();
+            }
             MessagesStorage.getInstance().getDialogs(offset == 0 ? 0 : nextDialogsCacheOffset, count);
         } else {
             TLRPC.TL_messages_getDialogs req = new TLRPC.TL_messages_getDialogs();
@@ -2940,6 +2946,11 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                             if (resetEnd) {
                                 dialogsEndReached = false;
                             }
+                            if (removeSnapshotOnlyDialogs()) {
+                                dialogs.clear();
+                                dialogs.addAll(dialogs_dict.values());
+                                sortDialogs(null);
+                            }
                             NotificationCenter.getInstance().postNotificationName(NotificationCenter.dialogsNeedReload);
                             loadDialogs(0, count, false);
                         }
@@ -2947,6 +2958,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                     return;
                 }
 
+                final boolean fromCache = loadType == 1 || loadType == 3;
                 final HashMap<Long, TLRPC.TL_dialog> new_dialogs_dict = new HashMap<>();
                 final HashMap<Long, MessageObject> new_dialogMessage = new HashMap<>();
                 final HashMap<Integer, TLRPC.User> usersDict = new HashMap<>();
@@ -2980,7 +2992,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                             continue;
                         }
                     }
-                    if (loadType != 1 && message.post && !message.out) {
+                    if (!fromCache && message.post && !message.out) {
                         message.media_unread = true;
                     }
                     MessageObject messageObject = new MessageObject(message, usersDict, chatsDict, false);
@@ -3019,7 +3031,9 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                                 continue;
                             }
                         }
-                        channelsPts.put(-(int) d.id, d.pts);
+                        if (loadType != 3) {
+                            channelsPts.put(-(int) d.id, d.pts);
+                        }
                     } else if ((int) d.id < 0) {
                         TLRPC.Chat chat = chatsDict.get(-(int) d.id);
                         if (chat != null && chat.migrated_to != null) {
@@ -3032,6 +3046,11 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                         dialogsToReload.add(d);
                     }
 
+                    //the snapshot is only shown, the database page brings the real pts and read state
+                    if (loadType == 3) {
+                        continue;
+                    }
+
                     Integer value = dialogs_read_inbox_max.get(d.id);
                     if (value == null) {
                         value = 0;
@@ -3045,7 +3064,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                     dialogs_read_outbox_max.put(d.id, Math.max(value, d.read_outbox_max_id));
                 }
 
-                if (loadType != 1) {
+                if (!fromCache) {
                     ImageLoader.saveMessagesThumbs(dialogsRes.messages);
 
                     for (int a = 0; a < dialogsRes.messages.size(); a++) {
@@ -3081,14 +3100,17 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                 AndroidUtilities.runOnUIThread(new Runnable() {
                     @Override
                     public void run() {
-                        if (loadType != 1) {
+                        if (loadType == 3 && !dialogs_dict.isEmpty()) {
+                            return;
+                        }
+                        if (!fromCache) {
                             applyDialogsNotificationsSettings(dialogsRes.dialogs);
                             if (!UserConfig.draftsLoaded) {
                                 DraftQuery.loadDrafts();
                             }
                         }
-                        putUsers(dialogsRes.users, loadType == 1);
-                        putChats(dialogsRes.chats, loadType == 1);
+                        putUsers(dialogsRes.users, fromCache);
+                        putChats(dialogsRes.chats, fromCache);
                         if (encChats != null) {
                             for (int a = 0; a < encChats.size(); a++) {
                                 TLRPC.EncryptedChat encryptedChat = encChats.get(a);
@@ -3098,7 +3120,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                                 putEncryptedChat(encryptedChat, true);
                             }
                         }
-                        if (!migrate) {
+                        if (!migrate && loadType != 3) {
                             loadingDialogs = false;
                         }
                         boolean added = false;
@@ -3111,9 +3133,15 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                                 continue;
                             }
                             TLRPC.TL_dialog currentDialog = dialogs_dict.get(key);
-                            if (loadType != 1 && value.draft instanceof TLRPC.TL_draftMessage) {
+                            if (!fromCache && value.draft instanceof TLRPC.TL_draftMessage) {
                                 DraftQuery.saveDraft(value.id, value.draft, null, false);
                             }
+                            if (loadType == 3) {
+                                snapshotOnlyDialogs.put(key, value);
+                            } else if (snapshotOnlyDialogs.remove(key) != null) {
+                                //already shown from the snapshot but new to the loaded list, the merge below replaces the snapshot entry
+                                added = true;
+                            }
                             if (currentDialog == null) {
                                 added = true;
                                 dialogs_dict.put(key, value);
@@ -3126,7 +3154,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                                     }
                                 }
                             } else {
-                                if (loadType != 1) {
+                                if (!fromCache) {
                                     currentDialog.notify_settings = value.notify_settings;
                                 }
                                 MessageObject oldMsg = dialogMessage.get(key);
@@ -3168,16 +3196,23 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                             }
                         }
 
+                        if (loadType == 1) {
+                            removeSnapshotOnlyDialogs();
+                        }
+
                         dialogs.clear();
                         dialogs.addAll(dialogs_dict.values());
                         sortDialogs(migrate ? chatsDict : null);
 
-                        if (loadType != 2) {
+                        if (loadType != 2 && loadType != 3) {
                             if (!migrate) {
                                 dialogsEndReached = (dialogsRes.dialogs.size() == 0 || dialogsRes.dialogs.size() != count) && loadType == 0;
                             }
                         }
                         NotificationCenter.getInstance().postNotificationName(NotificationCenter.dialogsNeedReload);
+                        if (loadType == 3) {
+                            return;
+                        }
 
                         if (migrate) {
                             UserConfig.migrateOffsetId = offset;
@@ -3200,6 +3235,31 @@ public class MessagesController implements NotificationCenter.NotificationCenter
         });
     }
 
+    //dialogs the snapshot showed but the database page doesn't have were deleted or left while the app was in background
+    private boolean removeSnapshotOnlyDialogs() {
+        if (snapshotOnlyDialogs.isEmpty()) {
+            return false;
+        }
+        boolean removed = false;
+        for (HashMap.Entry<Long, TLRPC.TL_dialog> pair : snapshotOnlyDialogs.entrySet()) {
+            Long key = pair.getKey();
+            if (dialogs_dict.get(key) != pair.getValue()) {
+                continue;
+            }
+            removed = true;
+            dialogs_dict.remove(key);
+            MessageObject messageObject = dialogMessage.remove(key);
+            if (messageObject != null) {
+                dialogMessagesByIds.remove(messageObject.getId());
+                if (messageObject.messageOwner.random_id != 0) {
+                    dialogMessagesByRandomIds.remove(messageObject.messageOwner.random_id);
+                }
+            }
+        }
+        snapshotOnlyDialogs.clear();
+        return removed;
+    }
+
     private void applyDialogNotificationsSettings(long dialog_id, TLRPC.PeerNotifySettings notify_settings) {
         SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Activity.MODE_PRIVATE);
         int currentValue = preferences.getInt("notify2_" + dialog_id, 0);
@@ -4418,6 +4478,7 @@ public class MessagesController implements NotificationCenter.NotificationCenter
     public void performLogout(boolean byUser) {
         SharedPreferences.Editor editor = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Activity.MODE_PRIVATE).edit();
         editor.clear().commit();
+        NotificationsSettingsStore.getInstance().reload();
         editor = ApplicationLoader.applicationContext.getSharedPreferences("emoji", Activity.MODE_PRIVATE).edit();
         editor.putLong("lastGifLoadTime", 0).putLong("lastStickersLoadTime", 0).commit();
         editor = ApplicationLoader.applicationContext.getSharedPreferences("mainconfig", Activity.MODE_PRIVATE).edit();
@@ -5163,15 +5224,8 @@ public class MessagesController implements NotificationCenter.NotificationCenter
                                 public void run() {
                                     if (!res.new_messages.isEmpty() || !res.new_encrypted_messages.isEmpty()) {
                                         final HashMap<Long, ArrayList<MessageObject>> messages = new HashMap<>();
-                                        for (int b = 0; b < res.new_encrypted_messages.size(); b++) {
-                                            TLRPC.EncryptedMessage encryptedMessage = res.new_encrypted_messages.get(b);
-                                            ArrayList<TLRPC.Message> decryptedMessages = SecretChatHelper.getInstance().decryptMessage(encryptedMessage);
-                                            if (decryptedMessages != null && !decryptedMessages.isEmpty()) {
-                                                for (int a = 0; a < decryptedMessages.size(); a++) {
-                                                    TLRPC.Message message = decryptedMessages.get(a);
-                                                    res.new_messages.add(message);
-                                                }
-                                            }
+                                        if (!res.new_encrypted_messages.isEmpty()) {
+                                            res.new_messages.addAll(SecretChatHelper.getInstance().decryptMessages(res.new_encrypted_messages));
                                         }
 
                                         ImageLoader.saveMessagesThumbs(res.new_messages);
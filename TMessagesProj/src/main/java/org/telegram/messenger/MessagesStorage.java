@@ -165,6 +165,7 @@ public class MessagesStorage {
                 database.executeFast("CREATE TABLE hashtag_recent_v2(id TEXT PRIMARY KEY, date INTEGER);").stepThis().dispose();
                 database.executeFast("CREATE TABLE webpage_pending(id INTEGER, mid INTEGER, PRIMARY KEY (id, mid));").stepThis().dispose();
                 database.executeFast("CREATE TABLE user_contacts_v6(uid INTEGER PRIMARY KEY, fname TEXT, sname TEXT)").stepThis().dispose();
+                database.executeFast("CREATE TABLE user_contacts_versions(uid INTEGER PRIMARY KEY, version INTEGER)").stepThis().dispose();
                 database.executeFast("CREATE TABLE sent_files_v2(uid TEXT, type INTEGER, data BLOB, PRIMARY KEY (uid, type))").stepThis().dispose();
                 database.executeFast("CREATE TABLE search_recent(did INTEGER PRIMARY KEY, date INTEGER);").stepThis().dispose();
                 database.executeFast("CREATE TABLE media_counts_v2(uid INTEGER, type INTEGER, count INTEGER, PRIMARY KEY(uid, type))").stepThis().dispose();
@@ -174,7 +175,7 @@ public class MessagesStorage {
                 database.executeFast("CREATE TABLE requested_holes(uid INTEGER, seq_out_start INTEGER, seq_out_end INTEGER, PRIMARY KEY (uid, seq_out_start, seq_out_end));").stepThis().dispose();
 
                 //version
-                database.executeFast("PRAGMA user_version = 37").stepThis().dispose();
+                database.executeFast("PRAGMA user_version = 38").stepThis().dispose();
 
                 //database.executeFast("CREATE TABLE secret_holes(uid INTEGER, seq_in INTEGER, seq_out INTEGER, data BLOB, PRIMARY KEY (uid, seq_in, seq_out));").stepThis().dispose();
                 //database.executeFast("CREATE TABLE attach_data(uid INTEGER, id INTEGER, data BLOB, PRIMARY KEY (uid, id))").stepThis().dispose();
@@ -208,7 +209,7 @@ public class MessagesStorage {
                     }
                 }
                 int version = database.executeInt("PRAGMA user_version");
-                if (version < 37) {
+                if (version < 38) {
                     updateDbToLastVersion(version);
                 }
             }
@@ -533,7 +534,12 @@ public class MessagesStorage {
                     if (version == 36) {
                         database.executeFast("ALTER TABLE enc_chats ADD COLUMN in_seq_no INTEGER default 0").stepThis().dispose();
                         database.executeFast("PRAGMA user_version = 37").stepThis().dispose();
-                        //version = 37;
+                        version = 37;
+                    }
+                    if (version == 37) {
+                        database.executeFast("CREATE TABLE IF NOT EXISTS user_contacts_versions(uid INTEGER PRIMARY KEY, version INTEGER)").stepThis().dispose();
+                        database.executeFast("PRAGMA user_version = 38").stepThis().dispose();
+                        //version = 38;
                     }
                 } catch (Exception e) {
                     FileLog.e("tmessages", e);
@@ -2231,7 +2237,30 @@ public class MessagesStorage {
         });
     }
 
-    public void putCachedPhoneBook(final HashMap<Integer, ContactsController.Contact> contactHashMap) {
+    public void putCachedPhoneBookVersions(final HashMap<Integer, Long> versions) {
+        storageQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    database.beginTransaction();
+                    database.executeFast("DELETE FROM user_contacts_versions WHERE 1").stepThis().dispose();
+                    SQLitePreparedStatement state = database.executeFast("REPLACE INTO user_contacts_versions VALUES(?, ?)");
+                    for (HashMap.Entry<Integer, Long> entry : versions.entrySet()) {
+                        state.requery();
+                        state.bindInteger(1, entry.getKey());
+                        state.bindLong(2, entry.getValue());
+                        state.step();
+                    }
+                    state.dispose();
+                    database.commitTransaction();
+                } catch (Exception e) {
+                    FileLog.e("tmessages", e);
+                }
+            }
+        });
+    }
+
+    public void putCachedPhoneBook(final HashMap<Integer, ContactsController.Contact> contactHashMap, final HashMap<Integer, Long> versions) {
         storageQueue.postRunnable(new Runnable() {
             @Override
             public void run() {
@@ -2239,8 +2268,15 @@ public class MessagesStorage {
                     database.beginTransaction();
                     SQLitePreparedStatement state = database.executeFast("REPLACE INTO user_contacts_v6 VALUES(?, ?, ?)");
                     SQLitePreparedStatement state2 = database.executeFast("REPLACE INTO user_phones_v6 VALUES(?, ?, ?, ?)");
+                    SQLitePreparedStatement state3 = database.executeFast("REPLACE INTO user_contacts_versions VALUES(?, ?)");
+                    SQLitePreparedStatement state4 = database.executeFast("DELETE FROM user_contacts_versions WHERE uid = ?");
                     for (HashMap.Entry<Integer, ContactsController.Contact> entry : contactHashMap.entrySet()) {
                         ContactsController.Contact contact = entry.getValue();
+                        if (versions == null || !versions.containsKey(contact.id)) {
+                            state4.requery();
+                            state4.bindInteger(1, contact.id);
+                            state4.step();
+                        }
                         if (contact.phones.isEmpty() || contact.shortPhones.isEmpty()) {
                             continue;
                         }
@@ -2258,8 +2294,19 @@ public class MessagesStorage {
                             state2.step();
                         }
                     }
+                    //contacts without phones are not stored, but their versions still are, so they are not read again on the next sync
+                    if (versions != null) {
+                        for (HashMap.Entry<Integer, Long> entry : versions.entrySet()) {
+                            state3.requery();
+                            state3.bindInteger(1, entry.getKey());
+                            state3.bindLong(2, entry.getValue());
+                            state3.step();
+                        }
+                    }
                     state.dispose();
                     state2.dispose();
+                    state3.dispose();
+                    state4.dispose();
                     database.commitTransaction();
                 } catch (Exception e) {
                     FileLog.e("tmessages", e);
@@ -2273,6 +2320,7 @@ public class MessagesStorage {
             @Override
             public void run() {
                 HashMap<Integer, ContactsController.Contact> contactHashMap = new HashMap<>();
+                HashMap<Integer, Long> versions = new HashMap<>();
                 try {
                     SQLiteCursor cursor = database.queryFinalized("SELECT us.uid, us.fname, us.sname, up.phone, up.sphone, up.deleted FROM user_contacts_v6 as us LEFT JOIN user_phones_v6 as up ON us.uid = up.uid WHERE 1");
                     while (cursor.next()) {
@@ -2302,11 +2350,18 @@ public class MessagesStorage {
                         contact.phoneTypes.add("");
                     }
                     cursor.dispose();
+
+                    cursor = database.queryFinalized("SELECT uid, version FROM user_contacts_versions WHERE 1");
+                    while (cursor.next()) {
+                        versions.put(cursor.intValue(0), cursor.longValue(1));
+                    }
+                    cursor.dispose();
                 } catch (Exception e) {
                     contactHashMap.clear();
+                    versions.clear();
                     FileLog.e("tmessages", e);
                 }
-                ContactsController.getInstance().performSyncPhoneBook(contactHashMap, true, true, false, false);
+                ContactsController.getInstance().performSyncPhoneBook(contactHashMap, versions, true, true, false, false);
             }
         });
     }
@@ -102,6 +102,7 @@ public class NotificationCenter {
     public static final int FilePreparingStarted = totalEvents++;
     public static final int FileNewChunkAvailable = totalEvents++;
     public static final int FilePreparingFailed = totalEvents++;
+    public static final int FilePreparingProgress = totalEvents++;
 
     public static final int audioProgressDidChanged = totalEvents++;
     public static final int audioDidReset = totalEvents++;
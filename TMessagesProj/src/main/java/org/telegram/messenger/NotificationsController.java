@@ -171,6 +171,7 @@ public class NotificationsController {
                 SharedPreferences.Editor editor = preferences.edit();
                 editor.clear();
                 editor.commit();
+                NotificationsSettingsStore.getInstance().reload();
             }
         });
     }
@@ -256,7 +257,7 @@ public class NotificationsController {
             @Override
             public void run() {
                 int old_unread_count = total_unread_count;
-                SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Context.MODE_PRIVATE);
+                NotificationsSettingsStore settingsStore = NotificationsSettingsStore.getInstance();
                 for (int a = 0; a < deletedMessages.size(); a++) {
                     int key = deletedMessages.keyAt(a);
                     long dialog_id = -key;
@@ -317,7 +318,7 @@ public class NotificationsController {
                     }
                 }
                 notifyCheck = false;
-                if (preferences.getBoolean("badgeNumber", true)) {
+                if (settingsStore.badgeNumber) {
                     setBadge(total_unread_count);
                 }
             }
@@ -425,8 +426,8 @@ public class NotificationsController {
 
                 int oldCount = popupArray.size();
                 HashMap<Long, Boolean> settingsCache = new HashMap<>();
-                SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Context.MODE_PRIVATE);
-                boolean allowPinned = preferences.getBoolean("PinnedMessages", true);
+                NotificationsSettingsStore settingsStore = NotificationsSettingsStore.getInstance();
+                boolean allowPinned = settingsStore.pinnedMessages;
                 int popup = 0;
 
                 for (int a = 0; a < messageObjects.size(); a++) {
@@ -457,10 +458,10 @@ public class NotificationsController {
 
                     Boolean value = settingsCache.get(dialog_id);
                     boolean isChat = (int) dialog_id < 0;
-                    popup = (int) dialog_id == 0 ? 0 : preferences.getInt(isChat ? "popupGroup" : "popupAll", 0);
+                    popup = (int) dialog_id == 0 ? 0 : isChat ? settingsStore.popupGroup : settingsStore.popupAll;
                     if (value == null) {
-                        int notifyOverride = getNotifyOverride(preferences, dialog_id);
-                        value = !(notifyOverride == 2 || (!preferences.getBoolean("EnableAll", true) || isChat && !preferences.getBoolean("EnableGroup", true)) && notifyOverride == 0);
+                        int notifyOverride = settingsStore.getNotifyOverride(dialog_id);
+                        value = settingsStore.isNotificationsEnabled(isChat, notifyOverride);
                         settingsCache.put(dialog_id, value);
                     }
                     if (popup != 0 && messageObject.messageOwner.to_id.channel_id != 0 && !messageObject.isMegagroup()) {
@@ -509,11 +510,11 @@ public class NotificationsController {
             @Override
             public void run() {
                 int old_unread_count = total_unread_count;
-                SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Context.MODE_PRIVATE);
+                NotificationsSettingsStore settingsStore = NotificationsSettingsStore.getInstance();
                 for (HashMap.Entry<Long, Integer> entry : dialogsToUpdate.entrySet()) {
                     long dialog_id = entry.getKey();
 
-                    int notifyOverride = getNotifyOverride(preferences, dialog_id);
+                    int notifyOverride = settingsStore.getNotifyOverride(dialog_id);
                     if (notifyCheck) {
                         Integer override = pushDialogsOverrideMention.get(dialog_id);
                         if (override != null && override == 1) {
@@ -521,7 +522,7 @@ public class NotificationsController {
                             notifyOverride = 1;
                         }
                     }
-                    boolean canAddValue = !(notifyOverride == 2 || (!preferences.getBoolean("EnableAll", true) || ((int)dialog_id < 0) && !preferences.getBoolean("EnableGroup", true)) && notifyOverride == 0);
+                    boolean canAddValue = settingsStore.isNotificationsEnabled((int) dialog_id < 0, notifyOverride);
 
                     Integer currentCount = pushDialogs.get(dialog_id);
                     Integer newCount = entry.getValue();
@@ -587,7 +588,7 @@ public class NotificationsController {
                     }
                 }
                 notifyCheck = false;
-                if (preferences.getBoolean("badgeNumber", true)) {
+                if (settingsStore.badgeNumber) {
                     setBadge(total_unread_count);
                 }
             }
@@ -607,7 +608,7 @@ public class NotificationsController {
                 pushMessagesDict.clear();
                 total_unread_count = 0;
                 personal_count = 0;
-                SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Context.MODE_PRIVATE);
+                NotificationsSettingsStore settingsStore = NotificationsSettingsStore.getInstance();
                 HashMap<Long, Boolean> settingsCache = new HashMap<>();
 
                 if (messages != null) {
@@ -630,8 +631,8 @@ public class NotificationsController {
                         }
                         Boolean value = settingsCache.get(dialog_id);
                         if (value == null) {
-                            int notifyOverride = getNotifyOverride(preferences, dialog_id);
-                            value = !(notifyOverride == 2 || (!preferences.getBoolean("EnableAll", true) || ((int) dialog_id < 0) && !preferences.getBoolean("EnableGroup", true)) && notifyOverride == 0);
+                            int notifyOverride = settingsStore.getNotifyOverride(dialog_id);
+                            value = settingsStore.isNotificationsEnabled((int) dialog_id < 0, notifyOverride);
                             settingsCache.put(dialog_id, value);
                         }
                         if (!value || dialog_id == opened_dialog_id && ApplicationLoader.isScreenOn) {
@@ -648,13 +649,13 @@ public class NotificationsController {
                     long dialog_id = entry.getKey();
                     Boolean value = settingsCache.get(dialog_id);
                     if (value == null) {
-                        int notifyOverride = getNotifyOverride(preferences, dialog_id);
+                        int notifyOverride = settingsStore.getNotifyOverride(dialog_id);
                         Integer override = pushDialogsOverrideMention.get(dialog_id);
                         if (override != null && override == 1) {
                             pushDialogsOverrideMention.put(dialog_id, 0);
                             notifyOverride = 1;
                         }
-                        value = !(notifyOverride == 2 || (!preferences.getBoolean("EnableAll", true) || ((int) dialog_id < 0) && !preferences.getBoolean("EnableGroup", true)) && notifyOverride == 0);
+                        value = settingsStore.isNotificationsEnabled((int) dialog_id < 0, notifyOverride);
                         settingsCache.put(dialog_id, value);
                     }
                     if (!value) {
@@ -675,7 +676,7 @@ public class NotificationsController {
                 }
                 showOrUpdateNotification(SystemClock.uptimeMillis() / 1000 < 60);
 
-                if (preferences.getBoolean("badgeNumber", true)) {
+                if (settingsStore.badgeNumber) {
                     setBadge(total_unread_count);
                 }
             }
@@ -1269,17 +1270,6 @@ public class NotificationsController {
                 && (messageObject.messageOwner.action == null || messageObject.messageOwner.action instanceof TLRPC.TL_messageActionEmpty);
     }
 
-    private int getNotifyOverride(SharedPreferences preferences, long dialog_id) {
-        int notifyOverride = preferences.getInt("notify2_" + dialog_id, 0);
-        if (notifyOverride == 3) {
-            int muteUntil = preferences.getInt("notifyuntil_" + dialog_id, 0);
-            if (muteUntil >= ConnectionsManager.getInstance().getCurrentTime()) {
-                notifyOverride = 2;
-            }
-        }
-        return notifyOverride;
-    }
-
     private void dismissNotification() {
         try {
             notificationManager.cancel(1);
@@ -1350,8 +1340,7 @@ public class NotificationsController {
         }
 
         try {
-            SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Context.MODE_PRIVATE);
-            int notifyOverride = getNotifyOverride(preferences, opened_dialog_id);
+            int notifyOverride = NotificationsSettingsStore.getInstance().getNotifyOverride(opened_dialog_id);
             if (notifyOverride == 2) {
                 return;
             }
@@ -1426,8 +1415,8 @@ public class NotificationsController {
             ConnectionsManager.getInstance().resumeNetworkMaybe();
 
             MessageObject lastMessageObject = pushMessages.get(0);
-            SharedPreferences preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Context.MODE_PRIVATE);
-            int dismissDate = preferences.getInt("dismissDate", 0);
+            NotificationsSettingsStore settingsStore = NotificationsSettingsStore.getInstance();
+            int dismissDate = settingsStore.dismissDate;
             if (lastMessageObject.messageOwner.date <= dismissDate) {
                 dismissNotification();
                 return;
@@ -1466,14 +1455,14 @@ public class NotificationsController {
             int priorityOverride;
             int vibrateOverride;
 
-            int notifyOverride = getNotifyOverride(preferences, override_dialog_id);
-            if (!notifyAboutLast || notifyOverride == 2 || (!preferences.getBoolean("EnableAll", true) || chat_id != 0 && !preferences.getBoolean("EnableGroup", true)) && notifyOverride == 0) {
+            int notifyOverride = settingsStore.getNotifyOverride(override_dialog_id);
+            if (!notifyAboutLast || !settingsStore.isNotificationsEnabled(chat_id != 0, notifyOverride)) {
                 notifyDisabled = true;
             }
 
             if (!notifyDisabled && dialog_id == override_dialog_id && chat != null) {
-                int notifyMaxCount = preferences.getInt("smart_max_count_" + dialog_id, 2);
-                int notifyDelay = preferences.getInt("smart_delay_" + dialog_id, 3 * 60);
+                int notifyMaxCount = settingsStore.getSmartMaxCount(dialog_id);
+                int notifyDelay = settingsStore.getSmartDelay(dialog_id);
                 if (notifyMaxCount != 0) {
                     Point dialogInfo = smartNotificationsDialogs.get(dialog_id);
                     if (dialogInfo == null) {
@@ -1497,36 +1486,36 @@ public class NotificationsController {
 
             String defaultPath = Settings.System.DEFAULT_NOTIFICATION_URI.getPath();
             if (!notifyDisabled) {
-                inAppSounds = preferences.getBoolean("EnableInAppSounds", true);
-                inAppVibrate = preferences.getBoolean("EnableInAppVibrate", true);
-                inAppPreview = preferences.getBoolean("EnableInAppPreview", true);
-                inAppPriority = preferences.getBoolean("EnableInAppPriority", false);
-                vibrateOverride = preferences.getInt("vibrate_" + dialog_id, 0);
-                priorityOverride = preferences.getInt("priority_" + dialog_id, 3);
+                inAppSounds = settingsStore.inAppSounds;
+                inAppVibrate = settingsStore.inAppVibrate;
+                inAppPreview = settingsStore.inAppPreview;
+                inAppPriority = settingsStore.inAppPriority;
+                vibrateOverride = settingsStore.getVibrateOverride(dialog_id);
+                priorityOverride = settingsStore.getPriorityOverride(dialog_id);
                 boolean vibrateOnlyIfSilent = false;
 
-                choosenSoundPath = preferences.getString("sound_path_" + dialog_id, null);
+                choosenSoundPath = settingsStore.getSoundPath(dialog_id);
                 if (chat_id != 0) {
                     if (choosenSoundPath != null && choosenSoundPath.equals(defaultPath)) {
                         choosenSoundPath = null;
                     } else if (choosenSoundPath == null) {
-                        choosenSoundPath = preferences.getString("GroupSoundPath", defaultPath);
+                        choosenSoundPath = settingsStore.groupSoundPath != null ? settingsStore.groupSoundPath : defaultPath;
                     }
-                    needVibrate = preferences.getInt("vibrate_group", 0);
-                    priority = preferences.getInt("priority_group", 1);
-                    ledColor = preferences.getInt("GroupLed", 0xff00ff00);
+                    needVibrate = settingsStore.vibrateGroup;
+                    priority = settingsStore.priorityGroup;
+                    ledColor = settingsStore.groupLed;
                 } else if (user_id != 0) {
                     if (choosenSoundPath != null && choosenSoundPath.equals(defaultPath)) {
                         choosenSoundPath = null;
                     } else if (choosenSoundPath == null) {
-                        choosenSoundPath = preferences.getString("GlobalSoundPath", defaultPath);
+                        choosenSoundPath = settingsStore.globalSoundPath != null ? settingsStore.globalSoundPath : defaultPath;
                     }
-                    needVibrate = preferences.getInt("vibrate_messages", 0);
-                    priority = preferences.getInt("priority_group", 1);
-                    ledColor = preferences.getInt("MessagesLed", 0xff00ff00);
+                    needVibrate = settingsStore.vibrateMessages;
+                    priority = settingsStore.priorityGroup;
+                    ledColor = settingsStore.messagesLed;
                 }
-                if (preferences.contains("color_" + dialog_id)) {
-                    ledColor = preferences.getInt("color_" + dialog_id, 0);
+                if (settingsStore.hasColor(dialog_id)) {
+                    ledColor = settingsStore.getColor(dialog_id);
                 }
 
                 if (priorityOverride != 3) {
@@ -0,0 +1,353 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import android.app.Activity;
+import android.content.SharedPreferences;
+
+import org.telegram.tgnet.ConnectionsManager;
+
+import java.util.Map;
+
+public class NotificationsSettingsStore {
+
+    private final static int FLAG_NOTIFY = 1;
+    private final static int FLAG_MUTE_UNTIL = 2;
+    private final static int FLAG_SMART_MAX_COUNT = 4;
+    private final static int FLAG_SMART_DELAY = 8;
+    private final static int FLAG_VIBRATE = 16;
+    private final static int FLAG_PRIORITY = 32;
+    private final static int FLAG_COLOR = 64;
+    private final static int FLAG_SOUND_PATH = 128;
+
+    private final static String[] dialogKeyPrefixes = new String[] {"notify2_", "notifyuntil_", "smart_max_count_", "smart_delay_", "vibrate_", "priority_", "color_", "sound_path_"};
+    private final static int[] dialogKeyFlags = new int[] {FLAG_NOTIFY, FLAG_MUTE_UNTIL, FLAG_SMART_MAX_COUNT, FLAG_SMART_DELAY, FLAG_VIBRATE, FLAG_PRIORITY, FLAG_COLOR, FLAG_SOUND_PATH};
+
+    private final static int initialCapacity = 64;
+
+    //written by the preferences listener on the main thread, read on the notifications queue
+    public volatile boolean enableAll;
+    public volatile boolean enableGroup;
+    public volatile int popupAll;
+    public volatile int popupGroup;
+    public volatile boolean pinnedMessages;
+    public volatile boolean badgeNumber;
+    public volatile int dismissDate;
+    public volatile boolean inAppSounds;
+    public volatile boolean inAppVibrate;
+    public volatile boolean inAppPreview;
+    public volatile boolean inAppPriority;
+    public volatile int vibrateGroup;
+    public volatile int vibrateMessages;
+    public volatile int priorityGroup;
+    public volatile int groupLed;
+    public volatile int messagesLed;
+    public volatile String groupSoundPath;
+    public volatile String globalSoundPath;
+
+    //open addressing table, dialog id 0 marks an empty slot
+    private long[] dialogIds;
+    private int[] flags;
+    private int[] notifyOverrides;
+    private int[] muteUntils;
+    private int[] smartMaxCounts;
+    private int[] smartDelays;
+    private int[] vibrateOverrides;
+    private int[] priorityOverrides;
+    private int[] colors;
+    private String[] soundPaths;
+    private int dialogsCount;
+
+    private final SharedPreferences preferences;
+    private final SharedPreferences.OnSharedPreferenceChangeListener changeListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            if (key != null) {
+                updateKey(key);
+            }
+        }
+    };
+
+    private static volatile NotificationsSettingsStore Instance = null;
+
+    public static NotificationsSettingsStore getInstance() {
+        NotificationsSettingsStore localInstance = Instance;
+        if (localInstance == null) {
+            synchronized (NotificationsSettingsStore.class) {
+                localInstance = Instance;
+                if (localInstance == null) {
+                    Instance = localInstance = new NotificationsSettingsStore();
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    public NotificationsSettingsStore() {
+        preferences = ApplicationLoader.applicationContext.getSharedPreferences("Notifications", Activity.MODE_PRIVATE);
+        reload();
+        preferences.registerOnSharedPreferenceChangeListener(changeListener);
+    }
+
+    public synchronized void reload() {
+        allocateTable(initialCapacity);
+        loadGlobals();
+        Map<String, ?> all = preferences.getAll();
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            updateDialogKey(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized int getNotifyOverride(long dialog_id) {
+        int index = findSlot(dialog_id);
+        if (index < 0 || (flags[index] & FLAG_NOTIFY) == 0) {
+            return 0;
+        }
+        int notifyOverride = notifyOverrides[index];
+        if (notifyOverride == 3 && (flags[index] & FLAG_MUTE_UNTIL) != 0) {
+            if (muteUntils[index] >= ConnectionsManager.getInstance().getCurrentTime()) {
+                notifyOverride = 2;
+            }
+        }
+        return notifyOverride;
+    }
+
+    public synchronized boolean isNotificationsEnabled(boolean isChat, int notifyOverride) {
+        return !(notifyOverride == 2 || (!enableAll || isChat && !enableGroup) && notifyOverride == 0);
+    }
+
+    public synchronized int getSmartMaxCount(long dialog_id) {
+        int index = findSlot(dialog_id);
+        return index < 0 || (flags[index] & FLAG_SMART_MAX_COUNT) == 0 ? 2 : smartMaxCounts[index];
+    }
+
+    public synchronized int getSmartDelay(long dialog_id) {
+        int index = findSlot(dialog_id);
+        return index < 0 || (flags[index] & FLAG_SMART_DELAY) == 0 ? 3 * 60 : smartDelays[index];
+    }
+
+    public synchronized int getVibrateOverride(long dialog_id) {
+        int index = findSlot(dialog_id);
+        return index < 0 || (flags[index] & FLAG_VIBRATE) == 0 ? 0 : vibrateOverrides[index];
+    }
+
+    public synchronized int getPriorityOverride(long dialog_id) {
+        int index = findSlot(dialog_id);
+        return index < 0 || (flags[index] & FLAG_PRIORITY) == 0 ? 3 : priorityOverrides[index];
+    }
+
+    public synchronized boolean hasColor(long dialog_id) {
+        int index = findSlot(dialog_id);
+        return index >= 0 && (flags[index] & FLAG_COLOR) != 0;
+    }
+
+    public synchronized int getColor(long dialog_id) {
+        int index = findSlot(dialog_id);
+        return index < 0 || (flags[index] & FLAG_COLOR) == 0 ? 0 : colors[index];
+    }
+
+    public synchronized String getSoundPath(long dialog_id) {
+        int index = findSlot(dialog_id);
+        return index < 0 || (flags[index] & FLAG_SOUND_PATH) == 0 ? null : soundPaths[index];
+    }
+
+    private void loadGlobals() {
+        enableAll = preferences.getBoolean("EnableAll", true);
+        enableGroup = preferences.getBoolean("EnableGroup", true);
+        popupAll = preferences.getInt("popupAll", 0);
+        popupGroup = preferences.getInt("popupGroup", 0);
+        pinnedMessages = preferences.getBoolean("PinnedMessages", true);
+        badgeNumber = preferences.getBoolean("badgeNumber", true);
+        dismissDate = preferences.getInt("dismissDate", 0);
+        inAppSounds = preferences.getBoolean("EnableInAppSounds", true);
+        inAppVibrate = preferences.getBoolean("EnableInAppVibrate", true);
+        inAppPreview = preferences.getBoolean("EnableInAppPreview", true);
+        inAppPriority = preferences.getBoolean("EnableInAppPriority", false);
+        vibrateGroup = preferences.getInt("vibrate_group", 0);
+        vibrateMessages = preferences.getInt("vibrate_messages", 0);
+        priorityGroup = preferences.getInt("priority_group", 1);
+        groupLed = preferences.getInt("GroupLed", 0xff00ff00);
+        messagesLed = preferences.getInt("MessagesLed", 0xff00ff00);
+        groupSoundPath = preferences.getString("GroupSoundPath", null);
+        globalSoundPath = preferences.getString("GlobalSoundPath", null);
+    }
+
+    private synchronized void updateKey(String key) {
+        Object value = null;
+        try {
+            if (preferences.contains(key)) {
+                value = key.startsWith("sound_path_") ? preferences.getString(key, null) : preferences.getInt(key, 0);
+            }
+        } catch (ClassCastException e) {
+            //not a per dialog key, globals are reloaded below
+        }
+        if (!updateDialogKey(key, value)) {
+            try {
+                loadGlobals();
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+            }
+        }
+    }
+
+    private boolean updateDialogKey(String key, Object value) {
+        for (int a = 0; a < dialogKeyPrefixes.length; a++) {
+            String prefix = dialogKeyPrefixes[a];
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            long dialog_id;
+            try {
+                dialog_id = Long.parseLong(key.substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                //global keys like vibrate_group share the prefix
+                continue;
+            }
+            if (dialog_id == 0) {
+                return true;
+            }
+            int flag = dialogKeyFlags[a];
+            if (value == null) {
+                int index = findSlot(dialog_id);
+                if (index >= 0) {
+                    flags[index] &= ~flag;
+                    if (flag == FLAG_SOUND_PATH) {
+                        soundPaths[index] = null;
+                    }
+                }
+                return true;
+            }
+            int index = getOrCreateSlot(dialog_id);
+            if (flag == FLAG_SOUND_PATH) {
+                if (!(value instanceof String)) {
+                    return true;
+                }
+                soundPaths[index] = (String) value;
+            } else {
+                if (!(value instanceof Integer)) {
+                    return true;
+                }
+                int intValue = (Integer) value;
+                switch (flag) {
+                    case FLAG_NOTIFY:
+                        notifyOverrides[index] = intValue;
+                        break;
+                    case FLAG_MUTE_UNTIL:
+                        muteUntils[index] = intValue;
+                        break;
+                    case FLAG_SMART_MAX_COUNT:
+                        smartMaxCounts[index] = intValue;
+                        break;
+                    case FLAG_SMART_DELAY:
+                        smartDelays[index] = intValue;
+                        break;
+                    case FLAG_VIBRATE:
+                        vibrateOverrides[index] = intValue;
+                        break;
+                    case FLAG_PRIORITY:
+                        priorityOverrides[index] = intValue;
+                        break;
+                    case FLAG_COLOR:
+                        colors[index] = intValue;
+                        break;
+                }
+            }
+            flags[index] |= flag;
+            return true;
+        }
+        return false;
+    }
+
+    private void allocateTable(int capacity) {
+        dialogIds = new long[capacity];
+        flags = new int[capacity];
+        notifyOverrides = new int[capacity];
+        muteUntils = new int[capacity];
+        smartMaxCounts = new int[capacity];
+        smartDelays = new int[capacity];
+        vibrateOverrides = new int[capacity];
+        priorityOverrides = new int[capacity];
+        colors = new int[capacity];
+        soundPaths = new String[capacity];
+        dialogsCount = 0;
+    }
+
+    private static int hash(long dialog_id, int mask) {
+        int h = (int) (dialog_id ^ (dialog_id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int findSlot(long dialog_id) {
+        if (dialog_id == 0) {
+            return -1;
+        }
+        int mask = dialogIds.length - 1;
+        int index = hash(dialog_id, mask);
+        while (dialogIds[index] != 0) {
+            if (dialogIds[index] == dialog_id) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int getOrCreateSlot(long dialog_id) {
+        int index = findSlot(dialog_id);
+        if (index >= 0) {
+            return index;
+        }
+        if ((dialogsCount + 1) * 2 > dialogIds.length) {
+            grow();
+        }
+        int mask = dialogIds.length - 1;
+        index = hash(dialog_id, mask);
+        while (dialogIds[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        dialogIds[index] = dialog_id;
+        dialogsCount++;
+        return index;
+    }
+
+    private void grow() {
+        long[] oldDialogIds = dialogIds;
+        int[] oldFlags = flags;
+        int[] oldNotifyOverrides = notifyOverrides;
+        int[] oldMuteUntils = muteUntils;
+        int[] oldSmartMaxCounts = smartMaxCounts;
+        int[] oldSmartDelays = smartDelays;
+        int[] oldVibrateOverrides = vibrateOverrides;
+        int[] oldPriorityOverrides = priorityOverrides;
+        int[] oldColors = colors;
+        String[] oldSoundPaths = soundPaths;
+        allocateTable(oldDialogIds.length * 2);
+        int mask = dialogIds.length - 1;
+        for (int a = 0; a < oldDialogIds.length; a++) {
+            if (oldDialogIds[a] == 0) {
+                continue;
+            }
+            int index = hash(oldDialogIds[a], mask);
+            while (dialogIds[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            dialogIds[index] = oldDialogIds[a];
+            flags[index] = oldFlags[a];
+            notifyOverrides[index] = oldNotifyOverrides[a];
+            muteUntils[index] = oldMuteUntils[a];
+            smartMaxCounts[index] = oldSmartMaxCounts[a];
+            smartDelays[index] = oldSmartDelays[a];
+            vibrateOverrides[index] = oldVibrateOverrides[a];
+            priorityOverrides[index] = oldPriorityOverrides[a];
+            colors[index] = oldColors[a];
+            soundPaths[index] = oldSoundPaths[a];
+            dialogsCount++;
+        }
+    }
+}
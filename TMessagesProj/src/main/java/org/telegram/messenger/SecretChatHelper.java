@@ -31,6 +31,10 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class SecretChatHelper {
 
@@ -66,14 +70,25 @@ public class SecretChatHelper {
         }
     }
 
+    private static class DecryptedObject {
+        public TLObject object;
+        public boolean new_key_used;
+        public long key_fingerprint;
+        public byte[] auth_key;
+    }
+
     public static final int CURRENT_SECRET_CHAT_LAYER = 46;
 
+    private final static int minParallelDecryptCount = 8;
+    private final static int keepAliveSeconds = 30;
+
     private ArrayList<Integer> sendingNotifyLayer = new ArrayList<>();
     private HashMap<Integer, ArrayList<TL_decryptedMessageHolder>> secretHolesQueue = new HashMap<>();
     private HashMap<Integer, TLRPC.EncryptedChat> acceptingChats = new HashMap<>();
     public ArrayList<TLRPC.Update> delayedEncryptedChatUpdates = new ArrayList<>();
     private ArrayList<Long> pendingEncMessagesToDelete = new ArrayList<>();
     private boolean startingSecretChat = false;
+    private ThreadPoolExecutor decryptExecutor;
 
     private static volatile SecretChatHelper Instance = null;
 
@@ -1506,9 +1521,102 @@ public class SecretChatHelper {
         if (chat == null || chat instanceof TLRPC.TL_encryptedChatDiscarded) {
             return null;
         }
+        return processDecryptedMessage(chat, message, decryptMessageObject(chat, message));
+    }
 
+    protected ArrayList<TLRPC.Message> decryptMessages(final ArrayList<TLRPC.EncryptedMessage> encryptedMessages) {
+        ArrayList<TLRPC.Message> result = new ArrayList<>();
+        final int count = encryptedMessages.size();
+        if (count == 0) {
+            return result;
+        }
+        long startTime = System.currentTimeMillis();
+        HashMap<Integer, TLRPC.EncryptedChat> chatsCache = new HashMap<>();
+        final TLRPC.EncryptedChat[] chats = new TLRPC.EncryptedChat[count];
+        for (int a = 0; a < count; a++) {
+            int chat_id = encryptedMessages.get(a).chat_id;
+            TLRPC.EncryptedChat chat;
+            if (chatsCache.containsKey(chat_id)) {
+                chat = chatsCache.get(chat_id);
+            } else {
+                chat = MessagesController.getInstance().getEncryptedChatDB(chat_id);
+                if (chat instanceof TLRPC.TL_encryptedChatDiscarded) {
+                    chat = null;
+                }
+                chatsCache.put(chat_id, chat);
+            }
+            chats[a] = chat;
+        }
+
+        final DecryptedObject[] decryptedObjects = new DecryptedObject[count];
+        boolean parallel = count >= minParallelDecryptCount && Runtime.getRuntime().availableProcessors() > 1;
+        if (parallel) {
+            if (decryptExecutor == null) {
+                int threadsCount = Math.min(4, Runtime.getRuntime().availableProcessors());
+                decryptExecutor = new ThreadPoolExecutor(threadsCount, threadsCount, keepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+                decryptExecutor.allowCoreThreadTimeOut(true);
+            }
+            final CountDownLatch latch = new CountDownLatch(count);
+            for (int a = 0; a < count; a++) {
+                if (chats[a] == null) {
+                    latch.countDown();
+                    continue;
+                }
+                final int index = a;
+                decryptExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            decryptedObjects[index] = decryptMessageObject(chats[index], encryptedMessages.get(index));
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            try {
+                latch.await();
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+            }
+        }
+
+        //sequence numbers and key usage are applied in the original order on the current thread
+        for (int a = 0; a < count; a++) {
+            TLRPC.EncryptedChat chat = chats[a];
+            if (chat == null) {
+                continue;
+            }
+            TLRPC.EncryptedMessage message = encryptedMessages.get(a);
+            DecryptedObject decryptedObject = decryptedObjects[a];
+            if (parallel && (decryptedObject == null || !checkDecryptedKey(chat, decryptedObject))) {
+                //an earlier message of the batch may have switched the chat to a new key
+                decryptedObject = decryptMessageObject(chat, message);
+            }
+            ArrayList<TLRPC.Message> messages = processDecryptedMessage(chat, message, decryptedObject);
+            if (messages != null) {
+                result.addAll(messages);
+            }
+        }
+        FileLog.e("tmessages", "decrypted " + count + " secret messages in " + (System.currentTimeMillis() - startTime) + " ms" + (parallel ? " in parallel" : ""));
+        return result;
+    }
+
+    private boolean checkDecryptedKey(TLRPC.EncryptedChat chat, DecryptedObject decryptedObject) {
+        if (chat.key_fingerprint == decryptedObject.key_fingerprint) {
+            decryptedObject.new_key_used = false;
+            return chat.auth_key == decryptedObject.auth_key;
+        } else if (chat.future_key_fingerprint != 0 && chat.future_key_fingerprint == decryptedObject.key_fingerprint) {
+            decryptedObject.new_key_used = true;
+            return chat.future_auth_key == decryptedObject.auth_key;
+        }
+        return false;
+    }
+
+    private DecryptedObject decryptMessageObject(TLRPC.EncryptedChat chat, TLRPC.EncryptedMessage message) {
+        NativeByteBuffer is = null;
         try {
-            NativeByteBuffer is = new NativeByteBuffer(message.bytes.length);
+            is = new NativeByteBuffer(message.bytes.length);
             is.writeBytes(message.bytes);
             is.position(0);
             long fingerprint = is.readInt64(false);
@@ -1536,86 +1644,105 @@ public class SecretChatHelper {
                     return null;
                 }
 
-                TLObject object = TLClassStore.Instance().TLdeserialize(is, is.readInt32(false), false);
-
+                DecryptedObject decryptedObject = new DecryptedObject();
+                decryptedObject.object = TLClassStore.Instance().TLdeserialize(is, is.readInt32(false), false);
+                decryptedObject.new_key_used = new_key_used;
+                decryptedObject.key_fingerprint = fingerprint;
+                decryptedObject.auth_key = keyToDecrypt;
+                return decryptedObject;
+            } else {
+                FileLog.e("tmessages", String.format("fingerprint mismatch %x", fingerprint));
+            }
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        } finally {
+            if (is != null) {
                 is.reuse();
-                if (!new_key_used && AndroidUtilities.getPeerLayerVersion(chat.layer) >= 20) {
-                    chat.key_use_count_in++;
-                }
-                if (object instanceof TLRPC.TL_decryptedMessageLayer) {
-                    final TLRPC.TL_decryptedMessageLayer layer = (TLRPC.TL_decryptedMessageLayer) object;
-                    if (chat.seq_in == 0 && chat.seq_out == 0) {
-                        if (chat.admin_id == UserConfig.getClientUserId()) {
-                            chat.seq_out = 1;
-                        } else {
-                            chat.seq_in = 1;
-                        }
+            }
+        }
+        return null;
+    }
+
+    private ArrayList<TLRPC.Message> processDecryptedMessage(final TLRPC.EncryptedChat chat, TLRPC.EncryptedMessage message, DecryptedObject decryptedObject) {
+        if (decryptedObject == null) {
+            return null;
+        }
+        try {
+            TLObject object = decryptedObject.object;
+            boolean new_key_used = decryptedObject.new_key_used;
+            if (!new_key_used && AndroidUtilities.getPeerLayerVersion(chat.layer) >= 20) {
+                chat.key_use_count_in++;
+            }
+            if (object instanceof TLRPC.TL_decryptedMessageLayer) {
+                final TLRPC.TL_decryptedMessageLayer layer = (TLRPC.TL_decryptedMessageLayer) object;
+                if (chat.seq_in == 0 && chat.seq_out == 0) {
+                    if (chat.admin_id == UserConfig.getClientUserId()) {
+                        chat.seq_out = 1;
+                    } else {
+                        chat.seq_in = 1;
                     }
-                    if (layer.random_bytes.length < 15) {
-                        FileLog.e("tmessages", "got random bytes less than needed");
-                        return null;
+                }
+                if (layer.random_bytes.length < 15) {
+                    FileLog.e("tmessages", "got random bytes less than needed");
+                    return null;
+                }
+                FileLog.e("tmessages", "current chat in_seq = " + chat.seq_in + " out_seq = " + chat.seq_out);
+                FileLog.e("tmessages", "got message with in_seq = " + layer.in_seq_no + " out_seq = " + layer.out_seq_no);
+                if (layer.out_seq_no < chat.seq_in) {
+                    return null;
+                }
+                if (chat.seq_in != layer.out_seq_no && chat.seq_in != layer.out_seq_no - 2) {
+                    FileLog.e("tmessages", "got hole");
+                    ArrayList<TL_decryptedMessageHolder> arr = secretHolesQueue.get(chat.id);
+                    if (arr == null) {
+                        arr = new ArrayList<>();
+                        secretHolesQueue.put(chat.id, arr);
                     }
-                    FileLog.e("tmessages", "current chat in_seq = " + chat.seq_in + " out_seq = " + chat.seq_out);
-                    FileLog.e("tmessages", "got message with in_seq = " + layer.in_seq_no + " out_seq = " + layer.out_seq_no);
-                    if (layer.out_seq_no < chat.seq_in) {
+                    if (arr.size() >= 4) {
+                        secretHolesQueue.remove(chat.id);
+                        final TLRPC.TL_encryptedChatDiscarded newChat = new TLRPC.TL_encryptedChatDiscarded();
+                        newChat.id = chat.id;
+                        newChat.user_id = chat.user_id;
+                        newChat.auth_key = chat.auth_key;
+                        newChat.key_create_date = chat.key_create_date;
+                        newChat.key_use_count_in = chat.key_use_count_in;
+                        newChat.key_use_count_out = chat.key_use_count_out;
+                        newChat.seq_in = chat.seq_in;
+                        newChat.seq_out = chat.seq_out;
+                        AndroidUtilities.runOnUIThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                MessagesController.getInstance().putEncryptedChat(newChat, false);
+                                MessagesStorage.getInstance().updateEncryptedChat(newChat);
+                                NotificationCenter.getInstance().postNotificationName(NotificationCenter.encryptedChatUpdated, newChat);
+                            }
+                        });
+                        declineSecretChat(chat.id);
                         return null;
                     }
-                    if (chat.seq_in != layer.out_seq_no && chat.seq_in != layer.out_seq_no - 2) {
-                        FileLog.e("tmessages", "got hole");
-                        ArrayList<TL_decryptedMessageHolder> arr = secretHolesQueue.get(chat.id);
-                        if (arr == null) {
-                            arr = new ArrayList<>();
-                            secretHolesQueue.put(chat.id, arr);
-                        }
-                        if (arr.size() >= 4) {
-                            secretHolesQueue.remove(chat.id);
-                            final TLRPC.TL_encryptedChatDiscarded newChat = new TLRPC.TL_encryptedChatDiscarded();
-                            newChat.id = chat.id;
-                            newChat.user_id = chat.user_id;
-                            newChat.auth_key = chat.auth_key;
-                            newChat.key_create_date = chat.key_create_date;
-                            newChat.key_use_count_in = chat.key_use_count_in;
-                            newChat.key_use_count_out = chat.key_use_count_out;
-                            newChat.seq_in = chat.seq_in;
-                            newChat.seq_out = chat.seq_out;
-                            AndroidUtilities.runOnUIThread(new Runnable() {
-                                @Override
-                                public void run() {
-                                    MessagesController.getInstance().putEncryptedChat(newChat, false);
-                                    MessagesStorage.getInstance().updateEncryptedChat(newChat);
-                                    NotificationCenter.getInstance().postNotificationName(NotificationCenter.encryptedChatUpdated, newChat);
-                                }
-                            });
-                            declineSecretChat(chat.id);
-                            return null;
-                        }
 
-                        TL_decryptedMessageHolder holder = new TL_decryptedMessageHolder();
-                        holder.layer = layer;
-                        holder.file = message.file;
-                        holder.random_id = message.random_id;
-                        holder.date = message.date;
-                        holder.new_key_used = new_key_used;
-                        arr.add(holder);
-                        return null;
-                    }
-                    applyPeerLayer(chat, layer.layer);
-                    chat.seq_in = layer.out_seq_no;
-                    chat.in_seq_no = layer.in_seq_no;
-                    MessagesStorage.getInstance().updateEncryptedChatSeq(chat);
-                    object = layer.message;
-                }
-                ArrayList<TLRPC.Message> messages = new ArrayList<>();
-                TLRPC.Message decryptedMessage = processDecryptedObject(chat, message.file, message.date, message.random_id, object, new_key_used);
-                if (decryptedMessage != null) {
-                    messages.add(decryptedMessage);
+                    TL_decryptedMessageHolder holder = new TL_decryptedMessageHolder();
+                    holder.layer = layer;
+                    holder.file = message.file;
+                    holder.random_id = message.random_id;
+                    holder.date = message.date;
+                    holder.new_key_used = new_key_used;
+                    arr.add(holder);
+                    return null;
                 }
-                checkSecretHoles(chat, messages);
-                return messages;
-            } else {
-                is.reuse();
-                FileLog.e("tmessages", String.format("fingerprint mismatch %x", fingerprint));
+                applyPeerLayer(chat, layer.layer);
+                chat.seq_in = layer.out_seq_no;
+                chat.in_seq_no = layer.in_seq_no;
+                MessagesStorage.getInstance().updateEncryptedChatSeq(chat);
+                object = layer.message;
+            }
+            ArrayList<TLRPC.Message> messages = new ArrayList<>();
+            TLRPC.Message decryptedMessage = processDecryptedObject(chat, message.file, message.date, message.random_id, object, new_key_used);
+            if (decryptedMessage != null) {
+                messages.add(decryptedMessage);
             }
+            checkSecretHoles(chat, messages);
+            return messages;
         } catch (Exception e) {
             FileLog.e("tmessages", e);
         }
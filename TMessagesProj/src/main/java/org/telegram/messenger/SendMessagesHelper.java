@@ -27,7 +27,6 @@ import android.text.TextUtils;
 import android.webkit.MimeTypeMap;
 import android.widget.Toast;
 
-import org.telegram.messenger.audioinfo.AudioInfo;
 import org.telegram.messenger.query.DraftQuery;
 import org.telegram.messenger.query.SearchQuery;
 import org.telegram.messenger.query.StickersQuery;
@@ -2720,8 +2719,8 @@ public class SendMessagesHelper implements NotificationCenter.NotificationCenter
             ext = path.substring(idx + 1);
         }
         if (ext.toLowerCase().equals("mp3") || ext.toLowerCase().equals("m4a")) {
-            AudioInfo audioInfo = AudioInfo.getAudioInfo(f);
-            if (audioInfo != null && audioInfo.getDuration() != 0) {
+            AudioInfoScanner.AudioMetadata audioInfo = AudioInfoScanner.getInstance().getAudioMetadata(f);
+            if (audioInfo != null && audioInfo.duration != 0) {
                 if (isEncrypted) {
                     int high_id = (int) (dialog_id >> 32);
                     TLRPC.EncryptedChat encryptedChat = MessagesController.getInstance().getEncryptedChat(high_id);
@@ -2736,9 +2735,9 @@ public class SendMessagesHelper implements NotificationCenter.NotificationCenter
                 } else {
                     attributeAudio = new TLRPC.TL_documentAttributeAudio();
                 }
-                attributeAudio.duration = (int) (audioInfo.getDuration() / 1000);
-                attributeAudio.title = audioInfo.getTitle();
-                attributeAudio.performer = audioInfo.getArtist();
+                attributeAudio.duration = (int) (audioInfo.duration / 1000);
+                attributeAudio.title = audioInfo.title;
+                attributeAudio.performer = audioInfo.artist;
                 if (attributeAudio.title == null) {
                     attributeAudio.title = "";
                     attributeAudio.flags |= 1;
@@ -0,0 +1,121 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+public class StartupGraph {
+
+    private static class Stage {
+        public String name;
+        public Runnable runnable;
+        public boolean background;
+        public ArrayList<Stage> dependencies = new ArrayList<>();
+        public CountDownLatch doneLatch = new CountDownLatch(1);
+        public long startTime;
+        public long endTime;
+    }
+
+    private final String name;
+    private final ArrayList<Stage> stages = new ArrayList<>();
+    private final HashMap<String, Stage> stagesByName = new HashMap<>();
+    private long startTime;
+    private long endTime;
+
+    public StartupGraph(String name) {
+        this.name = name;
+    }
+
+    public StartupGraph addStage(String stageName, boolean background, Runnable runnable, String... dependencies) {
+        Stage stage = new Stage();
+        stage.name = stageName;
+        stage.runnable = runnable;
+        stage.background = background;
+        for (int a = 0; a < dependencies.length; a++) {
+            Stage dependency = stagesByName.get(dependencies[a]);
+            if (dependency == null) {
+                throw new IllegalArgumentException("stage " + stageName + " depends on unknown stage " + dependencies[a]);
+            }
+            stage.dependencies.add(dependency);
+        }
+        stages.add(stage);
+        stagesByName.put(stageName, stage);
+        return this;
+    }
+
+    public void run() {
+        startTime = SystemClock.elapsedRealtime();
+        for (int a = 0; a < stages.size(); a++) {
+            final Stage stage = stages.get(a);
+            if (stage.background) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        awaitDependencies(stage);
+                        runStage(stage);
+                    }
+                });
+                thread.setName(name + " " + stage.name);
+                thread.start();
+            } else {
+                awaitDependencies(stage);
+                runStage(stage);
+            }
+        }
+        for (int a = 0; a < stages.size(); a++) {
+            await(stages.get(a));
+        }
+        endTime = SystemClock.elapsedRealtime();
+    }
+
+    public void logTrace() {
+        for (int a = 0; a < stages.size(); a++) {
+            Stage stage = stages.get(a);
+            FileLog.e("tmessages", name + " stage " + stage.name + " took " + (stage.endTime - stage.startTime) + " ms, started at +" + (stage.startTime - startTime) + " ms" + (stage.background ? " in background" : ""));
+        }
+        FileLog.e("tmessages", name + " took " + (endTime - startTime) + " ms");
+    }
+
+    private void awaitDependencies(Stage stage) {
+        for (int a = 0; a < stage.dependencies.size(); a++) {
+            await(stage.dependencies.get(a));
+        }
+    }
+
+    private void await(Stage stage) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                stage.doneLatch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runStage(Stage stage) {
+        stage.startTime = SystemClock.elapsedRealtime();
+        try {
+            stage.runnable.run();
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        } finally {
+            stage.endTime = SystemClock.elapsedRealtime();
+            stage.doneLatch.countDown();
+        }
+    }
+}
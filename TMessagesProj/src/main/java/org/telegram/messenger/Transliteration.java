@@ -0,0 +1,645 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class Transliteration {
+
+    private final static int maxCachedResults = 1000;
+
+    //two-level table indexed by the high and low byte of a BMP char, pages are allocated only when used
+    private final char[][][] pages = new char[256][][];
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<String, String>(0, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxCachedResults;
+        }
+    };
+
+    private static volatile Transliteration Instance = null;
+
+    public static Transliteration getInstance() {
+        Transliteration localInstance = Instance;
+        if (localInstance == null) {
+            synchronized (Transliteration.class) {
+                localInstance = Instance;
+                if (localInstance == null) {
+                    Instance = localInstance = new Transliteration();
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    private Transliteration() {
+        put("ȼ", "c");
+        put("ᶇ", "n");
+        put("ɖ", "d");
+        put("ỿ", "y");
+        put("ᴓ", "o");
+        put("ø", "o");
+        put("ḁ", "a");
+        put("ʯ", "h");
+        put("ŷ", "y");
+        put("ʞ", "k");
+        put("ừ", "u");
+        put("ꜳ", "aa");
+        put("ĳ", "ij");
+        put("ḽ", "l");
+        put("ɪ", "i");
+        put("ḇ", "b");
+        put("ʀ", "r");
+        put("ě", "e");
+        put("ﬃ", "ffi");
+        put("ơ", "o");
+        put("ⱹ", "r");
+        put("ồ", "o");
+        put("ǐ", "i");
+        put("ꝕ", "p");
+        put("ý", "y");
+        put("ḝ", "e");
+        put("ₒ", "o");
+        put("ⱥ", "a");
+        put("ʙ", "b");
+        put("ḛ", "e");
+        put("ƈ", "c");
+        put("ɦ", "h");
+        put("ᵬ", "b");
+        put("ṣ", "s");
+        put("đ", "d");
+        put("ỗ", "o");
+        put("ɟ", "j");
+        put("ẚ", "a");
+        put("ɏ", "y");
+        put("л", "l");
+        put("ʌ", "v");
+        put("ꝓ", "p");
+        put("ﬁ", "fi");
+        put("ᶄ", "k");
+        put("ḏ", "d");
+        put("ᴌ", "l");
+        put("ė", "e");
+        put("ё", "yo");
+        put("ᴋ", "k");
+        put("ċ", "c");
+        put("ʁ", "r");
+        put("ƕ", "hv");
+        put("ƀ", "b");
+        put("ṍ", "o");
+        put("ȣ", "ou");
+        put("ǰ", "j");
+        put("ᶃ", "g");
+        put("ṋ", "n");
+        put("ɉ", "j");
+        put("ǧ", "g");
+        put("ǳ", "dz");
+        put("ź", "z");
+        put("ꜷ", "au");
+        put("ǖ", "u");
+        put("ᵹ", "g");
+        put("ȯ", "o");
+        put("ɐ", "a");
+        put("ą", "a");
+        put("õ", "o");
+        put("ɻ", "r");
+        put("ꝍ", "o");
+        put("ǟ", "a");
+        put("ȴ", "l");
+        put("ʂ", "s");
+        put("ﬂ", "fl");
+        put("ȉ", "i");
+        put("ⱻ", "e");
+        put("ṉ", "n");
+        put("ï", "i");
+        put("ñ", "n");
+        put("ᴉ", "i");
+        put("ʇ", "t");
+        put("ẓ", "z");
+        put("ỷ", "y");
+        put("ȳ", "y");
+        put("ṩ", "s");
+        put("ɽ", "r");
+        put("ĝ", "g");
+        put("в", "v");
+        put("ᴝ", "u");
+        put("ḳ", "k");
+        put("ꝫ", "et");
+        put("ī", "i");
+        put("ť", "t");
+        put("ꜿ", "c");
+        put("ʟ", "l");
+        put("ꜹ", "av");
+        put("û", "u");
+        put("æ", "ae");
+        put("и", "i");
+        put("ă", "a");
+        put("ǘ", "u");
+        put("ꞅ", "s");
+        put("ᵣ", "r");
+        put("ᴀ", "a");
+        put("ƃ", "b");
+        put("ḩ", "h");
+        put("ṧ", "s");
+        put("ₑ", "e");
+        put("ʜ", "h");
+        put("ẋ", "x");
+        put("ꝅ", "k");
+        put("ḋ", "d");
+        put("ƣ", "oi");
+        put("ꝑ", "p");
+        put("ħ", "h");
+        put("ⱴ", "v");
+        put("ẇ", "w");
+        put("ǹ", "n");
+        put("ɯ", "m");
+        put("ɡ", "g");
+        put("ɴ", "n");
+        put("ᴘ", "p");
+        put("ᵥ", "v");
+        put("ū", "u");
+        put("ḃ", "b");
+        put("ṗ", "p");
+        put("ь", "");
+        put("å", "a");
+        put("ɕ", "c");
+        put("ọ", "o");
+        put("ắ", "a");
+        put("ƒ", "f");
+        put("ǣ", "ae");
+        put("ꝡ", "vy");
+        put("ﬀ", "ff");
+        put("ᶉ", "r");
+        put("ô", "o");
+        put("ǿ", "o");
+        put("ṳ", "u");
+        put("ȥ", "z");
+        put("ḟ", "f");
+        put("ḓ", "d");
+        put("ȇ", "e");
+        put("ȕ", "u");
+        put("п", "p");
+        put("ȵ", "n");
+        put("ʠ", "q");
+        put("ấ", "a");
+        put("ǩ", "k");
+        put("ĩ", "i");
+        put("ṵ", "u");
+        put("ŧ", "t");
+        put("ɾ", "r");
+        put("ƙ", "k");
+        put("ṫ", "t");
+        put("ꝗ", "q");
+        put("ậ", "a");
+        put("н", "n");
+        put("ʄ", "j");
+        put("ƚ", "l");
+        put("ᶂ", "f");
+        put("д", "d");
+        put("ᵴ", "s");
+        put("ꞃ", "r");
+        put("ᶌ", "v");
+        put("ɵ", "o");
+        put("ḉ", "c");
+        put("ᵤ", "u");
+        put("ẑ", "z");
+        put("ṹ", "u");
+        put("ň", "n");
+        put("ʍ", "w");
+        put("ầ", "a");
+        put("ǉ", "lj");
+        put("ɓ", "b");
+        put("ɼ", "r");
+        put("ò", "o");
+        put("ẘ", "w");
+        put("ɗ", "d");
+        put("ꜽ", "ay");
+        put("ư", "u");
+        put("ᶀ", "b");
+        put("ǜ", "u");
+        put("ẹ", "e");
+        put("ǡ", "a");
+        put("ɥ", "h");
+        put("ṏ", "o");
+        put("ǔ", "u");
+        put("ʎ", "y");
+        put("ȱ", "o");
+        put("ệ", "e");
+        put("ế", "e");
+        put("ĭ", "i");
+        put("ⱸ", "e");
+        put("ṯ", "t");
+        put("ᶑ", "d");
+        put("ḧ", "h");
+        put("ṥ", "s");
+        put("ë", "e");
+        put("ᴍ", "m");
+        put("ö", "o");
+        put("é", "e");
+        put("ı", "i");
+        put("ď", "d");
+        put("ᵯ", "m");
+        put("ỵ", "y");
+        put("я", "ya");
+        put("ŵ", "w");
+        put("ề", "e");
+        put("ứ", "u");
+        put("ƶ", "z");
+        put("ĵ", "j");
+        put("ḍ", "d");
+        put("ŭ", "u");
+        put("ʝ", "j");
+        put("ж", "zh");
+        put("ê", "e");
+        put("ǚ", "u");
+        put("ġ", "g");
+        put("ṙ", "r");
+        put("ƞ", "n");
+        put("ъ", "");
+        put("ḗ", "e");
+        put("ẝ", "s");
+        put("ᶁ", "d");
+        put("ķ", "k");
+        put("ᴂ", "ae");
+        put("ɘ", "e");
+        put("ợ", "o");
+        put("ḿ", "m");
+        put("ꜰ", "f");
+        put("а", "a");
+        put("ẵ", "a");
+        put("ꝏ", "oo");
+        put("ᶆ", "m");
+        put("ᵽ", "p");
+        put("ц", "ts");
+        put("ữ", "u");
+        put("ⱪ", "k");
+        put("ḥ", "h");
+        put("ţ", "t");
+        put("ᵱ", "p");
+        put("ṁ", "m");
+        put("á", "a");
+        put("ᴎ", "n");
+        put("ꝟ", "v");
+        put("è", "e");
+        put("ᶎ", "z");
+        put("ꝺ", "d");
+        put("ᶈ", "p");
+        put("м", "m");
+        put("ɫ", "l");
+        put("ᴢ", "z");
+        put("ɱ", "m");
+        put("ṝ", "r");
+        put("ṽ", "v");
+        put("ũ", "u");
+        put("ß", "ss");
+        put("т", "t");
+        put("ĥ", "h");
+        put("ᵵ", "t");
+        put("ʐ", "z");
+        put("ṟ", "r");
+        put("ɲ", "n");
+        put("à", "a");
+        put("ẙ", "y");
+        put("ỳ", "y");
+        put("ᴔ", "oe");
+        put("ы", "i");
+        put("ₓ", "x");
+        put("ȗ", "u");
+        put("ⱼ", "j");
+        put("ẫ", "a");
+        put("ʑ", "z");
+        put("ẛ", "s");
+        put("ḭ", "i");
+        put("ꜵ", "ao");
+        put("ɀ", "z");
+        put("ÿ", "y");
+        put("ǝ", "e");
+        put("ǭ", "o");
+        put("ᴅ", "d");
+        put("ᶅ", "l");
+        put("ù", "u");
+        put("ạ", "a");
+        put("ḅ", "b");
+        put("ụ", "u");
+        put("к", "k");
+        put("ằ", "a");
+        put("ᴛ", "t");
+        put("ƴ", "y");
+        put("ⱦ", "t");
+        put("з", "z");
+        put("ⱡ", "l");
+        put("ȷ", "j");
+        put("ᵶ", "z");
+        put("ḫ", "h");
+        put("ⱳ", "w");
+        put("ḵ", "k");
+        put("ờ", "o");
+        put("î", "i");
+        put("ģ", "g");
+        put("ȅ", "e");
+        put("ȧ", "a");
+        put("ẳ", "a");
+        put("щ", "sch");
+        put("ɋ", "q");
+        put("ṭ", "t");
+        put("ꝸ", "um");
+        put("ᴄ", "c");
+        put("ẍ", "x");
+        put("ủ", "u");
+        put("ỉ", "i");
+        put("ᴚ", "r");
+        put("ś", "s");
+        put("ꝋ", "o");
+        put("ỹ", "y");
+        put("ṡ", "s");
+        put("ǌ", "nj");
+        put("ȁ", "a");
+        put("ẗ", "t");
+        put("ĺ", "l");
+        put("ž", "z");
+        put("ᵺ", "th");
+        put("ƌ", "d");
+        put("ș", "s");
+        put("š", "s");
+        put("ᶙ", "u");
+        put("ẽ", "e");
+        put("ẜ", "s");
+        put("ɇ", "e");
+        put("ṷ", "u");
+        put("ố", "o");
+        put("ȿ", "s");
+        put("ᴠ", "v");
+        put("ꝭ", "is");
+        put("ᴏ", "o");
+        put("ɛ", "e");
+        put("ǻ", "a");
+        put("ﬄ", "ffl");
+        put("ⱺ", "o");
+        put("ȋ", "i");
+        put("ᵫ", "ue");
+        put("ȡ", "d");
+        put("ⱬ", "z");
+        put("ẁ", "w");
+        put("ᶏ", "a");
+        put("ꞇ", "t");
+        put("ğ", "g");
+        put("ɳ", "n");
+        put("ʛ", "g");
+        put("ᴜ", "u");
+        put("ф", "f");
+        put("ẩ", "a");
+        put("ṅ", "n");
+        put("ɨ", "i");
+        put("ᴙ", "r");
+        put("ǎ", "a");
+        put("ſ", "s");
+        put("у", "u");
+        put("ȫ", "o");
+        put("ɿ", "r");
+        put("ƭ", "t");
+        put("ḯ", "i");
+        put("ǽ", "ae");
+        put("ⱱ", "v");
+        put("ɶ", "oe");
+        put("ṃ", "m");
+        put("ż", "z");
+        put("ĕ", "e");
+        put("ꜻ", "av");
+        put("ở", "o");
+        put("ễ", "e");
+        put("ɬ", "l");
+        put("ị", "i");
+        put("ᵭ", "d");
+        put("ﬆ", "st");
+        put("ḷ", "l");
+        put("ŕ", "r");
+        put("ᴕ", "ou");
+        put("ʈ", "t");
+        put("ā", "a");
+        put("э", "e");
+        put("ḙ", "e");
+        put("ᴑ", "o");
+        put("ç", "c");
+        put("ᶊ", "s");
+        put("ặ", "a");
+        put("ų", "u");
+        put("ả", "a");
+        put("ǥ", "g");
+        put("р", "r");
+        put("ꝁ", "k");
+        put("ẕ", "z");
+        put("ŝ", "s");
+        put("ḕ", "e");
+        put("ɠ", "g");
+        put("ꝉ", "l");
+        put("ꝼ", "f");
+        put("ᶍ", "x");
+        put("х", "h");
+        put("ǒ", "o");
+        put("ę", "e");
+        put("ổ", "o");
+        put("ƫ", "t");
+        put("ǫ", "o");
+        put("i̇", "i");
+        put("ṇ", "n");
+        put("ć", "c");
+        put("ᵷ", "g");
+        put("ẅ", "w");
+        put("ḑ", "d");
+        put("ḹ", "l");
+        put("ч", "ch");
+        put("œ", "oe");
+        put("ᵳ", "r");
+        put("ļ", "l");
+        put("ȑ", "r");
+        put("ȭ", "o");
+        put("ᵰ", "n");
+        put("ᴁ", "ae");
+        put("ŀ", "l");
+        put("ä", "a");
+        put("ƥ", "p");
+        put("ỏ", "o");
+        put("į", "i");
+        put("ȓ", "r");
+        put("ǆ", "dz");
+        put("ḡ", "g");
+        put("ṻ", "u");
+        put("ō", "o");
+        put("ľ", "l");
+        put("ẃ", "w");
+        put("ț", "t");
+        put("ń", "n");
+        put("ɍ", "r");
+        put("ȃ", "a");
+        put("ü", "u");
+        put("ꞁ", "l");
+        put("ᴐ", "o");
+        put("ớ", "o");
+        put("ᴃ", "b");
+        put("ɹ", "r");
+        put("ᵲ", "r");
+        put("ʏ", "y");
+        put("ᵮ", "f");
+        put("ⱨ", "h");
+        put("ŏ", "o");
+        put("ú", "u");
+        put("ṛ", "r");
+        put("ʮ", "h");
+        put("ó", "o");
+        put("ů", "u");
+        put("ỡ", "o");
+        put("ṕ", "p");
+        put("ᶖ", "i");
+        put("ự", "u");
+        put("ã", "a");
+        put("ᵢ", "i");
+        put("ṱ", "t");
+        put("ể", "e");
+        put("ử", "u");
+        put("í", "i");
+        put("ɔ", "o");
+        put("с", "s");
+        put("й", "i");
+        put("ɺ", "r");
+        put("ɢ", "g");
+        put("ř", "r");
+        put("ẖ", "h");
+        put("ű", "u");
+        put("ȍ", "o");
+        put("ш", "sh");
+        put("ḻ", "l");
+        put("ḣ", "h");
+        put("ȶ", "t");
+        put("ņ", "n");
+        put("ᶒ", "e");
+        put("ì", "i");
+        put("ẉ", "w");
+        put("б", "b");
+        put("ē", "e");
+        put("ᴇ", "e");
+        put("ł", "l");
+        put("ộ", "o");
+        put("ɭ", "l");
+        put("ẏ", "y");
+        put("ᴊ", "j");
+        put("ḱ", "k");
+        put("ṿ", "v");
+        put("ȩ", "e");
+        put("â", "a");
+        put("ş", "s");
+        put("ŗ", "r");
+        put("ʋ", "v");
+        put("ₐ", "a");
+        put("ↄ", "c");
+        put("ᶓ", "e");
+        put("ɰ", "m");
+        put("е", "e");
+        put("ᴡ", "w");
+        put("ȏ", "o");
+        put("č", "c");
+        put("ǵ", "g");
+        put("ĉ", "c");
+        put("ю", "yu");
+        put("ᶗ", "o");
+        put("ꝃ", "k");
+        put("ꝙ", "q");
+        put("г", "g");
+        put("ṑ", "o");
+        put("ꜱ", "s");
+        put("ṓ", "o");
+        put("ȟ", "h");
+        put("ő", "o");
+        put("ꜩ", "tz");
+        put("ẻ", "e");
+        put("о", "o");
+    }
+
+    private void put(String from, String to) {
+        if (from.length() != 1) {
+            return;
+        }
+        char ch = from.charAt(0);
+        char[][] page = pages[ch >> 8];
+        if (page == null) {
+            page = pages[ch >> 8] = new char[256][];
+        }
+        page[ch & 0xff] = to.toCharArray();
+    }
+
+    private char[] getReplacement(char ch) {
+        char[][] page = pages[ch >> 8];
+        return page != null ? page[ch & 0xff] : null;
+    }
+
+    public String transliterate(String src) {
+        if (src == null) {
+            return null;
+        }
+        synchronized (cache) {
+            String cached = cache.get(src);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String result = transliterateInternal(src);
+        synchronized (cache) {
+            cache.put(src, result);
+        }
+        return result;
+    }
+
+    private String transliterateInternal(String src) {
+        int len = src.length();
+        char[] dst = null;
+        int dstLength = 0;
+        for (int a = 0; a < len; a++) {
+            char ch = src.charAt(a);
+            if (Character.isHighSurrogate(ch) && a + 1 < len && Character.isLowSurrogate(src.charAt(a + 1))) {
+                if (dst != null) {
+                    dst = ensureCapacity(dst, dstLength + 2);
+                    dst[dstLength++] = ch;
+                    dst[dstLength++] = src.charAt(a + 1);
+                }
+                a++;
+                continue;
+            }
+            char lower = Character.toLowerCase(ch);
+            char[] replacement = getReplacement(lower);
+            boolean dropped = replacement == null && Character.getType(lower) == Character.NON_SPACING_MARK;
+            if (dst == null) {
+                if (replacement == null && !dropped && lower == ch) {
+                    continue;
+                }
+                //first changed char, copy the untouched prefix
+                dst = new char[len + 16];
+                src.getChars(0, a, dst, 0);
+                dstLength = a;
+            }
+            if (replacement != null) {
+                dst = ensureCapacity(dst, dstLength + replacement.length);
+                System.arraycopy(replacement, 0, dst, dstLength, replacement.length);
+                dstLength += replacement.length;
+            } else if (!dropped) {
+                dst = ensureCapacity(dst, dstLength + 1);
+                dst[dstLength++] = lower;
+            }
+        }
+        return dst == null ? src : new String(dst, 0, dstLength);
+    }
+
+    private static char[] ensureCapacity(char[] array, int capacity) {
+        if (capacity <= array.length) {
+            return array;
+        }
+        char[] newArray = new char[Math.max(capacity, array.length * 2)];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
@@ -14,15 +14,19 @@ import android.os.IBinder;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.NotificationManagerCompat;
 
+import java.util.HashMap;
+
 public class VideoEncodingService extends Service implements NotificationCenter.NotificationCenterDelegate {
 
     private NotificationCompat.Builder builder;
-    private String path;
+    private HashMap<String, Float> paths = new HashMap<>();
+    private HashMap<String, Float> convertProgress = new HashMap<>();
     private int currentProgress;
 
     public VideoEncodingService() {
         super();
         NotificationCenter.getInstance().addObserver(this, NotificationCenter.FileUploadProgressChanged);
+        NotificationCenter.getInstance().addObserver(this, NotificationCenter.FilePreparingProgress);
         NotificationCenter.getInstance().addObserver(this, NotificationCenter.stopEncodingService);
     }
 
@@ -33,6 +37,7 @@ public class VideoEncodingService extends Service implements NotificationCenter.
     public void onDestroy() {
         stopForeground(true);
         NotificationCenter.getInstance().removeObserver(this, NotificationCenter.FileUploadProgressChanged);
+        NotificationCenter.getInstance().removeObserver(this, NotificationCenter.FilePreparingProgress);
         NotificationCenter.getInstance().removeObserver(this, NotificationCenter.stopEncodingService);
         FileLog.e("tmessages", "destroy video service");
     }
@@ -41,28 +46,59 @@ public class VideoEncodingService extends Service implements NotificationCenter.
     public void didReceivedNotification(int id, Object... args) {
         if (id == NotificationCenter.FileUploadProgressChanged) {
             String fileName = (String)args[0];
-            if (path != null && path.equals(fileName)) {
+            if (paths.containsKey(fileName)) {
                 Float progress = (Float) args[1];
-                Boolean enc = (Boolean) args[2];
-                currentProgress = (int)(progress * 100);
-                builder.setProgress(100, currentProgress, currentProgress == 0);
-                NotificationManagerCompat.from(ApplicationLoader.applicationContext).notify(4, builder.build());
+                paths.put(fileName, progress);
+                updateProgress();
+            }
+        } else if (id == NotificationCenter.FilePreparingProgress) {
+            String fileName = (String)args[1];
+            if (paths.containsKey(fileName)) {
+                convertProgress.put(fileName, (Float) args[2]);
+                updateProgress();
             }
         } else if (id == NotificationCenter.stopEncodingService) {
             String filepath = (String)args[0];
-            if (filepath == null || filepath.equals(path)) {
+            if (filepath == null) {
+                paths.clear();
+                convertProgress.clear();
+            } else {
+                paths.remove(filepath);
+                convertProgress.remove(filepath);
+            }
+            if (paths.isEmpty()) {
                 stopSelf();
+            } else {
+                updateProgress();
             }
         }
     }
 
+    private void updateProgress() {
+        if (builder == null || paths.isEmpty()) {
+            return;
+        }
+        //conversion and upload run side by side, each one is half of the work
+        float total = 0;
+        for (HashMap.Entry<String, Float> entry : paths.entrySet()) {
+            Float converted = convertProgress.get(entry.getKey());
+            total += ((converted != null ? converted : 0) + entry.getValue()) / 2;
+        }
+        currentProgress = (int) (total / paths.size() * 100);
+        builder.setProgress(100, currentProgress, currentProgress == 0);
+        NotificationManagerCompat.from(ApplicationLoader.applicationContext).notify(4, builder.build());
+    }
+
     public int onStartCommand(Intent intent, int flags, int startId) {
-        path = intent.getStringExtra("path");
+        String path = intent.getStringExtra("path");
         boolean isGif = intent.getBooleanExtra("gif", false);
         if (path == null) {
-            stopSelf();
+            if (paths.isEmpty()) {
+                stopSelf();
+            }
             return Service.START_NOT_STICKY;
         }
+        paths.put(path, 0.0f);
         FileLog.e("tmessages", "start video service");
         if (builder == null) {
             builder = new NotificationCompat.Builder(ApplicationLoader.applicationContext);
@@ -77,10 +113,8 @@ public class VideoEncodingService extends Service implements NotificationCenter.
                 builder.setContentText(LocaleController.getString("SendingVideo", R.string.SendingVideo));
             }
         }
-        currentProgress = 0;
-        builder.setProgress(100, currentProgress, currentProgress == 0);
+        updateProgress();
         startForeground(4, builder.build());
-        NotificationManagerCompat.from(ApplicationLoader.applicationContext).notify(4, builder.build());
         return Service.START_NOT_STICKY;
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.messenger;
+
+public class WaveformBuilder {
+
+    private final static int resultSamples = 100;
+    private final static int maxBuckets = resultSamples * 2;
+    private final static int minPeak = 2500;
+
+    private final int[] buckets = new int[maxBuckets];
+    private int bucketsCount;
+    private int samplesPerBucket = 1;
+    private int samplesInBucket;
+    private int currentPeak;
+
+    public void reset() {
+        bucketsCount = 0;
+        samplesPerBucket = 1;
+        samplesInBucket = 0;
+        currentPeak = 0;
+    }
+
+    public void addSample(short sample) {
+        int value = Math.abs(sample);
+        if (value > currentPeak) {
+            currentPeak = value;
+        }
+        if (++samplesInBucket == samplesPerBucket) {
+            if (bucketsCount == maxBuckets) {
+                //merge bucket pairs and keep filling the current bucket up to the doubled size
+                for (int a = 0; a < resultSamples; a++) {
+                    buckets[a] = Math.max(buckets[a * 2], buckets[a * 2 + 1]);
+                }
+                bucketsCount = resultSamples;
+                samplesPerBucket *= 2;
+            } else {
+                buckets[bucketsCount++] = currentPeak;
+                currentPeak = 0;
+                samplesInBucket = 0;
+            }
+        }
+    }
+
+    public void addSamples(byte[] pcm, int length) {
+        for (int a = 0; a + 1 < length; a += 2) {
+            addSample((short) ((pcm[a] & 0xff) | (pcm[a + 1] << 8)));
+        }
+    }
+
+    public byte[] getWaveform() {
+        int count = bucketsCount + (samplesInBucket != 0 ? 1 : 0);
+        if (count == 0) {
+            return null;
+        }
+        int[] samples = new int[resultSamples];
+        long sumSamples = 0;
+        for (int a = 0; a < resultSamples; a++) {
+            int start = a * count / resultSamples;
+            int end = Math.max(start + 1, (a + 1) * count / resultSamples);
+            int peak = 0;
+            for (int b = start; b < end; b++) {
+                int value = b < bucketsCount ? buckets[b] : currentPeak;
+                if (value > peak) {
+                    peak = value;
+                }
+            }
+            samples[a] = peak;
+            sumSamples += peak;
+        }
+        int peak = (int) (sumSamples * 1.8f / resultSamples);
+        if (peak < minPeak) {
+            peak = minPeak;
+        }
+        byte[] result = new byte[(resultSamples * 5 + 7) / 8];
+        for (int a = 0; a < resultSamples; a++) {
+            int value = Math.min(31, Math.min(samples[a], peak) * 31 / peak);
+            int bitOffset = a * 5;
+            int index = bitOffset / 8;
+            int shifted = value << (bitOffset % 8);
+            result[index] |= shifted;
+            if (index + 1 < result.length) {
+                result[index + 1] |= shifted >> 8;
+            }
+        }
+        return result;
+    }
+}
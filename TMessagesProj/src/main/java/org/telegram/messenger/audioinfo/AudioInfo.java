@@ -24,7 +24,6 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 
 public abstract class AudioInfo {
 	protected String brand;			// brand, e.g. "M4A", "ID3", ...
@@ -136,12 +135,22 @@ public abstract class AudioInfo {
     }
 
 	public static AudioInfo getAudioInfo(File file) {
+        InputStream input = null;
         try {
-            byte header[] = new byte[12];
-            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
-            randomAccessFile.readFully(header, 0, 8);
-            randomAccessFile.close();
-            InputStream input = new BufferedInputStream(new FileInputStream(file));
+            // Tags are parsed from a single buffered stream; the header is peeked through mark/reset
+            // instead of opening the file twice.
+            input = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+            byte header[] = new byte[8];
+            input.mark(header.length);
+            int read = 0;
+            while (read < header.length) {
+                int count = input.read(header, read, header.length - read);
+                if (count < 0) {
+                    return null;
+                }
+                read += count;
+            }
+            input.reset();
             if (header[4] == 'f' && header[5] == 't' && header[6] == 'y' && header[7] == 'p') {
                 return new M4AInfo(input);
             } else {
@@ -149,6 +158,14 @@ public abstract class AudioInfo {
             }
         } catch (Exception e) {
             return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
         }
     }
 }
@@ -245,11 +245,15 @@ public class MP3Info extends AudioInfo {
 				long bitrateSum = firstFrameBitrate;
 				boolean vbr = false;
 				int cbrThreshold = 10000 / frame.getHeader().getDuration(); // assume CBR after 10 seconds
+				int vbrThreshold = cbrThreshold * 6; // estimate VBR duration from the average bitrate of the first minute
 
 				while (true) {
 					if (numberOfFrames == cbrThreshold && !vbr && totalLength > 0) {
 						return frame.getHeader().getTotalDuration(totalLength - firstFramePosition);
 					}
+					if (numberOfFrames == vbrThreshold && totalLength > 0) {
+						return 1000L * (totalLength - firstFramePosition) * numberOfFrames * 8 / bitrateSum;
+					}
 					if ((frame = readNextFrame(data, stopCondition, frame)) == null) {
 						break;
 					}
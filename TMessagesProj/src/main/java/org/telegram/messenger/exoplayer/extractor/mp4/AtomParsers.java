@@ -91,20 +91,23 @@ import java.util.List;
   public static TrackSampleTable parseStbl(Track track, Atom.ContainerAtom stblAtom)
       throws ParserException {
     SampleSizeBox sampleSizeBox;
+    ParsableByteArray sampleSizes;
     Atom.LeafAtom stszAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stsz);
     if (stszAtom != null) {
       sampleSizeBox = new StszSampleSizeBox(stszAtom);
+      sampleSizes = stszAtom.data;
     } else {
       Atom.LeafAtom stz2Atom = stblAtom.getLeafAtomOfType(Atom.TYPE_stz2);
       if (stz2Atom == null) {
         throw new ParserException("Track has no sample table size information");
       }
       sampleSizeBox = new Stz2SampleSizeBox(stz2Atom);
+      sampleSizes = stz2Atom.data;
     }
 
     int sampleCount = sampleSizeBox.getSampleCount();
     if (sampleCount == 0) {
-      return new TrackSampleTable(new long[0], new int[0], 0, new long[0], new int[0]);
+      return new ArrayTrackSampleTable(new long[0], new int[0], 0, new long[0], new int[0]);
     }
 
     // Entries are byte offsets of chunks.
@@ -164,6 +167,19 @@ import java.util.List;
         && remainingTimestampOffsetChanges == 0
         && remainingSynchronizationSamples == 0;
 
+    if (!isRechunkable && (track.editListDurations == null
+        || (track.editListDurations.length == 1 && track.editListDurations[0] == 0))) {
+      // Decode samples on demand rather than expanding the whole table up front. Edit lists other
+      // than the zero segment_duration special case below need every timestamp, so they still
+      // take the eager path.
+      long editListOffset = track.editListDurations == null ? 0 : track.editListMediaTimes[0];
+      int fixedSampleSize = sampleSizeBox.isFixedSampleSize()
+          ? sampleSizeBox.readNextSampleSize() : 0;
+      return new LazyTrackSampleTable(sampleCount, fixedSampleSize,
+          sampleSizeBox.getSampleSizeFieldBits(), sampleSizes, stsc, chunkOffsets,
+          chunkOffsetsAreLongs, stts, ctts, stss, track.timescale, editListOffset);
+    }
+
     long[] offsets;
     int[] sizes;
     int maximumSize = 0;
@@ -264,7 +280,7 @@ import java.util.List;
 
     if (track.editListDurations == null) {
       Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
+      return new ArrayTrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
     }
 
     // See the BMFF spec (ISO 14496-12) subsection 8.6.6. Edit lists that truncate audio and
@@ -280,7 +296,7 @@ import java.util.List;
         timestamps[i] = Util.scaleLargeTimestamp(timestamps[i] - track.editListMediaTimes[0],
             C.MICROS_PER_SECOND, track.timescale);
       }
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
+      return new ArrayTrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
     }
 
     // Count the number of samples after applying edits.
@@ -345,7 +361,7 @@ import java.util.List;
       throw new ParserException("The edited sample sequence does not contain a sync sample.");
     }
 
-    return new TrackSampleTable(editedOffsets, editedSizes, editedMaximumSize, editedTimestamps,
+    return new ArrayTrackSampleTable(editedOffsets, editedSizes, editedMaximumSize, editedTimestamps,
         editedFlags);
   }
 
@@ -1193,6 +1209,11 @@ import java.util.List;
      */
     boolean isFixedSampleSize();
 
+    /**
+     * Returns the number of bits used to store each sample size.
+     */
+    int getSampleSizeFieldBits();
+
   }
 
   /**
@@ -1226,6 +1247,11 @@ import java.util.List;
       return fixedSampleSize != 0;
     }
 
+    @Override
+    public int getSampleSizeFieldBits() {
+      return 32;
+    }
+
   }
 
   /**
@@ -1278,6 +1304,11 @@ import java.util.List;
       return false;
     }
 
+    @Override
+    public int getSampleSizeFieldBits() {
+      return fieldSize;
+    }
+
   }
 
 }
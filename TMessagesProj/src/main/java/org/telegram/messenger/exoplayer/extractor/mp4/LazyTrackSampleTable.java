@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.telegram.messenger.exoplayer.extractor.mp4;
+
+import org.telegram.messenger.exoplayer.C;
+import org.telegram.messenger.exoplayer.util.Assertions;
+import org.telegram.messenger.exoplayer.util.ParsableByteArray;
+import org.telegram.messenger.exoplayer.util.Util;
+import java.util.Arrays;
+
+/**
+ * Sample table for a track in an MP4 file that decodes sample properties on demand.
+ * <p>
+ * Only the runs of the stsc, stts and ctts boxes and the entries of the stss box are expanded when
+ * the table is created. Sample sizes and chunk offsets are read directly from the stsz/stz2 and
+ * stco/co64 box data when needed, so opening a long file costs memory proportional to the number of
+ * runs rather than to the number of samples. The only per-sample work done up front is a single
+ * pass over the stsz/stz2 data to find the maximum sample size, which the format needs before the
+ * first sample is read. It allocates nothing.
+ * <p>
+ * Sequential offset lookups are answered in constant time. Random lookups cost a binary search over
+ * the runs plus a scan of the preceding samples in the same chunk.
+ */
+/* package */ final class LazyTrackSampleTable extends TrackSampleTable {
+
+  private final byte[] sizeData;
+  private final int sizeDataOffset;
+  private final int fixedSampleSize;
+  private final int sizeFieldBits;
+
+  private final byte[] chunkOffsetData;
+  private final int chunkOffsetDataOffset;
+  private final boolean chunkOffsetsAreLongs;
+
+  // Runs of chunks with the same number of samples, from the stsc box.
+  private final int[] chunkRunFirstSamples;
+  private final int[] chunkRunFirstChunks;
+  private final int[] chunkRunSamplesPerChunk;
+
+  // Runs of samples with the same duration, from the stts box.
+  private final int[] durationRunFirstSamples;
+  private final long[] durationRunFirstTimestamps;
+  private final int[] durationRunDeltas;
+
+  // Runs of samples with the same composition offset, from the ctts box. Null if not present.
+  private final int[] compositionRunFirstSamples;
+  private final int[] compositionRunOffsets;
+
+  // Indices of the synchronization samples, from the stss box. Null if all samples are sync
+  // samples.
+  private final int[] syncSampleIndices;
+
+  private final long timescale;
+  private final long timestampOffset;
+
+  private int lastOffsetSampleIndex;
+  private long lastOffset;
+  private int lastOffsetChunkEndSampleIndex;
+
+  /**
+   * @param sampleCount The number of samples.
+   * @param fixedSampleSize The size of every sample, or 0 if sizes are stored per sample.
+   * @param sizeFieldBits The number of bits used to store each sample size. One of 4, 8, 16 or 32.
+   * @param sizes The stsz or stz2 box data, positioned at the first sample size.
+   * @param stsc The stsc box data.
+   * @param chunkOffsets The stco or co64 box data.
+   * @param chunkOffsetsAreLongs Whether {@code chunkOffsets} is a co64 box.
+   * @param stts The stts box data.
+   * @param ctts The ctts box data, or null if not present.
+   * @param stss The stss box data, or null if not present.
+   * @param timescale The track timescale.
+   * @param timestampOffset An offset in the track timescale, subtracted from each timestamp.
+   */
+  public LazyTrackSampleTable(int sampleCount, int fixedSampleSize, int sizeFieldBits,
+      ParsableByteArray sizes, ParsableByteArray stsc, ParsableByteArray chunkOffsets,
+      boolean chunkOffsetsAreLongs, ParsableByteArray stts, ParsableByteArray ctts,
+      ParsableByteArray stss, long timescale, long timestampOffset) {
+    super(sampleCount, fixedSampleSize != 0 ? fixedSampleSize
+        : getMaximumSize(sizes.data, sizes.getPosition(), sizeFieldBits, sampleCount));
+    this.fixedSampleSize = fixedSampleSize;
+    this.sizeFieldBits = sizeFieldBits;
+    this.sizeData = sizes.data;
+    this.sizeDataOffset = sizes.getPosition();
+    this.chunkOffsetsAreLongs = chunkOffsetsAreLongs;
+    this.chunkOffsetData = chunkOffsets.data;
+    this.timescale = timescale;
+    this.timestampOffset = timestampOffset;
+
+    chunkOffsets.setPosition(Atom.FULL_HEADER_SIZE);
+    int chunkCount = chunkOffsets.readUnsignedIntToInt();
+    chunkOffsetDataOffset = chunkOffsets.getPosition();
+
+    // Expand the stsc entries into runs.
+    stsc.setPosition(Atom.FULL_HEADER_SIZE);
+    int chunkRunCount = stsc.readUnsignedIntToInt();
+    chunkRunFirstSamples = new int[chunkRunCount];
+    chunkRunFirstChunks = new int[chunkRunCount];
+    chunkRunSamplesPerChunk = new int[chunkRunCount];
+    for (int i = 0; i < chunkRunCount; i++) {
+      chunkRunFirstChunks[i] = stsc.readUnsignedIntToInt() - 1;
+      chunkRunSamplesPerChunk[i] = stsc.readUnsignedIntToInt();
+      stsc.skipBytes(4); // Skip sample_description_index
+    }
+    Assertions.checkState(chunkRunCount > 0 && chunkRunFirstChunks[0] == 0,
+        "first_chunk must be 1");
+    long firstSample = 0;
+    for (int i = 0; i < chunkRunCount; i++) {
+      chunkRunFirstSamples[i] = (int) Math.min(firstSample, Integer.MAX_VALUE);
+      int endChunk = i + 1 < chunkRunCount ? chunkRunFirstChunks[i + 1] : chunkCount;
+      firstSample += (long) Math.max(0, endChunk - chunkRunFirstChunks[i])
+          * chunkRunSamplesPerChunk[i];
+    }
+    Assertions.checkArgument(firstSample >= sampleCount);
+
+    // Expand the stts entries into runs.
+    stts.setPosition(Atom.FULL_HEADER_SIZE);
+    int durationRunCount = stts.readUnsignedIntToInt();
+    Assertions.checkArgument(durationRunCount > 0);
+    durationRunFirstSamples = new int[durationRunCount];
+    durationRunFirstTimestamps = new long[durationRunCount];
+    durationRunDeltas = new int[durationRunCount];
+    firstSample = 0;
+    long firstTimestamp = 0;
+    for (int i = 0; i < durationRunCount; i++) {
+      int runSampleCount = stts.readUnsignedIntToInt();
+      durationRunFirstSamples[i] = (int) Math.min(firstSample, Integer.MAX_VALUE);
+      durationRunFirstTimestamps[i] = firstTimestamp;
+      durationRunDeltas[i] = stts.readUnsignedIntToInt();
+      firstSample += runSampleCount;
+      firstTimestamp += (long) runSampleCount * durationRunDeltas[i];
+    }
+
+    // Expand the ctts entries into runs, ignoring entries with 0-valued sample counts.
+    if (ctts != null) {
+      ctts.setPosition(Atom.FULL_HEADER_SIZE);
+      int entryCount = ctts.readUnsignedIntToInt();
+      int[] runFirstSamples = new int[entryCount];
+      int[] runOffsets = new int[entryCount];
+      int runCount = 0;
+      firstSample = 0;
+      for (int i = 0; i < entryCount; i++) {
+        int runSampleCount = ctts.readUnsignedIntToInt();
+        // Sample offsets are parsed as signed integers, as some streams violate the spec and use
+        // signed offsets in version 0 ctts boxes.
+        int offset = ctts.readInt();
+        if (runSampleCount > 0) {
+          runFirstSamples[runCount] = (int) Math.min(firstSample, Integer.MAX_VALUE);
+          runOffsets[runCount] = offset;
+          runCount++;
+          firstSample += runSampleCount;
+        }
+      }
+      Assertions.checkArgument(firstSample == sampleCount);
+      // The run search needs sorted start indices, so drop the slots of the skipped entries.
+      compositionRunFirstSamples = runCount == entryCount ? runFirstSamples
+          : Arrays.copyOf(runFirstSamples, runCount);
+      compositionRunOffsets = runCount == entryCount ? runOffsets
+          : Arrays.copyOf(runOffsets, runCount);
+    } else {
+      compositionRunFirstSamples = null;
+      compositionRunOffsets = null;
+    }
+
+    // Read the synchronization sample indices. Empty stss boxes are ignored, which causes all
+    // samples to be treated as sync samples.
+    int[] syncSamples = null;
+    if (stss != null) {
+      stss.setPosition(Atom.FULL_HEADER_SIZE);
+      int syncSampleCount = stss.readUnsignedIntToInt();
+      if (syncSampleCount > 0) {
+        syncSamples = new int[syncSampleCount];
+        for (int i = 0; i < syncSampleCount; i++) {
+          syncSamples[i] = stss.readUnsignedIntToInt() - 1;
+        }
+      }
+    }
+    syncSampleIndices = syncSamples;
+
+    lastOffsetSampleIndex = NO_SAMPLE;
+  }
+
+  @Override
+  public long getOffset(int sampleIndex) {
+    checkSampleIndex(sampleIndex);
+    if (sampleIndex == lastOffsetSampleIndex) {
+      return lastOffset;
+    }
+    if (lastOffsetSampleIndex != NO_SAMPLE && sampleIndex == lastOffsetSampleIndex + 1
+        && sampleIndex < lastOffsetChunkEndSampleIndex) {
+      // The next sample in the same chunk directly follows the previous one.
+      lastOffset += getSize(lastOffsetSampleIndex);
+      lastOffsetSampleIndex = sampleIndex;
+      return lastOffset;
+    }
+    int run = findRun(chunkRunFirstSamples, sampleIndex);
+    int samplesPerChunk = chunkRunSamplesPerChunk[run];
+    int chunkInRun = (sampleIndex - chunkRunFirstSamples[run]) / samplesPerChunk;
+    int chunkFirstSampleIndex = chunkRunFirstSamples[run] + chunkInRun * samplesPerChunk;
+    long offset = getChunkOffset(chunkRunFirstChunks[run] + chunkInRun);
+    if (fixedSampleSize != 0) {
+      offset += (long) (sampleIndex - chunkFirstSampleIndex) * fixedSampleSize;
+    } else {
+      for (int i = chunkFirstSampleIndex; i < sampleIndex; i++) {
+        offset += getSize(i);
+      }
+    }
+    lastOffsetSampleIndex = sampleIndex;
+    lastOffset = offset;
+    lastOffsetChunkEndSampleIndex = chunkFirstSampleIndex + samplesPerChunk;
+    return offset;
+  }
+
+  @Override
+  public int getSize(int sampleIndex) {
+    checkSampleIndex(sampleIndex);
+    return fixedSampleSize != 0 ? fixedSampleSize
+        : readSize(sizeData, sizeDataOffset, sizeFieldBits, sampleIndex);
+  }
+
+  @Override
+  public long getTimestampUs(int sampleIndex) {
+    checkSampleIndex(sampleIndex);
+    int run = findRun(durationRunFirstSamples, sampleIndex);
+    long timestamp = durationRunFirstTimestamps[run]
+        + (long) (sampleIndex - durationRunFirstSamples[run]) * durationRunDeltas[run];
+    if (compositionRunFirstSamples != null) {
+      timestamp += compositionRunOffsets[findRun(compositionRunFirstSamples, sampleIndex)];
+    }
+    return Util.scaleLargeTimestamp(timestamp - timestampOffset, C.MICROS_PER_SECOND, timescale);
+  }
+
+  @Override
+  public int getFlags(int sampleIndex) {
+    checkSampleIndex(sampleIndex);
+    return isSyncSample(sampleIndex) ? C.SAMPLE_FLAG_SYNC : 0;
+  }
+
+  @Override
+  public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
+    // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
+    // Frames are not reordered past synchronization samples so this works in practice.
+    int startIndex = binarySearchTimestampFloor(timeUs);
+    if (startIndex < 0 || syncSampleIndices == null) {
+      return startIndex < 0 ? NO_SAMPLE : startIndex;
+    }
+    int syncIndex = findRun(syncSampleIndices, startIndex);
+    return syncIndex < 0 ? NO_SAMPLE : syncSampleIndices[syncIndex];
+  }
+
+  @Override
+  public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
+    int startIndex = binarySearchTimestampFloor(timeUs - 1) + 1;
+    if (startIndex >= sampleCount) {
+      return NO_SAMPLE;
+    }
+    if (syncSampleIndices == null) {
+      return startIndex;
+    }
+    int syncIndex = findRun(syncSampleIndices, startIndex);
+    if (syncIndex < 0 || syncSampleIndices[syncIndex] < startIndex) {
+      syncIndex++;
+    }
+    return syncIndex < syncSampleIndices.length ? syncSampleIndices[syncIndex] : NO_SAMPLE;
+  }
+
+  private boolean isSyncSample(int sampleIndex) {
+    if (syncSampleIndices == null) {
+      return true;
+    }
+    int syncIndex = findRun(syncSampleIndices, sampleIndex);
+    return syncIndex >= 0 && syncSampleIndices[syncIndex] == sampleIndex;
+  }
+
+  /**
+   * Returns the index of the last sample whose timestamp is less than or equal to {@code timeUs},
+   * or -1 if there is no such sample.
+   */
+  private int binarySearchTimestampFloor(long timeUs) {
+    int low = 0;
+    int high = sampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (getTimestampUs(mid) <= timeUs) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  private long getChunkOffset(int chunkIndex) {
+    if (chunkOffsetsAreLongs) {
+      return readInt(chunkOffsetData, chunkOffsetDataOffset + chunkIndex * 8) << 32
+          | readInt(chunkOffsetData, chunkOffsetDataOffset + chunkIndex * 8 + 4);
+    }
+    return readInt(chunkOffsetData, chunkOffsetDataOffset + chunkIndex * 4);
+  }
+
+  private void checkSampleIndex(int sampleIndex) {
+    if (sampleIndex < 0 || sampleIndex >= sampleCount) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  /**
+   * Returns the index of the last element of {@code firstIndices} that is less than or equal to
+   * {@code index}, or -1 if there is none. Where several runs start at the same index, the last
+   * (non-empty) run is returned.
+   */
+  private static int findRun(int[] firstIndices, int index) {
+    int low = 0;
+    int high = firstIndices.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (firstIndices[mid] <= index) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  private static int readSize(byte[] data, int offset, int fieldBits, int sampleIndex) {
+    switch (fieldBits) {
+      case 32:
+        return (int) readInt(data, offset + sampleIndex * 4);
+      case 16:
+        int position = offset + sampleIndex * 2;
+        return (data[position] & 0xFF) << 8 | (data[position + 1] & 0xFF);
+      case 8:
+        return data[offset + sampleIndex] & 0xFF;
+      default:
+        // fieldBits == 4. The upper bits hold the size of the sample with the even index.
+        int value = data[offset + sampleIndex / 2] & 0xFF;
+        return (sampleIndex % 2) == 0 ? value >> 4 : value & 0x0F;
+    }
+  }
+
+  private static int getMaximumSize(byte[] data, int offset, int fieldBits, int sampleCount) {
+    int maximumSize = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      int size = readSize(data, offset, fieldBits, i);
+      if (size > maximumSize) {
+        maximumSize = size;
+      }
+    }
+    return maximumSize;
+  }
+
+  private static long readInt(byte[] data, int position) {
+    return (data[position] & 0xFFL) << 24 | (data[position + 1] & 0xFFL) << 16
+        | (data[position + 2] & 0xFFL) << 8 | (data[position + 3] & 0xFFL);
+  }
+
+}
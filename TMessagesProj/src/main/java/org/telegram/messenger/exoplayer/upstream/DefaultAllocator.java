@@ -17,21 +17,26 @@ package org.telegram.messenger.exoplayer.upstream;
 
 import org.telegram.messenger.exoplayer.util.Assertions;
 import org.telegram.messenger.exoplayer.util.Util;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Default implementation of {@link Allocator}.
+ * <p>
+ * Loading threads allocate while playback threads release, so the pool is lock-free: available
+ * allocations are kept in a concurrent queue and the counts are atomic. A monitor is only entered
+ * when a thread is blocked in {@link #blockWhileTotalBytesAllocatedExceeds(int)}.
  */
 public final class DefaultAllocator implements Allocator {
 
-  private static final int AVAILABLE_EXTRA_CAPACITY = 100;
-
   private final int individualAllocationSize;
   private final byte[] initialAllocationBlock;
-
-  private int allocatedCount;
-  private int availableCount;
-  private Allocation[] availableAllocations;
+  private final ConcurrentLinkedQueue<Allocation> availableAllocations;
+  private final AtomicInteger allocatedCount;
+  private final AtomicInteger availableCount;
+  private final AtomicInteger waitingThreadCount;
+  private final Object allocatedCountLock;
 
   /**
    * Constructs an initially empty pool.
@@ -54,13 +59,16 @@ public final class DefaultAllocator implements Allocator {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.individualAllocationSize = individualAllocationSize;
-    this.availableCount = initialAllocationCount;
-    this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
+    this.availableAllocations = new ConcurrentLinkedQueue<>();
+    this.allocatedCount = new AtomicInteger();
+    this.availableCount = new AtomicInteger(initialAllocationCount);
+    this.waitingThreadCount = new AtomicInteger();
+    this.allocatedCountLock = new Object();
     if (initialAllocationCount > 0) {
       initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
       for (int i = 0; i < initialAllocationCount; i++) {
         int allocationOffset = i * individualAllocationSize;
-        availableAllocations[i] = new Allocation(initialAllocationBlock, allocationOffset);
+        availableAllocations.add(new Allocation(initialAllocationBlock, allocationOffset));
       }
     } else {
       initialAllocationBlock = null;
@@ -68,12 +76,11 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized Allocation allocate() {
-    allocatedCount++;
-    Allocation allocation;
-    if (availableCount > 0) {
-      allocation = availableAllocations[--availableCount];
-      availableAllocations[availableCount] = null;
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    Allocation allocation = availableAllocations.poll();
+    if (allocation != null) {
+      availableCount.decrementAndGet();
     } else {
       allocation = new Allocation(new byte[individualAllocationSize], 0);
     }
@@ -81,90 +88,85 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized void release(Allocation allocation) {
+  public void release(Allocation allocation) {
     // Weak sanity check that the allocation probably originated from this pool.
     Assertions.checkArgument(allocation.data == initialAllocationBlock
         || allocation.data.length == individualAllocationSize);
-    allocatedCount--;
-    if (availableCount == availableAllocations.length) {
-      availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
-    }
-    availableAllocations[availableCount++] = allocation;
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+    availableAllocations.add(allocation);
+    availableCount.incrementAndGet();
+    allocatedCount.decrementAndGet();
+    notifyWaitingThreads();
   }
 
   @Override
-  public synchronized void release(Allocation[] allocations) {
-    if (availableCount + allocations.length >= availableAllocations.length) {
-      availableAllocations = Arrays.copyOf(
-          availableAllocations, Math.max(
-              availableAllocations.length * 2,
-              availableCount + allocations.length));
-    }
+  public void release(Allocation[] allocations) {
     for (Allocation allocation : allocations) {
       // Weak sanity check that the allocation probably originated from this pool.
       Assertions.checkArgument(allocation.data == initialAllocationBlock
           || allocation.data.length == individualAllocationSize);
-      availableAllocations[availableCount++] = allocation;
+      availableAllocations.add(allocation);
     }
-    allocatedCount -= allocations.length;
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+    availableCount.addAndGet(allocations.length);
+    allocatedCount.addAndGet(-allocations.length);
+    notifyWaitingThreads();
   }
 
   @Override
   public synchronized void trim(int targetSize) {
     int targetAllocationCount = Util.ceilDivide(targetSize, individualAllocationSize);
-    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount);
-    if (targetAvailableCount >= availableCount) {
+    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount.get());
+    int discardCount = availableCount.get() - targetAvailableCount;
+    if (discardCount <= 0) {
       // We're already at or below the target.
       return;
     }
 
-    if (initialAllocationBlock != null) {
-      // Some allocations are backed by an initial block. We need to make sure that we hold onto all
-      // such allocations. Re-order the available allocations so that the ones backed by the initial
-      // block come first.
-      int lowIndex = 0;
-      int highIndex = availableCount - 1;
-      while (lowIndex <= highIndex) {
-        Allocation lowAllocation = availableAllocations[lowIndex];
-        if (lowAllocation.data == initialAllocationBlock) {
-          lowIndex++;
-        } else {
-          Allocation highAllocation = availableAllocations[lowIndex];
-          if (highAllocation.data != initialAllocationBlock) {
-            highIndex--;
-          } else {
-            availableAllocations[lowIndex++] = highAllocation;
-            availableAllocations[highIndex--] = lowAllocation;
-          }
-        }
+    // Discard allocations beyond the target. Allocations backed by the initial block are never
+    // discarded, so they're put back into the queue once the scan is complete.
+    ArrayList<Allocation> retainedAllocations = null;
+    int scanCount = availableCount.get();
+    for (int i = 0; i < scanCount && discardCount > 0; i++) {
+      Allocation allocation = availableAllocations.poll();
+      if (allocation == null) {
+        break;
       }
-      // lowIndex is the index of the first allocation not backed by an initial block.
-      targetAvailableCount = Math.max(targetAvailableCount, lowIndex);
-      if (targetAvailableCount >= availableCount) {
-        // We're already at or below the target.
-        return;
+      availableCount.decrementAndGet();
+      if (allocation.data == initialAllocationBlock) {
+        if (retainedAllocations == null) {
+          retainedAllocations = new ArrayList<>();
+        }
+        retainedAllocations.add(allocation);
+      } else {
+        discardCount--;
       }
     }
-
-    // Discard allocations beyond the target.
-    Arrays.fill(availableAllocations, targetAvailableCount, availableCount, null);
-    availableCount = targetAvailableCount;
+    if (retainedAllocations != null) {
+      availableAllocations.addAll(retainedAllocations);
+      availableCount.addAndGet(retainedAllocations.size());
+    }
   }
 
   @Override
-  public synchronized int getTotalBytesAllocated() {
-    return allocatedCount * individualAllocationSize;
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
   }
 
   @Override
-  public synchronized void blockWhileTotalBytesAllocatedExceeds(int limit)
-      throws InterruptedException {
-    while (getTotalBytesAllocated() > limit) {
-      wait();
+  public void blockWhileTotalBytesAllocatedExceeds(int limit) throws InterruptedException {
+    if (getTotalBytesAllocated() <= limit) {
+      return;
+    }
+    synchronized (allocatedCountLock) {
+      // Releasing threads decrement the allocated count before checking for waiting threads, so
+      // registering before re-checking the count ensures that no wake up is missed.
+      waitingThreadCount.incrementAndGet();
+      try {
+        while (getTotalBytesAllocated() > limit) {
+          allocatedCountLock.wait();
+        }
+      } finally {
+        waitingThreadCount.decrementAndGet();
+      }
     }
   }
 
@@ -173,4 +175,12 @@ public final class DefaultAllocator implements Allocator {
     return individualAllocationSize;
   }
 
+  private void notifyWaitingThreads() {
+    if (waitingThreadCount.get() > 0) {
+      synchronized (allocatedCountLock) {
+        allocatedCountLock.notifyAll();
+      }
+    }
+  }
+
 }
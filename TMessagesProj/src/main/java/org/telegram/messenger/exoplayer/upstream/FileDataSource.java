@@ -19,9 +19,15 @@ import org.telegram.messenger.exoplayer.C;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * A local file {@link UriDataSource}.
+ * <p>
+ * The file is read through read-only memory mapped windows, so that each read is a single copy out
+ * of the page cache rather than a system call. If the file cannot be mapped, it is read through the
+ * underlying {@link RandomAccessFile} instead.
  */
 public final class FileDataSource implements UriDataSource {
 
@@ -36,10 +42,19 @@ public final class FileDataSource implements UriDataSource {
 
   }
 
+  /**
+   * The maximum size of a single memory mapped window.
+   */
+  private static final int MAX_MAPPED_WINDOW_SIZE = 8 * 1024 * 1024;
+
   private final TransferListener listener;
 
   private RandomAccessFile file;
+  private FileChannel channel;
+  private MappedByteBuffer mappedWindow;
+  private boolean mappingFailed;
   private String uriString;
+  private long position;
   private long bytesRemaining;
   private boolean opened;
 
@@ -65,6 +80,8 @@ public final class FileDataSource implements UriDataSource {
       uriString = dataSpec.uri.toString();
       file = new RandomAccessFile(dataSpec.uri.getPath(), "r");
       file.seek(dataSpec.position);
+      channel = file.getChannel();
+      position = dataSpec.position;
       bytesRemaining = dataSpec.length == C.LENGTH_UNBOUNDED ? file.length() - dataSpec.position
           : dataSpec.length;
       if (bytesRemaining < 0) {
@@ -89,12 +106,22 @@ public final class FileDataSource implements UriDataSource {
     } else {
       int bytesRead = 0;
       try {
-        bytesRead = file.read(buffer, offset, (int) Math.min(bytesRemaining, readLength));
+        if (!mappingFailed && (mappedWindow == null || !mappedWindow.hasRemaining())) {
+          mapWindow();
+        }
+        if (mappingFailed) {
+          bytesRead = file.read(buffer, offset, (int) Math.min(bytesRemaining, readLength));
+        } else {
+          bytesRead = (int) Math.min(Math.min(bytesRemaining, readLength),
+              mappedWindow.remaining());
+          mappedWindow.get(buffer, offset, bytesRead);
+        }
       } catch (IOException e) {
         throw new FileDataSourceException(e);
       }
 
       if (bytesRead > 0) {
+        position += bytesRead;
         bytesRemaining -= bytesRead;
         if (listener != null) {
           listener.onBytesTransferred(bytesRead);
@@ -105,6 +132,27 @@ public final class FileDataSource implements UriDataSource {
     }
   }
 
+  /**
+   * Maps the next window of the file, starting at the current read position. If the file can't be
+   * mapped, subsequent reads fall back to reading from the file directly.
+   */
+  private void mapWindow() throws IOException {
+    mappedWindow = null;
+    long windowSize = Math.min(bytesRemaining, MAX_MAPPED_WINDOW_SIZE);
+    if (position + windowSize > channel.size()) {
+      mappingFailed = true;
+    } else {
+      try {
+        mappedWindow = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+      } catch (IOException e) {
+        mappingFailed = true;
+      }
+    }
+    if (mappingFailed) {
+      file.seek(position);
+    }
+  }
+
   @Override
   public String getUri() {
     return uriString;
@@ -120,6 +168,9 @@ public final class FileDataSource implements UriDataSource {
         throw new FileDataSourceException(e);
       } finally {
         file = null;
+        channel = null;
+        mappedWindow = null;
+        mappingFailed = false;
         if (opened) {
           opened = false;
           if (listener != null) {
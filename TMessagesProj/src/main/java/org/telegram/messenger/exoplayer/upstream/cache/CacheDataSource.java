@@ -219,7 +219,17 @@ public final class CacheDataSource implements DataSource {
       currentDataSource = cacheWriteDataSource != null ? cacheWriteDataSource
           : upstreamDataSource;
     }
-    currentDataSource.open(dataSpec);
+    try {
+      currentDataSource.open(dataSpec);
+    } catch (IOException e) {
+      if (currentDataSource != cacheReadDataSource || span.file.exists()) {
+        throw e;
+      }
+      // The file has been deleted from under us. Drop the span and look the position up again.
+      currentDataSource = null;
+      cache.removeSpan(span);
+      openNextSource();
+    }
   }
 
   private void closeCurrentSource() throws IOException {
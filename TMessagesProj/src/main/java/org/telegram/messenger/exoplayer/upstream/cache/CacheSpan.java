@@ -107,6 +107,14 @@ public final class CacheSpan implements Comparable<CacheSpan> {
     return new CacheSpan(key, position, file.length(), true, lastAccessTimestamp, file);
   }
 
+  /**
+   * Creates a cache span from a persisted index entry, without querying the file system.
+   */
+  /* package */ static CacheSpan createCacheEntry(String key, long position, long length,
+      long lastAccessTimestamp, File file) {
+    return new CacheSpan(key, position, length, true, lastAccessTimestamp, file);
+  }
+
   // Visible for testing.
   CacheSpan(String key, long position, long length, boolean isCached,
       long lastAccessTimestamp, File file) {
@@ -137,6 +145,16 @@ public final class CacheSpan implements Comparable<CacheSpan> {
     return CacheSpan.createCacheEntry(key, position, now, newCacheFile);
   }
 
+  /**
+   * Updates the last access time of this cache span in memory only. The underlying file is not
+   * renamed, so the caller is responsible for persisting the new timestamp.
+   *
+   * @return A {@link CacheSpan} with the updated last access time.
+   */
+  /* package */ CacheSpan touchInMemory() {
+    return new CacheSpan(key, position, length, true, System.currentTimeMillis(), file);
+  }
+
   @Override
   public int compareTo(CacheSpan another) {
     if (!key.equals(another.key)) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.telegram.messenger.exoplayer.upstream.cache;
+
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * Persists the spans of a {@link SimpleCache} in a single index file, so that the cache can be
+ * initialized without parsing the name and querying the length of every cache file.
+ * <p>
+ * The index is written to a temporary file which is then renamed over the previous index, so a
+ * reader either sees the old or the new index but never a partially written one.
+ */
+/* package */ final class CacheSpanIndex {
+
+  /* package */ static final String FILE_NAME = "cached_spans.exi";
+
+  private static final String TAG = "CacheSpanIndex";
+  private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+  private static final int VERSION = 1;
+
+  private final File cacheDir;
+  private final File indexFile;
+  private final File tempFile;
+
+  public CacheSpanIndex(File cacheDir) {
+    this.cacheDir = cacheDir;
+    this.indexFile = new File(cacheDir, FILE_NAME);
+    this.tempFile = new File(cacheDir, TEMP_FILE_NAME);
+  }
+
+  /**
+   * @param fileName A file name within the cache directory.
+   * @return Whether the file belongs to the index rather than to a cached span.
+   */
+  public static boolean isIndexFile(String fileName) {
+    return FILE_NAME.equals(fileName) || TEMP_FILE_NAME.equals(fileName);
+  }
+
+  /**
+   * Reads the persisted spans.
+   *
+   * @return The cached spans, or null if there is no usable index.
+   */
+  public ArrayList<CacheSpan> read() {
+    if (!indexFile.exists()) {
+      return null;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      if (input.readInt() != VERSION) {
+        return null;
+      }
+      int count = input.readInt();
+      ArrayList<CacheSpan> spans = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        String key = input.readUTF();
+        long position = input.readLong();
+        long length = input.readLong();
+        long lastAccessTimestamp = input.readLong();
+        File file = new File(cacheDir, input.readUTF());
+        spans.add(CacheSpan.createCacheEntry(key, position, length, lastAccessTimestamp, file));
+      }
+      return spans;
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to read cache index", e);
+      return null;
+    } finally {
+      closeQuietly(input);
+    }
+  }
+
+  /**
+   * Replaces the persisted index with the given spans. If writing fails the index is deleted, so
+   * that the next initialization falls back to scanning the cache directory.
+   *
+   * @param cachedSpans The spans of every key in the cache.
+   */
+  public void write(Collection<TreeSet<CacheSpan>> cachedSpans) {
+    int count = 0;
+    for (TreeSet<CacheSpan> spans : cachedSpans) {
+      count += spans.size();
+    }
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeInt(VERSION);
+      output.writeInt(count);
+      for (TreeSet<CacheSpan> spans : cachedSpans) {
+        for (CacheSpan span : spans) {
+          output.writeUTF(span.key);
+          output.writeLong(span.position);
+          output.writeLong(span.length);
+          output.writeLong(span.lastAccessTimestamp);
+          output.writeUTF(span.file.getName());
+        }
+      }
+      output.close();
+      output = null;
+      if (!tempFile.renameTo(indexFile)) {
+        throw new IOException("Failed to rename " + tempFile + " to " + indexFile);
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write cache index", e);
+      closeQuietly(output);
+      tempFile.delete();
+      indexFile.delete();
+    }
+  }
+
+  /**
+   * Deletes the persisted index.
+   */
+  public void delete() {
+    indexFile.delete();
+    tempFile.delete();
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+}
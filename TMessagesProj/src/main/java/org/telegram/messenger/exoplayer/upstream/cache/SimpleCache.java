@@ -19,6 +19,7 @@ import android.os.ConditionVariable;
 import org.telegram.messenger.exoplayer.util.Assertions;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -26,18 +27,54 @@ import java.util.Map.Entry;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A {@link Cache} implementation that maintains an in-memory representation.
+ * <p>
+ * The in-memory representation is persisted in a {@link CacheSpanIndex}. Changes are batched and
+ * the index is rewritten off the lock shortly after spans are added or removed. Queries and cache
+ * hits only take a read lock, so they may run concurrently.
  */
 public final class SimpleCache implements Cache {
 
+  private static final long INDEX_WRITE_DELAY_MS = 2000;
+
+  /**
+   * Index writes of all caches run on one daemon thread, so a cache that is dropped without being
+   * shut down doesn't leak a thread or keep the process alive.
+   */
+  private static final ScheduledExecutorService indexWriter =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "SimpleCache.writeIndex()");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
   private final File cacheDir;
   private final CacheEvictor evictor;
+  private final CacheSpanIndex index;
   private final HashMap<String, CacheSpan> lockedSpans;
   private final HashMap<String, TreeSet<CacheSpan>> cachedSpans;
   private final HashMap<String, ArrayList<Listener>> listeners;
+  private final ReentrantReadWriteLock lock;
+  private final ReentrantReadWriteLock.ReadLock readLock;
+  private final ReentrantReadWriteLock.WriteLock writeLock;
+  private final Condition lockedSpansChanged;
+  private final ConcurrentLinkedQueue<CacheSpan> touchedSpans;
+  private final AtomicBoolean indexWriteScheduled;
   private long totalSpace = 0;
+  private boolean indexDirty;
 
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
@@ -48,17 +85,27 @@ public final class SimpleCache implements Cache {
   public SimpleCache(File cacheDir, CacheEvictor evictor) {
     this.cacheDir = cacheDir;
     this.evictor = evictor;
+    this.index = new CacheSpanIndex(cacheDir);
     this.lockedSpans = new HashMap<>();
     this.cachedSpans = new HashMap<>();
     this.listeners = new HashMap<>();
+    this.lock = new ReentrantReadWriteLock();
+    this.readLock = lock.readLock();
+    this.writeLock = lock.writeLock();
+    this.lockedSpansChanged = writeLock.newCondition();
+    this.touchedSpans = new ConcurrentLinkedQueue<>();
+    this.indexWriteScheduled = new AtomicBoolean();
     // Start cache initialization.
     final ConditionVariable conditionVariable = new ConditionVariable();
     new Thread("SimpleCache.initialize()") {
       @Override
       public void run() {
-        synchronized (SimpleCache.this) {
+        writeLock.lock();
+        try {
           conditionVariable.open();
           initialize();
+        } finally {
+          unlockWrite();
         }
       }
     }.start();
@@ -66,67 +113,129 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey == null) {
-      listenersForKey = new ArrayList<>();
-      listeners.put(key, listenersForKey);
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    writeLock.lock();
+    try {
+      ArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey == null) {
+        listenersForKey = new ArrayList<>();
+        listeners.put(key, listenersForKey);
+      }
+      listenersForKey.add(listener);
+      return getCachedSpans(key);
+    } finally {
+      unlockWrite();
     }
-    listenersForKey.add(listener);
-    return getCachedSpans(key);
   }
 
   @Override
-  public synchronized void removeListener(String key, Listener listener) {
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey != null) {
-      listenersForKey.remove(listener);
-      if (listenersForKey.isEmpty()) {
-        listeners.remove(key);
+  public void removeListener(String key, Listener listener) {
+    writeLock.lock();
+    try {
+      ArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey != null) {
+        listenersForKey.remove(listener);
+        if (listenersForKey.isEmpty()) {
+          listeners.remove(key);
+        }
       }
+    } finally {
+      unlockWrite();
     }
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
-    TreeSet<CacheSpan> spansForKey = cachedSpans.get(key);
-    return spansForKey == null ? null : new TreeSet<>(spansForKey);
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    readLock.lock();
+    try {
+      TreeSet<CacheSpan> spansForKey = cachedSpans.get(key);
+      return spansForKey == null ? null : new TreeSet<>(spansForKey);
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
-    return new HashSet<>(cachedSpans.keySet());
+  public Set<String> getKeys() {
+    readLock.lock();
+    try {
+      return new HashSet<>(cachedSpans.keySet());
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
-  public synchronized long getCacheSpace() {
-    return totalSpace;
+  public long getCacheSpace() {
+    readLock.lock();
+    try {
+      return totalSpace;
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position)
-      throws InterruptedException {
+  public CacheSpan startReadWrite(String key, long position) throws InterruptedException {
     CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
-    while (true) {
-      CacheSpan span = startReadWriteNonBlocking(lookupSpan);
-      if (span != null) {
-        return span;
-      } else {
-        // Write case, lock not available. We'll be woken up when a locked span is released (if the
-        // released lock is for the requested key then we'll be able to make progress) or when a
-        // span is added to the cache (if the span is for the requested key and covers the requested
-        // position, then we'll become a read and be able to make progress).
-        wait();
+    CacheSpan cachedSpan = startReadNonBlocking(lookupSpan);
+    if (cachedSpan != null) {
+      return cachedSpan;
+    }
+    writeLock.lock();
+    try {
+      while (true) {
+        CacheSpan span = startReadWriteNonBlocking(lookupSpan);
+        if (span != null) {
+          return span;
+        } else {
+          // Write case, lock not available. We'll be woken up when a locked span is released (if
+          // the released lock is for the requested key then we'll be able to make progress) or
+          // when a span is added to the cache (if the span is for the requested key and covers the
+          // requested position, then we'll become a read and be able to make progress).
+          lockedSpansChanged.await();
+        }
       }
+    } finally {
+      unlockWrite();
     }
   }
 
   @Override
-  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position) {
-    return startReadWriteNonBlocking(CacheSpan.createLookup(key, position));
+  public CacheSpan startReadWriteNonBlocking(String key, long position) {
+    CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
+    CacheSpan cachedSpan = startReadNonBlocking(lookupSpan);
+    if (cachedSpan != null) {
+      return cachedSpan;
+    }
+    writeLock.lock();
+    try {
+      return startReadWriteNonBlocking(lookupSpan);
+    } finally {
+      unlockWrite();
+    }
   }
 
-  private synchronized CacheSpan startReadWriteNonBlocking(CacheSpan lookupSpan) {
+  /**
+   * Returns the cached span containing the lookup position, or null if there is none. Only the
+   * read lock is taken. The access is queued and applied to the in-memory representation with the
+   * next write.
+   */
+  private CacheSpan startReadNonBlocking(CacheSpan lookupSpan) {
+    readLock.lock();
+    try {
+      CacheSpan span = getSpan(lookupSpan);
+      if (!span.isCached) {
+        return null;
+      }
+      touchedSpans.add(span);
+      return span;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  private CacheSpan startReadWriteNonBlocking(CacheSpan lookupSpan) {
     CacheSpan spanningRegion = getSpan(lookupSpan);
 
     // Read case.
@@ -135,8 +244,9 @@ public final class SimpleCache implements Cache {
       // Remove the old span from the in-memory representation.
       TreeSet<CacheSpan> spansForKey = cachedSpans.get(oldCacheSpan.key);
       Assertions.checkState(spansForKey.remove(oldCacheSpan));
-      // Obtain a new span with updated last access timestamp.
-      spanningRegion = oldCacheSpan.touch();
+      // Obtain a new span with updated last access timestamp. The file isn't renamed, the new
+      // timestamp is persisted with the next index write.
+      spanningRegion = oldCacheSpan.touchInMemory();
       // Add the updated span back into the in-memory representation.
       spansForKey.add(spanningRegion);
       notifySpanTouched(oldCacheSpan, spanningRegion);
@@ -154,40 +264,120 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized File startFile(String key, long position, long length) {
-    Assertions.checkState(lockedSpans.containsKey(key));
-    if (!cacheDir.exists()) {
-      // For some reason the cache directory doesn't exist. Make a best effort to create it.
-      removeStaleSpans();
-      cacheDir.mkdirs();
+  public File startFile(String key, long position, long length) {
+    writeLock.lock();
+    try {
+      Assertions.checkState(lockedSpans.containsKey(key));
+      if (!cacheDir.exists()) {
+        // For some reason the cache directory doesn't exist. Make a best effort to create it.
+        removeStaleSpans();
+        cacheDir.mkdirs();
+      }
+      applyTouchedSpans();
+      evictor.onStartFile(this, key, position, length);
+      return CacheSpan.getCacheFileName(cacheDir, key, position, System.currentTimeMillis());
+    } finally {
+      unlockWrite();
     }
-    evictor.onStartFile(this, key, position, length);
-    return CacheSpan.getCacheFileName(cacheDir, key, position, System.currentTimeMillis());
   }
 
   @Override
-  public synchronized void commitFile(File file) {
-    CacheSpan span = CacheSpan.createCacheEntry(file);
-    Assertions.checkState(span != null);
-    Assertions.checkState(lockedSpans.containsKey(span.key));
-    // If the file doesn't exist, don't add it to the in-memory representation.
-    if (!file.exists()) {
-      return;
-    }
-    // If the file has length 0, delete it and don't add it to the in-memory representation.
-    long length = file.length();
-    if (length == 0) {
-      file.delete();
-      return;
+  public void commitFile(File file) {
+    writeLock.lock();
+    try {
+      CacheSpan span = CacheSpan.createCacheEntry(file);
+      Assertions.checkState(span != null);
+      Assertions.checkState(lockedSpans.containsKey(span.key));
+      // If the file doesn't exist, don't add it to the in-memory representation.
+      if (!file.exists()) {
+        return;
+      }
+      // If the file has length 0, delete it and don't add it to the in-memory representation.
+      long length = file.length();
+      if (length == 0) {
+        file.delete();
+        return;
+      }
+      addSpan(span);
+      lockedSpansChanged.signalAll();
+    } finally {
+      unlockWrite();
     }
-    addSpan(span);
-    notifyAll();
   }
 
   @Override
-  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
-    Assertions.checkState(holeSpan == lockedSpans.remove(holeSpan.key));
-    notifyAll();
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    writeLock.lock();
+    try {
+      Assertions.checkState(holeSpan == lockedSpans.remove(holeSpan.key));
+      lockedSpansChanged.signalAll();
+    } finally {
+      unlockWrite();
+    }
+  }
+
+  /**
+   * Releases the write lock. If this is the outermost hold, queued accesses are applied and, if
+   * spans were added or removed, an index write is scheduled. Modifications made before the write
+   * runs are persisted together.
+   */
+  private void unlockWrite() {
+    try {
+      if (lock.getWriteHoldCount() == 1) {
+        applyTouchedSpans();
+        if (indexDirty) {
+          indexDirty = false;
+          if (indexWriteScheduled.compareAndSet(false, true)) {
+            indexWriter.schedule(new Runnable() {
+              @Override
+              public void run() {
+                writeIndex();
+              }
+            }, INDEX_WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+          }
+        }
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void writeIndex() {
+    indexWriteScheduled.set(false);
+    ArrayList<TreeSet<CacheSpan>> spans = new ArrayList<>();
+    readLock.lock();
+    try {
+      for (TreeSet<CacheSpan> spansForKey : cachedSpans.values()) {
+        spans.add(new TreeSet<>(spansForKey));
+      }
+    } finally {
+      readLock.unlock();
+    }
+    index.write(spans);
+  }
+
+  /**
+   * Replaces spans that were read under the read lock with copies carrying the updated last access
+   * timestamp. Must be called with the write lock held.
+   */
+  private void applyTouchedSpans() {
+    CacheSpan span;
+    while ((span = touchedSpans.poll()) != null) {
+      TreeSet<CacheSpan> spansForKey = cachedSpans.get(span.key);
+      if (spansForKey == null) {
+        continue;
+      }
+      CacheSpan oldCacheSpan = spansForKey.floor(span);
+      if (oldCacheSpan == null || oldCacheSpan.position != span.position
+          || oldCacheSpan.length != span.length) {
+        // The span has been removed since it was read.
+        continue;
+      }
+      spansForKey.remove(oldCacheSpan);
+      CacheSpan newCacheSpan = oldCacheSpan.touchInMemory();
+      spansForKey.add(newCacheSpan);
+      notifySpanTouched(oldCacheSpan, newCacheSpan);
+    }
   }
 
   /**
@@ -211,15 +401,9 @@ public final class SimpleCache implements Cache {
     CacheSpan floorSpan = entries.floor(lookupSpan);
     if (floorSpan != null &&
         floorSpan.position <= offset && offset < floorSpan.position + floorSpan.length) {
-      // The lookup position is contained within floorSpan.
-      if (floorSpan.file.exists()) {
-        return floorSpan;
-      } else {
-        // The file has been deleted from under us. It's likely that other files will have been
-        // deleted too, so scan the whole in-memory representation.
-        removeStaleSpans();
-        return getSpan(lookupSpan);
-      }
+      // The lookup position is contained within floorSpan. The file isn't checked here, a file
+      // deleted from under us is detected when it fails to open and its span is removed then.
+      return floorSpan;
     }
     CacheSpan ceilEntry = entries.ceiling(lookupSpan);
     return ceilEntry == null ? CacheSpan.createOpenHole(key, lookupSpan.position) :
@@ -234,12 +418,31 @@ public final class SimpleCache implements Cache {
     if (!cacheDir.exists()) {
       cacheDir.mkdirs();
     }
-    File[] files = cacheDir.listFiles();
-    if (files == null) {
+    String[] fileNames = cacheDir.list();
+    if (fileNames == null) {
       return;
     }
-    for (int i = 0; i < files.length; i++) {
-      File file = files[i];
+    HashSet<String> unindexedFileNames = new HashSet<>(Arrays.asList(fileNames));
+    ArrayList<CacheSpan> indexedSpans = index.read();
+    if (indexedSpans == null) {
+      indexDirty = true;
+    } else {
+      for (int i = 0; i < indexedSpans.size(); i++) {
+        CacheSpan span = indexedSpans.get(i);
+        if (unindexedFileNames.remove(span.file.getName())) {
+          addSpan(span);
+        } else {
+          // The file has been deleted since the index was written.
+          indexDirty = true;
+        }
+      }
+    }
+    for (String fileName : unindexedFileNames) {
+      if (CacheSpanIndex.isIndexFile(fileName)) {
+        continue;
+      }
+      indexDirty = true;
+      File file = new File(cacheDir, fileName);
       if (file.length() == 0) {
         file.delete();
       } else {
@@ -268,19 +471,29 @@ public final class SimpleCache implements Cache {
     }
     spansForKey.add(span);
     totalSpace += span.length;
+    indexDirty = true;
     notifySpanAdded(span);
   }
 
   @Override
-  public synchronized void removeSpan(CacheSpan span) {
-    TreeSet<CacheSpan> spansForKey = cachedSpans.get(span.key);
-    totalSpace -= span.length;
-    Assertions.checkState(spansForKey.remove(span));
-    span.file.delete();
-    if (spansForKey.isEmpty()) {
-      cachedSpans.remove(span.key);
+  public void removeSpan(CacheSpan span) {
+    writeLock.lock();
+    try {
+      TreeSet<CacheSpan> spansForKey = cachedSpans.get(span.key);
+      if (spansForKey == null || !spansForKey.remove(span)) {
+        // Already removed, e.g. by another reader that found the file missing.
+        return;
+      }
+      totalSpace -= span.length;
+      span.file.delete();
+      if (spansForKey.isEmpty()) {
+        cachedSpans.remove(span.key);
+      }
+      indexDirty = true;
+      notifySpanRemoved(span);
+    } finally {
+      unlockWrite();
     }
-    notifySpanRemoved(span);
   }
 
   /**
@@ -300,6 +513,7 @@ public final class SimpleCache implements Cache {
           if (span.isCached) {
             totalSpace -= span.length;
           }
+          indexDirty = true;
           notifySpanRemoved(span);
         } else {
           isEmpty = false;
@@ -342,40 +556,45 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
-    TreeSet<CacheSpan> entries = cachedSpans.get(key);
-    if (entries == null) {
-      return false;
-    }
-    CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
-    CacheSpan floorSpan = entries.floor(lookupSpan);
-    if (floorSpan == null || floorSpan.position + floorSpan.length <= position) {
-      // We don't have a span covering the start of the queried region.
-      return false;
-    }
-    long queryEndPosition = position + length;
-    long currentEndPosition = floorSpan.position + floorSpan.length;
-    if (currentEndPosition >= queryEndPosition) {
-      // floorSpan covers the queried region.
-      return true;
-    }
-    Iterator<CacheSpan> iterator = entries.tailSet(floorSpan, false).iterator();
-    while (iterator.hasNext()) {
-      CacheSpan next = iterator.next();
-      if (next.position > currentEndPosition) {
-        // There's a hole in the cache within the queried region.
+  public boolean isCached(String key, long position, long length) {
+    readLock.lock();
+    try {
+      TreeSet<CacheSpan> entries = cachedSpans.get(key);
+      if (entries == null) {
+        return false;
+      }
+      CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
+      CacheSpan floorSpan = entries.floor(lookupSpan);
+      if (floorSpan == null || floorSpan.position + floorSpan.length <= position) {
+        // We don't have a span covering the start of the queried region.
         return false;
       }
-      // We expect currentEndPosition to always equal (next.position + next.length), but
-      // perform a max check anyway to guard against the existence of overlapping spans.
-      currentEndPosition = Math.max(currentEndPosition, next.position + next.length);
+      long queryEndPosition = position + length;
+      long currentEndPosition = floorSpan.position + floorSpan.length;
       if (currentEndPosition >= queryEndPosition) {
-        // We've found spans covering the queried region.
+        // floorSpan covers the queried region.
         return true;
       }
+      Iterator<CacheSpan> iterator = entries.tailSet(floorSpan, false).iterator();
+      while (iterator.hasNext()) {
+        CacheSpan next = iterator.next();
+        if (next.position > currentEndPosition) {
+          // There's a hole in the cache within the queried region.
+          return false;
+        }
+        // We expect currentEndPosition to always equal (next.position + next.length), but
+        // perform a max check anyway to guard against the existence of overlapping spans.
+        currentEndPosition = Math.max(currentEndPosition, next.position + next.length);
+        if (currentEndPosition >= queryEndPosition) {
+          // We've found spans covering the queried region.
+          return true;
+        }
+      }
+      // We ran out of spans before covering the queried region.
+      return false;
+    } finally {
+      readLock.unlock();
     }
-    // We ran out of spans before covering the queried region.
-    return false;
   }
 
 }
@@ -44,23 +44,52 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
 @TargetApi(16)
 public class MP4Builder {
 
+    private final static int chunkSize = 32 * 1024;
+    private final static int mdatHeaderSize = 16;
+
     private InterleaveChunkMdat mdat = null;
     private Mp4Movie currentMp4Movie = null;
     private FileOutputStream fos = null;
     private FileChannel fc = null;
     private long dataOffset = 0;
-    private long writedSinceLastMdat = 0;
-    private boolean writeNewMdat = true;
-    private HashMap<Track, long[]> track2SampleSizes = new HashMap<>();
-    private ByteBuffer sizeBuffer = null;
+    private ArrayList<TrackChunk> trackChunks = new ArrayList<>();
+
+    private static class TrackChunk {
+        private ByteBuffer buffer;
+        private int firstSample;
+
+        private TrackChunk(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+            buffer.position(mdatHeaderSize);
+        }
+
+        private boolean isEmpty() {
+            return buffer.position() == mdatHeaderSize;
+        }
+
+        private void ensureCapacity(int size) {
+            if (buffer.remaining() >= size) {
+                return;
+            }
+            ByteBuffer newBuffer = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + size));
+            buffer.flip();
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+        }
+
+        private void reset() {
+            buffer.clear();
+            buffer.position(mdatHeaderSize);
+        }
+    }
 
     public MP4Builder createMovie(Mp4Movie mp4Movie) throws Exception {
         currentMp4Movie = mp4Movie;
@@ -71,87 +100,75 @@ public class MP4Builder {
         FileTypeBox fileTypeBox = createFileTypeBox();
         fileTypeBox.getBox(fc);
         dataOffset += fileTypeBox.getSize();
-        writedSinceLastMdat += dataOffset;
 
         mdat = new InterleaveChunkMdat();
 
-        sizeBuffer = ByteBuffer.allocateDirect(4);
-
         return this;
     }
 
-    private void flushCurrentMdat() throws Exception {
-        long oldPosition = fc.position();
-        fc.position(mdat.getOffset());
-        mdat.getBox(fc);
-        fc.position(oldPosition);
-        mdat.setDataOffset(0);
-        mdat.setContentSize(0);
-        fos.flush();
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            fc.write(buffers);
+        }
     }
 
-    public boolean writeSampleData(int trackIndex, ByteBuffer byteBuf, MediaCodec.BufferInfo bufferInfo, boolean isAudio) throws Exception {
-        if (writeNewMdat) {
-            mdat.setContentSize(0);
-            mdat.getBox(fc);
-            mdat.setDataOffset(dataOffset);
-            dataOffset += 16;
-            writedSinceLastMdat += 16;
-            writeNewMdat = false;
+    private boolean flushChunk(int trackIndex) throws Exception {
+        TrackChunk chunk = trackChunks.get(trackIndex);
+        if (chunk.isEmpty()) {
+            return false;
         }
+        ByteBuffer buffer = chunk.buffer;
+        mdat.setContentSize(buffer.position() - mdatHeaderSize);
+        buffer.flip();
+        mdat.getHeader(buffer);
+        buffer.position(0);
+        currentMp4Movie.getTracks().get(trackIndex).shiftSampleOffsets(chunk.firstSample, dataOffset);
+        writeFully(new ByteBuffer[]{buffer});
+        dataOffset += buffer.limit();
+        chunk.reset();
+        return true;
+    }
 
-        mdat.setContentSize(mdat.getContentSize() + bufferInfo.size);
-        writedSinceLastMdat += bufferInfo.size;
-
-        boolean flush = false;
-        if (writedSinceLastMdat >= 32 * 1024) {
-            flushCurrentMdat();
-            writeNewMdat = true;
-            flush = true;
-            writedSinceLastMdat -= 32 * 1024;
+    public synchronized boolean writeSampleData(int trackIndex, ByteBuffer byteBuf, MediaCodec.BufferInfo bufferInfo, boolean isAudio) throws Exception {
+        if (trackIndex < 0 || trackIndex >= trackChunks.size()) {
+            return false;
+        }
+        TrackChunk chunk = trackChunks.get(trackIndex);
+        if (chunk.isEmpty()) {
+            chunk.firstSample = currentMp4Movie.getTracks().get(trackIndex).getSamplesCount();
+        }
+        if (!currentMp4Movie.addSample(trackIndex, chunk.buffer.position(), bufferInfo)) {
+            return false;
         }
 
-        currentMp4Movie.addSample(trackIndex, dataOffset, bufferInfo);
+        chunk.ensureCapacity(bufferInfo.size);
         byteBuf.position(bufferInfo.offset + (isAudio ? 0 : 4));
         byteBuf.limit(bufferInfo.offset + bufferInfo.size);
-
         if (!isAudio) {
-            sizeBuffer.position(0);
-            sizeBuffer.putInt(bufferInfo.size - 4);
-            sizeBuffer.position(0);
-            fc.write(sizeBuffer);
+            chunk.buffer.putInt(bufferInfo.size - 4);
         }
+        chunk.buffer.put(byteBuf);
 
-        fc.write(byteBuf);
-        dataOffset += bufferInfo.size;
-
-        if (flush) {
-            fos.flush();
+        if (chunk.buffer.position() - mdatHeaderSize >= chunkSize) {
+            return flushChunk(trackIndex);
         }
-        return flush;
+        return false;
     }
 
-    public int addTrack(MediaFormat mediaFormat, boolean isAudio) throws Exception {
-        return currentMp4Movie.addTrack(mediaFormat, isAudio);
+    public synchronized int addTrack(MediaFormat mediaFormat, boolean isAudio) throws Exception {
+        int index = currentMp4Movie.addTrack(mediaFormat, isAudio);
+        trackChunks.add(new TrackChunk(isAudio ? chunkSize * 2 : chunkSize * 4));
+        return index;
     }
 
-    public void finishMovie(boolean error) throws Exception {
-        if (mdat.getContentSize() != 0) {
-            flushCurrentMdat();
-        }
-
-        for (Track track : currentMp4Movie.getTracks()) {
-            List<Sample> samples = track.getSamples();
-            long[] sizes = new long[samples.size()];
-            for (int i = 0; i < sizes.length; i++) {
-                sizes[i] = samples.get(i).getSize();
-            }
-            track2SampleSizes.put(track, sizes);
+    public synchronized void finishMovie(boolean error) throws Exception {
+        for (int a = 0; a < trackChunks.size(); a++) {
+            flushChunk(a);
         }
 
         Box moov = createMovieBox(currentMp4Movie);
         moov.getBox(fc);
-        fos.flush();
 
         fc.close();
         fos.close();
@@ -210,8 +227,7 @@ public class MP4Builder {
 
         }
 
-        public void getBox(WritableByteChannel writableByteChannel) throws IOException {
-            ByteBuffer bb = ByteBuffer.allocate(16);
+        public void getHeader(ByteBuffer bb) {
             long size = getSize();
             if (isSmallBox(size)) {
                 IsoTypeWriter.writeUInt32(bb, size);
@@ -224,6 +240,11 @@ public class MP4Builder {
             } else {
                 IsoTypeWriter.writeUInt64(bb, size);
             }
+        }
+
+        public void getBox(WritableByteChannel writableByteChannel) throws IOException {
+            ByteBuffer bb = ByteBuffer.allocate(16);
+            getHeader(bb);
             bb.rewind();
             writableByteChannel.write(bb);
         }
@@ -352,7 +373,9 @@ public class MP4Builder {
         TimeToSampleBox.Entry lastEntry = null;
         List<TimeToSampleBox.Entry> entries = new ArrayList<>();
 
-        for (long delta : track.getSampleDurations()) {
+        int samplesCount = track.getSamplesCount();
+        for (int a = 0; a < samplesCount; a++) {
+            long delta = track.getSampleDuration(a);
             if (lastEntry != null && lastEntry.getDelta() == delta) {
                 lastEntry.setCount(lastEntry.getCount() + 1);
             } else {
@@ -384,19 +407,14 @@ public class MP4Builder {
 
         int previousWritedChunkCount = -1;
 
-        int samplesCount = track.getSamples().size();
+        int samplesCount = track.getSamplesCount();
         for (int a = 0; a < samplesCount; a++) {
-            Sample sample = track.getSamples().get(a);
-            long offset = sample.getOffset();
-            long size = sample.getSize();
-
-            lastOffset = offset + size;
+            lastOffset = track.getSampleOffset(a) + track.getSampleSize(a);
             lastSampleCount++;
 
             boolean write = false;
             if (a != samplesCount - 1) {
-                Sample nextSample = track.getSamples().get(a + 1);
-                if (lastOffset != nextSample.getOffset()) {
+                if (lastOffset != track.getSampleOffset(a + 1)) {
                     write = true;
                 }
             } else {
@@ -416,26 +434,24 @@ public class MP4Builder {
 
     protected void createStsz(Track track, SampleTableBox stbl) {
         SampleSizeBox stsz = new SampleSizeBox();
-        stsz.setSampleSizes(track2SampleSizes.get(track));
+        stsz.setSampleSizes(track.getSampleSizes());
         stbl.addBox(stsz);
     }
 
     protected void createStco(Track track, SampleTableBox stbl) {
-        ArrayList<Long> chunksOffsets = new ArrayList<>();
+        int samplesCount = track.getSamplesCount();
+        long[] chunkOffsetsLong = new long[Math.max(1, samplesCount)];
+        int chunksCount = 0;
         long lastOffset = -1;
-        for (Sample sample : track.getSamples()) {
-            long offset = sample.getOffset();
-            if (lastOffset != -1 && lastOffset != offset) {
-                lastOffset = -1;
-            }
-            if (lastOffset == -1) {
-                chunksOffsets.add(offset);
+        for (int a = 0; a < samplesCount; a++) {
+            long offset = track.getSampleOffset(a);
+            if (lastOffset != offset) {
+                chunkOffsetsLong[chunksCount++] = offset;
             }
-            lastOffset = offset + sample.getSize();
+            lastOffset = offset + track.getSampleSize(a);
         }
-        long[] chunkOffsetsLong = new long[chunksOffsets.size()];
-        for (int a = 0; a < chunksOffsets.size(); a++) {
-            chunkOffsetsLong[a] = chunksOffsets.get(a);
+        if (chunksCount != chunkOffsetsLong.length) {
+            chunkOffsetsLong = Arrays.copyOf(chunkOffsetsLong, chunksCount);
         }
 
         StaticChunkOffsetBox stco = new StaticChunkOffsetBox();
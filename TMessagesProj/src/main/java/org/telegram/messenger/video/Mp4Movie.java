@@ -66,12 +66,12 @@ public class Mp4Movie {
         return cacheFile;
     }
 
-    public void addSample(int trackIndex, long offset, MediaCodec.BufferInfo bufferInfo) throws Exception {
+    public boolean addSample(int trackIndex, long offset, MediaCodec.BufferInfo bufferInfo) throws Exception {
         if (trackIndex < 0 || trackIndex >= tracks.size()) {
-            return;
+            return false;
         }
         Track track = tracks.get(trackIndex);
-        track.addSample(offset, bufferInfo);
+        return track.addSample(offset, bufferInfo);
     }
 
     public int addTrack(MediaFormat mediaFormat, boolean isAudio) throws Exception {
@@ -1,27 +0,0 @@
-/*
- * This is the source code of Telegram for Android v. 3.x.x.
- * It is licensed under GNU GPL v. 2 or later.
- * You should have received a copy of the license in this archive (see LICENSE).
- *
- * Copyright Nikolai Kudashov, 2013-2016.
- */
-
-package org.telegram.messenger.video;
-
-public class Sample {
-    private long offset = 0;
-    private long size = 0;
-
-    public Sample(long offset, long size) {
-        this.offset = offset;
-        this.size = size;
-    }
-
-    public long getOffset() {
-        return offset;
-    }
-
-    public long getSize() {
-        return size;
-    }
-}
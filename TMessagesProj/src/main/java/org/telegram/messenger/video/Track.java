@@ -27,26 +27,30 @@ import com.googlecode.mp4parser.boxes.mp4.objectdescriptors.SLConfigDescriptor;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 
 @TargetApi(16)
 public class Track {
     private long trackId = 0;
-    private ArrayList<Sample> samples = new ArrayList<>();
+    private int samplesCount = 0;
+    private long[] sampleOffsets = new long[256];
+    private long[] sampleSizes = new long[256];
+    private long[] sampleDurations = new long[256];
     private long duration = 0;
     private String handler;
     private AbstractMediaHeaderBox headerBox = null;
     private SampleDescriptionBox sampleDescriptionBox = null;
-    private LinkedList<Integer> syncSamples = null;
+    private long[] syncSamples = null;
+    private int syncSamplesCount = 0;
     private int timeScale;
     private Date creationTime = new Date();
     private int height;
     private int width;
     private float volume = 0;
-    private ArrayList<Long> sampleDurations = new ArrayList<>();
+    private long defaultSampleDuration;
     private boolean isAudio = false;
     private static Map<Integer, Integer> samplingFrequencyIndexMap = new HashMap<>();
     private long lastPresentationTimeUs = 0;
@@ -71,12 +75,12 @@ public class Track {
         trackId = id;
         isAudio = audio;
         if (!isAudio) {
-            sampleDurations.add((long) 3015);
+            defaultSampleDuration = 3015;
             duration = 3015;
             width = format.getInteger(MediaFormat.KEY_WIDTH);
             height = format.getInteger(MediaFormat.KEY_HEIGHT);
             timeScale = 90000;
-            syncSamples = new LinkedList<>();
+            syncSamples = new long[64];
             handler = "vide";
             headerBox = new VideoMediaHeaderBox();
             sampleDescriptionBox = new SampleDescriptionBox();
@@ -135,7 +139,7 @@ public class Track {
                 sampleDescriptionBox.addBox(visualSampleEntry);
             }
         } else {
-            sampleDurations.add((long) 1024);
+            defaultSampleDuration = 1024;
             duration = 1024;
             volume = 1;
             timeScale = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
@@ -183,28 +187,66 @@ public class Track {
         return trackId;
     }
 
-    public void addSample(long offset, MediaCodec.BufferInfo bufferInfo) {
+    public boolean addSample(long offset, MediaCodec.BufferInfo bufferInfo) {
         long delta = bufferInfo.presentationTimeUs - lastPresentationTimeUs;
         if (delta < 0) {
-            return;
+            return false;
         }
-        boolean isSyncFrame = !isAudio && (bufferInfo.flags & MediaCodec.BUFFER_FLAG_SYNC_FRAME) != 0;
-        samples.add(new Sample(offset, bufferInfo.size));
-        if (syncSamples != null && isSyncFrame) {
-            syncSamples.add(samples.size());
-        }
-
         delta = (delta * timeScale + 500000L) / 1000000L;
         lastPresentationTimeUs = bufferInfo.presentationTimeUs;
         if (!first) {
-            sampleDurations.add(sampleDurations.size() - 1, delta);
             duration += delta;
         }
         first = false;
+
+        if (samplesCount == sampleOffsets.length) {
+            int newLength = samplesCount * 2;
+            sampleOffsets = Arrays.copyOf(sampleOffsets, newLength);
+            sampleSizes = Arrays.copyOf(sampleSizes, newLength);
+            sampleDurations = Arrays.copyOf(sampleDurations, newLength);
+        }
+        if (samplesCount > 0) {
+            sampleDurations[samplesCount - 1] = delta;
+        }
+        sampleOffsets[samplesCount] = offset;
+        sampleSizes[samplesCount] = bufferInfo.size;
+        sampleDurations[samplesCount] = defaultSampleDuration;
+        samplesCount++;
+
+        boolean isSyncFrame = !isAudio && (bufferInfo.flags & MediaCodec.BUFFER_FLAG_SYNC_FRAME) != 0;
+        if (syncSamples != null && isSyncFrame) {
+            if (syncSamplesCount == syncSamples.length) {
+                syncSamples = Arrays.copyOf(syncSamples, syncSamplesCount * 2);
+            }
+            syncSamples[syncSamplesCount++] = samplesCount;
+        }
+        return true;
+    }
+
+    public int getSamplesCount() {
+        return samplesCount;
+    }
+
+    public long getSampleOffset(int index) {
+        return sampleOffsets[index];
     }
 
-    public ArrayList<Sample> getSamples() {
-        return samples;
+    public long getSampleSize(int index) {
+        return sampleSizes[index];
+    }
+
+    public long getSampleDuration(int index) {
+        return sampleDurations[index];
+    }
+
+    public void shiftSampleOffsets(int from, long offset) {
+        for (int a = from; a < samplesCount; a++) {
+            sampleOffsets[a] += offset;
+        }
+    }
+
+    public long[] getSampleSizes() {
+        return Arrays.copyOf(sampleSizes, samplesCount);
     }
 
     public long getDuration() {
@@ -224,14 +266,10 @@ public class Track {
     }
 
     public long[] getSyncSamples() {
-        if (syncSamples == null || syncSamples.isEmpty()) {
+        if (syncSamples == null || syncSamplesCount == 0) {
             return null;
         }
-        long[] returns = new long[syncSamples.size()];
-        for (int i = 0; i < syncSamples.size(); i++) {
-            returns[i] = syncSamples.get(i);
-        }
-        return returns;
+        return Arrays.copyOf(syncSamples, syncSamplesCount);
     }
 
     public int getTimeScale() {
@@ -254,10 +292,6 @@ public class Track {
         return volume;
     }
 
-    public ArrayList<Long> getSampleDurations() {
-        return sampleDurations;
-    }
-
     public boolean isAudio() {
         return isAudio;
     }
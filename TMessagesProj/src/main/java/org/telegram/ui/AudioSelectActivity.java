@@ -18,7 +18,7 @@ import android.widget.AdapterView;
 import android.widget.FrameLayout;
 import android.widget.ListView;
 
-import org.telegram.messenger.AndroidUtilities;
+import org.telegram.messenger.AudioInfoScanner;
 import org.telegram.messenger.LocaleController;
 import org.telegram.messenger.MediaController;
 import org.telegram.messenger.MessageObject;
@@ -41,6 +41,7 @@ import org.telegram.ui.Components.PickerBottomLayout;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 
 public class AudioSelectActivity extends BaseFragment implements NotificationCenter.NotificationCenterDelegate {
 
@@ -198,58 +199,15 @@ public class AudioSelectActivity extends BaseFragment implements NotificationCen
                 };
 
                 final ArrayList<MediaController.AudioEntry> newAudioEntries = new ArrayList<>();
+                final HashSet<String> paths = new HashSet<>();
+                int id = -2000000000;
                 Cursor cursor = null;
                 try {
                     cursor = ApplicationLoader.applicationContext.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, projection, MediaStore.Audio.Media.IS_MUSIC + " != 0", null, MediaStore.Audio.Media.TITLE);
-                    int id = -2000000000;
                     while (cursor.moveToNext()) {
-                        MediaController.AudioEntry audioEntry = new MediaController.AudioEntry();
-                        audioEntry.id = cursor.getInt(0);
-                        audioEntry.author = cursor.getString(1);
-                        audioEntry.title = cursor.getString(2);
-                        audioEntry.path = cursor.getString(3);
-                        audioEntry.duration = (int) (cursor.getLong(4) / 1000);
-                        audioEntry.genre = cursor.getString(5);
-
-                        File file = new File(audioEntry.path);
-
-                        TLRPC.TL_message message = new TLRPC.TL_message();
-                        message.out = true;
-                        message.id = id;
-                        message.to_id = new TLRPC.TL_peerUser();
-                        message.to_id.user_id = message.from_id = UserConfig.getClientUserId();
-                        message.date = (int) (System.currentTimeMillis() / 1000);
-                        message.message = "-1";
-                        message.attachPath = audioEntry.path;
-                        message.media = new TLRPC.TL_messageMediaDocument();
-                        message.media.document = new TLRPC.TL_document();
-                        message.flags |= TLRPC.MESSAGE_FLAG_HAS_MEDIA | TLRPC.MESSAGE_FLAG_HAS_FROM_ID;
-
-                        String ext = FileLoader.getFileExtension(file);
-
-                        message.media.document.id = 0;
-                        message.media.document.access_hash = 0;
-                        message.media.document.date = message.date;
-                        message.media.document.mime_type = "audio/" + (ext.length() > 0 ? ext : "mp3");
-                        message.media.document.size = (int) file.length();
-                        message.media.document.thumb = new TLRPC.TL_photoSizeEmpty();
-                        message.media.document.thumb.type = "s";
-                        message.media.document.dc_id = 0;
-
-                        TLRPC.TL_documentAttributeAudio attributeAudio = new TLRPC.TL_documentAttributeAudio();
-                        attributeAudio.duration = audioEntry.duration;
-                        attributeAudio.title = audioEntry.title;
-                        attributeAudio.performer = audioEntry.author;
-                        attributeAudio.flags |= 3;
-                        message.media.document.attributes.add(attributeAudio);
-
-                        TLRPC.TL_documentAttributeFilename fileName = new TLRPC.TL_documentAttributeFilename();
-                        fileName.file_name = file.getName();
-                        message.media.document.attributes.add(fileName);
-
-                        audioEntry.messageObject = new MessageObject(message, null, false);
-
+                        MediaController.AudioEntry audioEntry = createAudioEntry(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getString(3), (int) (cursor.getLong(4) / 1000), cursor.getString(5), id);
                         newAudioEntries.add(audioEntry);
+                        paths.add(audioEntry.path);
                         id--;
                     }
                 } catch (Exception e) {
@@ -259,18 +217,84 @@ public class AudioSelectActivity extends BaseFragment implements NotificationCen
                         cursor.close();
                     }
                 }
-                AndroidUtilities.runOnUIThread(new Runnable() {
+                //music received in chats lives under .nomedia, so the media store never lists it
+                final int lastId = id;
+                AudioInfoScanner.getInstance().scanDirectory(FileLoader.getInstance().getDirectory(FileLoader.MEDIA_DIR_DOCUMENT), new AudioInfoScanner.ScanCallback() {
                     @Override
-                    public void run() {
+                    public void onScanFinished(HashMap<File, AudioInfoScanner.AudioMetadata> results) {
+                        int id = lastId;
+                        for (HashMap.Entry<File, AudioInfoScanner.AudioMetadata> entry : results.entrySet()) {
+                            File file = entry.getKey();
+                            if (paths.contains(file.getAbsolutePath())) {
+                                continue;
+                            }
+                            AudioInfoScanner.AudioMetadata metadata = entry.getValue();
+                            String title = metadata.title != null ? metadata.title : file.getName();
+                            newAudioEntries.add(createAudioEntry(id, metadata.artist, title, file.getAbsolutePath(), (int) (metadata.duration / 1000), null, id));
+                            id--;
+                        }
                         audioEntries = newAudioEntries;
-                        progressView.showTextView();
-                        listViewAdapter.notifyDataSetChanged();
+                        if (progressView != null) {
+                            progressView.showTextView();
+                        }
+                        if (listViewAdapter != null) {
+                            listViewAdapter.notifyDataSetChanged();
+                        }
                     }
                 });
             }
         });
     }
 
+    private MediaController.AudioEntry createAudioEntry(long audioId, String author, String title, String path, int duration, String genre, int messageId) {
+        MediaController.AudioEntry audioEntry = new MediaController.AudioEntry();
+        audioEntry.id = audioId;
+        audioEntry.author = author;
+        audioEntry.title = title;
+        audioEntry.path = path;
+        audioEntry.duration = duration;
+        audioEntry.genre = genre;
+
+        File file = new File(audioEntry.path);
+
+        TLRPC.TL_message message = new TLRPC.TL_message();
+        message.out = true;
+        message.id = messageId;
+        message.to_id = new TLRPC.TL_peerUser();
+        message.to_id.user_id = message.from_id = UserConfig.getClientUserId();
+        message.date = (int) (System.currentTimeMillis() / 1000);
+        message.message = "-1";
+        message.attachPath = audioEntry.path;
+        message.media = new TLRPC.TL_messageMediaDocument();
+        message.media.document = new TLRPC.TL_document();
+        message.flags |= TLRPC.MESSAGE_FLAG_HAS_MEDIA | TLRPC.MESSAGE_FLAG_HAS_FROM_ID;
+
+        String ext = FileLoader.getFileExtension(file);
+
+        message.media.document.id = 0;
+        message.media.document.access_hash = 0;
+        message.media.document.date = message.date;
+        message.media.document.mime_type = "audio/" + (ext.length() > 0 ? ext : "mp3");
+        message.media.document.size = (int) file.length();
+        message.media.document.thumb = new TLRPC.TL_photoSizeEmpty();
+        message.media.document.thumb.type = "s";
+        message.media.document.dc_id = 0;
+
+        TLRPC.TL_documentAttributeAudio attributeAudio = new TLRPC.TL_documentAttributeAudio();
+        attributeAudio.duration = audioEntry.duration;
+        attributeAudio.title = audioEntry.title;
+        attributeAudio.performer = audioEntry.author;
+        attributeAudio.flags |= 3;
+        message.media.document.attributes.add(attributeAudio);
+
+        TLRPC.TL_documentAttributeFilename fileName = new TLRPC.TL_documentAttributeFilename();
+        fileName.file_name = file.getName();
+        message.media.document.attributes.add(fileName);
+
+        audioEntry.messageObject = new MessageObject(message, null, false);
+        return audioEntry;
+    }
+
     private class ListAdapter extends BaseFragmentAdapter {
         private Context mContext;
 
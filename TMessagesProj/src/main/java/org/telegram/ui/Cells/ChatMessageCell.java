@@ -41,6 +41,7 @@ import org.telegram.messenger.LocaleController;
 import org.telegram.messenger.MediaController;
 import org.telegram.messenger.FileLoader;
 import org.telegram.messenger.FileLog;
+import org.telegram.messenger.MessageLayoutCache;
 import org.telegram.messenger.MessageObject;
 import org.telegram.messenger.MessagesController;
 import org.telegram.messenger.R;
@@ -2005,7 +2006,7 @@ public class ChatMessageCell extends BaseCell implements SeekBar.SeekBarDelegate
                     if (site_name != null) {
                         try {
                             int width = (int) Math.ceil(replyNamePaint.measureText(site_name));
-                            siteNameLayout = new StaticLayout(site_name, replyNamePaint, Math.min(width, linkPreviewMaxWidth), Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+                            siteNameLayout = MessageLayoutCache.getInstance().getStaticLayout(messageObject, MessageLayoutCache.TYPE_SITE_NAME, site_name, replyNamePaint, Math.min(width, linkPreviewMaxWidth));
                             int height = siteNameLayout.getLineBottom(siteNameLayout.getLineCount() - 1);
                             linkPreviewHeight += height;
                             totalHeight += height;
@@ -2107,7 +2108,11 @@ public class ChatMessageCell extends BaseCell implements SeekBar.SeekBarDelegate
                             }
                             int restLines = 0;
                             if (restLinesCount == 3 && !isSmallImage) {
-                                descriptionLayout = StaticLayoutEx.createStaticLayout(messageObject.linkDescription, replyTextPaint, linkPreviewMaxWidth, Layout.Alignment.ALIGN_NORMAL, 1.0f, dp(1), false, TextUtils.TruncateAt.END, linkPreviewMaxWidth, 6);
+                                descriptionLayout = MessageLayoutCache.getInstance().getLayout(messageObject, MessageLayoutCache.TYPE_DESCRIPTION, messageObject.linkDescription, replyTextPaint, linkPreviewMaxWidth, 6);
+                                if (descriptionLayout == null) {
+                                    descriptionLayout = StaticLayoutEx.createStaticLayout(messageObject.linkDescription, replyTextPaint, linkPreviewMaxWidth, Layout.Alignment.ALIGN_NORMAL, 1.0f, dp(1), false, TextUtils.TruncateAt.END, linkPreviewMaxWidth, 6);
+                                    MessageLayoutCache.getInstance().putLayout(messageObject, MessageLayoutCache.TYPE_DESCRIPTION, messageObject.linkDescription, replyTextPaint, linkPreviewMaxWidth, 6, descriptionLayout);
+                                }
                             } else {
                                 restLines = restLinesCount;
                                 descriptionLayout = generateStaticLayout(messageObject.linkDescription, replyTextPaint, linkPreviewMaxWidth, linkPreviewMaxWidth - dp(48 + 4), restLinesCount, 6);
@@ -2737,7 +2742,7 @@ public class ChatMessageCell extends BaseCell implements SeekBar.SeekBarDelegate
                     }
                     if (messageObject.caption != null) {
                         try {
-                            captionLayout = new StaticLayout(messageObject.caption, MessageObject.getTextPaint(), photoWidth - dp(10), Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+                            captionLayout = MessageLayoutCache.getInstance().getStaticLayout(messageObject, MessageLayoutCache.TYPE_CAPTION, messageObject.caption, MessageObject.getTextPaint(), photoWidth - dp(10));
                             if (captionLayout.getLineCount() > 0) {
                                 captionHeight = captionLayout.getHeight();
                                 additionHeight += captionHeight + dp(9);
@@ -2829,7 +2834,7 @@ public class ChatMessageCell extends BaseCell implements SeekBar.SeekBarDelegate
             if (captionLayout == null && messageObject.caption != null && messageObject.type != 13) {
                 try {
                     int width = backgroundWidth - AndroidUtilities.dp(31);
-                    captionLayout = new StaticLayout(messageObject.caption, MessageObject.getTextPaint(), width - dp(10), Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+                    captionLayout = MessageLayoutCache.getInstance().getStaticLayout(messageObject, MessageLayoutCache.TYPE_CAPTION, messageObject.caption, MessageObject.getTextPaint(), width - dp(10));
                     if (captionLayout.getLineCount() > 0) {
                         int timeWidthTotal = timeWidth + (messageObject.isOutOwner() ? dp(20) : 0);
                         captionHeight = captionLayout.getHeight();
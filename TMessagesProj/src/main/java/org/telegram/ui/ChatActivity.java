@@ -65,6 +65,7 @@ import org.telegram.messenger.ChatObject;
 import org.telegram.messenger.Emoji;
 import org.telegram.messenger.LocaleController;
 import org.telegram.messenger.MediaController;
+import org.telegram.messenger.MessageLayoutCache;
 import org.telegram.messenger.MessagesStorage;
 import org.telegram.messenger.NotificationsController;
 import org.telegram.messenger.SecretChatHelper;
@@ -715,6 +716,7 @@ public class ChatActivity extends BaseFragment implements NotificationCenter.Not
             mentionsAdapter.onDestroy();
         }
         MessagesController.getInstance().setLastCreatedDialogId(dialog_id, false);
+        MessageLayoutCache.getInstance().clear();
         NotificationCenter.getInstance().removeObserver(this, NotificationCenter.messagesDidLoaded);
         NotificationCenter.getInstance().removeObserver(this, NotificationCenter.emojiDidLoaded);
         NotificationCenter.getInstance().removeObserver(this, NotificationCenter.updateInterfaces);
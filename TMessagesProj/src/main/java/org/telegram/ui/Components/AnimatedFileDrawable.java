@@ -24,11 +24,14 @@ import android.os.Looper;
 import android.view.View;
 
 import org.telegram.messenger.AndroidUtilities;
+import org.telegram.messenger.BuildVars;
 import org.telegram.messenger.FileLog;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
 
@@ -39,7 +42,7 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
     private long lastFrameTime;
     private int lastTimeStamp;
     private int invalidateAfter = 50;
-    private final int[] metaData = new int[4];
+    private final int[] metaData = new int[5];
     private Runnable loadFrameTask;
     private Bitmap renderingBitmap;
     private Bitmap nextRenderingBitmap;
@@ -66,7 +69,37 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
     private volatile boolean isRunning;
     private volatile boolean isRecycled;
     private volatile int nativePtr;
-    private static ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2, new ThreadPoolExecutor.DiscardPolicy());
+    private static ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final static int maxCachedFrames = 100;
+    private final static int maxCachedFramesBytes = 2 * 1024 * 1024;
+    private final static int maxTotalCachedFramesBytes = 16 * 1024 * 1024;
+    private static AtomicInteger totalCachedFramesBytes = new AtomicInteger();
+
+    private final static long decoderSuspendDelay = 3000;
+
+    private static AtomicInteger decodedFramesCount = new AtomicInteger();
+    private static AtomicInteger droppedFramesCount = new AtomicInteger();
+    private int framesDecoded;
+    private int framesDropped;
+    private boolean lateFrameCounted;
+
+    private boolean suspendWhenDone;
+    private volatile boolean decoderSuspended;
+    private boolean suspendCheckPosted;
+    private long lastDrawTime;
+    private volatile long lastDecodeTime;
+
+    private final Object cachedFramesSync = new Object();
+    private boolean useFramesCache = true;
+    private ArrayList<Bitmap> cachedFrames;
+    private ArrayList<Integer> cachedFramesDurations;
+    private BitmapShader[] cachedShaders;
+    private int cachedFramesBytes;
+    private int cacheLastTimestamp;
+    private volatile boolean framesCached;
+    private boolean cachePlaybackStarted;
+    private int cachedFrameIndex;
 
     private View parentView = null;
     private View secondParentView = null;
@@ -82,12 +115,50 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
         }
     };
 
+    //a cell that stays attached but is not drawn (hidden fragment, clipped by its parent) keeps no decoder, drawing it again resumes from the first frame
+    private final Runnable suspendCheckTask = new Runnable() {
+        @Override
+        public void run() {
+            suspendCheckPosted = false;
+            if (isRecycled || decoderSuspended || framesCached) {
+                return;
+            }
+            long hiddenTime = System.currentTimeMillis() - lastDrawTime;
+            if (hiddenTime < decoderSuspendDelay) {
+                suspendCheckPosted = true;
+                uiHandler.postDelayed(this, decoderSuspendDelay - hiddenTime);
+                return;
+            }
+            suspendDecoder();
+        }
+    };
+
     private Runnable uiRunnable = new Runnable() {
         @Override
         public void run() {
-            if (destroyWhenDone && nativePtr != 0) {
-                destroyDecoder(nativePtr);
-                nativePtr = 0;
+            if (destroyWhenDone) {
+                if (nativePtr != 0) {
+                    destroyDecoder(nativePtr);
+                    nativePtr = 0;
+                }
+                releaseCachedFrames();
+            }
+            if (framesCached && !cachePlaybackStarted && !destroyWhenDone) {
+                cachePlaybackStarted = true;
+                cachedFrameIndex = 0;
+                loadFrameTask = null;
+                if (nativePtr != 0) {
+                    destroyDecoder(nativePtr);
+                    nativePtr = 0;
+                }
+                nextRenderingBitmap = cachedFrames.get(0);
+                nextRenderingShader = getCachedShader(0);
+                if (secondParentView != null) {
+                    secondParentView.invalidate();
+                } else if (parentView != null) {
+                    parentView.invalidate();
+                }
+                return;
             }
             if (nativePtr == 0) {
                 if (backgroundBitmap != null) {
@@ -96,6 +167,8 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
                 }
                 return;
             }
+            framesDecoded++;
+            decodedFramesCount.incrementAndGet();
             loadFrameTask = null;
             nextRenderingBitmap = backgroundBitmap;
             nextRenderingShader = backgroundShader;
@@ -106,6 +179,9 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
                 invalidateAfter = metaData[3] - lastTimeStamp;
             }
             lastTimeStamp = metaData[3];
+            if (suspendWhenDone) {
+                suspendDecoderInternal();
+            }
             if (secondParentView != null) {
                 secondParentView.invalidate();
             } else if (parentView != null) {
@@ -118,9 +194,10 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
         @Override
         public void run() {
             if (!isRecycled) {
-                if (!decoderCreated && nativePtr == 0) {
+                if ((!decoderCreated || decoderSuspended) && nativePtr == 0) {
                     nativePtr = createDecoder(path.getAbsolutePath(), metaData);
                     decoderCreated = true;
+                    decoderSuspended = false;
                 }
                 try {
                     if (backgroundBitmap == null) {
@@ -134,7 +211,10 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
                         }
                     }
                     if (backgroundBitmap != null) {
+                        long startTime = System.currentTimeMillis();
                         getVideoFrame(nativePtr, backgroundBitmap, metaData);
+                        lastDecodeTime = System.currentTimeMillis() - startTime;
+                        cacheDecodedFrame();
                     }
                 } catch (Throwable e) {
                     FileLog.e("tmessages", e);
@@ -155,6 +235,133 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
         }
     };
 
+    private void cacheDecodedFrame() {
+        synchronized (cachedFramesSync) {
+            if (!useFramesCache) {
+                return;
+            }
+            int frameBytes = backgroundBitmap.getRowBytes() * backgroundBitmap.getHeight();
+            if (cachedFrames == null) {
+                //the whole loop must fit before the first frame is copied, the frame count comes from the container
+                int framesCount = metaData[4];
+                if (framesCount <= 1 || framesCount > maxCachedFrames || (long) framesCount * frameBytes > maxCachedFramesBytes) {
+                    useFramesCache = false;
+                    return;
+                }
+                int loopBytes = framesCount * frameBytes;
+                if (totalCachedFramesBytes.addAndGet(loopBytes) > maxTotalCachedFramesBytes) {
+                    totalCachedFramesBytes.addAndGet(-loopBytes);
+                    useFramesCache = false;
+                    return;
+                }
+                cachedFramesBytes = loopBytes;
+                cachedFrames = new ArrayList<>(framesCount);
+                cachedFramesDurations = new ArrayList<>(framesCount);
+            } else if (metaData[3] < cacheLastTimestamp) {
+                if (cachedFrames.size() > 1) {
+                    int size = cachedFramesDurations.size();
+                    cachedFramesDurations.add(size > 0 ? cachedFramesDurations.get(size - 1) : invalidateAfter);
+                    cachedShaders = new BitmapShader[cachedFrames.size()];
+                    int usedBytes = cachedFrames.size() * frameBytes;
+                    totalCachedFramesBytes.addAndGet(usedBytes - cachedFramesBytes);
+                    cachedFramesBytes = usedBytes;
+                    framesCached = true;
+                } else {
+                    abortFramesCache();
+                }
+                useFramesCache = false;
+                return;
+            } else {
+                cachedFramesDurations.add(Math.max(1, metaData[3] - cacheLastTimestamp));
+            }
+            cacheLastTimestamp = metaData[3];
+            if ((cachedFrames.size() + 1) * frameBytes > cachedFramesBytes) {
+                //the container reported fewer frames than the loop has
+                abortFramesCache();
+                return;
+            }
+            Bitmap frame = null;
+            try {
+                frame = backgroundBitmap.copy(Bitmap.Config.ARGB_8888, false);
+            } catch (Throwable e) {
+                FileLog.e("tmessages", e);
+            }
+            if (frame == null) {
+                abortFramesCache();
+                return;
+            }
+            cachedFrames.add(frame);
+        }
+    }
+
+    private void abortFramesCache() {
+        //callers hold cachedFramesSync, frames are recorded on the decode thread and released on the ui thread
+        useFramesCache = false;
+        if (cachedFrames != null) {
+            for (int a = 0; a < cachedFrames.size(); a++) {
+                cachedFrames.get(a).recycle();
+            }
+            cachedFrames = null;
+            cachedFramesDurations = null;
+        }
+        totalCachedFramesBytes.addAndGet(-cachedFramesBytes);
+        cachedFramesBytes = 0;
+    }
+
+    private void releaseCachedFrames() {
+        synchronized (cachedFramesSync) {
+            framesCached = false;
+            cachedShaders = null;
+            if (renderingBitmap != null && cachedFrames != null && cachedFrames.contains(renderingBitmap)) {
+                renderingBitmap = null;
+                renderingShader = null;
+            }
+            if (nextRenderingBitmap != null && cachedFrames != null && cachedFrames.contains(nextRenderingBitmap)) {
+                nextRenderingBitmap = null;
+                nextRenderingShader = null;
+            }
+            abortFramesCache();
+        }
+    }
+
+    private BitmapShader getCachedShader(int index) {
+        if (roundRadius == 0) {
+            return null;
+        }
+        if (cachedShaders[index] == null) {
+            cachedShaders[index] = new BitmapShader(cachedFrames.get(index), Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        }
+        return cachedShaders[index];
+    }
+
+    private void suspendDecoder() {
+        if (isRecycled || framesCached || !decoderCreated || decoderSuspended) {
+            return;
+        }
+        if (loadFrameTask != null) {
+            suspendWhenDone = true;
+            return;
+        }
+        suspendDecoderInternal();
+    }
+
+    private void suspendDecoderInternal() {
+        suspendWhenDone = false;
+        if (nativePtr != 0) {
+            destroyDecoder(nativePtr);
+            nativePtr = 0;
+        }
+        decoderSuspended = true;
+        synchronized (cachedFramesSync) {
+            if (cachedFrames != null) {
+                //the decoder restarts from the first frame, a partly recorded loop can't be continued
+                abortFramesCache();
+                useFramesCache = true;
+                cacheLastTimestamp = 0;
+            }
+        }
+    }
+
     public AnimatedFileDrawable(File file, boolean createDecoder) {
         path = file;
         if (createDecoder) {
@@ -163,8 +370,12 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
         }
     }
 
-    protected void postToDecodeQueue(Runnable runnable) {
-        executor.execute(runnable);
+    protected void postToDecodeQueue(Runnable runnable, long delay) {
+        if (delay > 0) {
+            executor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+        } else {
+            executor.execute(runnable);
+        }
     }
 
     public void setParentView(View view) {
@@ -185,11 +396,16 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
         }
         isRunning = false;
         isRecycled = true;
+        uiHandler.removeCallbacks(suspendCheckTask);
+        if (BuildVars.DEBUG_VERSION && framesDecoded != 0) {
+            FileLog.d("tmessages", "animation " + path + " decoded " + framesDecoded + " frames, dropped " + framesDropped + ", all animations decoded " + decodedFramesCount.get() + " dropped " + droppedFramesCount.get());
+        }
         if (loadFrameTask == null) {
             if (nativePtr != 0) {
                 destroyDecoder(nativePtr);
                 nativePtr = 0;
             }
+            releaseCachedFrames();
             if (nextRenderingBitmap != null) {
                 nextRenderingBitmap.recycle();
                 nextRenderingBitmap = null;
@@ -238,10 +454,14 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
     }
 
     private void scheduleNextGetFrame() {
-        if (loadFrameTask != null || nativePtr == 0 && decoderCreated || destroyWhenDone) {
+        scheduleNextGetFrame(0);
+    }
+
+    private void scheduleNextGetFrame(long delay) {
+        if (loadFrameTask != null || framesCached || nativePtr == 0 && decoderCreated && !decoderSuspended || destroyWhenDone) {
             return;
         }
-        postToDecodeQueue(loadFrameTask = loadFrameRunnable);
+        postToDecodeQueue(loadFrameTask = loadFrameRunnable, delay);
     }
 
     @Override
@@ -272,20 +492,47 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
 
     @Override
     public void draw(Canvas canvas) {
-        if (nativePtr == 0 && decoderCreated || destroyWhenDone) {
+        if (!cachePlaybackStarted && nativePtr == 0 && decoderCreated && !decoderSuspended || destroyWhenDone) {
             return;
         }
+        lastDrawTime = System.currentTimeMillis();
+        if (!suspendCheckPosted && !framesCached) {
+            suspendCheckPosted = true;
+            uiHandler.postDelayed(suspendCheckTask, decoderSuspendDelay);
+        }
         if (isRunning) {
             if (renderingBitmap == null && nextRenderingBitmap == null) {
                 scheduleNextGetFrame();
             } else if (Math.abs(System.currentTimeMillis() - lastFrameTime) >= invalidateAfter) {
                 if (nextRenderingBitmap != null) {
-                    scheduleNextGetFrame();
                     renderingBitmap = nextRenderingBitmap;
                     renderingShader = nextRenderingShader;
                     nextRenderingBitmap = null;
                     nextRenderingShader = null;
                     lastFrameTime = System.currentTimeMillis();
+                    lateFrameCounted = false;
+                    if (cachePlaybackStarted) {
+                        if (backgroundBitmap != null) {
+                            backgroundBitmap.recycle();
+                            backgroundBitmap = null;
+                            backgroundShader = null;
+                        }
+                        invalidateAfter = cachedFramesDurations.get(cachedFrameIndex);
+                        cachedFrameIndex = (cachedFrameIndex + 1) % cachedFrames.size();
+                        nextRenderingBitmap = cachedFrames.get(cachedFrameIndex);
+                        nextRenderingShader = getCachedShader(cachedFrameIndex);
+                    } else {
+                        scheduleNextGetFrame(Math.max(0, invalidateAfter - lastDecodeTime * 2));
+                    }
+                } else {
+                    if (!lateFrameCounted) {
+                        lateFrameCounted = true;
+                        if (!decoderSuspended) {
+                            framesDropped++;
+                            droppedFramesCount.incrementAndGet();
+                        }
+                    }
+                    scheduleNextGetFrame();
                 }
             }
         }
@@ -308,7 +555,7 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
                 float scale = Math.max(scaleX, scaleY);
 
                 if (renderingShader == null) {
-                    renderingShader = new BitmapShader(backgroundBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+                    renderingShader = new BitmapShader(renderingBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
                 }
                 getPaint().setShader(renderingShader);
                 roundRect.set(dstRect);
@@ -378,7 +625,7 @@ public class AnimatedFileDrawable extends BitmapDrawable implements Animatable {
     }
 
     public boolean hasBitmap() {
-        return nativePtr != 0 && (renderingBitmap != null || nextRenderingBitmap != null);
+        return (nativePtr != 0 || cachePlaybackStarted || decoderSuspended) && (renderingBitmap != null || nextRenderingBitmap != null);
     }
 
     public int getOrientation() {
@@ -0,0 +1,190 @@
+/*
+ * This is the source code of Telegram for Android v. 3.x.x.
+ * It is licensed under GNU GPL v. 2 or later.
+ * You should have received a copy of the license in this archive (see LICENSE).
+ *
+ * Copyright Nikolai Kudashov, 2013-2016.
+ */
+
+package org.telegram.ui.Components;
+
+import org.telegram.messenger.AndroidUtilities;
+import org.telegram.messenger.FileLoadOperation;
+import org.telegram.messenger.FileLoader;
+import org.telegram.messenger.exoplayer.C;
+import org.telegram.messenger.exoplayer.upstream.DataSpec;
+import org.telegram.messenger.exoplayer.upstream.UriDataSource;
+import org.telegram.messenger.exoplayer.upstream.cache.Cache;
+import org.telegram.messenger.exoplayer.upstream.cache.CacheDataSource;
+import org.telegram.messenger.exoplayer.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import org.telegram.messenger.exoplayer.upstream.cache.SimpleCache;
+import org.telegram.tgnet.TLRPC;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+public class FileStreamDataSource implements UriDataSource {
+
+    private final static long waitTimeout = 1000;
+    private final static long readTimeout = 30000;
+    private final static long streamCacheSize = 100 * 1024 * 1024;
+
+    private static volatile Cache streamCache;
+
+    private TLRPC.Document document;
+    private volatile FileLoadOperation loadOperation;
+    private RandomAccessFile file;
+    private String uriString;
+    private int readPosition;
+    private long bytesRemaining;
+
+    public FileStreamDataSource(TLRPC.Document document) {
+        this.document = document;
+    }
+
+    //a cancelled stream keeps only its contiguous prefix, the cache keeps the ranges loaded after seeks for the next time the video is opened
+    public static UriDataSource createCached(TLRPC.Document document) {
+        return new CachedStreamDataSource(document);
+    }
+
+    private static Cache getStreamCache() {
+        Cache localCache = streamCache;
+        if (localCache == null) {
+            synchronized (FileStreamDataSource.class) {
+                localCache = streamCache;
+                if (localCache == null) {
+                    streamCache = localCache = new SimpleCache(new File(AndroidUtilities.getCacheDir(), "stream"), new LeastRecentlyUsedCacheEvictor(streamCacheSize));
+                }
+            }
+        }
+        return localCache;
+    }
+
+    private static class CachedStreamDataSource implements UriDataSource {
+
+        private final TLRPC.Document document;
+        private final String key;
+        private final CacheDataSource cacheDataSource;
+        private String uriString;
+
+        public CachedStreamDataSource(TLRPC.Document document) {
+            this.document = document;
+            key = FileLoader.getAttachFileName(document);
+            cacheDataSource = new CacheDataSource(getStreamCache(), new FileStreamDataSource(document), false, true);
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            //the cache is bypassed for unbounded reads, the document size bounds them
+            long length = dataSpec.length == C.LENGTH_UNBOUNDED ? document.size - dataSpec.position : dataSpec.length;
+            if (length < 0) {
+                throw new EOFException();
+            }
+            uriString = dataSpec.uri.toString();
+            return cacheDataSource.open(new DataSpec(dataSpec.uri, dataSpec.absoluteStreamPosition, dataSpec.position, length, key, dataSpec.flags));
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            return cacheDataSource.read(buffer, offset, readLength);
+        }
+
+        @Override
+        public String getUri() {
+            return uriString;
+        }
+
+        @Override
+        public void close() throws IOException {
+            uriString = null;
+            cacheDataSource.close();
+        }
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        uriString = dataSpec.uri.toString();
+        readPosition = (int) dataSpec.position;
+        bytesRemaining = dataSpec.length == C.LENGTH_UNBOUNDED ? document.size - dataSpec.position : dataSpec.length;
+        if (bytesRemaining < 0) {
+            throw new EOFException();
+        }
+        loadOperation = FileLoader.getInstance().loadStreamFile(document, readPosition);
+        if (loadOperation == null) {
+            throw new IOException("unable to start loading " + uriString);
+        }
+        return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (bytesRemaining == 0) {
+            return C.RESULT_END_OF_INPUT;
+        }
+        FileLoadOperation operation = loadOperation;
+        if (operation == null) {
+            throw new IOException("read from closed " + uriString);
+        }
+        int available;
+        try {
+            available = operation.waitForStreamData(readPosition, waitTimeout);
+            if (available == 0) {
+                long deadline = System.currentTimeMillis() + readTimeout;
+                operation.requestStreamOffset(readPosition);
+                while ((available = operation.waitForStreamData(readPosition, waitTimeout)) == 0) {
+                    if (operation.isFinished()) {
+                        return C.RESULT_END_OF_INPUT;
+                    }
+                    if (Thread.interrupted() || loadOperation != operation) {
+                        throw new InterruptedIOException();
+                    }
+                    if (System.currentTimeMillis() >= deadline) {
+                        throw new IOException("timed out waiting for " + uriString + " at " + readPosition);
+                    }
+                    //the loader may have moved on to another seek position meanwhile
+                    operation.requestStreamOffset(readPosition);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        if (available < 0) {
+            throw new IOException("loading failed for " + uriString);
+        }
+        if (file == null) {
+            File currentFile = operation.getCurrentFile();
+            if (currentFile == null) {
+                throw new IOException("no file for " + uriString);
+            }
+            file = new RandomAccessFile(currentFile, "r");
+        }
+        file.seek(readPosition);
+        int bytesRead = file.read(buffer, offset, (int) Math.min(Math.min(bytesRemaining, readLength), available));
+        if (bytesRead > 0) {
+            readPosition += bytesRead;
+            bytesRemaining -= bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public String getUri() {
+        return uriString;
+    }
+
+    @Override
+    public void close() throws IOException {
+        uriString = null;
+        loadOperation = null;
+        if (file != null) {
+            try {
+                file.close();
+            } finally {
+                file = null;
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.opengl.GLES20;
+import android.os.SystemClock;
 
 import org.telegram.messenger.DispatchQueue;
 import org.telegram.ui.Components.Size;
@@ -55,6 +56,7 @@ public class Painting {
 
     private boolean paused;
     private Slice backupSlice;
+    private SliceStore sliceStore = new SliceStore();
 
     private float projection[];
     private float renderProjection[];
@@ -278,7 +280,7 @@ public class Painting {
         PaintingData paintingData = getPaintingData(rect, true);
         ByteBuffer data = paintingData.data;
 
-        final Slice slice = new Slice(data, rect, delegate.requestDispatchQueue());
+        final Slice slice = new Slice(data, rect, sliceStore, delegate.requestDispatchQueue());
         delegate.requestUndoStore().registerUndo(UUID.randomUUID(), new Runnable() {
             @Override
             public void run() {
@@ -288,18 +290,22 @@ public class Painting {
     }
 
     private void restoreSlice(final Slice slice) {
+        final long requestTime = SystemClock.elapsedRealtime();
         renderView.performInContext(new Runnable() {
             @Override
             public void run() {
                 ByteBuffer buffer = slice.getData();
 
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
-                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, slice.getX(), slice.getY(), slice.getWidth(), slice.getHeight(), GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer);
-                if (!isSuppressingChanges() && delegate != null) {
-                    delegate.contentChanged(slice.getBounds());
+                if (buffer != null) {
+                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
+                    GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, slice.getX(), slice.getY(), slice.getWidth(), slice.getHeight(), GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer);
+                    if (!isSuppressingChanges() && delegate != null) {
+                        delegate.contentChanged(slice.getBounds());
+                    }
                 }
 
                 slice.cleanResources();
+                sliceStore.trackRestore(SystemClock.elapsedRealtime() - requestTime);
             }
         });
     }
@@ -483,7 +489,7 @@ public class Painting {
             public void run() {
                 paused = true;
                 PaintingData data = getPaintingData(getBounds(), true);
-                backupSlice = new Slice(data.data, getBounds(), delegate.requestDispatchQueue());
+                backupSlice = new Slice(data.data, getBounds(), sliceStore, delegate.requestDispatchQueue());
 
                 cleanResources(false);
 
@@ -527,6 +533,10 @@ public class Painting {
         }
     }
 
+    public void clearSlices() {
+        sliceStore.clear();
+    }
+
     private int getReusableFramebuffer() {
         if (reusableFramebuffer == 0) {
             int[] buffers = new int[1];
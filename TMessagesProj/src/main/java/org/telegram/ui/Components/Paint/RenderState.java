@@ -1,9 +1,10 @@
 package org.telegram.ui.Components.Paint;
 
-import android.graphics.PointF;
+import android.graphics.RectF;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 
 public class RenderState {
     private static final int DEFAULT_STATE_SIZE = 256;
@@ -20,6 +21,12 @@ public class RenderState {
     private int allocatedCount;
     private ByteBuffer buffer;
 
+    private FloatBuffer vertexData;
+    private FloatBuffer coordData;
+    private FloatBuffer texData;
+    private FloatBuffer alphaData;
+    private float[] cornerPoints = new float[8];
+
     public int getCount() {
         return count;
     }
@@ -51,7 +58,7 @@ public class RenderState {
     public void appendValuesCount(int count) {
         int newTotalCount = this.count + count;
 
-        if (newTotalCount > allocatedCount || buffer == null) {
+        while (newTotalCount > allocatedCount || buffer == null) {
             resizeBuffer();
         }
 
@@ -59,33 +66,219 @@ public class RenderState {
     }
 
     public void resizeBuffer() {
-        if (buffer != null) {
-            buffer = null;
-        }
-
         allocatedCount = Math.max(allocatedCount * 2, DEFAULT_STATE_SIZE);
 
-        buffer = ByteBuffer.allocateDirect(allocatedCount * 5 * 4);
-        buffer.order(ByteOrder.nativeOrder());
-        buffer.position(0);
+        ByteBuffer newBuffer = ByteBuffer.allocateDirect(allocatedCount * 5 * 4);
+        newBuffer.order(ByteOrder.nativeOrder());
+        if (buffer != null) {
+            //keep the points already written for this path
+            int position = buffer.position();
+            buffer.position(0);
+            newBuffer.put(buffer);
+            newBuffer.position(position);
+        }
+        buffer = newBuffer;
     }
 
-    public boolean addPoint(PointF point, float size, float angle, float alpha, int index) {
-        if (index != -1 && index >= allocatedCount || buffer.position() == buffer.limit()) {
+    public void addPoint(float x, float y, float size, float angle, float alpha, int index) {
+        while (index != -1 && index >= allocatedCount || buffer.position() == buffer.limit()) {
             resizeBuffer();
-            return false;
         }
 
         if (index != -1) {
             buffer.position(index * 5 * 4);
         }
-        buffer.putFloat(point.x);
-        buffer.putFloat(point.y);
+        buffer.putFloat(x);
+        buffer.putFloat(y);
         buffer.putFloat(size);
         buffer.putFloat(angle);
         buffer.putFloat(alpha);
+    }
+
+    public void paintSegment(Point lastPoint, Point point) {
+        double distance = lastPoint.getDistanceTo(point);
+        double vectorX = point.x - lastPoint.x;
+        double vectorY = point.y - lastPoint.y;
+        double unitX = 1.0;
+        double unitY = 1.0;
+        float vectorAngle = Math.abs(angle) > 0.0f ? angle : (float) Math.atan2(vectorY, vectorX);
+
+        float brushWeight = baseWeight * scale;
+        double step = Math.max(1.0f, spacing * brushWeight);
+
+        if (distance > 0.0) {
+            unitX = vectorX / distance;
+            unitY = vectorY / distance;
+        }
+
+        float boldenedAlpha = Math.min(1.0f, alpha * 1.15f);
+        boolean boldenHead = lastPoint.edge;
+        boolean boldenTail = point.edge;
+
+        //reserve one more than the estimate, the loop below stamps both ends when the distance is a whole number of steps
+        int stepsCount = Math.max(0, (int) Math.ceil((distance - remainder) / step)) + 1;
+        int currentCount = count;
+        appendValuesCount(boldenTail ? stepsCount + 1 : stepsCount);
+        setPosition(currentCount);
+
+        double startX = lastPoint.x + unitX * remainder;
+        double startY = lastPoint.y + unitY * remainder;
+
+        double f = remainder;
+        for (; f <= distance; f += step) {
+            float stepAlpha = boldenHead ? boldenedAlpha : alpha;
+            addPoint((float) startX, (float) startY, brushWeight, vectorAngle, stepAlpha, -1);
+            currentCount++;
+
+            startX += unitX * step;
+            startY += unitY * step;
+            boldenHead = false;
+        }
+
+        if (boldenTail) {
+            addPoint((float) point.x, (float) point.y, brushWeight, vectorAngle, boldenedAlpha, -1);
+            currentCount++;
+        }
+
+        count = currentCount;
+        remainder = f - distance;
+    }
+
+    public void paintStamp(Point point) {
+        float brushWeight = baseWeight * scale;
+        float stampAngle = Math.abs(angle) > 0.0f ? angle : 0.0f;
+
+        prepare();
+        appendValuesCount(1);
+        addPoint((float) point.x, (float) point.y, brushWeight, stampAngle, alpha, 0);
+    }
+
+    public int fillVertexData(RectF dataBounds) {
+        if (count == 0) {
+            return 0;
+        }
+
+        FloatBuffer vertexData = getVertexData(5 * (count * 4 + (count - 1) * 2));
+        setPosition(0);
+
+        RectF rect = new RectF();
+        float[] points = cornerPoints;
+
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            float x = read();
+            float y = read();
+            float size = read();
+            float stampAngle = read();
+            float stampAlpha = read();
+
+            //corners of the stamp rotated around its center, same as Matrix.setRotate + mapPoints
+            float cos = (float) Math.cos(stampAngle);
+            float sin = (float) Math.sin(stampAngle);
+            float cosSize = cos * size;
+            float sinSize = sin * size;
+            points[0] = x - cosSize + sinSize;
+            points[1] = y - sinSize - cosSize;
+            points[2] = x + cosSize + sinSize;
+            points[3] = y + sinSize - cosSize;
+            points[4] = x - cosSize - sinSize;
+            points[5] = y - sinSize + cosSize;
+            points[6] = x + cosSize - sinSize;
+            points[7] = y + sinSize + cosSize;
+
+            rect.left = Math.min(Math.min(points[0], points[2]), Math.min(points[4], points[6]));
+            rect.top = Math.min(Math.min(points[1], points[3]), Math.min(points[5], points[7]));
+            rect.right = Math.max(Math.max(points[0], points[2]), Math.max(points[4], points[6]));
+            rect.bottom = Math.max(Math.max(points[1], points[3]), Math.max(points[5], points[7]));
+
+            rect.left = (int) Math.floor(rect.left);
+            rect.top = (int) Math.floor(rect.top);
+            rect.right = (int) Math.ceil(rect.right);
+            rect.bottom = (int) Math.ceil(rect.bottom);
+            dataBounds.union(rect);
+
+            if (n != 0) {
+                vertexData.put(points[0]);
+                vertexData.put(points[1]);
+                vertexData.put(0);
+                vertexData.put(0);
+                vertexData.put(stampAlpha);
+                n++;
+            }
+
+            vertexData.put(points[0]);
+            vertexData.put(points[1]);
+            vertexData.put(0);
+            vertexData.put(0);
+            vertexData.put(stampAlpha);
+            n++;
+
+            vertexData.put(points[2]);
+            vertexData.put(points[3]);
+            vertexData.put(1);
+            vertexData.put(0);
+            vertexData.put(stampAlpha);
+            n++;
+
+            vertexData.put(points[4]);
+            vertexData.put(points[5]);
+            vertexData.put(0);
+            vertexData.put(1);
+            vertexData.put(stampAlpha);
+            n++;
+
+            vertexData.put(points[6]);
+            vertexData.put(points[7]);
+            vertexData.put(1);
+            vertexData.put(1);
+            vertexData.put(stampAlpha);
+            n++;
+
+            if (i != count - 1) {
+                vertexData.put(points[6]);
+                vertexData.put(points[7]);
+                vertexData.put(1);
+                vertexData.put(1);
+                vertexData.put(stampAlpha);
+                n++;
+            }
+        }
+
+        return n;
+    }
+
+    public FloatBuffer getVertexData(int floatsCount) {
+        if (vertexData == null || vertexData.capacity() < floatsCount) {
+            int capacity = Math.max(floatsCount, vertexData != null ? vertexData.capacity() * 2 : 0);
+            ByteBuffer bb = ByteBuffer.allocateDirect(capacity * 4);
+            bb.order(ByteOrder.nativeOrder());
+            vertexData = bb.asFloatBuffer();
+
+            vertexData.position(0);
+            coordData = vertexData.slice();
+            vertexData.position(2);
+            texData = vertexData.slice();
+            vertexData.position(4);
+            alphaData = vertexData.slice();
+        }
+        vertexData.clear();
+        return vertexData;
+    }
+
+    public FloatBuffer getCoordData() {
+        return coordData;
+    }
+
+    public FloatBuffer getTexData() {
+        return texData;
+    }
+
+    public FloatBuffer getAlphaData() {
+        return alphaData;
+    }
 
-        return true;
+    public float[] getCornerPoints() {
+        return cornerPoints;
     }
 
     public void reset() {
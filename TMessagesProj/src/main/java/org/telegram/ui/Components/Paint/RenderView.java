@@ -252,6 +252,7 @@ public class RenderView extends TextureView {
                 @Override
                 public void run() {
                     painting.cleanResources(transformedBitmap);
+                    painting.clearSlices();
                     internal.shutdown();
                     internal = null;
                 }
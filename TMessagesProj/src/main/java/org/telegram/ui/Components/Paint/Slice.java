@@ -1,105 +1,98 @@
 package org.telegram.ui.Components.Paint;
 
 import android.graphics.RectF;
-import android.os.Handler;
-import android.os.HandlerThread;
 
-import org.telegram.messenger.AndroidUtilities;
-import org.telegram.messenger.ApplicationLoader;
 import org.telegram.messenger.DispatchQueue;
 import org.telegram.messenger.FileLog;
 
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 public class Slice {
     private RectF bounds;
-    private File file;
+    private SliceStore store;
+    private int size;
 
-    public Slice(final ByteBuffer data, RectF rect, DispatchQueue queue) {
-        bounds = rect;
-
-        try {
-            File outputDir = ApplicationLoader.applicationContext.getCacheDir();
-            file = File.createTempFile("paint", ".bin", outputDir);
-        } catch (Exception e) {
-            FileLog.e("tmessages", e);
-        }
+    byte[] rawData;
+    byte[] compressedData;
+    int compressedLength;
+    long fileOffset = -1;
 
-        if (file == null)
-            return;
-
-        storeData(data);
+    public Slice(final ByteBuffer data, RectF rect, SliceStore sliceStore, DispatchQueue queue) {
+        bounds = rect;
+        store = sliceStore;
+        size = data.remaining();
+
+        //the painting reuses its read buffer, so the region is copied before compressing it on the queue
+        rawData = new byte[size];
+        data.duplicate().get(rawData);
+        store.add(this, size);
+
+        final byte[] input = rawData;
+        queue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                storeData(input);
+            }
+        });
     }
 
     public void cleanResources() {
-        if (file != null) {
-            file.delete();
-            file = null;
-        }
+        store.remove(this);
     }
 
-    private void storeData(ByteBuffer data) {
+    private void storeData(byte[] input) {
         try {
-            final byte[] input = data.array();
-            FileOutputStream fos = new FileOutputStream(file);
-
-            final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
-            deflater.setInput(input, data.arrayOffset(), data.remaining());
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length / 4);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            deflater.setInput(input, 0, input.length);
             deflater.finish();
 
-            byte[] buf = new byte[1024];
+            byte[] buf = new byte[8192];
             while (!deflater.finished()) {
                 int byteCount = deflater.deflate(buf);
-                fos.write(buf, 0, byteCount);
+                bos.write(buf, 0, byteCount);
             }
             deflater.end();
 
-            fos.close();
+            store.onCompressed(this, bos.toByteArray());
         } catch (Exception e) {
             FileLog.e("tmessages", e);
         }
     }
 
     public ByteBuffer getData() {
+        byte[] raw;
+        byte[] compressed;
+        synchronized (store) {
+            raw = rawData;
+            compressed = compressedData;
+        }
+        if (raw != null) {
+            return ByteBuffer.wrap(raw);
+        }
+        if (compressed == null) {
+            compressed = store.readSpilled(this);
+        }
+        if (compressed == null) {
+            return null;
+        }
         try {
-            byte[] input = new byte[1024];
-            byte[] output = new byte[1024];
-            FileInputStream fin = new FileInputStream(file);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] output = new byte[size];
             Inflater inflater = new Inflater(true);
-
-            while (true) {
-                int numRead = fin.read(input);
-                if (numRead != -1) {
-                    inflater.setInput(input, 0, numRead);
-                }
-
-                int numDecompressed;
-                while ((numDecompressed = inflater.inflate(output, 0, output.length)) != 0) {
-                    bos.write(output, 0, numDecompressed);
-                }
-
-                if (inflater.finished()) {
+            inflater.setInput(compressed, 0, compressed.length);
+            int offset = 0;
+            while (offset < size && !inflater.finished()) {
+                int numDecompressed = inflater.inflate(output, offset, size - offset);
+                if (numDecompressed == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
                     break;
                 }
-                else if (inflater.needsInput()) {
-                    continue;
-                }
+                offset += numDecompressed;
             }
-
             inflater.end();
-            ByteBuffer result = ByteBuffer.wrap(bos.toByteArray(), 0, bos.size());
-
-            bos.close();
-            fin.close();
-
-            return result;
+            return ByteBuffer.wrap(output);
         } catch (Exception e) {
             FileLog.e("tmessages", e);
         }
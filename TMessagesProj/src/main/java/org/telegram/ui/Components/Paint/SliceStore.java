@@ -0,0 +1,141 @@
+package org.telegram.ui.Components.Paint;
+
+import org.telegram.messenger.ApplicationLoader;
+import org.telegram.messenger.BuildVars;
+import org.telegram.messenger.FileLog;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+public class SliceStore {
+
+    private final static int maxMemoryBudget = 32 * 1024 * 1024;
+
+    private final int memoryBudget;
+    private final ArrayList<Slice> slices = new ArrayList<>();
+    private int memoryUsed;
+    private File spillFile;
+    private RandomAccessFile spillStream;
+    private long spillLength;
+
+    private int restoresCount;
+    private long restoresTotalTime;
+    private long restoresMaxTime;
+
+    public SliceStore() {
+        memoryBudget = (int) Math.min(maxMemoryBudget, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    synchronized void add(Slice slice, int size) {
+        slices.add(slice);
+        memoryUsed += size;
+        trim();
+    }
+
+    synchronized boolean onCompressed(Slice slice, byte[] compressed) {
+        if (!slices.contains(slice)) {
+            return false;
+        }
+        memoryUsed += compressed.length - slice.rawData.length;
+        slice.compressedData = compressed;
+        slice.compressedLength = compressed.length;
+        slice.rawData = null;
+        trim();
+        return true;
+    }
+
+    synchronized void remove(Slice slice) {
+        if (!slices.remove(slice)) {
+            return;
+        }
+        if (slice.rawData != null) {
+            memoryUsed -= slice.rawData.length;
+        } else if (slice.compressedData != null) {
+            memoryUsed -= slice.compressedData.length;
+        }
+        slice.rawData = null;
+        slice.compressedData = null;
+        if (slices.isEmpty()) {
+            closeSpillFile();
+        }
+    }
+
+    public synchronized void clear() {
+        for (int a = 0; a < slices.size(); a++) {
+            Slice slice = slices.get(a);
+            slice.rawData = null;
+            slice.compressedData = null;
+        }
+        slices.clear();
+        memoryUsed = 0;
+        closeSpillFile();
+    }
+
+    synchronized byte[] readSpilled(Slice slice) {
+        if (spillStream == null || slice.fileOffset < 0) {
+            return null;
+        }
+        try {
+            byte[] data = new byte[slice.compressedLength];
+            spillStream.seek(slice.fileOffset);
+            spillStream.readFully(data);
+            return data;
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        }
+        return null;
+    }
+
+    synchronized void trackRestore(long time) {
+        if (!BuildVars.DEBUG_VERSION) {
+            return;
+        }
+        restoresCount++;
+        restoresTotalTime += time;
+        restoresMaxTime = Math.max(restoresMaxTime, time);
+        FileLog.e("tmessages", "paint undo restored in " + time + " ms, average " + (restoresTotalTime / restoresCount) + " ms, max " + restoresMaxTime + " ms, " + (memoryUsed / 1024) + " KB in memory, " + (spillLength / 1024) + " KB spilled");
+    }
+
+    private void trim() {
+        //oldest compressed slices go to the append-only file first, they are the least likely to be undone
+        for (int a = 0; a < slices.size() && memoryUsed > memoryBudget; a++) {
+            Slice slice = slices.get(a);
+            if (slice.compressedData == null) {
+                continue;
+            }
+            try {
+                if (spillStream == null) {
+                    spillFile = File.createTempFile("paint", ".bin", ApplicationLoader.applicationContext.getCacheDir());
+                    spillStream = new RandomAccessFile(spillFile, "rw");
+                    spillLength = 0;
+                }
+                spillStream.seek(spillLength);
+                spillStream.write(slice.compressedData);
+                slice.fileOffset = spillLength;
+                spillLength += slice.compressedData.length;
+                memoryUsed -= slice.compressedData.length;
+                slice.compressedData = null;
+            } catch (Exception e) {
+                FileLog.e("tmessages", e);
+                return;
+            }
+        }
+    }
+
+    private void closeSpillFile() {
+        try {
+            if (spillStream != null) {
+                spillStream.close();
+            }
+        } catch (Exception e) {
+            FileLog.e("tmessages", e);
+        }
+        spillStream = null;
+        if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+        spillLength = 0;
+    }
+}
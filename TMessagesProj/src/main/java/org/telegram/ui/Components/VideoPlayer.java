@@ -58,11 +58,17 @@ public class VideoPlayer implements ExoPlayer.Listener, MediaCodecVideoTrackRend
         private final Context context;
         private final String userAgent;
         private final Uri uri;
+        private final DataSource dataSource;
 
         public ExtractorRendererBuilder(Context context, String userAgent, Uri uri) {
+            this(context, userAgent, uri, null);
+        }
+
+        public ExtractorRendererBuilder(Context context, String userAgent, Uri uri, DataSource dataSource) {
             this.context = context;
             this.userAgent = userAgent;
             this.uri = uri;
+            this.dataSource = dataSource;
         }
 
         @Override
@@ -71,7 +77,7 @@ public class VideoPlayer implements ExoPlayer.Listener, MediaCodecVideoTrackRend
             Handler mainHandler = player.getMainHandler();
 
             TrackRenderer[] renderers = new TrackRenderer[RENDERER_COUNT];
-            DataSource dataSource = new DefaultUriDataSource(context, userAgent);
+            DataSource dataSource = this.dataSource != null ? this.dataSource : new DefaultUriDataSource(context, userAgent);
             ExtractorSampleSource sampleSource = new ExtractorSampleSource(uri, dataSource, allocator, BUFFER_SEGMENT_COUNT * BUFFER_SEGMENT_SIZE, mainHandler, null, 0);
             renderers[TYPE_VIDEO] = new MediaCodecVideoTrackRenderer(context, sampleSource, MediaCodecSelector.DEFAULT, MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000, mainHandler, player, 50) {
                 @Override
@@ -48,7 +48,9 @@ import org.telegram.messenger.AndroidUtilities;
 import org.telegram.PhoneFormat.PhoneFormat;
 import org.telegram.messenger.ChatObject;
 import org.telegram.messenger.ContactsController;
+import org.telegram.messenger.DialogsSnapshot;
 import org.telegram.messenger.ImageLoader;
+import org.telegram.messenger.MessageLayoutCache;
 import org.telegram.messenger.MessageObject;
 import org.telegram.messenger.MessagesController;
 import org.telegram.messenger.MessagesStorage;
@@ -1778,6 +1780,7 @@ public class LaunchActivity extends Activity implements ActionBarLayout.ActionBa
             passcodeView.onPause();
         }
         ConnectionsManager.getInstance().setAppPaused(true, false);
+        DialogsSnapshot.getInstance().save();
         AndroidUtilities.unregisterUpdates();
         if (PhotoViewer.getInstance().isVisible()) {
             PhotoViewer.getInstance().onPause();
@@ -2109,6 +2112,7 @@ public class LaunchActivity extends Activity implements ActionBarLayout.ActionBa
     @Override
     public void onLowMemory() {
         super.onLowMemory();
+        MessageLayoutCache.getInstance().clear();
         actionBarLayout.onLowMemory();
         if (AndroidUtilities.isTablet()) {
             rightActionBarLayout.onLowMemory();
@@ -2116,6 +2120,14 @@ public class LaunchActivity extends Activity implements ActionBarLayout.ActionBa
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            MessageLayoutCache.getInstance().clear();
+        }
+    }
+
     @Override
     public void onActionModeStarted(ActionMode mode) {
         super.onActionModeStarted(mode);
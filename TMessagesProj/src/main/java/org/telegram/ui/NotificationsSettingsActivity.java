@@ -31,6 +31,7 @@ import android.widget.Toast;
 import org.telegram.messenger.AndroidUtilities;
 import org.telegram.messenger.LocaleController;
 import org.telegram.messenger.NotificationsController;
+import org.telegram.messenger.NotificationsSettingsStore;
 import org.telegram.messenger.NotificationCenter;
 import org.telegram.messenger.ApplicationLoader;
 import org.telegram.tgnet.ConnectionsManager;
@@ -272,6 +273,7 @@ public class NotificationsSettingsActivity extends BaseFragment implements Notif
                                     SharedPreferences.Editor editor = preferences.edit();
                                     editor.clear();
                                     editor.commit();
+                                    NotificationsSettingsStore.getInstance().reload();
                                     if (listView != null) {
                                         listView.invalidateViews();
                                     }
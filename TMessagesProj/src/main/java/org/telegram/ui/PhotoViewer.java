@@ -91,6 +91,7 @@ import org.telegram.ui.Components.AnimatedFileDrawable;
 import org.telegram.ui.Components.CheckBox;
 import org.telegram.ui.Components.ClippingImageView;
 import org.telegram.messenger.ImageReceiver;
+import org.telegram.ui.Components.FileStreamDataSource;
 import org.telegram.ui.Components.LayoutHelper;
 import org.telegram.ui.Components.PhotoCropView;
 import org.telegram.ui.Components.PhotoFilterView;
@@ -168,6 +169,7 @@ public class PhotoViewer implements NotificationCenter.NotificationCenterDelegat
 
     private AspectRatioFrameLayout aspectRatioFrameLayout;
     private TextureView videoTextureView;
+    private boolean isStreamingVideo;
     private VideoPlayer videoPlayer;
     private FrameLayout videoPlayerControlFrameLayout;
     private ImageView videoPlayButton;
@@ -743,7 +745,7 @@ public class PhotoViewer implements NotificationCenter.NotificationCenterDelegat
                 if (currentFileNames[a] != null && currentFileNames[a].equals(location)) {
                     radialProgressViews[a].setProgress(1.0f, true);
                     checkProgress(a, true);
-                    if (Build.VERSION.SDK_INT >= 16 && a == 0 && (currentMessageObject != null && currentMessageObject.isVideo() || currentBotInlineResult != null && (currentBotInlineResult.type.equals("video") || MessageObject.isVideoDocument(currentBotInlineResult.document)))) {
+                    if (Build.VERSION.SDK_INT >= 16 && a == 0 && !isStreamingVideo && (currentMessageObject != null && currentMessageObject.isVideo() || currentBotInlineResult != null && (currentBotInlineResult.type.equals("video") || MessageObject.isVideoDocument(currentBotInlineResult.document)))) {
                         onActionClick(false);
                     }
                     break;
@@ -1981,10 +1983,15 @@ public class PhotoViewer implements NotificationCenter.NotificationCenterDelegat
 
     @SuppressLint("NewApi")
     private void preparePlayer(File file, boolean playWhenReady) {
+        preparePlayer(Uri.fromFile(file), null, playWhenReady);
+    }
+
+    private void preparePlayer(Uri uri, TLRPC.Document streamDocument, boolean playWhenReady) {
         if (parentActivity == null) {
             return;
         }
         releasePlayer();
+        isStreamingVideo = streamDocument != null;
         if (videoTextureView == null) {
             aspectRatioFrameLayout = new AspectRatioFrameLayout(parentActivity);
             aspectRatioFrameLayout.setVisibility(View.INVISIBLE);
@@ -2028,7 +2035,7 @@ public class PhotoViewer implements NotificationCenter.NotificationCenterDelegat
         videoTextureView.setAlpha(videoCrossfadeAlpha = 0.0f);
         videoPlayButton.setImageResource(R.drawable.inline_video_play);
         if (videoPlayer == null) {
-            videoPlayer = new VideoPlayer(new VideoPlayer.ExtractorRendererBuilder(parentActivity, "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_11_5) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/50.0.2661.102 Safari/537.36", Uri.fromFile(file)));
+            videoPlayer = new VideoPlayer(new VideoPlayer.ExtractorRendererBuilder(parentActivity, "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_11_5) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/50.0.2661.102 Safari/537.36", uri, streamDocument != null ? FileStreamDataSource.createCached(streamDocument) : null));
             videoPlayer.addListener(new VideoPlayer.Listener() {
                 @Override
                 public void onStateChanged(boolean playWhenReady, int playbackState) {
@@ -2132,6 +2139,7 @@ public class PhotoViewer implements NotificationCenter.NotificationCenterDelegat
             videoPlayer.release();
             videoPlayer = null;
         }
+        isStreamingVideo = false;
         try {
             parentActivity.getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         } catch (Exception e) {
@@ -4926,8 +4934,16 @@ public class PhotoViewer implements NotificationCenter.NotificationCenterDelegat
             if (download) {
                 if (currentMessageObject !=  null) {
                     if (!FileLoader.getInstance().isLoadingFile(currentFileNames[0])) {
-                        FileLoader.getInstance().loadFile(currentMessageObject.getDocument(), true, false);
+                        TLRPC.Document document = currentMessageObject.getDocument();
+                        if (Build.VERSION.SDK_INT >= 16 && currentMessageObject.isVideo() && document != null && document.key == null && document.size > 0) {
+                            preparePlayer(Uri.parse("tg://stream/" + currentFileNames[0]), document, true);
+                        } else {
+                            FileLoader.getInstance().loadFile(document, true, false);
+                        }
                     } else {
+                        if (isStreamingVideo) {
+                            releasePlayer();
+                        }
                         FileLoader.getInstance().cancelLoadFile(currentMessageObject.getDocument());
                     }
                 } else if (currentBotInlineResult != null) {